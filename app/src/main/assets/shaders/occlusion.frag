@@ -20,6 +20,10 @@ precision mediump float;
 // composed with the background image depending on which modes were set in
 // DepthCompositionRenderer.setDepthModes.
 uniform sampler2D u_VirtualSceneColorTexture;
+// The largest texture coordinates inside the rendered part of the virtual
+// scene textures, half a texel in from its edge, so that bilinear upscaling
+// does not blend in texels outside it.
+uniform vec2 u_VirtualSceneTexCoordMax;
 
 #if USE_OCCLUSION
 // The AR camera depth texture.
@@ -159,7 +163,9 @@ float Depth_GetBlurredOcclusionAroundUV(const sampler2D depthTexture,
 #endif  // USE_OCCLUSION
 
 void main() {
-  o_FragColor = texture(u_VirtualSceneColorTexture, v_VirtualSceneTexCoord);
+  vec2 virtualSceneTexCoord =
+      min(v_VirtualSceneTexCoord, u_VirtualSceneTexCoordMax);
+  o_FragColor = texture(u_VirtualSceneColorTexture, virtualSceneTexCoord);
 
 #if USE_OCCLUSION
   if (o_FragColor.a == 0.0) {
@@ -167,7 +173,7 @@ void main() {
     return;
   }
   float assetDepthMm = Depth_GetVirtualSceneDepthMillimeters(
-      u_VirtualSceneDepthTexture, v_VirtualSceneTexCoord, u_ZNear, u_ZFar);
+      u_VirtualSceneDepthTexture, virtualSceneTexCoord, u_ZNear, u_ZFar);
 
   float occlusion = Depth_GetBlurredOcclusionAroundUV(
       u_CameraDepthTexture, v_CameraTexCoord, assetDepthMm);
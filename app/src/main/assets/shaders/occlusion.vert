@@ -19,6 +19,10 @@ layout(location = 0) in vec4 a_Position;
 layout(location = 1) in vec2 a_CameraTexCoord;
 layout(location = 2) in vec2 a_VirtualSceneTexCoord;
 
+// The fraction of the virtual scene textures that was rendered to, when it was
+// rendered at a reduced resolution.
+uniform vec2 u_VirtualSceneTexCoordScale;
+
 #if USE_OCCLUSION
 out vec2 v_CameraTexCoord;
 #endif
@@ -29,5 +33,5 @@ void main() {
 #if USE_OCCLUSION
   v_CameraTexCoord = a_CameraTexCoord;
 #endif
-  v_VirtualSceneTexCoord = a_VirtualSceneTexCoord;
+  v_VirtualSceneTexCoord = a_VirtualSceneTexCoord * u_VirtualSceneTexCoordScale;
 }
@@ -0,0 +1,111 @@
+package com.example.artech.geoapi.common.anchors;
+
+/**
+ * Hands out stable ids for a fixed number of recycled slots.
+ *
+ * <p>An id encodes its slot and the slot's generation, which is bumped whenever the slot is
+ * released. An id therefore stays valid for as long as its slot holds the same object, and a stale
+ * id never aliases whatever reuses the slot later. Live slots are also kept in a dense list, so
+ * callers can visit them without scanning free ones.
+ *
+ * <p>Nothing here allocates after construction. This class is not thread-safe.
+ */
+public final class AnchorSlotTable {
+  /** Returned by {@link #allocate} when every slot is taken, and never a valid id. */
+  public static final int NO_ID = -1;
+  /** The largest supported capacity. */
+  public static final int MAX_CAPACITY = 1 << 16;
+
+  private static final int SLOT_BITS = 16;
+  private static final int SLOT_MASK = MAX_CAPACITY - 1;
+  // Keeps ids non-negative.
+  private static final int GENERATION_MASK = 0x7fff;
+
+  private final int[] generations;
+  private final int[] freeSlots;
+  private int freeCount;
+  private final int[] liveSlots;
+  // Position of each live slot in liveSlots.
+  private final int[] livePositions;
+  private int liveCount;
+
+  public AnchorSlotTable(int capacity) {
+    if (capacity <= 0 || capacity > MAX_CAPACITY) {
+      throw new IllegalArgumentException("Capacity must be in [1, " + MAX_CAPACITY + "]");
+    }
+    generations = new int[capacity];
+    freeSlots = new int[capacity];
+    liveSlots = new int[capacity];
+    livePositions = new int[capacity];
+    // Hand out low slots first.
+    for (int i = 0; i < capacity; ++i) {
+      freeSlots[i] = capacity - 1 - i;
+      livePositions[i] = -1;
+    }
+    freeCount = capacity;
+  }
+
+  public int getCapacity() {
+    return generations.length;
+  }
+
+  /** Returns the number of allocated ids. */
+  public int size() {
+    return liveCount;
+  }
+
+  /** Takes a free slot and returns its id, or {@link #NO_ID} if there is none. */
+  public int allocate() {
+    if (freeCount == 0) {
+      return NO_ID;
+    }
+    int slot = freeSlots[--freeCount];
+    livePositions[slot] = liveCount;
+    liveSlots[liveCount++] = slot;
+    return (generations[slot] << SLOT_BITS) | slot;
+  }
+
+  /** Frees the id's slot. Returns false if the id is not allocated. */
+  public boolean release(int id) {
+    int slot = slotOf(id);
+    if (slot < 0) {
+      return false;
+    }
+    generations[slot] = (generations[slot] + 1) & GENERATION_MASK;
+    // Move the last live slot into the hole.
+    int position = livePositions[slot];
+    int lastSlot = liveSlots[--liveCount];
+    liveSlots[position] = lastSlot;
+    livePositions[lastSlot] = position;
+    livePositions[slot] = -1;
+    freeSlots[freeCount++] = slot;
+    return true;
+  }
+
+  /** Returns the slot of an allocated id, or -1 if the id is not allocated. */
+  public int slotOf(int id) {
+    if (id < 0) {
+      return -1;
+    }
+    int slot = id & SLOT_MASK;
+    if (slot >= generations.length
+        || livePositions[slot] < 0
+        || generations[slot] != id >>> SLOT_BITS) {
+      return -1;
+    }
+    return slot;
+  }
+
+  /** Returns the id currently held by an allocated slot. */
+  public int idOf(int slot) {
+    return (generations[slot] << SLOT_BITS) | slot;
+  }
+
+  /**
+   * Returns the i-th allocated slot, for i in [0, {@link #size}). The order changes when ids are
+   * released.
+   */
+  public int getLiveSlot(int i) {
+    return liveSlots[i];
+  }
+}
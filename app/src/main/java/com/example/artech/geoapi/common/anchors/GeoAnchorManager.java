@@ -0,0 +1,211 @@
+package com.example.artech.geoapi.common.anchors;
+
+import com.example.artech.geoapi.common.poi.PointOfInterest;
+import com.google.ar.core.Anchor;
+import com.google.ar.core.Earth;
+import com.google.ar.core.TrackingState;
+import java.util.List;
+
+/**
+ * Owns a bounded set of Earth anchors and caches their per-frame state for rendering.
+ *
+ * <p>Anchors are addressed by the stable ids of an {@link AnchorSlotTable}, so their bookkeeping
+ * lives in preallocated arrays that are recycled as anchors come and go. {@link #update} asks each
+ * anchor for its tracking state once per frame and fetches the pose of tracking anchors only,
+ * packing their model matrices into one array that renderers can walk without touching ARCore
+ * again.
+ *
+ * <p>All methods must be called on the thread that calls {@code Session.update()}, normally the GL
+ * thread.
+ */
+public final class GeoAnchorManager {
+  /** Returned in place of an id when an anchor could not be created. */
+  public static final int NO_ANCHOR = AnchorSlotTable.NO_ID;
+
+  private static final int MATRIX_SIZE = 16;
+
+  private final AnchorSlotTable slots;
+  private final Anchor[] anchors;
+  private final TrackingState[] trackingStates;
+  // Filled by update(): ids and model matrices of the anchors that are tracking.
+  private final int[] trackingIds;
+  private final float[] trackingModelMatrices;
+  private int trackingCount;
+
+  /** @param capacity the maximum number of anchors, at most {@link AnchorSlotTable#MAX_CAPACITY} */
+  public GeoAnchorManager(int capacity) {
+    slots = new AnchorSlotTable(capacity);
+    anchors = new Anchor[capacity];
+    trackingStates = new TrackingState[capacity];
+    trackingIds = new int[capacity];
+    trackingModelMatrices = new float[capacity * MATRIX_SIZE];
+  }
+
+  public int getCapacity() {
+    return slots.getCapacity();
+  }
+
+  /** Returns the number of anchors. */
+  public int size() {
+    return slots.size();
+  }
+
+  /**
+   * Creates an Earth anchor. Earth must be tracking.
+   *
+   * @param altitude in meters above the WGS84 ellipsoid
+   * @return the anchor's id, or {@link #NO_ANCHOR} if the manager is full
+   */
+  public int create(
+      Earth earth,
+      double latitude,
+      double longitude,
+      double altitude,
+      float qx,
+      float qy,
+      float qz,
+      float qw) {
+    int id = slots.allocate();
+    if (id == NO_ANCHOR) {
+      return NO_ANCHOR;
+    }
+    Anchor anchor;
+    try {
+      anchor = earth.createAnchor(latitude, longitude, altitude, qx, qy, qz, qw);
+    } catch (RuntimeException e) {
+      slots.release(id);
+      throw e;
+    }
+    int slot = slots.slotOf(id);
+    anchors[slot] = anchor;
+    // Not known until the next update().
+    trackingStates[slot] = TrackingState.PAUSED;
+    return id;
+  }
+
+  /**
+   * Creates an upright anchor for each point of interest, turned clockwise about the up axis by the
+   * point's heading, as far as there is room. Earth must be tracking.
+   *
+   * @param defaultAltitude in meters above the WGS84 ellipsoid, used for points without an altitude
+   * @param ids receives the id of each point's anchor, or {@link #NO_ANCHOR} for points that did
+   *     not fit, at the point's index in {@code points}; must be at least as long as {@code points}
+   * @return the number of anchors created
+   */
+  public int createAll(
+      Earth earth, List<PointOfInterest> points, double defaultAltitude, int[] ids) {
+    int created = 0;
+    for (int i = 0; i < points.size(); ++i) {
+      PointOfInterest point = points.get(i);
+      // Earth anchors are oriented in east-up-south coordinates, so clockwise seen from above is a
+      // negative rotation about +y.
+      double halfAngle = -Math.toRadians(point.getHeading()) / 2;
+      int id =
+          create(
+              earth,
+              point.getLatitude(),
+              point.getLongitude(),
+              point.hasAltitude() ? point.getAltitude() : defaultAltitude,
+              0f,
+              (float) Math.sin(halfAngle),
+              0f,
+              (float) Math.cos(halfAngle));
+      ids[i] = id;
+      if (id != NO_ANCHOR) {
+        ++created;
+      }
+    }
+    return created;
+  }
+
+  /** Detaches and forgets an anchor. Returns false if the id is unknown or already removed. */
+  public boolean remove(int id) {
+    int slot = slots.slotOf(id);
+    if (slot < 0) {
+      return false;
+    }
+    anchors[slot].detach();
+    anchors[slot] = null;
+    trackingStates[slot] = null;
+    slots.release(id);
+    // Keep the packed matrices free of removed anchors until the next update().
+    for (int i = 0; i < trackingCount; ++i) {
+      if (trackingIds[i] == id) {
+        --trackingCount;
+        trackingIds[i] = trackingIds[trackingCount];
+        System.arraycopy(
+            trackingModelMatrices,
+            trackingCount * MATRIX_SIZE,
+            trackingModelMatrices,
+            i * MATRIX_SIZE,
+            MATRIX_SIZE);
+        break;
+      }
+    }
+    return true;
+  }
+
+  /** Detaches every anchor. */
+  public void clear() {
+    while (slots.size() > 0) {
+      remove(slots.idOf(slots.getLiveSlot(slots.size() - 1)));
+    }
+    trackingCount = 0;
+  }
+
+  /** Returns whether the id belongs to an anchor of this manager. */
+  public boolean contains(int id) {
+    return slots.slotOf(id) >= 0;
+  }
+
+  /** Returns the anchor with the given id, or null if there is none. */
+  public Anchor getAnchor(int id) {
+    int slot = slots.slotOf(id);
+    return slot < 0 ? null : anchors[slot];
+  }
+
+  /**
+   * Returns the tracking state cached by the last {@link #update}, or null if the id is unknown.
+   * Anchors created since then report {@link TrackingState#PAUSED}.
+   */
+  public TrackingState getTrackingState(int id) {
+    int slot = slots.slotOf(id);
+    return slot < 0 ? null : trackingStates[slot];
+  }
+
+  /**
+   * Refreshes the cached tracking states and packs the model matrices of tracking anchors. Call
+   * once per frame after {@code Session.update()}.
+   */
+  public void update() {
+    trackingCount = 0;
+    for (int i = 0; i < slots.size(); ++i) {
+      int slot = slots.getLiveSlot(i);
+      Anchor anchor = anchors[slot];
+      TrackingState trackingState = anchor.getTrackingState();
+      trackingStates[slot] = trackingState;
+      if (trackingState == TrackingState.TRACKING) {
+        anchor.getPose().toMatrix(trackingModelMatrices, trackingCount * MATRIX_SIZE);
+        trackingIds[trackingCount++] = slots.idOf(slot);
+      }
+    }
+  }
+
+  /** Returns the number of anchors that were tracking at the last {@link #update}. */
+  public int getTrackingCount() {
+    return trackingCount;
+  }
+
+  /** Returns the id of the i-th tracking anchor, for i in [0, {@link #getTrackingCount}). */
+  public int getTrackingId(int i) {
+    return trackingIds[i];
+  }
+
+  /**
+   * Returns the column-major model matrices of the tracking anchors, the i-th starting at offset
+   * {@code 16 * i}. Only the first {@link #getTrackingCount} are current.
+   */
+  public float[] getTrackingModelMatrices() {
+    return trackingModelMatrices;
+  }
+}
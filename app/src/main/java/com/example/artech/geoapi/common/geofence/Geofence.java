@@ -0,0 +1,91 @@
+package com.example.artech.geoapi.common.geofence;
+
+/**
+ * A named zone on the Earth's surface, bounded by a simple polygon in latitude/longitude degrees.
+ *
+ * <p>Edges are straight lines in latitude/longitude space, which is accurate enough for zones a few
+ * hundred meters across. Polygons must not cross the antimeridian.
+ */
+public final class Geofence {
+  private final String id;
+  private final double[] latitudes;
+  private final double[] longitudes;
+  private final double minLatitude;
+  private final double maxLatitude;
+  private final double minLongitude;
+  private final double maxLongitude;
+
+  /**
+   * Constructs a {@link Geofence}. Vertices may be listed in either winding order and the polygon
+   * is closed implicitly.
+   *
+   * @throws IllegalArgumentException if there are fewer than three vertices or the arrays differ in
+   *     length
+   */
+  public Geofence(String id, double[] latitudes, double[] longitudes) {
+    if (latitudes.length != longitudes.length) {
+      throw new IllegalArgumentException("Latitude and longitude counts differ for zone " + id);
+    }
+    if (latitudes.length < 3) {
+      throw new IllegalArgumentException("Zone " + id + " needs at least three vertices");
+    }
+    this.id = id;
+    this.latitudes = latitudes.clone();
+    this.longitudes = longitudes.clone();
+    double minLat = Double.POSITIVE_INFINITY;
+    double maxLat = Double.NEGATIVE_INFINITY;
+    double minLng = Double.POSITIVE_INFINITY;
+    double maxLng = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < latitudes.length; ++i) {
+      minLat = Math.min(minLat, latitudes[i]);
+      maxLat = Math.max(maxLat, latitudes[i]);
+      minLng = Math.min(minLng, longitudes[i]);
+      maxLng = Math.max(maxLng, longitudes[i]);
+    }
+    this.minLatitude = minLat;
+    this.maxLatitude = maxLat;
+    this.minLongitude = minLng;
+    this.maxLongitude = maxLng;
+  }
+
+  /** Constructs an axis-aligned rectangular {@link Geofence}. */
+  public static Geofence rectangle(
+      String id, double minLatitude, double minLongitude, double maxLatitude, double maxLongitude) {
+    return new Geofence(
+        id,
+        new double[] {minLatitude, minLatitude, maxLatitude, maxLatitude},
+        new double[] {minLongitude, maxLongitude, maxLongitude, minLongitude});
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public int getVertexCount() {
+    return latitudes.length;
+  }
+
+  public double getLatitude(int vertex) {
+    return latitudes[vertex];
+  }
+
+  public double getLongitude(int vertex) {
+    return longitudes[vertex];
+  }
+
+  public double getMinLatitude() {
+    return minLatitude;
+  }
+
+  public double getMaxLatitude() {
+    return maxLatitude;
+  }
+
+  public double getMinLongitude() {
+    return minLongitude;
+  }
+
+  public double getMaxLongitude() {
+    return maxLongitude;
+  }
+}
@@ -0,0 +1,83 @@
+package com.example.artech.geoapi.common.geofence;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reads zone definitions from a plain-text file, one zone per line:
+ *
+ * <pre>
+ * # Comments and blank lines are ignored.
+ * &lt;id&gt; &lt;lat&gt;,&lt;lng&gt; &lt;lat&gt;,&lt;lng&gt; &lt;lat&gt;,&lt;lng&gt; ...
+ * </pre>
+ *
+ * <p>Coordinates are in degrees. Zones keep the order of the file, which {@link GeofenceIndex}
+ * treats as their priority where they overlap.
+ */
+public final class GeofenceFormat {
+  /** Reads all zones from a UTF-8 stream. The stream is not closed. */
+  public static List<Geofence> read(InputStream inputStream) throws IOException {
+    return read(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Reads all zones from a reader. The reader is not closed.
+   *
+   * @throws IOException if a line is malformed or a zone id is repeated
+   */
+  public static List<Geofence> read(Reader reader) throws IOException {
+    BufferedReader lines = new BufferedReader(reader);
+    List<Geofence> zones = new ArrayList<>();
+    Set<String> ids = new HashSet<>();
+    String line;
+    int lineNumber = 0;
+    while ((line = lines.readLine()) != null) {
+      ++lineNumber;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      String id = fields[0];
+      if (!ids.add(id)) {
+        throw new IOException("Line " + lineNumber + ": duplicate zone id " + id);
+      }
+      int vertexCount = fields.length - 1;
+      double[] latitudes = new double[vertexCount];
+      double[] longitudes = new double[vertexCount];
+      for (int v = 0; v < vertexCount; ++v) {
+        String vertex = fields[v + 1];
+        int comma = vertex.indexOf(',');
+        try {
+          if (comma < 0) {
+            throw new NumberFormatException();
+          }
+          latitudes[v] = Double.parseDouble(vertex.substring(0, comma));
+          longitudes[v] = Double.parseDouble(vertex.substring(comma + 1));
+        } catch (NumberFormatException e) {
+          throw new IOException("Line " + lineNumber + ": bad vertex " + vertex);
+        }
+        // Written so that NaN is rejected too.
+        if (!(Math.abs(latitudes[v]) <= 90 && Math.abs(longitudes[v]) <= 180)) {
+          throw new IOException("Line " + lineNumber + ": vertex out of range " + vertex);
+        }
+      }
+      try {
+        zones.add(new Geofence(id, latitudes, longitudes));
+      } catch (IllegalArgumentException e) {
+        throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+      }
+    }
+    return zones;
+  }
+
+  private GeofenceFormat() {}
+}
@@ -0,0 +1,337 @@
+package com.example.artech.geoapi.common.geofence;
+
+import java.util.List;
+
+/**
+ * Answers "which zones contain this point" for a fixed set of {@link Geofence}s.
+ *
+ * <p>Zones are bucketed into a uniform latitude/longitude grid over their combined bounds, so a
+ * query only tests the few zones whose bounding boxes overlap the point's cell. Vertices and cell
+ * contents live in flat arrays, and queries do not allocate, so they are safe to run every frame.
+ *
+ * <p>Zones are identified by their position in the list the index was built from, which is also
+ * their priority: queries report matches in ascending index order. Points on a zone's boundary are
+ * inside it, up to floating point rounding on edges that are not axis-aligned.
+ *
+ * <p>An index is immutable once built and may be queried from any thread.
+ */
+public final class GeofenceIndex {
+  /** Returned by {@link #findFirst} when no zone contains the point. */
+  public static final int NO_ZONE = -1;
+
+  // Aim for about this many grid cells per zone; each query then tests few zones without the grid
+  // growing much larger than the polygons themselves.
+  private static final int CELLS_PER_ZONE = 2;
+  private static final int MAX_CELLS = 1 << 20;
+  // Mean length of a degree of latitude, and of longitude at the equator.
+  private static final double METERS_PER_DEGREE = 111_320;
+
+  private final Geofence[] zones;
+
+  // Zone i has vertices [vertexStart[i], vertexStart[i + 1]).
+  private final int[] vertexStart;
+  private final double[] vertexLatitudes;
+  private final double[] vertexLongitudes;
+  private final double[] minLatitudes;
+  private final double[] maxLatitudes;
+  private final double[] minLongitudes;
+  private final double[] maxLongitudes;
+
+  private final double gridMinLatitude;
+  private final double gridMinLongitude;
+  private final double gridMaxLatitude;
+  private final double gridMaxLongitude;
+  private final double rowsPerDegree;
+  private final double columnsPerDegree;
+  private final int rows;
+  private final int columns;
+  // Cell c holds zones cellZones[cellStart[c]] to cellZones[cellStart[c + 1] - 1], ascending.
+  private final int[] cellStart;
+  private final int[] cellZones;
+
+  public GeofenceIndex(List<Geofence> zones) {
+    int zoneCount = zones.size();
+    this.zones = zones.toArray(new Geofence[0]);
+    vertexStart = new int[zoneCount + 1];
+    minLatitudes = new double[zoneCount];
+    maxLatitudes = new double[zoneCount];
+    minLongitudes = new double[zoneCount];
+    maxLongitudes = new double[zoneCount];
+    double minLatitude = Double.POSITIVE_INFINITY;
+    double minLongitude = Double.POSITIVE_INFINITY;
+    double maxLatitude = Double.NEGATIVE_INFINITY;
+    double maxLongitude = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < zoneCount; ++i) {
+      Geofence zone = this.zones[i];
+      vertexStart[i + 1] = vertexStart[i] + zone.getVertexCount();
+      minLatitudes[i] = zone.getMinLatitude();
+      maxLatitudes[i] = zone.getMaxLatitude();
+      minLongitudes[i] = zone.getMinLongitude();
+      maxLongitudes[i] = zone.getMaxLongitude();
+      minLatitude = Math.min(minLatitude, zone.getMinLatitude());
+      minLongitude = Math.min(minLongitude, zone.getMinLongitude());
+      maxLatitude = Math.max(maxLatitude, zone.getMaxLatitude());
+      maxLongitude = Math.max(maxLongitude, zone.getMaxLongitude());
+    }
+    vertexLatitudes = new double[vertexStart[zoneCount]];
+    vertexLongitudes = new double[vertexStart[zoneCount]];
+    for (int i = 0; i < zoneCount; ++i) {
+      Geofence zone = this.zones[i];
+      for (int v = 0; v < zone.getVertexCount(); ++v) {
+        vertexLatitudes[vertexStart[i] + v] = zone.getLatitude(v);
+        vertexLongitudes[vertexStart[i] + v] = zone.getLongitude(v);
+      }
+    }
+
+    if (zoneCount == 0) {
+      minLatitude = 0;
+      minLongitude = 0;
+      maxLatitude = 0;
+      maxLongitude = 0;
+    }
+    gridMinLatitude = minLatitude;
+    gridMinLongitude = minLongitude;
+    gridMaxLatitude = maxLatitude;
+    gridMaxLongitude = maxLongitude;
+    // Pad degenerate extents so the cell size stays finite.
+    double height = Math.max(maxLatitude - minLatitude, 1e-9);
+    double width = Math.max(maxLongitude - minLongitude, 1e-9);
+    double cells = Math.min((double) zoneCount * CELLS_PER_ZONE, MAX_CELLS);
+    int rowCount = (int) Math.round(Math.sqrt(cells * height / width));
+    rows = Math.max(1, Math.min(rowCount, MAX_CELLS));
+    columns = Math.max(1, Math.min((int) Math.round(cells / rows), MAX_CELLS / rows));
+    rowsPerDegree = rows / height;
+    columnsPerDegree = columns / width;
+
+    // Count the zones overlapping each cell, then fill them in zone order so each cell's list is
+    // sorted by priority.
+    cellStart = new int[rows * columns + 1];
+    for (int i = 0; i < zoneCount; ++i) {
+      int firstRow = rowOf(minLatitudes[i]);
+      int lastRow = rowOf(maxLatitudes[i]);
+      int firstColumn = columnOf(minLongitudes[i]);
+      int lastColumn = columnOf(maxLongitudes[i]);
+      for (int row = firstRow; row <= lastRow; ++row) {
+        for (int column = firstColumn; column <= lastColumn; ++column) {
+          ++cellStart[row * columns + column + 1];
+        }
+      }
+    }
+    for (int c = 0; c < rows * columns; ++c) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    cellZones = new int[cellStart[rows * columns]];
+    int[] fill = new int[rows * columns];
+    for (int i = 0; i < zoneCount; ++i) {
+      int firstRow = rowOf(minLatitudes[i]);
+      int lastRow = rowOf(maxLatitudes[i]);
+      int firstColumn = columnOf(minLongitudes[i]);
+      int lastColumn = columnOf(maxLongitudes[i]);
+      for (int row = firstRow; row <= lastRow; ++row) {
+        for (int column = firstColumn; column <= lastColumn; ++column) {
+          int cell = row * columns + column;
+          cellZones[cellStart[cell] + fill[cell]++] = i;
+        }
+      }
+    }
+  }
+
+  /** Returns the number of zones in the index. */
+  public int getZoneCount() {
+    return zones.length;
+  }
+
+  /** Returns the zone at the given index. */
+  public Geofence getZone(int zone) {
+    return zones[zone];
+  }
+
+  /** Returns the index of the zone with the given id, or {@link #NO_ZONE}. */
+  public int indexOf(String id) {
+    for (int i = 0; i < zones.length; ++i) {
+      if (zones[i].getId().equals(id)) {
+        return i;
+      }
+    }
+    return NO_ZONE;
+  }
+
+  /**
+   * Returns the highest-priority (lowest index) zone containing the point, or {@link #NO_ZONE}.
+   */
+  public int findFirst(double latitude, double longitude) {
+    int cell = cellOf(latitude, longitude);
+    if (cell < 0) {
+      return NO_ZONE;
+    }
+    for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+      int zone = cellZones[i];
+      if (contains(zone, latitude, longitude)) {
+        return zone;
+      }
+    }
+    return NO_ZONE;
+  }
+
+  /**
+   * Writes the indices of all zones containing the point to {@code result} in ascending order.
+   *
+   * @return the number of containing zones, which may exceed {@code result.length}; only the first
+   *     {@code result.length} are written
+   */
+  public int findAll(double latitude, double longitude, int[] result) {
+    int cell = cellOf(latitude, longitude);
+    if (cell < 0) {
+      return 0;
+    }
+    int count = 0;
+    for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+      int zone = cellZones[i];
+      if (contains(zone, latitude, longitude)) {
+        if (count < result.length) {
+          result[count] = zone;
+        }
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  /** Returns whether the given zone contains the point, boundary included. */
+  public boolean contains(int zone, double latitude, double longitude) {
+    if (latitude < minLatitudes[zone]
+        || latitude > maxLatitudes[zone]
+        || longitude < minLongitudes[zone]
+        || longitude > maxLongitudes[zone]) {
+      return false;
+    }
+    // Even-odd rule on a ray towards increasing longitude, after checking whether the point lies
+    // on an edge, which the crossing count alone would classify inconsistently.
+    int start = vertexStart[zone];
+    int end = vertexStart[zone + 1];
+    boolean inside = false;
+    for (int i = start, j = end - 1; i < end; j = i++) {
+      double latI = vertexLatitudes[i];
+      double lngI = vertexLongitudes[i];
+      double latJ = vertexLatitudes[j];
+      double lngJ = vertexLongitudes[j];
+      double cross = (lngJ - lngI) * (latitude - latI) - (latJ - latI) * (longitude - lngI);
+      if (cross == 0
+          && longitude >= Math.min(lngI, lngJ)
+          && longitude <= Math.max(lngI, lngJ)
+          && latitude >= Math.min(latI, latJ)
+          && latitude <= Math.max(latI, latJ)) {
+        return true;
+      }
+      if ((latI > latitude) != (latJ > latitude)) {
+        double crossingLongitude = lngI + (lngJ - lngI) * (latitude - latI) / (latJ - latI);
+        if (longitude < crossingLongitude) {
+          inside = !inside;
+        }
+      }
+    }
+    return inside;
+  }
+
+  /**
+   * Returns the distance in meters from the point to the nearest edge of the given zone, whether
+   * the point is inside or outside it. Uses a local flat-Earth approximation, which is accurate for
+   * zones up to a few kilometers across.
+   */
+  public double distanceToBoundaryMeters(int zone, double latitude, double longitude) {
+    double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    int start = vertexStart[zone];
+    int end = vertexStart[zone + 1];
+    double minDistanceSquared = Double.POSITIVE_INFINITY;
+    for (int i = start, j = end - 1; i < end; j = i++) {
+      // Edge endpoints in meters relative to the point.
+      double ax = (vertexLongitudes[j] - longitude) * metersPerDegreeLongitude;
+      double ay = (vertexLatitudes[j] - latitude) * METERS_PER_DEGREE;
+      double bx = (vertexLongitudes[i] - longitude) * metersPerDegreeLongitude;
+      double by = (vertexLatitudes[i] - latitude) * METERS_PER_DEGREE;
+      double dx = bx - ax;
+      double dy = by - ay;
+      double lengthSquared = dx * dx + dy * dy;
+      double t = lengthSquared > 0 ? -(ax * dx + ay * dy) / lengthSquared : 0;
+      t = Math.max(0, Math.min(1, t));
+      double x = ax + t * dx;
+      double y = ay + t * dy;
+      minDistanceSquared = Math.min(minDistanceSquared, x * x + y * y);
+    }
+    return Math.sqrt(minDistanceSquared);
+  }
+
+  /**
+   * Writes the indices of zones whose bounding box comes within {@code radiusMeters} of the point
+   * to {@code result}, in no particular order. Zones containing the point are included.
+   *
+   * @return the number of nearby zones, which may exceed {@code result.length}; only the first
+   *     {@code result.length} are written
+   */
+  public int findNearby(double latitude, double longitude, double radiusMeters, int[] result) {
+    double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    double radiusLatitude = radiusMeters / METERS_PER_DEGREE;
+    double radiusLongitude = radiusMeters / metersPerDegreeLongitude;
+    double south = Math.max(latitude - radiusLatitude, gridMinLatitude);
+    double north = Math.min(latitude + radiusLatitude, gridMaxLatitude);
+    double west = Math.max(longitude - radiusLongitude, gridMinLongitude);
+    double east = Math.min(longitude + radiusLongitude, gridMaxLongitude);
+    // Also rejects NaN.
+    if (!(south <= north && west <= east)) {
+      return 0;
+    }
+    int firstRow = rowOf(south);
+    int lastRow = rowOf(north);
+    int firstColumn = columnOf(west);
+    int lastColumn = columnOf(east);
+    double radiusSquared = radiusMeters * radiusMeters;
+    int count = 0;
+    for (int row = firstRow; row <= lastRow; ++row) {
+      for (int column = firstColumn; column <= lastColumn; ++column) {
+        int cell = row * columns + column;
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; ++i) {
+          int zone = cellZones[i];
+          // A zone spanning several of the searched cells is only considered in the first of them.
+          if (row != Math.max(firstRow, rowOf(minLatitudes[zone]))
+              || column != Math.max(firstColumn, columnOf(minLongitudes[zone]))) {
+            continue;
+          }
+          // Distance from the point to the bounding box, zero along an axis the box spans.
+          double latitudeGap =
+              Math.max(minLatitudes[zone] - latitude, latitude - maxLatitudes[zone]);
+          double longitudeGap =
+              Math.max(minLongitudes[zone] - longitude, longitude - maxLongitudes[zone]);
+          double dy = Math.max(latitudeGap, 0) * METERS_PER_DEGREE;
+          double dx = Math.max(longitudeGap, 0) * metersPerDegreeLongitude;
+          if (dx * dx + dy * dy <= radiusSquared) {
+            if (count < result.length) {
+              result[count] = zone;
+            }
+            ++count;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /** Returns the grid cell containing the point, or -1 if it lies outside every zone's bounds. */
+  private int cellOf(double latitude, double longitude) {
+    // Also rejects NaN.
+    if (!(latitude >= gridMinLatitude
+        && latitude <= gridMaxLatitude
+        && longitude >= gridMinLongitude
+        && longitude <= gridMaxLongitude)) {
+      return -1;
+    }
+    return rowOf(latitude) * columns + columnOf(longitude);
+  }
+
+  private int rowOf(double latitude) {
+    return Math.min((int) ((latitude - gridMinLatitude) * rowsPerDegree), rows - 1);
+  }
+
+  private int columnOf(double longitude) {
+    return Math.min((int) ((longitude - gridMinLongitude) * columnsPerDegree), columns - 1);
+  }
+}
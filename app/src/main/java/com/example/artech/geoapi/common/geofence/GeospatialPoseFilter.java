@@ -0,0 +1,299 @@
+package com.example.artech.geoapi.common.geofence;
+
+/**
+ * Smooths a stream of geospatial camera poses, weighting each fix by its reported accuracy, and
+ * dead-reckons through gaps.
+ *
+ * <p>Horizontal position is tracked by a constant-velocity Kalman filter in a local east/north
+ * frame in meters, which weights each fix by the inverse square of its horizontal accuracy against
+ * the uncertainty of the current estimate. The velocity it learns lets {@link #predict} carry the
+ * estimate on for up to {@link #setMaxPredictionMillis} when no usable fix arrives, for example
+ * while Earth tracking is lost. Altitude and heading use simpler random-walk filters weighted by
+ * their own accuracies; heading wraps at 360 degrees.
+ *
+ * <p>Every estimate comes with accuracies in the same units ARCore reports, and with a {@link
+ * #getConfidence} between 0 and 1 derived from the horizontal accuracy.
+ *
+ * <p>This class is not thread-safe and does not allocate.
+ */
+public final class GeospatialPoseFilter {
+  // Mean length of a degree of latitude, and of longitude at the equator.
+  private static final double METERS_PER_DEGREE = 111_320;
+  // The local frame is moved once the estimate strays this far from its origin, to keep the
+  // flat-Earth approximation accurate.
+  private static final double MAX_ORIGIN_DISTANCE_METERS = 1000;
+  // Velocity variance of the first fix, (m/s)^2: walking pace in any direction.
+  private static final double INITIAL_VELOCITY_VARIANCE = 4;
+
+  private double accelerationNoise = 1.0;
+  private double altitudeNoise = 0.5;
+  private double headingNoise = 45;
+  private long maxPredictionMillis = 2000;
+  private double lowConfidenceAccuracyMeters = 20;
+
+  private boolean hasEstimate;
+  private long estimateMillis;
+  private long lastFixMillis;
+
+  private double originLatitude;
+  private double originLongitude;
+  private double metersPerDegreeLongitude;
+  private double east;
+  private double north;
+  private double eastVelocity;
+  private double northVelocity;
+  // Covariance of [position, velocity], shared by both axes since their fixes are equally
+  // accurate.
+  private double positionVariance;
+  private double positionVelocityCovariance;
+  private double velocityVariance;
+
+  private double altitude;
+  private double altitudeVariance;
+  private double heading;
+  private double headingVariance;
+
+  /**
+   * Sets how much the horizontal velocity is expected to change, as the standard deviation of the
+   * acceleration in m/s^2. Higher values follow turns and stops faster but smooth less. 1 m/s^2 by
+   * default.
+   */
+  public void setAccelerationNoise(double metersPerSecondSquared) {
+    this.accelerationNoise = metersPerSecondSquared;
+  }
+
+  /** Sets how fast the altitude is expected to drift, in m/s. 0.5 m/s by default. */
+  public void setAltitudeNoise(double metersPerSecond) {
+    this.altitudeNoise = metersPerSecond;
+  }
+
+  /** Sets how fast the heading is expected to change, in degrees/s. 45 degrees/s by default. */
+  public void setHeadingNoise(double degreesPerSecond) {
+    this.headingNoise = degreesPerSecond;
+  }
+
+  /** Sets how long after the last fix the position is still extrapolated. 2 s by default. */
+  public void setMaxPredictionMillis(long maxPredictionMillis) {
+    this.maxPredictionMillis = maxPredictionMillis;
+  }
+
+  /** Sets the horizontal accuracy at which the confidence reaches 0. 20 m by default. */
+  public void setLowConfidenceAccuracyMeters(double accuracyMeters) {
+    this.lowConfidenceAccuracyMeters = accuracyMeters;
+  }
+
+  /**
+   * Feeds a camera pose. Timestamps must not decrease. A fix with a non-positive or NaN horizontal
+   * accuracy is treated as missing.
+   *
+   * @param horizontalAccuracyMeters the radius of the fix's 68% confidence circle
+   */
+  public void update(
+      double latitude,
+      double longitude,
+      double altitude,
+      double heading,
+      double horizontalAccuracyMeters,
+      double verticalAccuracyMeters,
+      double headingAccuracyDegrees,
+      long timeMillis) {
+    if (!(horizontalAccuracyMeters > 0)) {
+      predict(timeMillis);
+      return;
+    }
+    if (!hasEstimate) {
+      initialize(
+          latitude,
+          longitude,
+          altitude,
+          heading,
+          horizontalAccuracyMeters,
+          verticalAccuracyMeters,
+          headingAccuracyDegrees,
+          timeMillis);
+      return;
+    }
+    advance(timeMillis);
+    lastFixMillis = timeMillis;
+
+    double positionNoise = horizontalAccuracyMeters * horizontalAccuracyMeters;
+    double innovationVariance = positionVariance + positionNoise;
+    double positionGain = positionVariance / innovationVariance;
+    double velocityGain = positionVelocityCovariance / innovationVariance;
+    double eastInnovation = (longitude - originLongitude) * metersPerDegreeLongitude - east;
+    double northInnovation = (latitude - originLatitude) * METERS_PER_DEGREE - north;
+    east += positionGain * eastInnovation;
+    north += positionGain * northInnovation;
+    eastVelocity += velocityGain * eastInnovation;
+    northVelocity += velocityGain * northInnovation;
+    velocityVariance -= velocityGain * positionVelocityCovariance;
+    positionVelocityCovariance *= 1 - positionGain;
+    positionVariance *= 1 - positionGain;
+
+    if (verticalAccuracyMeters > 0) {
+      double gain =
+          altitudeVariance
+              / (altitudeVariance + verticalAccuracyMeters * verticalAccuracyMeters);
+      this.altitude += gain * (altitude - this.altitude);
+      altitudeVariance *= 1 - gain;
+    }
+    if (headingAccuracyDegrees > 0) {
+      double gain =
+          headingVariance / (headingVariance + headingAccuracyDegrees * headingAccuracyDegrees);
+      this.heading = wrapDegrees(this.heading + gain * angleDifference(heading, this.heading));
+      headingVariance *= 1 - gain;
+    }
+    recenterIfNeeded();
+  }
+
+  /**
+   * Advances the estimate to {@code timeMillis} without a fix. The position keeps moving with the
+   * last known velocity for up to {@link #setMaxPredictionMillis} after the last fix, and the
+   * accuracies grow with the elapsed time.
+   */
+  public void predict(long timeMillis) {
+    if (hasEstimate) {
+      advance(timeMillis);
+      recenterIfNeeded();
+    }
+  }
+
+  /** Forgets the estimate, for example after a tracking reset. */
+  public void reset() {
+    hasEstimate = false;
+  }
+
+  /** Returns whether a fix has been received since construction or the last {@link #reset}. */
+  public boolean hasEstimate() {
+    return hasEstimate;
+  }
+
+  public double getLatitude() {
+    return originLatitude + north / METERS_PER_DEGREE;
+  }
+
+  public double getLongitude() {
+    return originLongitude + east / metersPerDegreeLongitude;
+  }
+
+  public double getAltitude() {
+    return altitude;
+  }
+
+  /** Returns the heading in degrees clockwise from north, in [0, 360). */
+  public double getHeading() {
+    return heading;
+  }
+
+  /** Returns the radius of the estimate's 68% confidence circle, in meters. */
+  public double getHorizontalAccuracy() {
+    return Math.sqrt(positionVariance);
+  }
+
+  public double getVerticalAccuracy() {
+    return Math.sqrt(altitudeVariance);
+  }
+
+  public double getHeadingAccuracy() {
+    return Math.sqrt(headingVariance);
+  }
+
+  /** Returns the estimated ground speed in m/s. */
+  public double getSpeed() {
+    return Math.hypot(eastVelocity, northVelocity);
+  }
+
+  /**
+   * Returns 1 for a perfectly accurate estimate, falling linearly to 0 as the horizontal accuracy
+   * approaches {@link #setLowConfidenceAccuracyMeters}. Returns 0 without an estimate.
+   */
+  public double getConfidence() {
+    if (!hasEstimate) {
+      return 0;
+    }
+    return Math.max(0, 1 - getHorizontalAccuracy() / lowConfidenceAccuracyMeters);
+  }
+
+  private void initialize(
+      double latitude,
+      double longitude,
+      double altitude,
+      double heading,
+      double horizontalAccuracyMeters,
+      double verticalAccuracyMeters,
+      double headingAccuracyDegrees,
+      long timeMillis) {
+    hasEstimate = true;
+    estimateMillis = timeMillis;
+    lastFixMillis = timeMillis;
+    setOrigin(latitude, longitude);
+    east = 0;
+    north = 0;
+    eastVelocity = 0;
+    northVelocity = 0;
+    positionVariance = horizontalAccuracyMeters * horizontalAccuracyMeters;
+    positionVelocityCovariance = 0;
+    velocityVariance = INITIAL_VELOCITY_VARIANCE;
+    this.altitude = altitude;
+    altitudeVariance = verticalAccuracyMeters * verticalAccuracyMeters;
+    this.heading = wrapDegrees(heading);
+    headingVariance = headingAccuracyDegrees * headingAccuracyDegrees;
+  }
+
+  /** Moves the estimate forward in time, growing its variances. */
+  private void advance(long timeMillis) {
+    if (timeMillis <= estimateMillis) {
+      return;
+    }
+    double dt = (timeMillis - estimateMillis) / 1000.0;
+    // Dead reckoning stops maxPredictionMillis after the last fix, but the uncertainty keeps
+    // growing.
+    long moveUntilMillis = Math.min(timeMillis, lastFixMillis + maxPredictionMillis);
+    double moveDt = Math.max(0, (moveUntilMillis - estimateMillis) / 1000.0);
+    east += eastVelocity * moveDt;
+    north += northVelocity * moveDt;
+
+    // P = F P F' + Q, for F = [1 dt; 0 1] and white acceleration noise.
+    double q = accelerationNoise * accelerationNoise;
+    double dt2 = dt * dt;
+    positionVariance +=
+        2 * dt * positionVelocityCovariance + dt2 * velocityVariance + q * dt2 * dt2 / 4;
+    positionVelocityCovariance += dt * velocityVariance + q * dt2 * dt / 2;
+    velocityVariance += q * dt2;
+
+    altitudeVariance += altitudeNoise * altitudeNoise * dt;
+    headingVariance += headingNoise * headingNoise * dt;
+    estimateMillis = timeMillis;
+  }
+
+  private void recenterIfNeeded() {
+    if (Math.abs(east) > MAX_ORIGIN_DISTANCE_METERS
+        || Math.abs(north) > MAX_ORIGIN_DISTANCE_METERS) {
+      setOrigin(getLatitude(), getLongitude());
+      east = 0;
+      north = 0;
+    }
+  }
+
+  private void setOrigin(double latitude, double longitude) {
+    originLatitude = latitude;
+    originLongitude = longitude;
+    metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+  }
+
+  /** Returns {@code to - from} in (-180, 180]. */
+  static double angleDifference(double to, double from) {
+    double difference = wrapDegrees(to - from);
+    return difference > 180 ? difference - 360 : difference;
+  }
+
+  /** Returns the angle in [0, 360). */
+  static double wrapDegrees(double degrees) {
+    double wrapped = degrees % 360;
+    if (wrapped < 0) {
+      wrapped += 360;
+    }
+    // Adding 360 to a tiny negative angle rounds to 360.
+    return wrapped < 360 ? wrapped : 0;
+  }
+}
@@ -0,0 +1,59 @@
+package com.example.artech.geoapi.common.geofence;
+
+/**
+ * Decides when a pose has changed enough to be worth redrawing, so consumers of a smoothed pose can
+ * skip the work when it only creeps by centimeters.
+ *
+ * <p>This class is not thread-safe and does not allocate.
+ */
+public final class PoseChangeThreshold {
+  // Mean length of a degree of latitude, and of longitude at the equator.
+  private static final double METERS_PER_DEGREE = 111_320;
+
+  private final double distanceMeters;
+  private final double headingDegrees;
+
+  private boolean hasReference;
+  private double referenceLatitude;
+  private double referenceLongitude;
+  private double referenceHeading;
+
+  /**
+   * @param distanceMeters how far the position must move
+   * @param headingDegrees how far the heading must turn, in either direction
+   */
+  public PoseChangeThreshold(double distanceMeters, double headingDegrees) {
+    this.distanceMeters = distanceMeters;
+    this.headingDegrees = headingDegrees;
+  }
+
+  /**
+   * Returns whether the pose differs from the last accepted one by at least either threshold, and
+   * if so accepts it as the new reference. The first pose is always accepted.
+   */
+  public boolean accept(double latitude, double longitude, double heading) {
+    if (hasReference) {
+      double metersPerDegreeLongitude =
+          METERS_PER_DEGREE * Math.cos(Math.toRadians(referenceLatitude));
+      double dx = (longitude - referenceLongitude) * metersPerDegreeLongitude;
+      double dy = (latitude - referenceLatitude) * METERS_PER_DEGREE;
+      boolean moved = dx * dx + dy * dy >= distanceMeters * distanceMeters;
+      boolean turned =
+          Math.abs(GeospatialPoseFilter.angleDifference(heading, referenceHeading))
+              >= headingDegrees;
+      if (!moved && !turned) {
+        return false;
+      }
+    }
+    hasReference = true;
+    referenceLatitude = latitude;
+    referenceLongitude = longitude;
+    referenceHeading = heading;
+    return true;
+  }
+
+  /** Forgets the reference, so the next pose is accepted. */
+  public void reset() {
+    hasReference = false;
+  }
+}
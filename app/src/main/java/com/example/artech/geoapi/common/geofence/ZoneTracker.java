@@ -0,0 +1,198 @@
+package com.example.artech.geoapi.common.geofence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns a stream of position fixes into discrete zone transitions.
+ *
+ * <p>Testing each raw fix against the zones makes the result flicker whenever the position error is
+ * comparable to the distance to a boundary. The tracker instead applies two kinds of hysteresis:
+ *
+ * <ul>
+ *   <li>Spatial: a zone is only entered once the fix is inside it by a margin that grows with the
+ *       fix's horizontal accuracy, and only left once the fix is outside it by the same margin.
+ *       Fixes less accurate than {@link #setMaxAccuracyMeters} are ignored.
+ *   <li>Temporal: a transition is only made once the fixes have agreed on it for {@link
+ *       #setConfirmMillis}.
+ * </ul>
+ *
+ * <p>Listeners see {@link Event#ENTER} and {@link Event#EXIT} on transitions, and a single {@link
+ * Event#DWELL} once the current zone has been held for {@link #setDwellMillis}. A change between
+ * overlapping zones is reported as the EXIT of one followed by the ENTER of the other. Listeners
+ * run on the thread calling {@link #update}.
+ *
+ * <p>This class is not thread-safe and does not allocate in {@link #update}.
+ */
+public final class ZoneTracker {
+  /** A zone transition. */
+  public enum Event {
+    ENTER,
+    DWELL,
+    EXIT
+  }
+
+  /** Receives zone transitions. */
+  public interface Listener {
+    /**
+     * @param zone the index of the zone in the tracker's {@link GeofenceIndex}
+     * @param timeMillis the timestamp of the fix that triggered the event
+     */
+    void onZoneEvent(Event event, int zone, long timeMillis);
+  }
+
+  private static final int MAX_OVERLAPPING_ZONES = 16;
+
+  private final GeofenceIndex index;
+  private final List<Listener> listeners = new ArrayList<>();
+  private final int[] containingZones = new int[MAX_OVERLAPPING_ZONES];
+
+  private double marginScale = 1.0;
+  private double minMarginMeters = 1.0;
+  private double maxAccuracyMeters = 20.0;
+  private long confirmMillis = 1000;
+  private long dwellMillis = 10_000;
+
+  private int currentZone = GeofenceIndex.NO_ZONE;
+  private long enteredMillis;
+  private boolean dwellReported;
+  private int pendingZone = GeofenceIndex.NO_ZONE;
+  private long pendingSinceMillis;
+  private boolean hasPending;
+
+  public ZoneTracker(GeofenceIndex index) {
+    this.index = index;
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Sets the boundary margin as a multiple of the fix's horizontal accuracy, 1.0 by default. The
+   * margin never drops below {@link #setMinMarginMeters}.
+   */
+  public void setMarginScale(double marginScale) {
+    this.marginScale = marginScale;
+  }
+
+  /** Sets the smallest boundary margin, used for very accurate fixes. 1 m by default. */
+  public void setMinMarginMeters(double minMarginMeters) {
+    this.minMarginMeters = minMarginMeters;
+  }
+
+  /** Sets the accuracy beyond which fixes are ignored. 20 m by default. */
+  public void setMaxAccuracyMeters(double maxAccuracyMeters) {
+    this.maxAccuracyMeters = maxAccuracyMeters;
+  }
+
+  /** Sets how long fixes must agree before a transition is made. 1 s by default. */
+  public void setConfirmMillis(long confirmMillis) {
+    this.confirmMillis = confirmMillis;
+  }
+
+  /** Sets how long a zone must be held before {@link Event#DWELL} is reported. 10 s by default. */
+  public void setDwellMillis(long dwellMillis) {
+    this.dwellMillis = dwellMillis;
+  }
+
+  /** Returns the zone the tracker considers current, or {@link GeofenceIndex#NO_ZONE}. */
+  public int getCurrentZone() {
+    return currentZone;
+  }
+
+  /**
+   * Feeds a position fix. Timestamps must not decrease.
+   *
+   * @param horizontalAccuracyMeters the radius of the fix's 68% confidence circle
+   */
+  public void update(
+      double latitude, double longitude, double horizontalAccuracyMeters, long timeMillis) {
+    if (!(horizontalAccuracyMeters <= maxAccuracyMeters)) {
+      // Also ignores NaN. Too noisy to confirm or rule out a transition, but time spent in the
+      // current zone still counts towards dwelling.
+      maybeReportDwell(timeMillis);
+      return;
+    }
+    double margin = Math.max(minMarginMeters, horizontalAccuracyMeters * marginScale);
+    int target = findTarget(latitude, longitude, margin);
+
+    if (target == currentZone) {
+      hasPending = false;
+    } else {
+      if (!hasPending || pendingZone != target) {
+        hasPending = true;
+        pendingZone = target;
+        pendingSinceMillis = timeMillis;
+      }
+      if (timeMillis - pendingSinceMillis >= confirmMillis) {
+        transitionTo(target, timeMillis);
+      }
+    }
+    maybeReportDwell(timeMillis);
+  }
+
+  /** Forgets the current zone without reporting an exit, for example after a tracking reset. */
+  public void reset() {
+    currentZone = GeofenceIndex.NO_ZONE;
+    hasPending = false;
+  }
+
+  /** Returns the zone the fix supports moving to, which may be the current one. */
+  private int findTarget(double latitude, double longitude, double margin) {
+    // Prefer, in priority order, a zone the fix is clearly inside.
+    int count =
+        Math.min(index.findAll(latitude, longitude, containingZones), MAX_OVERLAPPING_ZONES);
+    boolean insideCurrent = false;
+    for (int i = 0; i < count; ++i) {
+      int zone = containingZones[i];
+      if (zone == currentZone) {
+        insideCurrent = true;
+      }
+      if (index.distanceToBoundaryMeters(zone, latitude, longitude) >= margin) {
+        return zone;
+      }
+    }
+    // Otherwise stay unless the fix is clearly outside the current zone.
+    if (currentZone != GeofenceIndex.NO_ZONE
+        && (insideCurrent
+            || index.distanceToBoundaryMeters(currentZone, latitude, longitude) < margin)) {
+      return currentZone;
+    }
+    return GeofenceIndex.NO_ZONE;
+  }
+
+  private void transitionTo(int zone, long timeMillis) {
+    int previousZone = currentZone;
+    currentZone = zone;
+    enteredMillis = timeMillis;
+    dwellReported = false;
+    hasPending = false;
+    if (previousZone != GeofenceIndex.NO_ZONE) {
+      dispatch(Event.EXIT, previousZone, timeMillis);
+    }
+    if (zone != GeofenceIndex.NO_ZONE) {
+      dispatch(Event.ENTER, zone, timeMillis);
+    }
+  }
+
+  private void maybeReportDwell(long timeMillis) {
+    if (currentZone != GeofenceIndex.NO_ZONE
+        && !dwellReported
+        && timeMillis - enteredMillis >= dwellMillis) {
+      dwellReported = true;
+      dispatch(Event.DWELL, currentZone, timeMillis);
+    }
+  }
+
+  private void dispatch(Event event, int zone, long timeMillis) {
+    // Indexed loop so dispatching does not allocate an iterator.
+    for (int i = 0; i < listeners.size(); ++i) {
+      listeners.get(i).onZoneEvent(event, zone, timeMillis);
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.example.artech.geoapi.common.helpers;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands the latest value from one producer thread to one consumer thread, for example pose
+ * snapshots from the GL thread to the UI thread.
+ *
+ * <p>The channel holds three preallocated values (triple buffering): the producer fills one, the
+ * consumer reads another, and the third holds the latest published value. Publishing and polling
+ * swap indices with a single atomic exchange, so neither side blocks or allocates. A value that is
+ * published before the previous one was read replaces it; the replaced value is counted as
+ * coalesced.
+ *
+ * <p>Reads can be rate-limited with a minimum interval, so a consumer polling every display frame
+ * only takes a value, say, ten times a second. Values arriving in between are coalesced.
+ *
+ * <p>{@link #beginWrite} and {@link #publish} must only be called from the producer thread, and
+ * {@link #poll} only from the consumer thread. The counters may be read from any thread.
+ */
+public final class LatestValueChannel<T> {
+  /** Creates the preallocated values. */
+  public interface Factory<T> {
+    T create();
+  }
+
+  private static final int INDEX_MASK = 0x3;
+  private static final int FRESH = 0x4;
+
+  private final Object[] slots = new Object[3];
+  // Index of the slot holding the latest published value, plus FRESH if it has not been read.
+  private final AtomicInteger latest = new AtomicInteger(2);
+  private final long minReadIntervalNanos;
+
+  // Owned by the producer.
+  private int writeIndex = 0;
+  // Owned by the consumer.
+  private int readIndex = 1;
+  private long lastReadNanos;
+  private boolean hasRead;
+
+  // Each counter is only incremented by one thread, so volatile is enough.
+  private volatile long publishedCount;
+  private volatile long coalescedCount;
+  private volatile long readCount;
+  private volatile long rateLimitedCount;
+
+  /** Constructs a channel whose reads are not rate-limited. */
+  public LatestValueChannel(Factory<T> factory) {
+    this(factory, /*minReadIntervalNanos=*/ 0);
+  }
+
+  /**
+   * Constructs a channel.
+   *
+   * @param minReadIntervalNanos the minimum time between two successful {@link #poll}s
+   */
+  public LatestValueChannel(Factory<T> factory, long minReadIntervalNanos) {
+    for (int i = 0; i < slots.length; ++i) {
+      slots[i] = factory.create();
+    }
+    this.minReadIntervalNanos = minReadIntervalNanos;
+  }
+
+  /**
+   * Returns the value to fill in before calling {@link #publish}. It may hold stale data from an
+   * earlier write, so every field should be overwritten. Producer thread only.
+   */
+  @SuppressWarnings("unchecked")
+  public T beginWrite() {
+    return (T) slots[writeIndex];
+  }
+
+  /** Makes the value returned by {@link #beginWrite} the latest one. Producer thread only. */
+  public void publish() {
+    int previous = latest.getAndSet(writeIndex | FRESH);
+    writeIndex = previous & INDEX_MASK;
+    publishedCount++;
+    if ((previous & FRESH) != 0) {
+      coalescedCount++;
+    }
+  }
+
+  /**
+   * Returns the latest value if one was published since the last poll and the minimum read
+   * interval has elapsed, otherwise null. The value stays valid until the next successful poll.
+   * Consumer thread only.
+   *
+   * @param nowNanos the current time, e.g. from {@link System#nanoTime}
+   */
+  @SuppressWarnings("unchecked")
+  public T poll(long nowNanos) {
+    if ((latest.get() & FRESH) == 0) {
+      return null;
+    }
+    if (hasRead && nowNanos - lastReadNanos < minReadIntervalNanos) {
+      rateLimitedCount++;
+      return null;
+    }
+    int previous = latest.getAndSet(readIndex);
+    readIndex = previous & INDEX_MASK;
+    hasRead = true;
+    lastReadNanos = nowNanos;
+    readCount++;
+    return (T) slots[readIndex];
+  }
+
+  /** Returns the number of values published. */
+  public long getPublishedCount() {
+    return publishedCount;
+  }
+
+  /** Returns the number of values replaced by a newer one before they were read. */
+  public long getCoalescedCount() {
+    return coalescedCount;
+  }
+
+  /** Returns the number of values read. */
+  public long getReadCount() {
+    return readCount;
+  }
+
+  /** Returns the number of polls that found a new value but were refused by the rate limit. */
+  public long getRateLimitedCount() {
+    return rateLimitedCount;
+  }
+}
@@ -0,0 +1,200 @@
+package com.example.artech.geoapi.common.helpers;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes zone images once, at the size they are displayed, and keeps them in a size-bounded LRU
+ * cache keyed by zone.
+ *
+ * <p>Images are decoded on a background thread with {@link BitmapFactory.Options#inSampleSize}, so
+ * a large photo only costs the memory of its on-screen size. {@link #request} delivers cached
+ * images immediately and otherwise once decoded; {@link #preload} decodes images of zones the user
+ * is likely to enter next so they are ready by then.
+ *
+ * <p>All methods except the counters must be called on the main thread, where callbacks are also
+ * delivered.
+ */
+public final class ZoneImageCache implements Closeable {
+  private static final String TAG = ZoneImageCache.class.getSimpleName();
+
+  /** Receives a decoded zone image on the main thread. */
+  public interface Callback {
+    void onImageReady(int zone, Bitmap bitmap);
+  }
+
+  private final Resources resources;
+  private final int[] zoneDrawables;
+  private final int targetWidth;
+  private final int targetHeight;
+  private final LruCache<Integer, Bitmap> cache;
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "ZoneImageCache"));
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  // Callbacks waiting for a decode in flight, by zone. A null list marks a preload in flight.
+  private final SparseArray<List<Callback>> pending = new SparseArray<>();
+
+  private final AtomicInteger hitCount = new AtomicInteger();
+  private final AtomicInteger missCount = new AtomicInteger();
+  private volatile boolean closed = false;
+
+  /**
+   * @param zoneDrawables the drawable resource of each zone, or 0 for zones without an image
+   * @param targetWidth the width images are displayed at, in pixels
+   * @param targetHeight the height images are displayed at, in pixels
+   * @param maxBytes the total size of decoded images to keep
+   */
+  public ZoneImageCache(
+      Resources resources, int[] zoneDrawables, int targetWidth, int targetHeight, int maxBytes) {
+    this.resources = resources;
+    this.zoneDrawables = zoneDrawables.clone();
+    this.targetWidth = Math.max(1, targetWidth);
+    this.targetHeight = Math.max(1, targetHeight);
+    this.cache =
+        new LruCache<Integer, Bitmap>(maxBytes) {
+          @Override
+          protected int sizeOf(Integer zone, Bitmap bitmap) {
+            return bitmap.getByteCount();
+          }
+        };
+  }
+
+  /** Returns whether the zone has an image. */
+  public boolean hasImage(int zone) {
+    return zone >= 0 && zone < zoneDrawables.length && zoneDrawables[zone] != 0;
+  }
+
+  /**
+   * Delivers the zone's image to {@code callback}, right away if it is cached. Nothing is delivered
+   * for zones without an image, or if decoding fails; a later request decodes the image again.
+   */
+  public void request(int zone, Callback callback) {
+    if (closed || !hasImage(zone)) {
+      return;
+    }
+    Bitmap bitmap = cache.get(zone);
+    if (bitmap != null) {
+      hitCount.incrementAndGet();
+      callback.onImageReady(zone, bitmap);
+      return;
+    }
+    missCount.incrementAndGet();
+    List<Callback> callbacks = pending.get(zone);
+    if (callbacks == null) {
+      callbacks = new ArrayList<>();
+      if (pending.indexOfKey(zone) < 0) {
+        decode(zone);
+      }
+      pending.put(zone, callbacks);
+    }
+    callbacks.add(callback);
+  }
+
+  /** Decodes the images of the given zones in the background if they are not cached yet. */
+  public void preload(int[] zones, int count) {
+    if (closed) {
+      return;
+    }
+    for (int i = 0; i < count; ++i) {
+      int zone = zones[i];
+      if (hasImage(zone) && cache.get(zone) == null && pending.indexOfKey(zone) < 0) {
+        pending.put(zone, null);
+        decode(zone);
+      }
+    }
+  }
+
+  /** Returns the number of requests served from the cache. */
+  public int getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of requests that had to wait for a decode. */
+  public int getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the number of images evicted to stay within the size limit. */
+  public int getEvictionCount() {
+    return cache.evictionCount();
+  }
+
+  /** Stops decoding and drops every cached image. */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+    pending.clear();
+    cache.evictAll();
+  }
+
+  private void decode(int zone) {
+    int drawable = zoneDrawables[zone];
+    executor.execute(
+        () -> {
+          Bitmap bitmap = null;
+          try {
+            bitmap = decodeSampled(drawable);
+          } catch (RuntimeException e) {
+            Log.w(TAG, "Failed to decode image of zone " + zone, e);
+          } finally {
+            // Always reported, so the zone stops being pending and a later request tries again.
+            Bitmap decoded = bitmap;
+            mainHandler.post(() -> onDecoded(zone, decoded));
+          }
+        });
+  }
+
+  private void onDecoded(int zone, Bitmap bitmap) {
+    if (closed) {
+      return;
+    }
+    List<Callback> callbacks = pending.get(zone);
+    pending.remove(zone);
+    if (bitmap == null) {
+      return;
+    }
+    cache.put(zone, bitmap);
+    if (callbacks != null) {
+      for (Callback callback : callbacks) {
+        callback.onImageReady(zone, bitmap);
+      }
+    }
+  }
+
+  private Bitmap decodeSampled(int drawable) {
+    BitmapFactory.Options options = new BitmapFactory.Options();
+    // Work in the image's own pixels rather than scaling it for the resource's density bucket.
+    options.inScaled = false;
+    options.inJustDecodeBounds = true;
+    BitmapFactory.decodeResource(resources, drawable, options);
+    options.inSampleSize = computeSampleSize(options.outWidth, options.outHeight);
+    options.inJustDecodeBounds = false;
+    Bitmap bitmap = BitmapFactory.decodeResource(resources, drawable, options);
+    if (bitmap == null) {
+      Log.w(TAG, "Failed to decode zone image " + resources.getResourceEntryName(drawable));
+    }
+    return bitmap;
+  }
+
+  /** Returns the largest power of two that keeps the image at least as large as the target. */
+  private int computeSampleSize(int width, int height) {
+    int sampleSize = 1;
+    while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+      sampleSize *= 2;
+    }
+    return sampleSize;
+  }
+}
@@ -0,0 +1,91 @@
+package com.example.artech.geoapi.common.poi;
+
+/**
+ * Geohash cells as integers.
+ *
+ * <p>A geohash of {@code bits} bits halves the longitude range on even bits and the latitude range
+ * on odd bits, starting with longitude, so each bit doubles the resolution along one axis and
+ * every cell's hash is a prefix of the hashes of all points inside it. Sorting points by a long
+ * hash therefore keeps every coarser cell in one contiguous run.
+ *
+ * <p>Hashes are right-aligned in a {@code long}. The usual base 32 strings use five bits per
+ * character; see {@link #toString(long, int)}.
+ */
+public final class Geohash {
+  /** The most bits a hash may have, enough for about 2 cm. */
+  public static final int MAX_BITS = 60;
+
+  private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+  /** Returns the hash of the cell of {@code bits} bits containing the point. */
+  public static long encode(double latitude, double longitude, int bits) {
+    checkBits(bits);
+    int latitudeBits = bits / 2;
+    int longitudeBits = bits - latitudeBits;
+    return interleave(
+        row(latitude, latitudeBits), column(longitude, longitudeBits), longitudeBits, latitudeBits);
+  }
+
+  /**
+   * Returns the hash of the cell of {@code bits} bits at the given row, counted northward from the
+   * south pole, and column, counted eastward from the antimeridian.
+   */
+  public static long cell(int row, int column, int bits) {
+    checkBits(bits);
+    int latitudeBits = bits / 2;
+    return interleave(row, column, bits - latitudeBits, latitudeBits);
+  }
+
+  /** Returns the row of the cell containing {@code latitude}, among {@code 2^latitudeBits}. */
+  public static int row(double latitude, int latitudeBits) {
+    return index((latitude + 90) / 180, latitudeBits);
+  }
+
+  /** Returns the column of the cell containing {@code longitude}, among {@code 2^longitudeBits}. */
+  public static int column(double longitude, int longitudeBits) {
+    return index((longitude + 180) / 360, longitudeBits);
+  }
+
+  /** Returns the base 32 form of a hash whose bit count is a multiple of five. */
+  public static String toString(long hash, int bits) {
+    if (bits % 5 != 0) {
+      throw new IllegalArgumentException("Base 32 geohashes have a multiple of five bits");
+    }
+    checkBits(bits);
+    char[] chars = new char[bits / 5];
+    for (int i = 0; i < chars.length; ++i) {
+      chars[i] = BASE32.charAt((int) (hash >>> (bits - 5 * (i + 1))) & 31);
+    }
+    return new String(chars);
+  }
+
+  private static int index(double fraction, int bits) {
+    int count = 1 << bits;
+    int index = (int) Math.floor(fraction * count);
+    // The north pole and the antimeridian belong to the last cell.
+    return Math.max(0, Math.min(count - 1, index));
+  }
+
+  private static long interleave(int row, int column, int longitudeBits, int latitudeBits) {
+    long hash = 0;
+    int latitudeBit = latitudeBits;
+    int longitudeBit = longitudeBits;
+    for (int i = 0; i < longitudeBits + latitudeBits; ++i) {
+      hash <<= 1;
+      if (i % 2 == 0) {
+        hash |= (column >>> --longitudeBit) & 1;
+      } else {
+        hash |= (row >>> --latitudeBit) & 1;
+      }
+    }
+    return hash;
+  }
+
+  private static void checkBits(int bits) {
+    if (bits < 1 || bits > MAX_BITS) {
+      throw new IllegalArgumentException("Geohashes have 1 to " + MAX_BITS + " bits: " + bits);
+    }
+  }
+
+  private Geohash() {}
+}
@@ -0,0 +1,557 @@
+package com.example.artech.geoapi.common.poi;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only database of {@link PointOfInterest}s that answers "which points are within R meters"
+ * without scanning them all.
+ *
+ * <p>Points are stored sorted by a {@link Geohash} of {@link #KEY_BITS} bits, so the points of any
+ * coarser geohash cell form one contiguous run that a binary search finds. A radius query picks the
+ * finest cell size that is still at least as large as the circle, which leaves at most three by
+ * three cells covering it, and then tests only the points in those runs. Coordinates, headings and
+ * string references live in flat arrays; strings are decoded only when a point is fetched with
+ * {@link #get}.
+ *
+ * <p>The file layout is little-endian:
+ *
+ * <pre>
+ *   int32    magic ('APOI')
+ *   int32    version
+ *   int32    point count
+ *   int32    string count
+ *   point[pointCount], sorted by geohash:
+ *     int32    latitude, in 1e-7 degrees
+ *     int32    longitude, in 1e-7 degrees
+ *     float32  altitude (NaN if unknown)
+ *     float32  heading
+ *     int32    id, zone, mesh and texture strings (-1 for none)
+ *   int32    string start offsets[stringCount + 1]
+ *   uint8    UTF-8 string bytes
+ * </pre>
+ *
+ * <p>Zone, mesh and texture strings are shared between the points that use them. Running {@link
+ * #main} converts a plain-text listing on a development machine:
+ *
+ * <pre>
+ *   java PoiStore campus.txt campus.poi
+ * </pre>
+ *
+ * <p>A store is immutable once read, and queries do not allocate, so they may run on any thread,
+ * every frame.
+ */
+public final class PoiStore {
+  /** File extension used for point of interest stores. */
+  public static final String FILE_EXTENSION = ".poi";
+
+  /** Bits of the geohash points are sorted by, about 0.6 meters. */
+  public static final int KEY_BITS = 52;
+
+  /* package-private */ static final int MAGIC = 0x494F5041; // "APOI" read as little-endian.
+  /* package-private */ static final int VERSION = 1;
+  /* package-private */ static final int HEADER_SIZE = 16;
+  /* package-private */ static final int RECORD_SIZE = 32;
+
+  private static final int NO_STRING = -1;
+  private static final double E7 = 1e7;
+  // Mean length of a degree of latitude, and of longitude at the equator.
+  private static final double METERS_PER_DEGREE = 111_320;
+
+  private final int size;
+  private final long[] keys;
+  private final int[] latitudesE7;
+  private final int[] longitudesE7;
+  private final float[] altitudes;
+  private final float[] headings;
+  // Point i's id, zone, mesh and texture strings are strings[4 * i] to strings[4 * i + 3].
+  private final int[] strings;
+  private final int[] stringOffsets;
+  private final byte[] stringBytes;
+
+  private PoiStore(
+      int size,
+      int[] latitudesE7,
+      int[] longitudesE7,
+      float[] altitudes,
+      float[] headings,
+      int[] strings,
+      int[] stringOffsets,
+      byte[] stringBytes) {
+    this.size = size;
+    this.latitudesE7 = latitudesE7;
+    this.longitudesE7 = longitudesE7;
+    this.altitudes = altitudes;
+    this.headings = headings;
+    this.strings = strings;
+    this.stringOffsets = stringOffsets;
+    this.stringBytes = stringBytes;
+    keys = new long[size];
+    for (int i = 0; i < size; ++i) {
+      keys[i] = Geohash.encode(latitudesE7[i] / E7, longitudesE7[i] / E7, KEY_BITS);
+    }
+  }
+
+  /** Returns the number of points. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns the point at {@code index}, decoding its strings. */
+  public PointOfInterest get(int index) {
+    return new PointOfInterest(
+        string(strings[4 * index]),
+        getLatitude(index),
+        getLongitude(index),
+        altitudes[index],
+        headings[index],
+        string(strings[4 * index + 1]),
+        string(strings[4 * index + 2]),
+        string(strings[4 * index + 3]));
+  }
+
+  public double getLatitude(int index) {
+    return latitudesE7[index] / E7;
+  }
+
+  public double getLongitude(int index) {
+    return longitudesE7[index] / E7;
+  }
+
+  /**
+   * Writes the indices of all points within {@code radiusMeters} of the given point to {@code
+   * result}, in geohash order. Uses a local flat-Earth approximation, which is accurate for radii
+   * up to a few kilometers.
+   *
+   * @return the number of points in range, which may exceed {@code result.length}; only the first
+   *     {@code result.length} are written
+   */
+  public int findWithin(double latitude, double longitude, double radiusMeters, int[] result) {
+    return scan(latitude, longitude, radiusMeters, result, /*nearest=*/ false);
+  }
+
+  /**
+   * Writes the indices of the points within {@code radiusMeters} of the given point to {@code
+   * result}, nearest first. When more points are in range than fit, the nearest ones are kept, so
+   * the choice does not depend on where points fall in geohash order. Each point in range is
+   * compared with up to {@code result.length} kept points, so {@code result} should be small.
+   *
+   * @return the number of indices written, at most {@code result.length}
+   */
+  public int findNearest(double latitude, double longitude, double radiusMeters, int[] result) {
+    int count = scan(latitude, longitude, radiusMeters, result, /*nearest=*/ true);
+    return Math.min(count, result.length);
+  }
+
+  // Counts the points in range. Writes the first to result in geohash order, or if nearest is set,
+  // keeps result sorted by distance and holding the nearest.
+  private int scan(
+      double latitude, double longitude, double radiusMeters, int[] result, boolean nearest) {
+    // Also rejects NaN.
+    if (!(Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180 && radiusMeters >= 0)) {
+      return 0;
+    }
+    double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    double radiusLatitude = radiusMeters / METERS_PER_DEGREE;
+    // Near the poles the circle may wrap all the way around.
+    double radiusLongitude =
+        Math.min(radiusMeters / Math.max(metersPerDegreeLongitude, 1e-9), 180);
+
+    // The finest level whose cells, 180 / 2^n by 360 / 2^n degrees, are no smaller than the radius.
+    int cellBits = KEY_BITS;
+    while (cellBits > 0
+        && (Math.scalb(180.0, -cellBits / 2) < radiusLatitude
+            || Math.scalb(360.0, -cellBits / 2) < radiusLongitude)) {
+      cellBits -= 2;
+    }
+    int axisBits = cellBits / 2;
+    int firstRow = Geohash.row(latitude - radiusLatitude, axisBits);
+    int lastRow = Geohash.row(latitude + radiusLatitude, axisBits);
+    int columns = 1 << axisBits;
+    double columnsPerDegree = columns / 360.0;
+    int firstColumn = (int) Math.floor((longitude - radiusLongitude + 180) * columnsPerDegree);
+    int lastColumn = (int) Math.floor((longitude + radiusLongitude + 180) * columnsPerDegree);
+    lastColumn = Math.min(lastColumn, firstColumn + columns - 1);
+
+    double radiusSquared = radiusMeters * radiusMeters;
+    int count = 0;
+    for (int row = firstRow; row <= lastRow; ++row) {
+      for (int column = firstColumn; column <= lastColumn; ++column) {
+        // Columns past the antimeridian wrap around.
+        int wrapped = (column % columns + columns) % columns;
+        long cell = cellBits == 0 ? 0 : Geohash.cell(row, wrapped, cellBits);
+        long first = cell << (KEY_BITS - cellBits);
+        long end = (cell + 1) << (KEY_BITS - cellBits);
+        for (int i = lowerBound(first); i < size && keys[i] < end; ++i) {
+          double distance = squaredDistance(i, latitude, longitude, metersPerDegreeLongitude);
+          if (distance <= radiusSquared) {
+            if (nearest) {
+              insertNearest(
+                  result,
+                  Math.min(count, result.length),
+                  i,
+                  distance,
+                  latitude,
+                  longitude,
+                  metersPerDegreeLongitude);
+            } else if (count < result.length) {
+              result[count] = i;
+            }
+            ++count;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  // Inserts point into the first size entries of nearest, which are sorted by distance, then index,
+  // dropping the farthest if they are full. Distances are recomputed rather than stored, since
+  // only a few entries are compared.
+  private void insertNearest(
+      int[] nearest,
+      int size,
+      int point,
+      double distance,
+      double latitude,
+      double longitude,
+      double metersPerDegreeLongitude) {
+    int j = size;
+    while (j > 0) {
+      int other = nearest[j - 1];
+      double otherDistance = squaredDistance(other, latitude, longitude, metersPerDegreeLongitude);
+      if (otherDistance < distance || (otherDistance == distance && other < point)) {
+        break;
+      }
+      // Shifting the farthest entry of a full array drops it.
+      if (j < nearest.length) {
+        nearest[j] = other;
+      }
+      --j;
+    }
+    if (j < nearest.length) {
+      nearest[j] = point;
+    }
+  }
+
+  // Flat-Earth squared distance in square meters from point i, as used by findWithin().
+  private double squaredDistance(
+      int i, double latitude, double longitude, double metersPerDegreeLongitude) {
+    double deltaLongitude = longitudesE7[i] / E7 - longitude;
+    if (deltaLongitude > 180) {
+      deltaLongitude -= 360;
+    } else if (deltaLongitude < -180) {
+      deltaLongitude += 360;
+    }
+    double dx = deltaLongitude * metersPerDegreeLongitude;
+    double dy = (latitudesE7[i] / E7 - latitude) * METERS_PER_DEGREE;
+    return dx * dx + dy * dy;
+  }
+
+  /** Writes {@code points} to {@code outputStream}. The stream is not closed. */
+  public static void write(List<PointOfInterest> points, OutputStream outputStream)
+      throws IOException {
+    int count = points.size();
+    int[] latitudesE7 = new int[count];
+    int[] longitudesE7 = new int[count];
+    long[] keys = new long[count];
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; ++i) {
+      PointOfInterest point = points.get(i);
+      // Also rejects NaN.
+      if (!(Math.abs(point.getLatitude()) <= 90 && Math.abs(point.getLongitude()) <= 180)) {
+        throw new IllegalArgumentException("Point out of range: " + point.getId());
+      }
+      latitudesE7[i] = (int) Math.round(point.getLatitude() * E7);
+      longitudesE7[i] = (int) Math.round(point.getLongitude() * E7);
+      // Keyed by the stored coordinates so that reading the file reproduces the same order.
+      keys[i] = Geohash.encode(latitudesE7[i] / E7, longitudesE7[i] / E7, KEY_BITS);
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(keys[a], keys[b]));
+
+    Map<String, Integer> stringIndices = new HashMap<>();
+    List<byte[]> stringBytes = new ArrayList<>();
+    int[] strings = new int[count * 4];
+    int stringSize = 0;
+    for (int i = 0; i < count; ++i) {
+      PointOfInterest point = points.get(order[i]);
+      String[] values = {
+        point.getId(), point.getZoneId(), point.getMeshAsset(), point.getTextureAsset()
+      };
+      for (int s = 0; s < values.length; ++s) {
+        if (values[s] == null) {
+          strings[4 * i + s] = NO_STRING;
+          continue;
+        }
+        Integer index = stringIndices.get(values[s]);
+        if (index == null) {
+          index = stringBytes.size();
+          stringIndices.put(values[s], index);
+          byte[] bytes = values[s].getBytes(StandardCharsets.UTF_8);
+          stringBytes.add(bytes);
+          stringSize += bytes.length;
+        }
+        strings[4 * i + s] = index;
+      }
+    }
+
+    ByteBuffer buffer =
+        ByteBuffer.allocate((int) getFileSize(count, stringBytes.size(), stringSize))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(stringBytes.size());
+    for (int i = 0; i < count; ++i) {
+      PointOfInterest point = points.get(order[i]);
+      buffer
+          .putInt(latitudesE7[order[i]])
+          .putInt(longitudesE7[order[i]])
+          .putFloat((float) point.getAltitude())
+          .putFloat(point.getHeading());
+      for (int s = 0; s < 4; ++s) {
+        buffer.putInt(strings[4 * i + s]);
+      }
+    }
+    int offset = 0;
+    for (byte[] bytes : stringBytes) {
+      buffer.putInt(offset);
+      offset += bytes.length;
+    }
+    buffer.putInt(offset);
+    for (byte[] bytes : stringBytes) {
+      buffer.put(bytes);
+    }
+
+    buffer.flip();
+    WritableByteChannel channel = Channels.newChannel(outputStream);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /** Writes {@code points} to {@code file}, replacing it atomically if it already exists. */
+  public static void write(List<PointOfInterest> points, File file) throws IOException {
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+      write(points, outputStream);
+    }
+    if (!temporaryFile.renameTo(file)) {
+      temporaryFile.delete();
+      throw new IOException("Failed to move point of interest store into place: " + file);
+    }
+  }
+
+  /**
+   * Reads a store from {@code buffer}. The store keeps no reference to the buffer.
+   *
+   * @throws IOException if the header is not valid, the buffer is truncated or the points are not
+   *     sorted
+   */
+  public static PoiStore read(ByteBuffer buffer) throws IOException {
+    buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int base = buffer.position();
+    if (buffer.remaining() < HEADER_SIZE) {
+      throw new IOException("Point of interest store is truncated");
+    }
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a point of interest store");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported point of interest store version " + version);
+    }
+    int count = buffer.getInt();
+    int stringCount = buffer.getInt();
+    if (count < 0 || stringCount < 0) {
+      throw new IOException("Corrupt point of interest store header");
+    }
+    if (buffer.limit() - base < getFileSize(count, stringCount, /*stringSize=*/ 0)) {
+      throw new IOException("Point of interest store is truncated");
+    }
+
+    int[] latitudesE7 = new int[count];
+    int[] longitudesE7 = new int[count];
+    float[] altitudes = new float[count];
+    float[] headings = new float[count];
+    int[] strings = new int[count * 4];
+    for (int i = 0; i < count; ++i) {
+      latitudesE7[i] = buffer.getInt();
+      longitudesE7[i] = buffer.getInt();
+      altitudes[i] = buffer.getFloat();
+      headings[i] = buffer.getFloat();
+      for (int s = 0; s < 4; ++s) {
+        strings[4 * i + s] = buffer.getInt();
+        if (strings[4 * i + s] < NO_STRING || strings[4 * i + s] >= stringCount) {
+          throw new IOException("Corrupt point of interest string reference");
+        }
+      }
+      if (Math.abs(latitudesE7[i]) > 90 * E7 || Math.abs(longitudesE7[i]) > 180 * E7) {
+        throw new IOException("Corrupt point of interest coordinates");
+      }
+    }
+    int[] stringOffsets = new int[stringCount + 1];
+    for (int i = 0; i <= stringCount; ++i) {
+      stringOffsets[i] = buffer.getInt();
+      if (stringOffsets[i] < (i == 0 ? 0 : stringOffsets[i - 1])) {
+        throw new IOException("Corrupt point of interest string table");
+      }
+    }
+    if (buffer.remaining() < stringOffsets[stringCount]) {
+      throw new IOException("Point of interest store is truncated");
+    }
+    byte[] stringBytes = new byte[stringOffsets[stringCount]];
+    buffer.get(stringBytes);
+
+    PoiStore store =
+        new PoiStore(
+            count,
+            latitudesE7,
+            longitudesE7,
+            altitudes,
+            headings,
+            strings,
+            stringOffsets,
+            stringBytes);
+    for (int i = 1; i < count; ++i) {
+      if (store.keys[i] < store.keys[i - 1]) {
+        throw new IOException("Points of interest are not sorted");
+      }
+    }
+    return store;
+  }
+
+  /** Memory-maps {@code file} and reads it with {@link #read(ByteBuffer)}. */
+  public static PoiStore read(File file) throws IOException {
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      FileChannel channel = inputStream.getChannel();
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads points from a plain-text listing, one point per line:
+   *
+   * <pre>
+   * # Comments and blank lines are ignored; "-" leaves an altitude or later field unset.
+   * &lt;id&gt; &lt;lat&gt;,&lt;lng&gt; &lt;altitude&gt; &lt;heading&gt; [zone [mesh [texture]]]
+   * </pre>
+   *
+   * <p>The reader is not closed.
+   *
+   * @throws IOException if a line is malformed
+   */
+  public static List<PointOfInterest> readText(Reader reader) throws IOException {
+    BufferedReader lines = new BufferedReader(reader);
+    List<PointOfInterest> points = new ArrayList<>();
+    String line;
+    int lineNumber = 0;
+    while ((line = lines.readLine()) != null) {
+      ++lineNumber;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#")) {
+        continue;
+      }
+      String[] fields = line.split("\\s+");
+      if (fields.length < 4 || fields.length > 7) {
+        throw new IOException("Line " + lineNumber + ": expected 4 to 7 fields");
+      }
+      int comma = fields[1].indexOf(',');
+      double latitude;
+      double longitude;
+      double altitude;
+      float heading;
+      try {
+        if (comma < 0) {
+          throw new NumberFormatException();
+        }
+        latitude = Double.parseDouble(fields[1].substring(0, comma));
+        longitude = Double.parseDouble(fields[1].substring(comma + 1));
+        altitude = fields[2].equals("-") ? Double.NaN : Double.parseDouble(fields[2]);
+        heading = Float.parseFloat(fields[3]);
+      } catch (NumberFormatException e) {
+        throw new IOException("Line " + lineNumber + ": bad number in " + line);
+      }
+      // Written so that NaN is rejected too.
+      if (!(Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180)) {
+        throw new IOException("Line " + lineNumber + ": position out of range " + fields[1]);
+      }
+      points.add(
+          new PointOfInterest(
+              fields[0],
+              latitude,
+              longitude,
+              altitude,
+              heading,
+              optionalField(fields, 4),
+              optionalField(fields, 5),
+              optionalField(fields, 6)));
+    }
+    return points;
+  }
+
+  /** Converts text listings to stores: {@code <input.txt> <output.poi>}. */
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.err.println("Usage: PoiStore <input.txt> <output" + FILE_EXTENSION + ">");
+      System.exit(1);
+    }
+    List<PointOfInterest> points;
+    try (Reader reader =
+        new InputStreamReader(new FileInputStream(args[0]), StandardCharsets.UTF_8)) {
+      points = readText(reader);
+    }
+    write(points, new File(args[1]));
+    System.out.printf("Wrote %s: %d points%n", args[1], points.size());
+  }
+
+  /** Returns the index of the first point whose key is at least {@code key}. */
+  private int lowerBound(long key) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keys[middle] < key) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private String string(int index) {
+    if (index == NO_STRING) {
+      return null;
+    }
+    int start = stringOffsets[index];
+    return new String(
+        stringBytes, start, stringOffsets[index + 1] - start, StandardCharsets.UTF_8);
+  }
+
+  private static String optionalField(String[] fields, int index) {
+    return index < fields.length && !fields[index].equals("-") ? fields[index] : null;
+  }
+
+  private static long getFileSize(int count, int stringCount, int stringSize) {
+    return HEADER_SIZE
+        + (long) count * RECORD_SIZE
+        + (stringCount + 1L) * Integer.BYTES
+        + stringSize;
+  }
+}
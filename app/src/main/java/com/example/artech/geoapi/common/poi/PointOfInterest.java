@@ -0,0 +1,87 @@
+package com.example.artech.geoapi.common.poi;
+
+/**
+ * A named place to mark in the world, at a WGS84 latitude, longitude and altitude, optionally
+ * belonging to a geofence zone and drawn with its own mesh and texture.
+ */
+public final class PointOfInterest {
+  private final String id;
+  private final double latitude;
+  private final double longitude;
+  private final double altitude;
+  private final float heading;
+  private final String zoneId;
+  private final String meshAsset;
+  private final String textureAsset;
+
+  /** Creates an unzoned, north-facing point drawn with the default marker. */
+  public PointOfInterest(String id, double latitude, double longitude, double altitude) {
+    this(id, latitude, longitude, altitude, 0f, null, null, null);
+  }
+
+  /**
+   * @param latitude in degrees
+   * @param longitude in degrees
+   * @param altitude in meters above the WGS84 ellipsoid, as used by Earth anchors, or NaN if
+   *     unknown, in which case the point is placed relative to the viewer's altitude
+   * @param heading in degrees clockwise from north
+   * @param zoneId the {@link com.example.artech.geoapi.common.geofence.Geofence} zone the point
+   *     belongs to, or null
+   * @param meshAsset the asset path of the point's mesh, or null for the default marker
+   * @param textureAsset the asset path of the point's texture, or null for the default
+   */
+  public PointOfInterest(
+      String id,
+      double latitude,
+      double longitude,
+      double altitude,
+      float heading,
+      String zoneId,
+      String meshAsset,
+      String textureAsset) {
+    this.id = id;
+    this.latitude = latitude;
+    this.longitude = longitude;
+    this.altitude = altitude;
+    this.heading = heading;
+    this.zoneId = zoneId;
+    this.meshAsset = meshAsset;
+    this.textureAsset = textureAsset;
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public double getLatitude() {
+    return latitude;
+  }
+
+  public double getLongitude() {
+    return longitude;
+  }
+
+  public double getAltitude() {
+    return altitude;
+  }
+
+  public boolean hasAltitude() {
+    return !Double.isNaN(altitude);
+  }
+
+  public float getHeading() {
+    return heading;
+  }
+
+  public String getZoneId() {
+    return zoneId;
+  }
+
+  public String getMeshAsset() {
+    return meshAsset;
+  }
+
+  public String getTextureAsset() {
+    return textureAsset;
+  }
+}
@@ -0,0 +1,63 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/** Reads binary assets into direct buffers. */
+public final class AssetBuffers {
+  /**
+   * Returns the contents of an asset in a direct buffer.
+   *
+   * <p>Assets stored uncompressed (see noCompress in build.gradle) are mapped directly out of the
+   * APK; otherwise the asset is read into a newly allocated buffer.
+   */
+  public static ByteBuffer read(AssetManager assets, String assetFileName) throws IOException {
+    AssetFileDescriptor descriptor = null;
+    try {
+      descriptor = assets.openFd(assetFileName);
+    } catch (FileNotFoundException e) {
+      // Either compressed or missing; open() below tells them apart.
+    }
+    if (descriptor != null) {
+      try (FileInputStream inputStream = descriptor.createInputStream()) {
+        return inputStream
+            .getChannel()
+            .map(
+                FileChannel.MapMode.READ_ONLY,
+                descriptor.getStartOffset(),
+                descriptor.getLength());
+      } finally {
+        descriptor.close();
+      }
+    }
+    try (InputStream inputStream = assets.open(assetFileName)) {
+      return readFully(inputStream, inputStream.available());
+    }
+  }
+
+  private static ByteBuffer readFully(InputStream inputStream, int lengthHint)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(lengthHint, 1));
+    byte[] chunk = new byte[16 * 1024];
+    int amount;
+    while ((amount = inputStream.read(chunk)) != -1) {
+      if (buffer.remaining() < amount) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(buffer.capacity() * 2 + amount);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+      }
+      buffer.put(chunk, 0, amount);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private AssetBuffers() {}
+}
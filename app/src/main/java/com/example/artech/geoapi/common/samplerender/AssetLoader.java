@@ -0,0 +1,161 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.io.Closeable;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads meshes, textures and shaders without blocking the GL thread.
+ *
+ * <p>File I/O, parsing and image decoding run on a single background thread and produce direct
+ * buffers ready for upload. The GL objects themselves are then created through a {@link
+ * GpuUploadQueue}, which the renderer drains at the start of each frame with {@link
+ * #drainUploads}. Callbacks run on the GL thread during that drain.
+ *
+ * <p>Closing the loader, for example when the GL context is recreated, drops work that has not been
+ * uploaded yet; its callbacks never run.
+ */
+public class AssetLoader implements Closeable {
+  /** Receives a loaded asset on the GL thread. */
+  public interface Callback<T> {
+    void onLoaded(T asset);
+  }
+
+  /** Receives load failures on the GL thread. */
+  public interface ErrorListener {
+    void onError(String assetName, Exception e);
+  }
+
+  /** Reads an asset on the loader's thread. */
+  public interface Decoder<T> {
+    T decode() throws Exception;
+  }
+
+  private interface Uploader<T, R> {
+    R upload(T decoded);
+  }
+
+  private final SampleRender render;
+  private final ErrorListener errorListener;
+  private final GpuUploadQueue uploadQueue = new GpuUploadQueue();
+  private final ExecutorService executor =
+      Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "AssetLoader"));
+  private volatile boolean closed = false;
+
+  public AssetLoader(SampleRender render, ErrorListener errorListener) {
+    this.render = render;
+    this.errorListener = errorListener;
+  }
+
+  /** Loads a mesh the same way as {@link Mesh#createFromAsset}. */
+  public void loadMesh(String assetFileName, Callback<Mesh> callback) {
+    load(
+        assetFileName,
+        () -> Mesh.loadMeshData(render, assetFileName, /*optimize=*/ true),
+        meshData -> Mesh.createFromMeshData(render, meshData),
+        callback);
+  }
+
+  /**
+   * Loads a mesh like {@link #loadMesh(String, Callback)} with levels of detail keeping the given
+   * ratios of its triangles. See {@link Mesh#loadMeshData}.
+   */
+  public void loadMesh(String assetFileName, float[] lodRatios, Callback<Mesh> callback) {
+    load(
+        assetFileName,
+        () -> Mesh.loadMeshData(render, assetFileName, /*optimize=*/ true, lodRatios),
+        meshData -> Mesh.createFromMeshData(render, meshData),
+        callback);
+  }
+
+  /** Loads a texture the same way as {@link Texture#createFromAsset}. */
+  public void loadTexture(
+      String assetFileName,
+      Texture.WrapMode wrapMode,
+      Texture.ColorFormat colorFormat,
+      Callback<Texture> callback) {
+    load(
+        assetFileName,
+        () ->
+            Texture.decodeAsset(
+                render.getAssets(), assetFileName, /*astcSupported=*/ render.isAstcSupported()),
+        data -> Texture.createFromData(render, data, wrapMode, colorFormat),
+        callback);
+  }
+
+  /**
+   * Loads an asset that needs no GL object, such as a lookup table, with {@code decoder} on the
+   * loader's thread. The callback still runs on the GL thread during {@link #drainUploads}.
+   */
+  public <T> void loadData(String assetName, Decoder<T> decoder, Callback<T> callback) {
+    load(assetName, decoder, decoded -> decoded, callback);
+  }
+
+  /** Loads a shader the same way as {@link Shader#createFromAssets}. */
+  public void loadShader(
+      String vertexShaderFileName,
+      String fragmentShaderFileName,
+      Map<String, String> defines,
+      Callback<Shader> callback) {
+    load(
+        vertexShaderFileName,
+        () ->
+            new String[] {
+              Shader.readAsset(render.getAssets(), vertexShaderFileName),
+              Shader.readAsset(render.getAssets(), fragmentShaderFileName)
+            },
+        sources -> new Shader(render, sources[0], sources[1], defines),
+        callback);
+  }
+
+  /**
+   * Creates GL objects for loaded assets until {@code budgetNanos} have elapsed. Must be called on
+   * the GL thread, typically at the start of each frame.
+   */
+  public void drainUploads(long budgetNanos) {
+    uploadQueue.drain(budgetNanos);
+  }
+
+  /** Stops loading. Assets not yet handed to their callback are dropped. */
+  @Override
+  public void close() {
+    closed = true;
+    executor.shutdownNow();
+    uploadQueue.clear();
+  }
+
+  private <T, R> void load(
+      String assetName, Decoder<T> decoder, Uploader<T, R> uploader, Callback<R> callback) {
+    executor.execute(
+        () -> {
+          T decoded;
+          try {
+            decoded = decoder.decode();
+          } catch (Exception e) {
+            uploadQueue.post(() -> reportError(assetName, e));
+            return;
+          }
+          uploadQueue.post(
+              () -> {
+                if (closed) {
+                  return;
+                }
+                R asset;
+                try {
+                  asset = uploader.upload(decoded);
+                } catch (RuntimeException e) {
+                  reportError(assetName, e);
+                  return;
+                }
+                callback.onLoaded(asset);
+              });
+        });
+  }
+
+  private void reportError(String assetName, Exception e) {
+    if (!closed) {
+      errorListener.onError(assetName, e);
+    }
+  }
+}
@@ -0,0 +1,309 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Reads and writes {@link MeshData} in a compact binary format that can be loaded without parsing.
+ *
+ * <p>The layout is little-endian:
+ *
+ * <pre>
+ *   int32    magic ('AMSH')
+ *   int32    version
+ *   int32    attribute flags (see {@code HAS_*})
+ *   int32    vertex count
+ *   int32    index count
+ *   int32    bytes per index
+ *   float32  bounds min x, y, z
+ *   float32  bounds max x, y, z
+ *   float32  positions[vertexCount * 3]
+ *   float32  texCoords[vertexCount * 2]   (if HAS_TEX_COORDS)
+ *   float32  normals[vertexCount * 3]     (if HAS_NORMALS)
+ *   uint32   indices[indexCount]
+ *   int32    level of detail count           (if HAS_LODS)
+ *   int32    level first indices[count + 1]  (if HAS_LODS; the last is indexCount)
+ *   float32  level errors[count]             (if HAS_LODS)
+ * </pre>
+ *
+ * <p>Every block starts on a four byte boundary, so a memory-mapped file can be sliced straight into
+ * the {@link FloatBuffer}s and {@link IntBuffer}s expected by {@link VertexBuffer} and {@link
+ * IndexBuffer}.
+ *
+ * <p>Running {@link #main} converts Wavefront OBJ files on a development machine:
+ *
+ * <pre>
+ *   java BinaryMeshFormat geospatial_marker.obj geospatial_marker.mesh 1 0.25 0.05
+ * </pre>
+ *
+ * <p>The optional trailing ratios build a level of detail chain with {@link
+ * MeshSimplifier#buildLodChain}, stored in the level of detail table.
+ */
+public class BinaryMeshFormat {
+  /** File extension used for binary meshes. */
+  public static final String FILE_EXTENSION = ".mesh";
+
+  /* package-private */ static final int MAGIC = 0x48534D41; // "AMSH" read as little-endian.
+  /* package-private */ static final int VERSION = 2;
+  /* package-private */ static final int HEADER_SIZE = 48;
+
+  private static final int HAS_TEX_COORDS = 1;
+  private static final int HAS_NORMALS = 1 << 1;
+  // Added in version 2; version 1 files are read as they always were.
+  private static final int HAS_LODS = 1 << 2;
+
+  /** Writes {@code meshData} to {@code outputStream}. The stream is not closed. */
+  public static void write(MeshData meshData, OutputStream outputStream) throws IOException {
+    int vertexCount = meshData.getVertexCount();
+    int indexCount = meshData.getIndexCount();
+    FloatBuffer texCoords = meshData.getTexCoords();
+    FloatBuffer normals = meshData.getNormals();
+    int lodCount = meshData.getLodCount();
+    int flags =
+        (texCoords != null ? HAS_TEX_COORDS : 0)
+            | (normals != null ? HAS_NORMALS : 0)
+            | (lodCount > 1 ? HAS_LODS : 0);
+
+    ByteBuffer buffer =
+        ByteBuffer.allocate(getFileSize(flags, vertexCount, indexCount, lodCount))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    float[] bounds = new float[3];
+    buffer
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(flags)
+        .putInt(vertexCount)
+        .putInt(indexCount)
+        .putInt(GpuBuffer.INT_SIZE);
+    meshData.getBoundsMin(bounds);
+    buffer.putFloat(bounds[0]).putFloat(bounds[1]).putFloat(bounds[2]);
+    meshData.getBoundsMax(bounds);
+    buffer.putFloat(bounds[0]).putFloat(bounds[1]).putFloat(bounds[2]);
+
+    putFloats(buffer, meshData.getPositions());
+    if (texCoords != null) {
+      putFloats(buffer, texCoords);
+    }
+    if (normals != null) {
+      putFloats(buffer, normals);
+    }
+    IntBuffer indices = meshData.getIndices();
+    for (int i = 0; i < indexCount; ++i) {
+      buffer.putInt(indices.get(i));
+    }
+    if ((flags & HAS_LODS) != 0) {
+      buffer.putInt(lodCount);
+      for (int level = 0; level < lodCount; ++level) {
+        buffer.putInt(meshData.getLodFirstIndex(level));
+      }
+      buffer.putInt(indexCount);
+      for (int level = 0; level < lodCount; ++level) {
+        buffer.putFloat(meshData.getLodError(level));
+      }
+    }
+
+    buffer.flip();
+    WritableByteChannel channel = Channels.newChannel(outputStream);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /** Writes {@code meshData} to {@code file}, replacing it atomically if it already exists. */
+  public static void write(MeshData meshData, File file) throws IOException {
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    try (OutputStream outputStream = new FileOutputStream(temporaryFile)) {
+      write(meshData, outputStream);
+    }
+    if (!temporaryFile.renameTo(file)) {
+      temporaryFile.delete();
+      throw new IOException("Failed to move binary mesh into place: " + file);
+    }
+  }
+
+  /**
+   * Reads a binary mesh from {@code buffer}, which should be direct (for example, memory-mapped).
+   *
+   * <p>On little-endian devices the returned {@link MeshData} shares memory with {@code buffer}.
+   *
+   * @throws IOException if the header is not valid or the buffer is truncated
+   */
+  public static MeshData read(ByteBuffer buffer) throws IOException {
+    buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int base = buffer.position();
+    if (buffer.remaining() < HEADER_SIZE) {
+      throw new IOException("Binary mesh is truncated");
+    }
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a binary mesh");
+    }
+    int version = buffer.getInt();
+    if (version < 1 || version > VERSION) {
+      throw new IOException("Unsupported binary mesh version " + version);
+    }
+    int flags = buffer.getInt();
+    int vertexCount = buffer.getInt();
+    int indexCount = buffer.getInt();
+    int bytesPerIndex = buffer.getInt();
+    if (vertexCount < 0 || indexCount < 0 || bytesPerIndex != GpuBuffer.INT_SIZE) {
+      throw new IOException("Corrupt binary mesh header");
+    }
+    float[] boundsMin = {buffer.getFloat(), buffer.getFloat(), buffer.getFloat()};
+    float[] boundsMax = {buffer.getFloat(), buffer.getFloat(), buffer.getFloat()};
+    if (buffer.limit() - base < getFileSize(flags, vertexCount, indexCount, /*lodCount=*/ 0)) {
+      throw new IOException("Binary mesh is truncated");
+    }
+
+    int offset = base + HEADER_SIZE;
+    FloatBuffer positions = sliceFloats(buffer, offset, vertexCount * 3);
+    offset += vertexCount * 3 * GpuBuffer.FLOAT_SIZE;
+    FloatBuffer texCoords = null;
+    if ((flags & HAS_TEX_COORDS) != 0) {
+      texCoords = sliceFloats(buffer, offset, vertexCount * 2);
+      offset += vertexCount * 2 * GpuBuffer.FLOAT_SIZE;
+    }
+    FloatBuffer normals = null;
+    if ((flags & HAS_NORMALS) != 0) {
+      normals = sliceFloats(buffer, offset, vertexCount * 3);
+      offset += vertexCount * 3 * GpuBuffer.FLOAT_SIZE;
+    }
+    IntBuffer indices = indexCount == 0 ? null : sliceInts(buffer, offset, indexCount);
+    offset += indexCount * GpuBuffer.INT_SIZE;
+    int[] lodFirstIndices = null;
+    float[] lodErrors = null;
+    if ((flags & HAS_LODS) != 0) {
+      buffer.position(offset);
+      int lodCount = buffer.getInt();
+      if (lodCount < 1
+          || buffer.limit() - base < getFileSize(flags, vertexCount, indexCount, lodCount)) {
+        throw new IOException("Binary mesh is truncated");
+      }
+      lodFirstIndices = new int[lodCount + 1];
+      for (int level = 0; level <= lodCount; ++level) {
+        lodFirstIndices[level] = buffer.getInt();
+      }
+      lodErrors = new float[lodCount];
+      for (int level = 0; level < lodCount; ++level) {
+        lodErrors[level] = buffer.getFloat();
+      }
+    }
+    try {
+      return new MeshData(
+          positions, texCoords, normals, indices, boundsMin, boundsMax, lodFirstIndices, lodErrors);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Corrupt binary mesh", e);
+    }
+  }
+
+  /** Memory-maps {@code file} and reads it with {@link #read(ByteBuffer)}. */
+  public static MeshData read(File file) throws IOException {
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      FileChannel channel = inputStream.getChannel();
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads a binary mesh from a stream by bulk-copying it into a direct buffer. Prefer {@link
+   * #read(File)} when the data is available as a file.
+   */
+  public static MeshData read(InputStream inputStream, int lengthHint) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(lengthHint, HEADER_SIZE));
+    byte[] chunk = new byte[16 * 1024];
+    int amount;
+    while ((amount = inputStream.read(chunk)) != -1) {
+      if (buffer.remaining() < amount) {
+        ByteBuffer grown = ByteBuffer.allocateDirect(buffer.capacity() * 2 + amount);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+      }
+      buffer.put(chunk, 0, amount);
+    }
+    buffer.flip();
+    return read(buffer);
+  }
+
+  /**
+   * Converts OBJ files to binary meshes: {@code <input.obj> <output.mesh> [lod ratios...]}, where
+   * the ratios, if any, are the triangle ratios of the levels of detail, starting with 1.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      System.err.println(
+          "Usage: BinaryMeshFormat <input.obj> <output" + FILE_EXTENSION + "> [lod ratios...]");
+      System.exit(1);
+    }
+    float[] lodRatios = new float[args.length - 2];
+    for (int i = 0; i < lodRatios.length; ++i) {
+      lodRatios[i] = Float.parseFloat(args[i + 2]);
+    }
+    MeshData meshData;
+    try (InputStream inputStream = new FileInputStream(args[0])) {
+      meshData = MeshOptimizer.optimize(MeshData.fromObj(inputStream));
+    }
+    if (lodRatios.length > 1) {
+      meshData = MeshSimplifier.buildLodChain(meshData, lodRatios);
+    }
+    write(meshData, new File(args[1]));
+    System.out.printf(
+        "Wrote %s: %d vertices, %d indices, %d levels of detail%n",
+        args[1], meshData.getVertexCount(), meshData.getIndexCount(), meshData.getLodCount());
+  }
+
+  private static int getFileSize(int flags, int vertexCount, int indexCount, int lodCount) {
+    int floatsPerVertex =
+        3 + ((flags & HAS_TEX_COORDS) != 0 ? 2 : 0) + ((flags & HAS_NORMALS) != 0 ? 3 : 0);
+    int lodTableSize = (flags & HAS_LODS) != 0 ? (2 + lodCount * 2) * GpuBuffer.INT_SIZE : 0;
+    return HEADER_SIZE
+        + vertexCount * floatsPerVertex * GpuBuffer.FLOAT_SIZE
+        + indexCount * GpuBuffer.INT_SIZE
+        + lodTableSize;
+  }
+
+  private static void putFloats(ByteBuffer buffer, FloatBuffer floats) {
+    for (int i = 0; i < floats.limit(); ++i) {
+      buffer.putFloat(floats.get(i));
+    }
+  }
+
+  private static FloatBuffer sliceFloats(ByteBuffer buffer, int offset, int count) {
+    ByteBuffer slice = slice(buffer, offset, count * GpuBuffer.FLOAT_SIZE);
+    if (slice.isDirect() && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+      return slice.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+    }
+    // GL reads buffers in native order, so anything else has to be copied.
+    FloatBuffer result = MeshData.allocateFloats(count);
+    result.put(slice.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer()).rewind();
+    return result;
+  }
+
+  private static IntBuffer sliceInts(ByteBuffer buffer, int offset, int count) {
+    ByteBuffer slice = slice(buffer, offset, count * GpuBuffer.INT_SIZE);
+    if (slice.isDirect() && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+      return slice.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+    IntBuffer result = MeshData.allocateInts(count);
+    result.put(slice.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()).rewind();
+    return result;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer view = buffer.duplicate();
+    view.limit(offset + length).position(offset);
+    return view.slice();
+  }
+
+  private BinaryMeshFormat() {}
+}
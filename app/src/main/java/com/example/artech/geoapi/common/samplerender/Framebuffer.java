@@ -28,6 +28,16 @@ import java.io.Closeable;
 
   The getWidth() method is used to retrieve the width of the framebuffer.
 
+  setRenderScale() renders to only part of the attachments, anchored at the bottom-left corner, without
+  reallocating them: SampleRender sets the viewport to getRenderWidth() by getRenderHeight(), and whoever samples
+  the textures scales their texture coordinates by getRenderWidth() / getWidth() and getRenderHeight() /
+  getHeight(). The color texture filters linearly, so drawing it over the full screen is a bilinear upscale.
+
+  The attachment formats are chosen at construction and may be changed with setAttachmentFormats(). Narrower color
+  formats and 16 or 24 bit depth cut memory bandwidth, which dominates on tiled mobile GPUs. When nothing samples
+  the depth, it is kept in a renderbuffer instead of a texture, and SampleRender.invalidate() can tell the driver
+  not to write it back to memory at all.
+
  */
 
 
@@ -36,19 +46,90 @@ import java.io.Closeable;
 public class Framebuffer implements Closeable {
   private static final String TAG = Framebuffer.class.getSimpleName();
 
+  /**
+   * Formats of the color attachment. Formats without alpha only suit scenes that are drawn opaque
+   * over the whole framebuffer, since they read back as fully opaque everywhere.
+   */
+  public enum ColorFormat {
+    RGBA8(GLES30.GL_RGBA8, GLES30.GL_RGBA, GLES30.GL_UNSIGNED_BYTE),
+    RGBA4(GLES30.GL_RGBA4, GLES30.GL_RGBA, GLES30.GL_UNSIGNED_SHORT_4_4_4_4),
+    RGB565(GLES30.GL_RGB565, GLES30.GL_RGB, GLES30.GL_UNSIGNED_SHORT_5_6_5);
+
+    final int internalFormat;
+    final int format;
+    final int type;
+
+    ColorFormat(int internalFormat, int format, int type) {
+      this.internalFormat = internalFormat;
+      this.format = format;
+      this.type = type;
+    }
+
+    public boolean hasAlpha() {
+      return format == GLES30.GL_RGBA;
+    }
+  }
+
+  /** Formats of the depth attachment. */
+  public enum DepthFormat {
+    DEPTH_COMPONENT16(GLES30.GL_DEPTH_COMPONENT16, GLES30.GL_UNSIGNED_SHORT),
+    DEPTH_COMPONENT24(GLES30.GL_DEPTH_COMPONENT24, GLES30.GL_UNSIGNED_INT),
+    DEPTH_COMPONENT32F(GLES30.GL_DEPTH_COMPONENT32F, GLES30.GL_FLOAT);
+
+    final int internalFormat;
+    final int type;
+
+    DepthFormat(int internalFormat, int type) {
+      this.internalFormat = internalFormat;
+      this.type = type;
+    }
+  }
+
+  private final GLStateCache stateCache;
   private final int[] framebufferId = {0};
+  private final int[] depthRenderbufferId = {0};
   private final Texture colorTexture;
   private final Texture depthTexture;
+  private ColorFormat colorFormat;
+  private DepthFormat depthFormat;
+  private boolean sampleDepth;
+  // Whether the depth renderbuffer currently has storage that could be released.
+  private boolean hasDepthRenderbufferStorage = false;
   private int width = -1;
   private int height = -1;
+  private float renderScale = 1f;
 
   /**
-   * Constructs a {@link Framebuffer} which renders internally to a texture.
+   * Constructs a {@link Framebuffer} which renders internally to an RGBA8 color texture and a 32
+   * bit float depth texture.
    *
    * <p>In order to render to the {@link Framebuffer}, use {@link SampleRender#draw(Mesh, Shader,
    * Framebuffer)}.
    */
   public Framebuffer(SampleRender render, int width, int height) {
+    this(
+        render,
+        width,
+        height,
+        ColorFormat.RGBA8,
+        DepthFormat.DEPTH_COMPONENT32F,
+        /*sampleDepth=*/ true);
+  }
+
+  /**
+   * Constructs a {@link Framebuffer} with the given attachment formats.
+   *
+   * @param sampleDepth whether the depth is kept in a texture that shaders can read, rather than
+   *     in a renderbuffer
+   */
+  public Framebuffer(
+      SampleRender render,
+      int width,
+      int height,
+      ColorFormat colorFormat,
+      DepthFormat depthFormat,
+      boolean sampleDepth) {
+    stateCache = render.getStateCache();
     try {
       colorTexture =
           new Texture(
@@ -73,14 +154,18 @@ public class Framebuffer implements Closeable {
       GLES30.glTexParameteri(GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAG_FILTER, GLES30.GL_NEAREST);
       GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
 
-      // Set initial dimensions.
-      resize(width, height);
+      GLES30.glGenRenderbuffers(1, depthRenderbufferId, 0);
+      GLError.maybeThrowGLException("Renderbuffer creation failed", "glGenRenderbuffers");
 
-      // Create framebuffer object and bind to the color and depth textures.
+      // Create framebuffer object and bind to the color texture. The depth attachment depends on
+      // the formats, and is attached along with its storage.
       GLES30.glGenFramebuffers(1, framebufferId, 0);
       GLError.maybeThrowGLException("Framebuffer creation failed", "glGenFramebuffers");
       GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebufferId[0]);
       GLError.maybeThrowGLException("Failed to bind framebuffer", "glBindFramebuffer");
+      // The binding was changed behind the state cache's back. This also covers a previously
+      // deleted framebuffer whose name is being reused.
+      stateCache.invalidate();
       GLES30.glFramebufferTexture2D(
           GLES30.GL_FRAMEBUFFER,
           GLES30.GL_COLOR_ATTACHMENT0,
@@ -89,19 +174,13 @@ public class Framebuffer implements Closeable {
           /*level=*/ 0);
       GLError.maybeThrowGLException(
           "Failed to bind color texture to framebuffer", "glFramebufferTexture2D");
-      GLES30.glFramebufferTexture2D(
-          GLES30.GL_FRAMEBUFFER,
-          GLES30.GL_DEPTH_ATTACHMENT,
-          GLES30.GL_TEXTURE_2D,
-          depthTexture.getTextureId(),
-          /*level=*/ 0);
-      GLError.maybeThrowGLException(
-          "Failed to bind depth texture to framebuffer", "glFramebufferTexture2D");
 
-      int status = GLES30.glCheckFramebufferStatus(GLES30.GL_FRAMEBUFFER);
-      if (status != GLES30.GL_FRAMEBUFFER_COMPLETE) {
-        throw new IllegalStateException("Framebuffer construction not complete: code " + status);
-      }
+      this.colorFormat = colorFormat;
+      this.depthFormat = depthFormat;
+      this.sampleDepth = sampleDepth;
+      this.width = width;
+      this.height = height;
+      allocateAttachments();
     } catch (Throwable t) {
       close();
       throw t;
@@ -115,6 +194,12 @@ public class Framebuffer implements Closeable {
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free framebuffer", "glDeleteFramebuffers");
       framebufferId[0] = 0;
     }
+    if (depthRenderbufferId[0] != 0) {
+      GLES30.glDeleteRenderbuffers(1, depthRenderbufferId, 0);
+      GLError.maybeLogGLError(
+          Log.WARN, TAG, "Failed to free renderbuffer", "glDeleteRenderbuffers");
+      depthRenderbufferId[0] = 0;
+    }
     colorTexture.close();
     depthTexture.close();
   }
@@ -126,36 +211,40 @@ public class Framebuffer implements Closeable {
     }
     this.width = width;
     this.height = height;
+    allocateAttachments();
+  }
 
-    // Color texture
-    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, colorTexture.getTextureId());
-    GLError.maybeThrowGLException("Failed to bind color texture", "glBindTexture");
-    GLES30.glTexImage2D(
-        GLES30.GL_TEXTURE_2D,
-        /*level=*/ 0,
-        GLES30.GL_RGBA,
-        width,
-        height,
-        /*border=*/ 0,
-        GLES30.GL_RGBA,
-        GLES30.GL_UNSIGNED_BYTE,
-        /*pixels=*/ null);
-    GLError.maybeThrowGLException("Failed to specify color texture format", "glTexImage2D");
+  /**
+   * Changes the attachment formats, reallocating the attachments if any of them differ. Their
+   * contents are lost.
+   *
+   * @param sampleDepth whether the depth is kept in a texture that shaders can read, rather than
+   *     in a renderbuffer
+   */
+  public void setAttachmentFormats(
+      ColorFormat colorFormat, DepthFormat depthFormat, boolean sampleDepth) {
+    if (this.colorFormat == colorFormat
+        && this.depthFormat == depthFormat
+        && this.sampleDepth == sampleDepth) {
+      return;
+    }
+    this.colorFormat = colorFormat;
+    this.depthFormat = depthFormat;
+    this.sampleDepth = sampleDepth;
+    allocateAttachments();
+  }
 
-    // Depth texture
-    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, depthTexture.getTextureId());
-    GLError.maybeThrowGLException("Failed to bind depth texture", "glBindTexture");
-    GLES30.glTexImage2D(
-        GLES30.GL_TEXTURE_2D,
-        /*level=*/ 0,
-        GLES30.GL_DEPTH_COMPONENT32F,
-        width,
-        height,
-        /*border=*/ 0,
-        GLES30.GL_DEPTH_COMPONENT,
-        GLES30.GL_FLOAT,
-        /*pixels=*/ null);
-    GLError.maybeThrowGLException("Failed to specify depth texture format", "glTexImage2D");
+  public ColorFormat getColorFormat() {
+    return colorFormat;
+  }
+
+  public DepthFormat getDepthFormat() {
+    return depthFormat;
+  }
+
+  /** Returns whether the depth is kept in the texture returned by {@link #getDepthTexture}. */
+  public boolean hasDepthTexture() {
+    return sampleDepth;
   }
 
   /** Returns the color texture associated with this framebuffer. */
@@ -163,7 +252,10 @@ public class Framebuffer implements Closeable {
     return colorTexture;
   }
 
-  /** Returns the depth texture associated with this framebuffer. */
+  /**
+   * Returns the depth texture associated with this framebuffer. It has no storage unless {@link
+   * #hasDepthTexture}.
+   */
   public Texture getDepthTexture() {
     return depthTexture;
   }
@@ -178,8 +270,112 @@ public class Framebuffer implements Closeable {
     return height;
   }
 
+  /**
+   * Sets the fraction of the framebuffer's width and height that is rendered to. Changing it does
+   * not reallocate the attachments.
+   *
+   * @param renderScale greater than 0 and at most 1
+   */
+  public void setRenderScale(float renderScale) {
+    if (!(renderScale > 0 && renderScale <= 1)) {
+      throw new IllegalArgumentException("Render scale must be in (0, 1]: " + renderScale);
+    }
+    this.renderScale = renderScale;
+  }
+
+  public float getRenderScale() {
+    return renderScale;
+  }
+
+  /** Returns the width of the region rendered to, which is the viewport when drawing. */
+  public int getRenderWidth() {
+    return Math.max(1, Math.round(width * renderScale));
+  }
+
+  /** Returns the height of the region rendered to, which is the viewport when drawing. */
+  public int getRenderHeight() {
+    return Math.max(1, Math.round(height * renderScale));
+  }
+
   /* package-private */
   int getFramebufferId() {
     return framebufferId[0];
   }
+
+  /**
+   * Gives the attachments storage in the current formats and size, and attaches the depth texture
+   * or renderbuffer, releasing the storage of the other.
+   */
+  private void allocateAttachments() {
+    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, colorTexture.getTextureId());
+    GLError.maybeThrowGLException("Failed to bind color texture", "glBindTexture");
+    GLES30.glTexImage2D(
+        GLES30.GL_TEXTURE_2D,
+        /*level=*/ 0,
+        colorFormat.internalFormat,
+        width,
+        height,
+        /*border=*/ 0,
+        colorFormat.format,
+        colorFormat.type,
+        /*pixels=*/ null);
+    GLError.maybeThrowGLException("Failed to specify color texture format", "glTexImage2D");
+
+    // An unused depth texture is respecified as empty, which frees its storage.
+    int depthTextureWidth = sampleDepth ? width : 0;
+    int depthTextureHeight = sampleDepth ? height : 0;
+    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, depthTexture.getTextureId());
+    GLError.maybeThrowGLException("Failed to bind depth texture", "glBindTexture");
+    GLES30.glTexImage2D(
+        GLES30.GL_TEXTURE_2D,
+        /*level=*/ 0,
+        depthFormat.internalFormat,
+        depthTextureWidth,
+        depthTextureHeight,
+        /*border=*/ 0,
+        GLES30.GL_DEPTH_COMPONENT,
+        depthFormat.type,
+        /*pixels=*/ null);
+    GLError.maybeThrowGLException("Failed to specify depth texture format", "glTexImage2D");
+
+    if (!sampleDepth || hasDepthRenderbufferStorage) {
+      GLES30.glBindRenderbuffer(GLES30.GL_RENDERBUFFER, depthRenderbufferId[0]);
+      GLError.maybeThrowGLException("Failed to bind depth renderbuffer", "glBindRenderbuffer");
+      GLES30.glRenderbufferStorage(
+          GLES30.GL_RENDERBUFFER,
+          depthFormat.internalFormat,
+          sampleDepth ? 0 : width,
+          sampleDepth ? 0 : height);
+      GLError.maybeThrowGLException(
+          "Failed to specify depth renderbuffer format", "glRenderbufferStorage");
+      hasDepthRenderbufferStorage = !sampleDepth;
+    }
+
+    GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebufferId[0]);
+    GLError.maybeThrowGLException("Failed to bind framebuffer", "glBindFramebuffer");
+    stateCache.invalidate();
+    if (sampleDepth) {
+      GLES30.glFramebufferTexture2D(
+          GLES30.GL_FRAMEBUFFER,
+          GLES30.GL_DEPTH_ATTACHMENT,
+          GLES30.GL_TEXTURE_2D,
+          depthTexture.getTextureId(),
+          /*level=*/ 0);
+      GLError.maybeThrowGLException(
+          "Failed to bind depth texture to framebuffer", "glFramebufferTexture2D");
+    } else {
+      GLES30.glFramebufferRenderbuffer(
+          GLES30.GL_FRAMEBUFFER,
+          GLES30.GL_DEPTH_ATTACHMENT,
+          GLES30.GL_RENDERBUFFER,
+          depthRenderbufferId[0]);
+      GLError.maybeThrowGLException(
+          "Failed to bind depth renderbuffer to framebuffer", "glFramebufferRenderbuffer");
+    }
+
+    int status = GLES30.glCheckFramebufferStatus(GLES30.GL_FRAMEBUFFER);
+    if (status != GLES30.GL_FRAMEBUFFER_COMPLETE) {
+      throw new IllegalStateException("Framebuffer construction not complete: code " + status);
+    }
+  }
 }
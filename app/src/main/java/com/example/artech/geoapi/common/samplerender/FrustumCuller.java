@@ -0,0 +1,404 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.util.Arrays;
+
+/**
+ * Picks out the instances of a mesh that may be visible, before their transforms are uploaded.
+ *
+ * <p>Each instance is tested with the mesh's bounding sphere, moved by the instance's model matrix,
+ * in this order:
+ *
+ * <ol>
+ *   <li>Instances farther than {@link #setMaxDistance} from the camera are dropped.
+ *   <li>Instances entirely outside one of the six frustum planes are dropped. The planes are
+ *       extracted from {@code projection * view}, so they are in world space and each instance
+ *       costs six dot products.
+ *   <li>Instances whose sphere would cover fewer than {@link #setMinScreenSize} pixels vertically
+ *       are dropped.
+ * </ol>
+ *
+ * <p>Each dropped instance is counted under the first test it fails. The counts describe the last
+ * call to {@link #cull} and are meant to be read once per frame.
+ *
+ * <p>If the mesh has levels of detail, see {@link #setLodErrors}, each kept instance also gets the
+ * coarsest level whose error covers at most a given number of pixels on screen, and the kept
+ * instances are grouped by level so that each level can be drawn with one instanced call.
+ *
+ * <p>The screen-space bounds of the kept instances, see {@link #getScreenBounds}, tell how much of
+ * the screen the drawn instances can touch, for example to scissor a later full-screen pass.
+ *
+ * <p>This class does not touch OpenGL and does not allocate after construction.
+ */
+public final class FrustumCuller {
+  /** Floats per plane: a, b, c, d of {@code a*x + b*y + c*z + d >= 0} for points inside. */
+  public static final int PLANE_SIZE = 4;
+
+  /** Number of frustum planes, ordered left, right, bottom, top, near, far. */
+  public static final int PLANE_COUNT = 6;
+
+  private static final int MATRIX_SIZE = InstanceMatrices.FLOATS_PER_MATRIX;
+
+  private final float[] viewProjection = new float[MATRIX_SIZE];
+  private final float[] planes = new float[PLANE_COUNT * PLANE_SIZE];
+  private final float[] visibleModelMatrices;
+  // Kept instances in the order they were tested, before grouping by level of detail.
+  private final float[] keptModelMatrices;
+  private final int[] keptLevels;
+
+  // Local bounding sphere of the mesh.
+  private float sphereX;
+  private float sphereY;
+  private float sphereZ;
+  private float sphereRadius;
+
+  private float maxDistance = Float.POSITIVE_INFINITY;
+  private float minScreenSize = 0;
+  private float viewportHeight = 1;
+  private float[] lodErrors = {0};
+  private float maxLodErrorPixels = 1;
+  // Level i holds visible instances [lodStarts[i], lodStarts[i + 1]).
+  private int[] lodStarts = new int[2];
+
+  // Camera state from setCamera().
+  private float cameraX;
+  private float cameraY;
+  private float cameraZ;
+  // Third row of the view matrix, giving the view space z of a world space point.
+  private float viewZx;
+  private float viewZy;
+  private float viewZz;
+  private float viewZw;
+  // Pixels per meter at a view depth of one meter.
+  private float pixelsPerMeter;
+
+  // Normalized device coordinates covered by the kept instances, if any.
+  private float screenMinX;
+  private float screenMinY;
+  private float screenMaxX;
+  private float screenMaxY;
+
+  private int visibleCount;
+  private int distanceCulledCount;
+  private int frustumCulledCount;
+  private int screenSizeCulledCount;
+
+  /** @param capacity the maximum number of instances passed to {@link #cull} */
+  public FrustumCuller(int capacity) {
+    visibleModelMatrices = new float[capacity * MATRIX_SIZE];
+    keptModelMatrices = new float[capacity * MATRIX_SIZE];
+    keptLevels = new int[capacity];
+  }
+
+  /**
+   * Sets the sphere enclosing the mesh, in local coordinates. Defaults to a point at the origin.
+   */
+  public void setBoundingSphere(float centerX, float centerY, float centerZ, float radius) {
+    sphereX = centerX;
+    sphereY = centerY;
+    sphereZ = centerZ;
+    sphereRadius = radius;
+  }
+
+  /**
+   * Sets the distance in meters from the camera beyond which instances are dropped, measured to
+   * the nearest point of their bounding sphere. Unlimited by default.
+   */
+  public void setMaxDistance(float meters) {
+    maxDistance = meters;
+  }
+
+  /**
+   * Sets the projected height in pixels below which instances are dropped. Zero, the default,
+   * keeps everything inside the frustum.
+   */
+  public void setMinScreenSize(float pixels) {
+    minScreenSize = pixels;
+  }
+
+  /**
+   * Sets the errors of the mesh's levels of detail, in local units as reported by {@link
+   * Mesh#getLodError}, and how many pixels of error are acceptable. Without levels, all instances
+   * use level 0.
+   */
+  public void setLodErrors(float[] errors, float maxErrorPixels) {
+    lodErrors = errors.clone();
+    maxLodErrorPixels = maxErrorPixels;
+    lodStarts = new int[errors.length + 1];
+  }
+
+  /**
+   * Sets the height in pixels of the viewport the instances are drawn to. Takes effect at the next
+   * {@link #setCamera}.
+   */
+  public void setViewportHeight(int pixels) {
+    viewportHeight = pixels;
+  }
+
+  /**
+   * Takes the camera for the following calls to {@link #cull}. The view matrix must be rigid, as
+   * the ones from ARCore's {@code Camera} are.
+   */
+  public void setCamera(float[] viewMatrix, float[] projectionMatrix) {
+    InstanceMatrices.multiply(projectionMatrix, viewMatrix, 0, viewProjection, 0);
+    extractPlanes(viewProjection, planes);
+
+    // The camera sits at -R^T * t for a view matrix with rotation R and translation t.
+    float tx = viewMatrix[12];
+    float ty = viewMatrix[13];
+    float tz = viewMatrix[14];
+    cameraX = -(viewMatrix[0] * tx + viewMatrix[1] * ty + viewMatrix[2] * tz);
+    cameraY = -(viewMatrix[4] * tx + viewMatrix[5] * ty + viewMatrix[6] * tz);
+    cameraZ = -(viewMatrix[8] * tx + viewMatrix[9] * ty + viewMatrix[10] * tz);
+
+    viewZx = viewMatrix[2];
+    viewZy = viewMatrix[6];
+    viewZz = viewMatrix[10];
+    viewZw = viewMatrix[14];
+    // A perspective projection scales y by projectionMatrix[5] before the divide by depth, and
+    // normalized device coordinates span two units of the viewport's height.
+    pixelsPerMeter = projectionMatrix[5] * viewportHeight / 2;
+  }
+
+  /**
+   * Copies the model matrices of the instances that pass every test to {@link
+   * #getVisibleModelMatrices}, grouped by level of detail and otherwise in their original order.
+   *
+   * @param m column-major model matrices, the i-th starting at offset {@code 16 * i}
+   * @param count the number of matrices, at most the capacity
+   * @return the number of visible instances
+   */
+  public int cull(float[] m, int count) {
+    visibleCount = 0;
+    distanceCulledCount = 0;
+    frustumCulledCount = 0;
+    screenSizeCulledCount = 0;
+    screenMinX = Float.POSITIVE_INFINITY;
+    screenMinY = Float.POSITIVE_INFINITY;
+    screenMaxX = Float.NEGATIVE_INFINITY;
+    screenMaxY = Float.NEGATIVE_INFINITY;
+    for (int i = 0; i < count; ++i) {
+      int offset = i * MATRIX_SIZE;
+      float x = m[offset] * sphereX + m[offset + 4] * sphereY + m[offset + 8] * sphereZ
+          + m[offset + 12];
+      float y = m[offset + 1] * sphereX + m[offset + 5] * sphereY + m[offset + 9] * sphereZ
+          + m[offset + 13];
+      float z = m[offset + 2] * sphereX + m[offset + 6] * sphereY + m[offset + 10] * sphereZ
+          + m[offset + 14];
+      float scale = maxColumnLength(m, offset);
+      float radius = sphereRadius * scale;
+
+      float dx = x - cameraX;
+      float dy = y - cameraY;
+      float dz = z - cameraZ;
+      if (maxDistance != Float.POSITIVE_INFINITY) {
+        float reach = maxDistance + radius;
+        if (dx * dx + dy * dy + dz * dz > reach * reach) {
+          ++distanceCulledCount;
+          continue;
+        }
+      }
+
+      if (!isSphereInside(planes, x, y, z, radius)) {
+        ++frustumCulledCount;
+        continue;
+      }
+
+      float depth = -(viewZx * x + viewZy * y + viewZz * z + viewZw);
+      // A sphere reaching the camera plane covers the screen.
+      boolean near = depth <= radius;
+      if (minScreenSize > 0 && !near && 2 * radius * pixelsPerMeter < minScreenSize * depth) {
+        ++screenSizeCulledCount;
+        continue;
+      }
+
+      includeInScreenBounds(x, y, z, radius);
+      System.arraycopy(m, offset, keptModelMatrices, visibleCount * MATRIX_SIZE, MATRIX_SIZE);
+      keptLevels[visibleCount] =
+          near ? 0 : selectLod(lodErrors, scale * pixelsPerMeter / depth, maxLodErrorPixels);
+      ++visibleCount;
+    }
+    groupByLevel();
+    return visibleCount;
+  }
+
+  /**
+   * Returns the model matrices kept by the last {@link #cull}, the i-th starting at offset {@code
+   * 16 * i}. Only the first {@link #getVisibleCount} are current.
+   */
+  public float[] getVisibleModelMatrices() {
+    return visibleModelMatrices;
+  }
+
+  /**
+   * Writes the screen-space bounds of the instances kept by the last {@link #cull} to {@code dest}
+   * as min x, min y, max x and max y, in normalized device coordinates clamped to [-1, 1]. The
+   * bounds are conservative: they enclose the projection of a box around each kept sphere.
+   *
+   * @return false, leaving {@code dest} unchanged, if no instance was kept
+   */
+  public boolean getScreenBounds(float[] dest) {
+    if (visibleCount == 0) {
+      return false;
+    }
+    dest[0] = Math.max(-1, screenMinX);
+    dest[1] = Math.max(-1, screenMinY);
+    dest[2] = Math.min(1, screenMaxX);
+    dest[3] = Math.min(1, screenMaxY);
+    return true;
+  }
+
+  /** Returns the number of levels of detail set by {@link #setLodErrors}, at least 1. */
+  public int getLodCount() {
+    return lodErrors.length;
+  }
+
+  /**
+   * Returns the index, among the instances kept by the last {@link #cull}, of the first one to draw
+   * at {@code level}.
+   */
+  public int getLodFirstInstance(int level) {
+    return lodStarts[level];
+  }
+
+  /** Returns how many of the instances kept by the last {@link #cull} to draw at {@code level}. */
+  public int getLodInstanceCount(int level) {
+    return lodStarts[level + 1] - lodStarts[level];
+  }
+
+  /** Returns the number of instances kept by the last {@link #cull}. */
+  public int getVisibleCount() {
+    return visibleCount;
+  }
+
+  /** Returns the number of instances dropped by the last {@link #cull} for any reason. */
+  public int getCulledCount() {
+    return distanceCulledCount + frustumCulledCount + screenSizeCulledCount;
+  }
+
+  /** Returns the number of instances the last {@link #cull} dropped for being too far away. */
+  public int getDistanceCulledCount() {
+    return distanceCulledCount;
+  }
+
+  /** Returns the number of instances the last {@link #cull} dropped for being out of view. */
+  public int getFrustumCulledCount() {
+    return frustumCulledCount;
+  }
+
+  /** Returns the number of instances the last {@link #cull} dropped for being too small. */
+  public int getScreenSizeCulledCount() {
+    return screenSizeCulledCount;
+  }
+
+  /**
+   * Returns the coarsest level of detail whose error stays within {@code maxErrorPixels} on screen.
+   *
+   * @param lodErrors the error of each level in local units, level 0 first, never decreasing
+   * @param pixelsPerUnit how many pixels one local unit covers at the instance's distance
+   */
+  public static int selectLod(float[] lodErrors, float pixelsPerUnit, float maxErrorPixels) {
+    int level = 0;
+    while (level + 1 < lodErrors.length
+        && lodErrors[level + 1] * pixelsPerUnit <= maxErrorPixels) {
+      ++level;
+    }
+    return level;
+  }
+
+  /**
+   * Extracts the frustum planes of a column-major view-projection matrix, normalized so that
+   * plugging in a point gives its signed distance from the plane. Points inside the frustum give
+   * non-negative distances for all six planes.
+   *
+   * @param planes receives {@link #PLANE_COUNT} planes of {@link #PLANE_SIZE} floats
+   */
+  /* package-private */
+  static void extractPlanes(float[] viewProjection, float[] planes) {
+    // A point is inside when -w <= x, y, z <= w in clip space, so each plane is the last row of
+    // the matrix plus or minus one of the others.
+    for (int i = 0; i < PLANE_COUNT; ++i) {
+      int row = i / 2;
+      float sign = i % 2 == 0 ? 1 : -1;
+      float a = viewProjection[3] + sign * viewProjection[row];
+      float b = viewProjection[7] + sign * viewProjection[4 + row];
+      float c = viewProjection[11] + sign * viewProjection[8 + row];
+      float d = viewProjection[15] + sign * viewProjection[12 + row];
+      float length = (float) Math.sqrt(a * a + b * b + c * c);
+      planes[i * PLANE_SIZE] = a / length;
+      planes[i * PLANE_SIZE + 1] = b / length;
+      planes[i * PLANE_SIZE + 2] = c / length;
+      planes[i * PLANE_SIZE + 3] = d / length;
+    }
+  }
+
+  /** Returns whether any part of the sphere is on the inner side of every plane. */
+  /* package-private */
+  static boolean isSphereInside(float[] planes, float x, float y, float z, float radius) {
+    for (int i = 0; i < PLANE_COUNT * PLANE_SIZE; i += PLANE_SIZE) {
+      if (planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3] < -radius) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Moves the kept instances to {@link #visibleModelMatrices}, stably sorted by level. */
+  private void groupByLevel() {
+    Arrays.fill(lodStarts, 0);
+    for (int i = 0; i < visibleCount; ++i) {
+      ++lodStarts[keptLevels[i] + 1];
+    }
+    for (int level = 0; level < lodErrors.length; ++level) {
+      lodStarts[level + 1] += lodStarts[level];
+    }
+    // Use the end of each level's range as a cursor, then shift the starts back into place.
+    for (int i = 0; i < visibleCount; ++i) {
+      int destination = lodStarts[keptLevels[i]]++;
+      System.arraycopy(
+          keptModelMatrices,
+          i * MATRIX_SIZE,
+          visibleModelMatrices,
+          destination * MATRIX_SIZE,
+          MATRIX_SIZE);
+    }
+    for (int level = lodErrors.length; level > 0; --level) {
+      lodStarts[level] = lodStarts[level - 1];
+    }
+    lodStarts[0] = 0;
+  }
+
+  /** Grows the screen bounds by the projection of the box around a world-space sphere. */
+  private void includeInScreenBounds(float x, float y, float z, float radius) {
+    float[] vp = viewProjection;
+    for (int corner = 0; corner < 8; ++corner) {
+      float cornerX = (corner & 1) == 0 ? x - radius : x + radius;
+      float cornerY = (corner & 2) == 0 ? y - radius : y + radius;
+      float cornerZ = (corner & 4) == 0 ? z - radius : z + radius;
+      float w = vp[3] * cornerX + vp[7] * cornerY + vp[11] * cornerZ + vp[15];
+      if (w <= 0) {
+        // A corner behind the camera projects to no bounded region, so assume the whole screen.
+        screenMinX = -1;
+        screenMinY = -1;
+        screenMaxX = 1;
+        screenMaxY = 1;
+        return;
+      }
+      float ndcX = (vp[0] * cornerX + vp[4] * cornerY + vp[8] * cornerZ + vp[12]) / w;
+      float ndcY = (vp[1] * cornerX + vp[5] * cornerY + vp[9] * cornerZ + vp[13]) / w;
+      screenMinX = Math.min(screenMinX, ndcX);
+      screenMinY = Math.min(screenMinY, ndcY);
+      screenMaxX = Math.max(screenMaxX, ndcX);
+      screenMaxY = Math.max(screenMaxY, ndcY);
+    }
+  }
+
+  /** Returns how much the model matrix at {@code offset} stretches lengths, at most. */
+  private static float maxColumnLength(float[] m, int offset) {
+    float max = 0;
+    for (int column = 0; column < 3; ++column) {
+      int i = offset + column * 4;
+      max = Math.max(max, m[i] * m[i] + m[i + 1] * m[i + 1] + m[i + 2] * m[i + 2]);
+    }
+    return (float) Math.sqrt(max);
+  }
+}
@@ -5,9 +5,6 @@ import android.opengl.GLES30;
 import android.opengl.GLException;
 import android.opengl.GLU;
 import android.util.Log;
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 
 
 
@@ -19,64 +16,122 @@ import java.util.List;
   logcat priority if there is any OpenGL error. The method takes four parameters - priority, tag, reason, and api -
   which are used to create a log message if an OpenGL error is detected.
 
-  formatErrorMessage(String reason, String api, List<Integer> errorCodes): This method formats an error message with
-  the given reason, api, and a list of OpenGL error codes.
+  formatErrorMessage(String reason, String api, int[] errorCodes, int count): This method formats an error
+  message with the given reason, api, and the OpenGL error codes that were found.
 
-  getGlErrors(): This method retrieves a list of OpenGL error codes. If there are no errors, it returns null. Otherwise,
-  it returns a list of all the detected error codes. The method uses a while loop to continuously retrieve error codes
-  until there are no more errors.
+  Whether glGetError is called at all is decided by a GLErrorPolicy. In ALWAYS mode every check queries
+  the driver; in ONCE_PER_FRAME and SAMPLED modes the per-call checks do nothing and errors are drained
+  in endFrame() instead, then logged as a single per-frame summary. DEBUG_ONLY checks every call in debug
+  builds and nothing otherwise. Error codes are collected into a preallocated array, so checking does
+  not allocate unless an error is reported.
 
   The class is marked as final and the constructor is private, indicating that it cannot be instantiated or subclassed.
  */
 
 
-/** Module for handling OpenGL errors. */
+/**
+ * Module for handling OpenGL errors.
+ *
+ * <p>How often errors are actually checked is decided by a {@link GLErrorPolicy}, which defaults to
+ * {@link GLErrorPolicy.Mode#ALWAYS}. {@link SampleRender} calls {@link #beginFrame} and {@link
+ * #endFrame} around each frame, and errors aggregated over a frame are logged from there.
+ */
 public class GLError {
+  private static final String TAG = GLError.class.getSimpleName();
+
+  // GL_INVALID_ENUM through GL_INVALID_FRAMEBUFFER_OPERATION, for per-frame summaries.
+  private static final int[] KNOWN_ERROR_CODES = {
+    GLES30.GL_INVALID_ENUM,
+    GLES30.GL_INVALID_VALUE,
+    GLES30.GL_INVALID_OPERATION,
+    GLES30.GL_OUT_OF_MEMORY,
+    GLES30.GL_INVALID_FRAMEBUFFER_OPERATION
+  };
+
+  private static final GLErrorPolicy policy =
+      new GLErrorPolicy(GLES30::glGetError, GLErrorPolicy.Mode.ALWAYS, /*debugBuild=*/ true);
+
+  // Only touched from the GL thread.
+  private static final int[] errorCodes = new int[8];
+
+  /** Returns the policy deciding when errors are checked, so it can be changed at runtime. */
+  public static GLErrorPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * Configures the checking policy, for example with {@code GLErrorPolicy.Mode.ONCE_PER_FRAME} in
+   * release builds.
+   */
+  public static void configure(GLErrorPolicy.Mode mode, int samplePeriod, boolean debugBuild) {
+    policy.setMode(mode);
+    policy.setSamplePeriod(samplePeriod);
+    policy.setDebugBuild(debugBuild);
+  }
+
   /** Throws a {@link GLException} if a GL error occurred. */
   public static void maybeThrowGLException(String reason, String api) {
-    List<Integer> errorCodes = getGlErrors();
-    if (errorCodes != null) {
-      throw new GLException(errorCodes.get(0), formatErrorMessage(reason, api, errorCodes));
+    int count = checkCall();
+    if (count > 0) {
+      throw new GLException(errorCodes[0], formatErrorMessage(reason, api, errorCodes, count));
     }
   }
 
   /** Logs a message with the given logcat priority if a GL error occurred. */
   public static void maybeLogGLError(int priority, String tag, String reason, String api) {
-    List<Integer> errorCodes = getGlErrors();
-    if (errorCodes != null) {
-      Log.println(priority, tag, formatErrorMessage(reason, api, errorCodes));
+    int count = checkCall();
+    if (count > 0) {
+      Log.println(priority, tag, formatErrorMessage(reason, api, errorCodes, count));
+    }
+  }
+
+  /** Marks the start of a frame. Called by {@link SampleRender}. */
+  public static void beginFrame() {
+    policy.beginFrame();
+  }
+
+  /**
+   * Marks the end of a frame, checking for errors if the policy only checks per frame, and logs a
+   * summary of the errors seen during the frame. Called by {@link SampleRender}.
+   */
+  public static void endFrame() {
+    if (policy.endFrame() > 0 && !policy.checksEveryCall()) {
+      // Errors were already thrown or logged against their call when every call is checked.
+      Log.w(TAG, formatFrameSummary());
     }
   }
 
-  private static String formatErrorMessage(String reason, String api, List<Integer> errorCodes) {
+  private static int checkCall() {
+    return policy.checkCall(errorCodes);
+  }
+
+  private static String formatErrorMessage(String reason, String api, int[] errorCodes, int count) {
     StringBuilder builder = new StringBuilder(String.format("%s: %s: ", reason, api));
-    Iterator<Integer> iterator = errorCodes.iterator();
-    while (iterator.hasNext()) {
-      int errorCode = iterator.next();
+    for (int i = 0; i < count; ++i) {
+      int errorCode = errorCodes[i];
       builder.append(String.format("%s (%d)", GLU.gluErrorString(errorCode), errorCode));
-      if (iterator.hasNext()) {
+      if (i + 1 < count) {
         builder.append(", ");
       }
     }
     return builder.toString();
   }
 
-  private static List<Integer> getGlErrors() {
-    int errorCode = GLES30.glGetError();
-    // Shortcut for no errors
-    if (errorCode == GLES30.GL_NO_ERROR) {
-      return null;
-    }
-    List<Integer> errorCodes = new ArrayList<>();
-    errorCodes.add(errorCode);
-    while (true) {
-      errorCode = GLES30.glGetError();
-      if (errorCode == GLES30.GL_NO_ERROR) {
-        break;
+  private static String formatFrameSummary() {
+    StringBuilder builder =
+        new StringBuilder(String.format("%d GL error(s) this frame: ", policy.getFrameErrorCount()));
+    int reported = 0;
+    for (int errorCode : KNOWN_ERROR_CODES) {
+      int count = policy.getFrameErrorCount(errorCode);
+      if (count == 0) {
+        continue;
       }
-      errorCodes.add(errorCode);
+      if (reported++ > 0) {
+        builder.append(", ");
+      }
+      builder.append(String.format("%s (%d) x%d", GLU.gluErrorString(errorCode), errorCode, count));
     }
-    return errorCodes;
+    return builder.toString();
   }
 
   private GLError() {}
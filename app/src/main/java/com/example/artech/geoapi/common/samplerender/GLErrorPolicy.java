@@ -0,0 +1,178 @@
+package com.example.artech.geoapi.common.samplerender;
+
+/**
+ * Decides when {@link GLError} actually queries {@code glGetError}, and aggregates the errors seen
+ * during a frame.
+ *
+ * <p>{@code glGetError} forces a round trip to the driver on many mobile GPUs, so checking after
+ * every call is only worth it while developing. The modes trade precision for cost:
+ *
+ * <ul>
+ *   <li>{@link Mode#ALWAYS} checks after every call, so errors are reported against the call that
+ *       caused them.
+ *   <li>{@link Mode#ONCE_PER_FRAME} checks once in {@link #endFrame}.
+ *   <li>{@link Mode#DEBUG_ONLY} behaves like {@code ALWAYS} in debug builds and never checks
+ *       otherwise.
+ *   <li>{@link Mode#SAMPLED} checks once in {@link #endFrame} of every {@link #getSamplePeriod()
+ *       N}th frame, reporting whatever accumulated since the last sample.
+ * </ul>
+ *
+ * <p>This class does not touch OpenGL; errors are read from an {@link ErrorSource}.
+ */
+public class GLErrorPolicy {
+  /** How often errors are checked. */
+  public enum Mode {
+    ALWAYS,
+    ONCE_PER_FRAME,
+    DEBUG_ONLY,
+    SAMPLED
+  }
+
+  /** Source of GL error codes, normally {@code glGetError}. Returns 0 when there are no errors. */
+  public interface ErrorSource {
+    int getError();
+  }
+
+  /** Value of {@code GL_NO_ERROR}. */
+  public static final int NO_ERROR = 0;
+
+  // GL error codes are small and contiguous, from GL_INVALID_ENUM (0x500) to
+  // GL_INVALID_FRAMEBUFFER_OPERATION (0x506). Anything else is counted in the last bucket.
+  private static final int FIRST_ERROR_CODE = 0x500;
+  private static final int ERROR_CODE_BUCKETS = 8;
+
+  private final ErrorSource errorSource;
+  private boolean debugBuild;
+  private Mode mode;
+  private int samplePeriod = 60;
+
+  private long frameNumber = 0;
+  private final int[] frameErrorCounts = new int[ERROR_CODE_BUCKETS];
+  private int frameErrorCount = 0;
+  private long totalErrorCount = 0;
+
+  /**
+   * @param errorSource where error codes are read from
+   * @param mode the initial checking mode
+   * @param debugBuild whether {@link Mode#DEBUG_ONLY} should check
+   */
+  public GLErrorPolicy(ErrorSource errorSource, Mode mode, boolean debugBuild) {
+    this.errorSource = errorSource;
+    this.mode = mode;
+    this.debugBuild = debugBuild;
+  }
+
+  public Mode getMode() {
+    return mode;
+  }
+
+  /** Changes the checking mode. May be called at any time from the GL thread. */
+  public void setMode(Mode mode) {
+    this.mode = mode;
+  }
+
+  /** Sets whether this is a debug build, which enables checks in {@link Mode#DEBUG_ONLY}. */
+  public void setDebugBuild(boolean debugBuild) {
+    this.debugBuild = debugBuild;
+  }
+
+  public int getSamplePeriod() {
+    return samplePeriod;
+  }
+
+  /** Sets how many frames apart {@link Mode#SAMPLED} checks are. */
+  public void setSamplePeriod(int samplePeriod) {
+    if (samplePeriod < 1) {
+      throw new IllegalArgumentException("Sample period must be positive");
+    }
+    this.samplePeriod = samplePeriod;
+  }
+
+  /** Returns whether errors should be checked immediately after each GL call. */
+  public boolean checksEveryCall() {
+    return mode == Mode.ALWAYS || (mode == Mode.DEBUG_ONLY && debugBuild);
+  }
+
+  /**
+   * Checks for errors after a GL call if the current mode asks for it.
+   *
+   * @param errorCodes receives the error codes found; codes that do not fit are only counted
+   * @return the number of codes stored in {@code errorCodes}, or 0 if there were no errors or the
+   *     check was skipped
+   */
+  public int checkCall(int[] errorCodes) {
+    if (!checksEveryCall()) {
+      return 0;
+    }
+    return drainErrors(errorCodes);
+  }
+
+  /** Starts a new frame, clearing the per-frame error counts. */
+  public void beginFrame() {
+    for (int i = 0; i < ERROR_CODE_BUCKETS; ++i) {
+      frameErrorCounts[i] = 0;
+    }
+    frameErrorCount = 0;
+  }
+
+  /**
+   * Ends the current frame, checking for errors if the current mode asks for it.
+   *
+   * @return the number of errors seen during the frame, including any found by {@link #checkCall}
+   */
+  public int endFrame() {
+    boolean check;
+    switch (mode) {
+      case ONCE_PER_FRAME:
+        check = true;
+        break;
+      case SAMPLED:
+        check = frameNumber % samplePeriod == 0;
+        break;
+      default:
+        // Every call was already checked, or nothing should be.
+        check = false;
+        break;
+    }
+    if (check) {
+      drainErrors(/*errorCodes=*/ null);
+    }
+    ++frameNumber;
+    return frameErrorCount;
+  }
+
+  /** Returns the number of errors seen in the current (or just ended) frame. */
+  public int getFrameErrorCount() {
+    return frameErrorCount;
+  }
+
+  /** Returns how many times {@code errorCode} was seen in the current (or just ended) frame. */
+  public int getFrameErrorCount(int errorCode) {
+    return frameErrorCounts[bucket(errorCode)];
+  }
+
+  /** Returns the number of errors seen since this policy was created. */
+  public long getTotalErrorCount() {
+    return totalErrorCount;
+  }
+
+  private int drainErrors(int[] errorCodes) {
+    int count = 0;
+    int errorCode;
+    while ((errorCode = errorSource.getError()) != NO_ERROR) {
+      if (errorCodes != null && count < errorCodes.length) {
+        errorCodes[count] = errorCode;
+      }
+      ++count;
+      ++frameErrorCounts[bucket(errorCode)];
+    }
+    frameErrorCount += count;
+    totalErrorCount += count;
+    return errorCodes == null ? count : Math.min(count, errorCodes.length);
+  }
+
+  private static int bucket(int errorCode) {
+    int bucket = errorCode - FIRST_ERROR_CODE;
+    return bucket >= 0 && bucket < ERROR_CODE_BUCKETS - 1 ? bucket : ERROR_CODE_BUCKETS - 1;
+  }
+}
@@ -0,0 +1,214 @@
+package com.example.artech.geoapi.common.samplerender;
+
+/**
+ * Shadows the GL state that {@link SampleRender} changes on every draw, and skips calls that would
+ * set a value that is already current.
+ *
+ * <p>The tracked state is the framebuffer binding, viewport, current program, blend functions,
+ * depth write mask, depth test, scissor test and scissor box. Anything that changes this state
+ * behind the cache's back must call {@link #invalidate}, after which the next call of each kind is
+ * always issued.
+ *
+ * <p>Calls are forwarded to a {@link Backend}, so the tracking logic does not depend on OpenGL and
+ * can be tested on the JVM.
+ */
+public class GLStateCache {
+  /** Receives the state changes that were not skipped. */
+  public interface Backend {
+    void bindFramebuffer(int framebufferId);
+
+    void viewport(int x, int y, int width, int height);
+
+    void useProgram(int programId);
+
+    void blendFuncSeparate(int sourceRgb, int destRgb, int sourceAlpha, int destAlpha);
+
+    void depthMask(boolean depthWrite);
+
+    void depthTest(boolean depthTest);
+
+    void scissorTest(boolean scissorTest);
+
+    void scissor(int x, int y, int width, int height);
+  }
+
+  /** The kinds of call tracked by this cache, used to query the profiling counters. */
+  public enum Call {
+    BIND_FRAMEBUFFER,
+    VIEWPORT,
+    USE_PROGRAM,
+    BLEND_FUNC,
+    DEPTH_MASK,
+    DEPTH_TEST,
+    SCISSOR_TEST,
+    SCISSOR
+  }
+
+  private final Backend backend;
+  private final long[] issued = new long[Call.values().length];
+  private final long[] skipped = new long[Call.values().length];
+
+  // Validity is tracked separately from the values so that any value is issued after invalidation.
+  private final boolean[] valid = new boolean[Call.values().length];
+  private int framebufferId;
+  private int viewportX;
+  private int viewportY;
+  private int viewportWidth;
+  private int viewportHeight;
+  private int programId;
+  private int sourceRgbBlend;
+  private int destRgbBlend;
+  private int sourceAlphaBlend;
+  private int destAlphaBlend;
+  private boolean depthWrite;
+  private boolean depthTest;
+  private boolean scissorTest;
+  private int scissorX;
+  private int scissorY;
+  private int scissorWidth;
+  private int scissorHeight;
+
+  public GLStateCache(Backend backend) {
+    this.backend = backend;
+  }
+
+  /** Forgets all shadowed state, for example after the GL context was recreated. */
+  public void invalidate() {
+    for (int i = 0; i < valid.length; ++i) {
+      valid[i] = false;
+    }
+  }
+
+  public void bindFramebuffer(int framebufferId) {
+    if (isCurrent(Call.BIND_FRAMEBUFFER, this.framebufferId == framebufferId)) {
+      return;
+    }
+    backend.bindFramebuffer(framebufferId);
+    this.framebufferId = framebufferId;
+  }
+
+  public void viewport(int x, int y, int width, int height) {
+    if (isCurrent(
+        Call.VIEWPORT,
+        viewportX == x && viewportY == y && viewportWidth == width && viewportHeight == height)) {
+      return;
+    }
+    backend.viewport(x, y, width, height);
+    viewportX = x;
+    viewportY = y;
+    viewportWidth = width;
+    viewportHeight = height;
+  }
+
+  public void useProgram(int programId) {
+    if (isCurrent(Call.USE_PROGRAM, this.programId == programId)) {
+      return;
+    }
+    backend.useProgram(programId);
+    this.programId = programId;
+  }
+
+  public void blendFuncSeparate(int sourceRgb, int destRgb, int sourceAlpha, int destAlpha) {
+    if (isCurrent(
+        Call.BLEND_FUNC,
+        sourceRgbBlend == sourceRgb
+            && destRgbBlend == destRgb
+            && sourceAlphaBlend == sourceAlpha
+            && destAlphaBlend == destAlpha)) {
+      return;
+    }
+    backend.blendFuncSeparate(sourceRgb, destRgb, sourceAlpha, destAlpha);
+    sourceRgbBlend = sourceRgb;
+    destRgbBlend = destRgb;
+    sourceAlphaBlend = sourceAlpha;
+    destAlphaBlend = destAlpha;
+  }
+
+  public void depthMask(boolean depthWrite) {
+    if (isCurrent(Call.DEPTH_MASK, this.depthWrite == depthWrite)) {
+      return;
+    }
+    backend.depthMask(depthWrite);
+    this.depthWrite = depthWrite;
+  }
+
+  public void depthTest(boolean depthTest) {
+    if (isCurrent(Call.DEPTH_TEST, this.depthTest == depthTest)) {
+      return;
+    }
+    backend.depthTest(depthTest);
+    this.depthTest = depthTest;
+  }
+
+  public void scissorTest(boolean scissorTest) {
+    if (isCurrent(Call.SCISSOR_TEST, this.scissorTest == scissorTest)) {
+      return;
+    }
+    backend.scissorTest(scissorTest);
+    this.scissorTest = scissorTest;
+  }
+
+  public void scissor(int x, int y, int width, int height) {
+    if (isCurrent(
+        Call.SCISSOR,
+        scissorX == x && scissorY == y && scissorWidth == width && scissorHeight == height)) {
+      return;
+    }
+    backend.scissor(x, y, width, height);
+    scissorX = x;
+    scissorY = y;
+    scissorWidth = width;
+    scissorHeight = height;
+  }
+
+  /** Returns how many calls of the given kind were forwarded to the backend. */
+  public long getIssuedCount(Call call) {
+    return issued[call.ordinal()];
+  }
+
+  /** Returns how many calls of the given kind were skipped as redundant. */
+  public long getSkippedCount(Call call) {
+    return skipped[call.ordinal()];
+  }
+
+  /** Returns how many calls of any kind were forwarded to the backend. */
+  public long getIssuedCount() {
+    return sum(issued);
+  }
+
+  /** Returns how many calls of any kind were skipped as redundant. */
+  public long getSkippedCount() {
+    return sum(skipped);
+  }
+
+  /** Resets the issued and skipped counters without affecting the shadowed state. */
+  public void resetCounters() {
+    for (int i = 0; i < issued.length; ++i) {
+      issued[i] = 0;
+      skipped[i] = 0;
+    }
+  }
+
+  /**
+   * Updates the counters and returns whether the call can be skipped. A call that is not skipped
+   * makes its state valid; the caller stores the new value.
+   */
+  private boolean isCurrent(Call call, boolean sameValue) {
+    int index = call.ordinal();
+    if (valid[index] && sameValue) {
+      ++skipped[index];
+      return true;
+    }
+    ++issued[index];
+    valid[index] = true;
+    return false;
+  }
+
+  private static long sum(long[] counts) {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    return total;
+  }
+}
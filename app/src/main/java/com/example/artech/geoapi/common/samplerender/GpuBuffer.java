@@ -16,7 +16,7 @@ import java.nio.Buffer;
   The class has several private fields, including target which specifies the target of the buffer object
   (e.g., GLES30.GL_ARRAY_BUFFER for vertex data), numberOfBytesPerEntry which specifies the number of bytes
   per entry in the buffer, bufferId which stores the ID of the buffer object, size which stores the current
-  size of the buffer in entries, and capacity which stores the current capacity of the buffer in entries.
+  size of the buffer in entries, and capacityBytes which stores the current capacity of the buffer in bytes.
 
   The class has a constructor that takes a target, number of bytes per entry, and a buffer of entries.
   The constructor generates a new buffer object and binds it to the target specified by the constructor.
@@ -38,12 +38,13 @@ class GpuBuffer {
   // These values refer to the byte count of the corresponding Java datatypes.
   public static final int INT_SIZE = 4;
   public static final int FLOAT_SIZE = 4;
+  public static final int SHORT_SIZE = 2;
 
   private final int target;
-  private final int numberOfBytesPerEntry;
+  private int numberOfBytesPerEntry;
   private final int[] bufferId = {0};
   private int size;
-  private int capacity;
+  private int capacityBytes;
 
   public GpuBuffer(int target, int numberOfBytesPerEntry, Buffer entries) {
     if (entries != null) {
@@ -61,10 +62,10 @@ class GpuBuffer {
     this.numberOfBytesPerEntry = numberOfBytesPerEntry;
     if (entries == null) {
       this.size = 0;
-      this.capacity = 0;
+      this.capacityBytes = 0;
     } else {
       this.size = entries.limit();
-      this.capacity = entries.limit();
+      this.capacityBytes = entries.limit() * numberOfBytesPerEntry;
     }
 
     try {
@@ -91,10 +92,19 @@ class GpuBuffer {
   }
 
   public void set(Buffer entries) {
+    set(entries, numberOfBytesPerEntry);
+  }
+
+  /**
+   * Replaces the contents with {@code entries}, whose entries may have a different size than the
+   * current ones. The GL buffer name is kept, so existing vertex array bindings remain valid.
+   */
+  public void set(Buffer entries, int numberOfBytesPerEntry) {
     // Some GPU drivers will fail with out of memory errors if glBufferData or glBufferSubData is
     // called with a size of 0, so avoid this case.
     if (entries == null || entries.limit() == 0) {
       size = 0;
+      this.numberOfBytesPerEntry = numberOfBytesPerEntry;
       return;
     }
     if (!entries.isDirect()) {
@@ -105,17 +115,17 @@ class GpuBuffer {
 
     entries.rewind();
 
-    if (entries.limit() <= capacity) {
-      GLES30.glBufferSubData(target, 0, entries.limit() * numberOfBytesPerEntry, entries);
+    int sizeBytes = entries.limit() * numberOfBytesPerEntry;
+    if (sizeBytes <= capacityBytes) {
+      GLES30.glBufferSubData(target, 0, sizeBytes, entries);
       GLError.maybeThrowGLException("Failed to populate vertex buffer object", "glBufferSubData");
-      size = entries.limit();
     } else {
-      GLES30.glBufferData(
-          target, entries.limit() * numberOfBytesPerEntry, entries, GLES30.GL_DYNAMIC_DRAW);
+      GLES30.glBufferData(target, sizeBytes, entries, GLES30.GL_DYNAMIC_DRAW);
       GLError.maybeThrowGLException("Failed to populate vertex buffer object", "glBufferData");
-      size = entries.limit();
-      capacity = entries.limit();
+      capacityBytes = sizeBytes;
     }
+    size = entries.limit();
+    this.numberOfBytesPerEntry = numberOfBytesPerEntry;
   }
 
   public void free() {
@@ -0,0 +1,69 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hands work that needs the GL context, such as uploading decoded assets, from background threads
+ * to the GL thread.
+ *
+ * <p>Any thread may {@link #post} an upload. The GL thread calls {@link #drain} once per frame with
+ * a time budget; uploads run in the order they were posted until the budget is used up, and the rest
+ * wait for the next frame. At least one upload runs per drain, so a single upload larger than the
+ * budget cannot stall the queue.
+ *
+ * <p>This class does not touch OpenGL, so it can be exercised on the JVM.
+ */
+public class GpuUploadQueue {
+  /** Work to run on the GL thread. */
+  public interface Upload {
+    void run();
+  }
+
+  /** Source of monotonic time in nanoseconds, normally {@link System#nanoTime}. */
+  public interface Clock {
+    long nanoTime();
+  }
+
+  private final ConcurrentLinkedQueue<Upload> pending = new ConcurrentLinkedQueue<>();
+  private final Clock clock;
+
+  public GpuUploadQueue() {
+    this(System::nanoTime);
+  }
+
+  public GpuUploadQueue(Clock clock) {
+    this.clock = clock;
+  }
+
+  /** Queues {@code upload} to run on the GL thread. May be called from any thread. */
+  public void post(Upload upload) {
+    pending.add(upload);
+  }
+
+  /**
+   * Runs queued uploads on the calling (GL) thread until {@code budgetNanos} have elapsed.
+   *
+   * @return the number of uploads that ran
+   */
+  public int drain(long budgetNanos) {
+    long start = clock.nanoTime();
+    int count = 0;
+    Upload upload;
+    while ((count == 0 || clock.nanoTime() - start < budgetNanos)
+        && (upload = pending.poll()) != null) {
+      ++count;
+      upload.run();
+    }
+    return count;
+  }
+
+  /** Returns whether uploads are waiting to run. */
+  public boolean isEmpty() {
+    return pending.isEmpty();
+  }
+
+  /** Drops every upload that has not run yet, for example when the GL context was lost. */
+  public void clear() {
+    pending.clear();
+  }
+}
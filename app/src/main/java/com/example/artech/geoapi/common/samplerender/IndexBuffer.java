@@ -3,7 +3,10 @@ package com.example.artech.geoapi.common.samplerender;
 
 import android.opengl.GLES30;
 import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 
 
 /*
@@ -11,18 +14,17 @@ import java.nio.IntBuffer;
   This is a Java class called IndexBuffer which represents an OpenGL ES index buffer. It contains a
   single field buffer of type GpuBuffer, which represents the actual buffer stored on the GPU.
 
-  The class provides two constructors, one of which takes a SampleRender object and an IntBuffer of indices.
-  The other constructor is not visible outside the package and takes a GpuBuffer object as a parameter.
-  The second constructor is used to create a new IndexBuffer instance from an existing buffer, which is
-  useful when multiple index buffers need to share the same data.
+  The class provides two constructors, one taking an IntBuffer of indices and one taking a ShortBuffer.
+  When every index in an IntBuffer fits into 16 bits, it is narrowed and stored as GL_UNSIGNED_SHORT,
+  which halves the index bandwidth for small meshes such as the geospatial marker.
 
   The class provides a set method to populate the buffer with new data. The set method takes an IntBuffer of
   indices and updates the GPU buffer with the contents of the buffer. If the size of the new data is larger
   than the capacity of the existing buffer, a new buffer is allocated automatically.
 
-  The close method frees the GPU buffer. The getBufferId and getSize methods are package-private and used by
-  other classes within the same package. getBufferId returns the OpenGL ES buffer ID associated with this IndexBuffer,
-  and getSize returns the number of indices stored in the buffer.
+  The close method frees the GPU buffer. The getBufferId, getSize and getGlType methods are package-private and
+  used by other classes within the same package. getBufferId returns the OpenGL ES buffer ID associated with this
+  IndexBuffer, getSize returns the number of indices stored in the buffer, and getGlType returns the index type.
 
 */
 
@@ -37,7 +39,11 @@ import java.nio.IntBuffer;
  *     href="https://www.khronos.org/registry/OpenGL-Refpages/es3.0/html/glDrawElements.xhtml">glDrawElements</a>
  */
 public class IndexBuffer implements Closeable {
+  /** Largest index that still fits into a {@code GL_UNSIGNED_SHORT}. */
+  private static final int MAX_SHORT_INDEX = 0xFFFF;
+
   private final GpuBuffer buffer;
+  private int glType;
 
   /**
    * Construct an {@link IndexBuffer} populated with initial data.
@@ -46,11 +52,31 @@ public class IndexBuffer implements Closeable {
    * starting from the beginning of the buffer (not the current cursor position). The cursor will be
    * left in an undefined position after this function returns.
    *
+   * <p>If every index fits into 16 bits, the data is narrowed and stored as {@code
+   * GL_UNSIGNED_SHORT}, halving the index bandwidth of each draw. Otherwise it is stored as {@code
+   * GL_UNSIGNED_INT}.
+   *
    * <p>The {@code entries} buffer may be null, in which case an empty buffer is constructed
    * instead.
    */
   public IndexBuffer(SampleRender render, IntBuffer entries) {
-    buffer = new GpuBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, GpuBuffer.INT_SIZE, entries);
+    ShortBuffer narrowed = narrowIfPossible(entries);
+    if (narrowed != null) {
+      glType = GLES30.GL_UNSIGNED_SHORT;
+      buffer = new GpuBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, GpuBuffer.SHORT_SIZE, narrowed);
+    } else {
+      glType = GLES30.GL_UNSIGNED_INT;
+      buffer = new GpuBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, GpuBuffer.INT_SIZE, entries);
+    }
+  }
+
+  /**
+   * Construct an {@link IndexBuffer} of {@code GL_UNSIGNED_SHORT} indices populated with initial
+   * data. Values are interpreted as unsigned.
+   */
+  public IndexBuffer(SampleRender render, ShortBuffer entries) {
+    glType = GLES30.GL_UNSIGNED_SHORT;
+    buffer = new GpuBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, GpuBuffer.SHORT_SIZE, entries);
   }
 
   /**
@@ -60,12 +86,26 @@ public class IndexBuffer implements Closeable {
    * starting from the beginning of the buffer, not the current cursor position. The cursor will be
    * left in an undefined position after this function returns.
    *
-   * <p>The GPU buffer is reallocated automatically if necessary.
+   * <p>The GPU buffer is reallocated automatically if necessary, and the index type is chosen
+   * again as described in {@link #IndexBuffer(SampleRender, IntBuffer)}.
    *
    * <p>The {@code entries} buffer may be null, in which case the buffer will become empty.
    */
   public void set(IntBuffer entries) {
-    buffer.set(entries);
+    ShortBuffer narrowed = narrowIfPossible(entries);
+    if (narrowed != null) {
+      buffer.set(narrowed, GpuBuffer.SHORT_SIZE);
+      glType = GLES30.GL_UNSIGNED_SHORT;
+    } else {
+      buffer.set(entries, GpuBuffer.INT_SIZE);
+      glType = GLES30.GL_UNSIGNED_INT;
+    }
+  }
+
+  /** Populate with new {@code GL_UNSIGNED_SHORT} data. */
+  public void set(ShortBuffer entries) {
+    buffer.set(entries, GpuBuffer.SHORT_SIZE);
+    glType = GLES30.GL_UNSIGNED_SHORT;
   }
 
   @Override
@@ -82,4 +122,36 @@ public class IndexBuffer implements Closeable {
   int getSize() {
     return buffer.getSize();
   }
+
+  /** Returns the index type to pass to {@code glDrawElements}. */
+  /* package-private */
+  int getGlType() {
+    return glType;
+  }
+
+  /**
+   * Returns {@code entries} converted to a direct {@link ShortBuffer} if every index is at most
+   * {@code 0xFFFF}, or null if the indices need 32 bits (or there are none).
+   */
+  /* package-private */
+  static ShortBuffer narrowIfPossible(IntBuffer entries) {
+    if (entries == null || entries.limit() == 0) {
+      return null;
+    }
+    int count = entries.limit();
+    for (int i = 0; i < count; ++i) {
+      int index = entries.get(i);
+      if (index < 0 || index > MAX_SHORT_INDEX) {
+        return null;
+      }
+    }
+    ShortBuffer result =
+        ByteBuffer.allocateDirect(count * GpuBuffer.SHORT_SIZE)
+            .order(ByteOrder.nativeOrder())
+            .asShortBuffer();
+    for (int i = 0; i < count; ++i) {
+      result.put(i, (short) entries.get(i));
+    }
+    return result;
+  }
 }
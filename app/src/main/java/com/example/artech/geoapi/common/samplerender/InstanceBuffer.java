@@ -0,0 +1,79 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import android.opengl.GLES30;
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Per-instance model-view matrices stored GPU-side, for drawing one {@link Mesh} many times with
+ * {@link SampleRender#drawInstanced}.
+ *
+ * <p>The buffer is sized for a fixed number of instances up front. Each {@link #update} packs the
+ * matrices into the same staging arrays and uploads them in place with {@code glBufferSubData}, so
+ * updating every frame neither allocates nor reallocates GPU memory.
+ *
+ * <p>Attach the buffer to a mesh with {@link Mesh#setInstanceBuffer}; the matrix then feeds a
+ * {@code mat4} vertex attribute, which takes four consecutive locations.
+ */
+public class InstanceBuffer implements Closeable {
+  /** Attribute locations taken by the per-instance matrix. */
+  public static final int LOCATION_COUNT = 4;
+
+  /* package-private */
+  static final int STRIDE_BYTES = InstanceMatrices.FLOATS_PER_MATRIX * GpuBuffer.FLOAT_SIZE;
+
+  private final GpuBuffer buffer;
+  private final float[] packed;
+  private final FloatBuffer entries;
+  private int instanceCount;
+
+  /** Constructs an empty {@link InstanceBuffer} with room for {@code capacity} instances. */
+  public InstanceBuffer(SampleRender render, int capacity) {
+    packed = new float[capacity * InstanceMatrices.FLOATS_PER_MATRIX];
+    entries =
+        ByteBuffer.allocateDirect(packed.length * GpuBuffer.FLOAT_SIZE)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+    // Allocate the full capacity once so updates only ever use glBufferSubData.
+    buffer = new GpuBuffer(GLES30.GL_ARRAY_BUFFER, GpuBuffer.FLOAT_SIZE, entries);
+  }
+
+  public int getCapacity() {
+    return packed.length / InstanceMatrices.FLOATS_PER_MATRIX;
+  }
+
+  /** Returns the number of instances uploaded by the last {@link #update}. */
+  public int getInstanceCount() {
+    return instanceCount;
+  }
+
+  /**
+   * Uploads {@code viewMatrix * modelMatrices[i]} for the first {@code count} packed model
+   * matrices, as many as fit.
+   *
+   * @return the number of instances uploaded
+   */
+  public int update(float[] viewMatrix, float[] modelMatrices, int count) {
+    count = Math.min(count, getCapacity());
+    InstanceMatrices.packModelView(viewMatrix, modelMatrices, count, packed);
+    int floats = count * InstanceMatrices.FLOATS_PER_MATRIX;
+    entries.clear();
+    entries.put(packed, 0, floats);
+    entries.flip();
+    buffer.set(entries);
+    instanceCount = count;
+    return count;
+  }
+
+  @Override
+  public void close() {
+    buffer.free();
+  }
+
+  /* package-private */
+  int getBufferId() {
+    return buffer.getBufferId();
+  }
+}
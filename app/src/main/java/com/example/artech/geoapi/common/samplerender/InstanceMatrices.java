@@ -0,0 +1,45 @@
+package com.example.artech.geoapi.common.samplerender;
+
+/**
+ * Packs per-instance transforms for {@link SampleRender#drawInstanced}.
+ *
+ * <p>Matrices are column-major 4x4, as used by {@link android.opengl.Matrix}, stored back to back
+ * in a float array. Instances get their model-view matrix rather than their model matrix: the
+ * translation is then relative to the camera and stays small, so the float math on the GPU keeps
+ * its precision however far the session has wandered from its origin.
+ *
+ * <p>This class does not touch OpenGL and does not allocate.
+ */
+public final class InstanceMatrices {
+  public static final int FLOATS_PER_MATRIX = 16;
+
+  /**
+   * Writes {@code viewMatrix * modelMatrices[i]} to {@code out[i]} for each of the first {@code
+   * count} matrices.
+   */
+  public static void packModelView(
+      float[] viewMatrix, float[] modelMatrices, int count, float[] out) {
+    for (int i = 0; i < count; ++i) {
+      int offset = i * FLOATS_PER_MATRIX;
+      multiply(viewMatrix, modelMatrices, offset, out, offset);
+    }
+  }
+
+  /** Writes {@code lhs * rhs[rhsOffset]} to {@code out[outOffset]}. */
+  /* package-private */
+  static void multiply(
+      float[] lhs, float[] rhs, int rhsOffset, float[] out, int outOffset) {
+    for (int column = 0; column < 4; ++column) {
+      float x = rhs[rhsOffset + column * 4];
+      float y = rhs[rhsOffset + column * 4 + 1];
+      float z = rhs[rhsOffset + column * 4 + 2];
+      float w = rhs[rhsOffset + column * 4 + 3];
+      for (int row = 0; row < 4; ++row) {
+        out[outOffset + column * 4 + row] =
+            lhs[row] * x + lhs[4 + row] * y + lhs[8 + row] * z + lhs[12 + row] * w;
+      }
+    }
+  }
+
+  private InstanceMatrices() {}
+}
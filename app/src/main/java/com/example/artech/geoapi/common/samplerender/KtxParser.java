@@ -0,0 +1,303 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import android.opengl.GLES30;
+import android.opengl.GLES31Ext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads GPU-compressed 2D textures with precomputed mip chains from KTX 1.1 and KTX 2.0 containers.
+ *
+ * <p>Supported formats are ETC2/EAC, which every OpenGL ES 3.0 device can sample, and ASTC LDR,
+ * which needs {@code GL_KHR_texture_compression_astc_ldr}. Array, cube map, 3D, uncompressed and
+ * supercompressed textures are rejected.
+ *
+ * <p>The returned {@link TextureData} slices the source buffer, so reading a direct buffer does not
+ * copy the image data. Only constants are used from the GL classes, so this can run on the JVM.
+ *
+ * @see <a href="https://registry.khronos.org/KTX/specs/1.0/ktxspec.v1.html">KTX 1.1</a>
+ * @see <a href="https://registry.khronos.org/KTX/specs/2.0/ktxspec.v2.html">KTX 2.0</a>
+ */
+public class KtxParser {
+  /** File extension of KTX 1.1 files. */
+  public static final String KTX1_EXTENSION = ".ktx";
+
+  /** File extension of KTX 2.0 files. */
+  public static final String KTX2_EXTENSION = ".ktx2";
+
+  private static final byte[] KTX1_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final byte[] KTX2_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final int KTX1_ENDIANNESS = 0x04030201;
+  /* package-private */ static final int KTX1_HEADER_SIZE = 64;
+  /* package-private */ static final int KTX2_HEADER_SIZE = 80;
+  /* package-private */ static final int KTX2_LEVEL_INDEX_ENTRY_SIZE = 24;
+
+  // VK_FORMAT_ETC2_R8G8B8_UNORM_BLOCK through VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK, alternating
+  // UNORM and SRGB.
+  private static final int VK_FORMAT_ETC2_FIRST = 147;
+  private static final int[] ETC2_GL_FORMATS = {
+    GLES30.GL_COMPRESSED_RGB8_ETC2,
+    GLES30.GL_COMPRESSED_SRGB8_ETC2,
+    GLES30.GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2,
+    GLES30.GL_COMPRESSED_SRGB8_PUNCHTHROUGH_ALPHA1_ETC2,
+    GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC,
+    GLES30.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC,
+  };
+
+  // VK_FORMAT_ASTC_4x4_UNORM_BLOCK through VK_FORMAT_ASTC_12x12_SRGB_BLOCK, alternating UNORM and
+  // SRGB, in the same block size order as the GL formats.
+  private static final int VK_FORMAT_ASTC_FIRST = 157;
+  private static final int[][] ASTC_BLOCK_SIZES = {
+    {4, 4}, {5, 4}, {5, 5}, {6, 5}, {6, 6}, {8, 5}, {8, 6}, {8, 8}, {10, 5}, {10, 6}, {10, 8},
+    {10, 10}, {12, 10}, {12, 12}
+  };
+  private static final int ASTC_LINEAR_FIRST = GLES31Ext.GL_COMPRESSED_RGBA_ASTC_4x4_KHR;
+  private static final int ASTC_SRGB_FIRST = GLES31Ext.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR;
+
+  /** Returns whether {@code buffer}, at its position, starts like a KTX 1.1 or 2.0 file. */
+  public static boolean isKtx(ByteBuffer buffer) {
+    return startsWith(buffer, KTX1_IDENTIFIER) || startsWith(buffer, KTX2_IDENTIFIER);
+  }
+
+  /**
+   * Parses a KTX 1.1 or 2.0 file.
+   *
+   * @throws IOException if the file is malformed or holds something other than a compressed 2D
+   *     texture in a supported format
+   */
+  public static TextureData parse(ByteBuffer buffer) throws IOException {
+    if (startsWith(buffer, KTX1_IDENTIFIER)) {
+      return parseKtx1(buffer);
+    }
+    if (startsWith(buffer, KTX2_IDENTIFIER)) {
+      return parseKtx2(buffer);
+    }
+    throw new IOException("Not a KTX file");
+  }
+
+  /** Returns whether {@code glFormat} is one of the ASTC formats. */
+  public static boolean isAstc(int glFormat) {
+    return astcIndex(glFormat) >= 0;
+  }
+
+  /**
+   * Returns the sRGB or linear counterpart of a compressed format, so that one file can serve both
+   * {@link Texture.ColorFormat}s. Unknown formats are returned unchanged.
+   */
+  public static int withColorSpace(int glFormat, boolean srgb) {
+    for (int i = 0; i < ETC2_GL_FORMATS.length; i += 2) {
+      if (glFormat == ETC2_GL_FORMATS[i] || glFormat == ETC2_GL_FORMATS[i + 1]) {
+        return ETC2_GL_FORMATS[srgb ? i + 1 : i];
+      }
+    }
+    int astcIndex = astcIndex(glFormat);
+    if (astcIndex >= 0) {
+      return (srgb ? ASTC_SRGB_FIRST : ASTC_LINEAR_FIRST) + astcIndex;
+    }
+    return glFormat;
+  }
+
+  /**
+   * Returns the number of bytes of one level of a compressed format, or -1 if the format is not
+   * supported.
+   */
+  public static int getLevelSize(int glFormat, int width, int height) {
+    int blockWidth;
+    int blockHeight;
+    int bytesPerBlock;
+    int astcIndex = astcIndex(glFormat);
+    if (astcIndex >= 0) {
+      blockWidth = ASTC_BLOCK_SIZES[astcIndex][0];
+      blockHeight = ASTC_BLOCK_SIZES[astcIndex][1];
+      bytesPerBlock = 16;
+    } else if (glFormat == GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC
+        || glFormat == GLES30.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC) {
+      blockWidth = 4;
+      blockHeight = 4;
+      bytesPerBlock = 16;
+    } else if (etc2Index(glFormat) >= 0) {
+      blockWidth = 4;
+      blockHeight = 4;
+      bytesPerBlock = 8;
+    } else {
+      return -1;
+    }
+    int blocksWide = (width + blockWidth - 1) / blockWidth;
+    int blocksHigh = (height + blockHeight - 1) / blockHeight;
+    return blocksWide * blocksHigh * bytesPerBlock;
+  }
+
+  private static TextureData parseKtx1(ByteBuffer source) throws IOException {
+    ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int base = buffer.position();
+    if (buffer.remaining() < KTX1_HEADER_SIZE) {
+      throw new IOException("KTX header is truncated");
+    }
+    buffer.position(base + KTX1_IDENTIFIER.length);
+    int endianness = buffer.getInt();
+    if (endianness != KTX1_ENDIANNESS) {
+      buffer.order(ByteOrder.BIG_ENDIAN);
+      buffer.position(base + KTX1_IDENTIFIER.length);
+      if (buffer.getInt() != KTX1_ENDIANNESS) {
+        throw new IOException("Bad KTX endianness marker");
+      }
+    }
+    int glType = buffer.getInt();
+    buffer.getInt(); // glTypeSize
+    buffer.getInt(); // glFormat
+    int glInternalFormat = buffer.getInt();
+    buffer.getInt(); // glBaseInternalFormat
+    int width = buffer.getInt();
+    int height = buffer.getInt();
+    int depth = buffer.getInt();
+    int arrayElements = buffer.getInt();
+    int faces = buffer.getInt();
+    int levelCount = Math.max(1, buffer.getInt());
+    int keyValueBytes = buffer.getInt();
+    if (glType != 0) {
+      throw new IOException("Only compressed KTX textures are supported");
+    }
+    checkShape(width, height, depth, arrayElements, faces == 1 ? 0 : faces, glInternalFormat);
+
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    long offset = (long) base + KTX1_HEADER_SIZE + toUnsigned(keyValueBytes);
+    for (int level = 0; level < levelCount; ++level) {
+      if (offset + 4 > buffer.limit()) {
+        throw new IOException("KTX file is truncated");
+      }
+      long imageSize = toUnsigned(buffer.getInt((int) offset));
+      levels[level] =
+          sliceLevel(buffer, offset + 4, imageSize, glInternalFormat, width, height, level);
+      // Each image is followed by padding to a multiple of four bytes.
+      offset += 4 + ((imageSize + 3) & ~3L);
+    }
+    return new TextureData(width, height, glInternalFormat, levels);
+  }
+
+  private static TextureData parseKtx2(ByteBuffer source) throws IOException {
+    ByteBuffer buffer = source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int base = buffer.position();
+    if (buffer.remaining() < KTX2_HEADER_SIZE) {
+      throw new IOException("KTX2 header is truncated");
+    }
+    buffer.position(base + KTX2_IDENTIFIER.length);
+    int vkFormat = buffer.getInt();
+    buffer.getInt(); // typeSize
+    int width = buffer.getInt();
+    int height = buffer.getInt();
+    int depth = buffer.getInt();
+    int layers = buffer.getInt();
+    int faces = buffer.getInt();
+    int levelCount = Math.max(1, buffer.getInt());
+    int supercompressionScheme = buffer.getInt();
+    if (supercompressionScheme != 0) {
+      throw new IOException("Supercompressed KTX2 textures are not supported");
+    }
+    int glInternalFormat = vkFormatToGl(vkFormat);
+    checkShape(width, height, depth, layers, faces == 1 ? 0 : faces, glInternalFormat);
+
+    int levelIndex = base + KTX2_HEADER_SIZE;
+    if ((long) levelIndex + (long) levelCount * KTX2_LEVEL_INDEX_ENTRY_SIZE > buffer.limit()) {
+      throw new IOException("KTX2 level index is truncated");
+    }
+    ByteBuffer[] levels = new ByteBuffer[levelCount];
+    for (int level = 0; level < levelCount; ++level) {
+      int entry = levelIndex + level * KTX2_LEVEL_INDEX_ENTRY_SIZE;
+      long byteOffset = buffer.getLong(entry);
+      long byteLength = buffer.getLong(entry + 8);
+      if (byteOffset < 0) {
+        throw new IOException("KTX2 level offset out of range");
+      }
+      levels[level] =
+          sliceLevel(buffer, base + byteOffset, byteLength, glInternalFormat, width, height, level);
+    }
+    return new TextureData(width, height, glInternalFormat, levels);
+  }
+
+  private static void checkShape(
+      int width, int height, int depth, int layers, int extraFaces, int glInternalFormat)
+      throws IOException {
+    if (width <= 0 || height <= 0) {
+      throw new IOException("Only 2D KTX textures are supported");
+    }
+    if (depth > 1 || layers > 0 || extraFaces != 0) {
+      throw new IOException("Only 2D KTX textures without arrays or faces are supported");
+    }
+    if (getLevelSize(glInternalFormat, 1, 1) < 0) {
+      throw new IOException(
+          "Unsupported KTX texture format 0x" + Integer.toHexString(glInternalFormat));
+    }
+  }
+
+  private static ByteBuffer sliceLevel(
+      ByteBuffer buffer, long offset, long length, int glFormat, int width, int height, int level)
+      throws IOException {
+    int levelWidth = Math.max(1, width >> level);
+    int levelHeight = Math.max(1, height >> level);
+    if (length != getLevelSize(glFormat, levelWidth, levelHeight)) {
+      throw new IOException("KTX level " + level + " has an unexpected size " + length);
+    }
+    if (offset + length > buffer.limit()) {
+      throw new IOException("KTX file is truncated");
+    }
+    ByteBuffer view = buffer.duplicate();
+    view.limit((int) (offset + length)).position((int) offset);
+    return view.slice();
+  }
+
+  private static int vkFormatToGl(int vkFormat) throws IOException {
+    int etc2Index = vkFormat - VK_FORMAT_ETC2_FIRST;
+    if (etc2Index >= 0 && etc2Index < ETC2_GL_FORMATS.length) {
+      return ETC2_GL_FORMATS[etc2Index];
+    }
+    int astcIndex = vkFormat - VK_FORMAT_ASTC_FIRST;
+    if (astcIndex >= 0 && astcIndex < ASTC_BLOCK_SIZES.length * 2) {
+      boolean srgb = astcIndex % 2 == 1;
+      return (srgb ? ASTC_SRGB_FIRST : ASTC_LINEAR_FIRST) + astcIndex / 2;
+    }
+    throw new IOException("Unsupported KTX2 vkFormat " + vkFormat);
+  }
+
+  private static int etc2Index(int glFormat) {
+    for (int i = 0; i < ETC2_GL_FORMATS.length; ++i) {
+      if (ETC2_GL_FORMATS[i] == glFormat) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static int astcIndex(int glFormat) {
+    if (glFormat >= ASTC_LINEAR_FIRST && glFormat < ASTC_LINEAR_FIRST + ASTC_BLOCK_SIZES.length) {
+      return glFormat - ASTC_LINEAR_FIRST;
+    }
+    if (glFormat >= ASTC_SRGB_FIRST && glFormat < ASTC_SRGB_FIRST + ASTC_BLOCK_SIZES.length) {
+      return glFormat - ASTC_SRGB_FIRST;
+    }
+    return -1;
+  }
+
+  private static boolean startsWith(ByteBuffer buffer, byte[] identifier) {
+    if (buffer.remaining() < identifier.length) {
+      return false;
+    }
+    int position = buffer.position();
+    for (int i = 0; i < identifier.length; ++i) {
+      if (buffer.get(position + i) != identifier[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long toUnsigned(int value) {
+    return value & 0xFFFFFFFFL;
+  }
+
+  private KtxParser() {}
+}
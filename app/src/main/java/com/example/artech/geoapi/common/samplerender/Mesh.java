@@ -1,17 +1,13 @@
 
 package com.example.artech.geoapi.common.samplerender;
 
+import android.content.res.AssetManager;
 import android.opengl.GLES30;
 import android.util.Log;
-import de.javagl.obj.Obj;
-import de.javagl.obj.ObjData;
-import de.javagl.obj.ObjReader;
-import de.javagl.obj.ObjUtils;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
 
 
 
@@ -37,6 +33,9 @@ import java.nio.IntBuffer;
   The class implements the Closeable interface, which provides a "close" method to release the OpenGL
   resources used by the mesh.
 
+  A mesh may also have interleaved vertex attributes, several levels of detail, a bounding sphere and an
+  InstanceBuffer to draw many copies with one call.
+
   Finally, the class has a "draw" method which draws the mesh using OpenGL. This method should not be called
   directly; instead, it should be called from the SampleRender class.
 
@@ -77,10 +76,22 @@ public class Mesh implements Closeable {
     }
   }
 
+  /** Layout of the interleaved vertex buffer built by {@link #createFromMeshData}. */
+  public static final VertexLayout MESH_DATA_LAYOUT = new VertexLayout(3, 2, 3);
+
   private final int[] vertexArrayId = {0};
   private final PrimitiveMode primitiveMode;
   private final IndexBuffer indexBuffer;
   private final VertexBuffer[] vertexBuffers;
+  private InstanceBuffer instanceBuffer;
+  private int instanceLocation;
+  // The instance the per-instance attributes currently start at.
+  private int firstInstance;
+  // Level i spans indices [lodFirstIndices[i], lodFirstIndices[i + 1]); null for a single level.
+  private int[] lodFirstIndices;
+  private float[] lodErrors;
+  // Center x, y, z and radius in local coordinates, or null if unknown.
+  private float[] boundingSphere;
 
   /**
    * Construct a {@link Mesh}.
@@ -92,7 +103,9 @@ public class Mesh implements Closeable {
    * <p>The ordering of the {@code vertexBuffers} is significant. Their array indices will
    * correspond to their attribute locations, which must be taken into account in shader code. The
    * <a href="https://www.khronos.org/opengl/wiki/Layout_Qualifier_(GLSL)">layout qualifier</a> must
-   * be used in the vertex shader code to explicitly associate attributes with these indices.
+   * be used in the vertex shader code to explicitly associate attributes with these indices. An
+   * interleaved {@link VertexBuffer} takes one location per attribute of its {@link VertexLayout},
+   * and the following buffers are shifted accordingly.
    */
   public Mesh(
       SampleRender render,
@@ -120,17 +133,23 @@ public class Mesh implements Closeable {
         GLES30.glBindBuffer(GLES30.GL_ELEMENT_ARRAY_BUFFER, indexBuffer.getBufferId());
       }
 
+      int location = 0;
       for (int i = 0; i < vertexBuffers.length; ++i) {
         // Bind each vertex buffer to vertex array
         GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, vertexBuffers[i].getBufferId());
         GLError.maybeThrowGLException("Failed to bind vertex buffer", "glBindBuffer");
-        GLES30.glVertexAttribPointer(
-            i, vertexBuffers[i].getNumberOfEntriesPerVertex(), GLES30.GL_FLOAT, false, 0, 0);
-        GLError.maybeThrowGLException(
-            "Failed to associate vertex buffer with vertex array", "glVertexAttribPointer");
-        GLES30.glEnableVertexAttribArray(i);
-        GLError.maybeThrowGLException(
-            "Failed to enable vertex buffer", "glEnableVertexAttribArray");
+        VertexLayout layout = vertexBuffers[i].getLayout();
+        if (layout == null) {
+          enableAttribute(location++, vertexBuffers[i].getNumberOfEntriesPerVertex(), 0, 0);
+        } else {
+          for (int attribute = 0; attribute < layout.getAttributeCount(); ++attribute) {
+            enableAttribute(
+                location++,
+                layout.getComponentCount(attribute),
+                layout.getStrideBytes(),
+                layout.getOffsetBytes(attribute));
+          }
+        }
       }
     } catch (Throwable t) {
       close();
@@ -144,27 +163,183 @@ public class Mesh implements Closeable {
    * <p>The {@link Mesh} will be constructed with three attributes, indexed in the order of local
    * coordinates (location 0, vec3), texture coordinates (location 1, vec2), and vertex normals
    * (location 2, vec3).
+   *
+   * <p>If {@code assetFileName} ends in {@link BinaryMeshFormat#FILE_EXTENSION} it is loaded as a
+   * binary mesh. Otherwise the OBJ is parsed once, welded and reordered with {@link
+   * MeshOptimizer#optimize}, and a binary copy is kept in the app's code cache, which the system
+   * clears whenever the app is updated, so later launches skip both parsing and optimization.
    */
   public static Mesh createFromAsset(SampleRender render, String assetFileName) throws IOException {
-    try (InputStream inputStream = render.getAssets().open(assetFileName)) {
-      Obj obj = ObjUtils.convertToRenderable(ObjReader.read(inputStream));
+    return createFromMeshData(render, loadMeshData(render, assetFileName, /*optimize=*/ true));
+  }
 
-      // Obtain the data from the OBJ, as direct buffers:
-      IntBuffer vertexIndices = ObjData.getFaceVertexIndices(obj, /*numVerticesPerFace=*/ 3);
-      FloatBuffer localCoordinates = ObjData.getVertices(obj);
-      FloatBuffer textureCoordinates = ObjData.getTexCoords(obj, /*dimensions=*/ 2);
-      FloatBuffer normals = ObjData.getNormals(obj);
+  /**
+   * Constructs a {@link Mesh} from {@link MeshData} with the same attribute layout as {@link
+   * #createFromAsset}.
+   */
+  public static Mesh createFromMeshData(SampleRender render, MeshData meshData) {
+    // All three attributes live in one interleaved buffer, so each vertex fetch touches a single
+    // contiguous 32 byte record.
+    VertexBuffer[] vertexBuffers = {
+      new VertexBuffer(
+          render,
+          MESH_DATA_LAYOUT,
+          MESH_DATA_LAYOUT.interleave(
+              meshData.getPositions(), meshData.getTexCoords(), meshData.getNormals())),
+    };
+
+    IndexBuffer indexBuffer = new IndexBuffer(render, meshData.getIndices());
+
+    Mesh mesh = new Mesh(render, PrimitiveMode.TRIANGLES, indexBuffer, vertexBuffers);
+    mesh.boundingSphere = new float[4];
+    meshData.getBoundingSphere(mesh.boundingSphere);
+    int lodCount = meshData.getLodCount();
+    if (lodCount > 1) {
+      mesh.lodFirstIndices = new int[lodCount + 1];
+      mesh.lodErrors = new float[lodCount];
+      for (int level = 0; level < lodCount; ++level) {
+        mesh.lodFirstIndices[level] = meshData.getLodFirstIndex(level);
+        mesh.lodErrors[level] = meshData.getLodError(level);
+      }
+      mesh.lodFirstIndices[lodCount] = meshData.getIndexCount();
+    }
+    return mesh;
+  }
 
-      VertexBuffer[] vertexBuffers = {
-        new VertexBuffer(render, 3, localCoordinates),
-        new VertexBuffer(render, 2, textureCoordinates),
-        new VertexBuffer(render, 3, normals),
-      };
+  /**
+   * Returns the number of levels of detail, which are drawn with {@link SampleRender#draw(Mesh,
+   * Shader, Framebuffer, int)}. Only meshes created from {@link MeshData} with levels built by
+   * {@link MeshSimplifier#buildLodChain} have more than one. The levels share the vertex buffer and
+   * sit back to back in the index buffer, so drawing one only changes the range of indices drawn.
+   */
+  public int getLodCount() {
+    return lodErrors == null ? 1 : lodErrors.length;
+  }
 
-      IndexBuffer indexBuffer = new IndexBuffer(render, vertexIndices);
+  /**
+   * Returns how far, in local units, a level of detail may stray from the full mesh. See {@link
+   * MeshData#getLodError}.
+   */
+  public float getLodError(int level) {
+    return lodErrors == null ? 0 : lodErrors[level];
+  }
 
-      return new Mesh(render, PrimitiveMode.TRIANGLES, indexBuffer, vertexBuffers);
+  /**
+   * Copies the center x, y, z and radius of a sphere enclosing the mesh, in local coordinates, to
+   * {@code dest}. Only meshes created from {@link MeshData} know their bounds. {@link
+   * FrustumCuller} uses them to skip instances that cannot be seen.
+   *
+   * @return false, leaving {@code dest} untouched, if the bounds are unknown
+   */
+  public boolean getBoundingSphere(float[] dest) {
+    if (boundingSphere == null) {
+      return false;
     }
+    System.arraycopy(boundingSphere, 0, dest, 0, 4);
+    return true;
+  }
+
+  /**
+   * Loads the {@link MeshData} behind {@link #createFromAsset} without touching OpenGL, so it may
+   * be called from any thread.
+   *
+   * @param optimize whether to run {@link MeshOptimizer#optimize} on OBJ assets before caching
+   *     them; binary assets are expected to have been optimized when they were converted
+   * @param lodRatios if given, the triangle ratios of the levels of detail to build for OBJ assets
+   *     with {@link MeshSimplifier#buildLodChain}, starting with 1; cached along with the mesh.
+   *     Binary assets must already hold that many levels, converted by {@link
+   *     BinaryMeshFormat#main} with the same ratios
+   * @throws IOException if a binary asset lacks the requested levels of detail
+   */
+  public static MeshData loadMeshData(
+      SampleRender render, String assetFileName, boolean optimize, float... lodRatios)
+      throws IOException {
+    AssetManager assets = render.getAssets();
+    if (assetFileName.endsWith(BinaryMeshFormat.FILE_EXTENSION)) {
+      MeshData meshData = BinaryMeshFormat.read(AssetBuffers.read(assets, assetFileName));
+      if (lodRatios.length > 1 && meshData.getLodCount() != lodRatios.length) {
+        throw new IOException(
+            assetFileName
+                + " has "
+                + meshData.getLodCount()
+                + " levels of detail, expected "
+                + lodRatios.length
+                + "; convert it with the level of detail ratios");
+      }
+      return meshData;
+    }
+
+    StringBuilder cacheName = new StringBuilder(assetFileName);
+    if (optimize) {
+      cacheName.append(".opt");
+    }
+    if (lodRatios.length > 1) {
+      cacheName.append(".lod");
+      for (float ratio : lodRatios) {
+        cacheName.append('-').append(ratio);
+      }
+    }
+    File cacheFile = getCacheFile(render, cacheName.toString());
+    if (cacheFile != null && cacheFile.isFile()) {
+      try {
+        return BinaryMeshFormat.read(cacheFile);
+      } catch (IOException e) {
+        Log.w(TAG, "Discarding unreadable mesh cache " + cacheFile, e);
+        cacheFile.delete();
+      }
+    }
+
+    MeshData meshData;
+    try (InputStream inputStream = assets.open(assetFileName)) {
+      meshData = MeshData.fromObj(inputStream);
+    }
+    if (optimize) {
+      meshData = MeshOptimizer.optimize(meshData);
+    }
+    if (lodRatios.length > 1) {
+      meshData = MeshSimplifier.buildLodChain(meshData, lodRatios);
+    }
+    if (cacheFile != null) {
+      try {
+        BinaryMeshFormat.write(meshData, cacheFile);
+      } catch (IOException e) {
+        // The cache is only an optimization.
+        Log.w(TAG, "Failed to write mesh cache " + cacheFile, e);
+      }
+    }
+    return meshData;
+  }
+
+  /**
+   * Feeds the per-instance matrices of {@code instanceBuffer} to the {@code mat4} attribute at
+   * {@code location}, which takes {@link InstanceBuffer#LOCATION_COUNT} locations and must come
+   * after the mesh's own attributes. Required before {@link SampleRender#drawInstanced}.
+   */
+  public void setInstanceBuffer(InstanceBuffer instanceBuffer, int location) {
+    if (vertexArrayId[0] == 0) {
+      throw new IllegalStateException("Tried to attach instances to a freed Mesh");
+    }
+    GLES30.glBindVertexArray(vertexArrayId[0]);
+    GLError.maybeThrowGLException("Failed to bind vertex array object", "glBindVertexArray");
+    GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, instanceBuffer.getBufferId());
+    GLError.maybeThrowGLException("Failed to bind instance buffer", "glBindBuffer");
+    for (int column = 0; column < InstanceBuffer.LOCATION_COUNT; ++column) {
+      enableAttribute(
+          location + column, 4, InstanceBuffer.STRIDE_BYTES, column * 4 * GpuBuffer.FLOAT_SIZE);
+      GLES30.glVertexAttribDivisor(location + column, 1);
+      GLError.maybeThrowGLException(
+          "Failed to make vertex attribute per-instance", "glVertexAttribDivisor");
+    }
+    // Keep later buffer creation from changing this vertex array.
+    GLES30.glBindVertexArray(0);
+    this.instanceBuffer = instanceBuffer;
+    this.instanceLocation = location;
+    this.firstInstance = 0;
+  }
+
+  /** Returns whether an {@link InstanceBuffer} has been attached. */
+  public boolean hasInstanceBuffer() {
+    return instanceBuffer != null;
   }
 
   @Override
@@ -176,11 +351,40 @@ public class Mesh implements Closeable {
     }
   }
 
+  private static void enableAttribute(int location, int components, int stride, int offset) {
+    GLES30.glVertexAttribPointer(location, components, GLES30.GL_FLOAT, false, stride, offset);
+    GLError.maybeThrowGLException(
+        "Failed to associate vertex buffer with vertex array", "glVertexAttribPointer");
+    GLES30.glEnableVertexAttribArray(location);
+    GLError.maybeThrowGLException("Failed to enable vertex buffer", "glEnableVertexAttribArray");
+  }
+
+  private static File getCacheFile(SampleRender render, String assetFileName) {
+    File cacheDir = render.getCacheDir();
+    if (cacheDir == null) {
+      return null;
+    }
+    File meshCacheDir = new File(cacheDir, "meshes");
+    if (!meshCacheDir.isDirectory() && !meshCacheDir.mkdirs()) {
+      return null;
+    }
+    return new File(
+        meshCacheDir, assetFileName.replace('/', '_') + BinaryMeshFormat.FILE_EXTENSION);
+  }
+
   /**
    * Draws the mesh. Don't call this directly unless you are doing low level OpenGL code; instead,
    * prefer {@link SampleRender#draw}.
    */
   public void lowLevelDraw() {
+    lowLevelDraw(/*level=*/ 0);
+  }
+
+  /**
+   * Draws a level of detail of the mesh. Don't call this directly; prefer {@link
+   * SampleRender#draw(Mesh, Shader, Framebuffer, int)}.
+   */
+  public void lowLevelDraw(int level) {
     if (vertexArrayId[0] == 0) {
       throw new IllegalStateException("Tried to draw a freed Mesh");
     }
@@ -199,9 +403,86 @@ public class Mesh implements Closeable {
       GLError.maybeThrowGLException("Failed to draw vertex array object", "glDrawArrays");
     } else {
       GLES30.glDrawElements(
-          primitiveMode.glesEnum, indexBuffer.getSize(), GLES30.GL_UNSIGNED_INT, 0);
+          primitiveMode.glesEnum,
+          getLodIndexCount(level),
+          indexBuffer.getGlType(),
+          getLodByteOffset(level));
       GLError.maybeThrowGLException(
           "Failed to draw vertex array object with indices", "glDrawElements");
     }
   }
+
+  /**
+   * Draws the first {@code instanceCount} instances of the attached {@link InstanceBuffer}. Don't
+   * call this directly; prefer {@link SampleRender#drawInstanced}.
+   */
+  public void lowLevelDrawInstanced(int instanceCount) {
+    lowLevelDrawInstanced(/*level=*/ 0, /*firstInstance=*/ 0, instanceCount);
+  }
+
+  /**
+   * Draws a level of detail of instances {@code firstInstance} to {@code firstInstance +
+   * instanceCount - 1} of the attached {@link InstanceBuffer}. Don't call this directly; prefer
+   * {@link SampleRender#drawInstanced(Mesh, Shader, Framebuffer, int, int, int)}.
+   */
+  public void lowLevelDrawInstanced(int level, int firstInstance, int instanceCount) {
+    if (vertexArrayId[0] == 0) {
+      throw new IllegalStateException("Tried to draw a freed Mesh");
+    }
+    if (instanceBuffer == null) {
+      throw new IllegalStateException("Tried to draw instances of a Mesh without instance buffer");
+    }
+
+    GLES30.glBindVertexArray(vertexArrayId[0]);
+    GLError.maybeThrowGLException("Failed to bind vertex array object", "glBindVertexArray");
+    if (firstInstance != this.firstInstance) {
+      // GLES 3.0 has no base instance, so point the per-instance attributes further into the
+      // buffer instead.
+      GLES30.glBindBuffer(GLES30.GL_ARRAY_BUFFER, instanceBuffer.getBufferId());
+      GLError.maybeThrowGLException("Failed to bind instance buffer", "glBindBuffer");
+      int base = firstInstance * InstanceBuffer.STRIDE_BYTES;
+      for (int column = 0; column < InstanceBuffer.LOCATION_COUNT; ++column) {
+        GLES30.glVertexAttribPointer(
+            instanceLocation + column,
+            4,
+            GLES30.GL_FLOAT,
+            false,
+            InstanceBuffer.STRIDE_BYTES,
+            base + column * 4 * GpuBuffer.FLOAT_SIZE);
+        GLError.maybeThrowGLException(
+            "Failed to offset instance attribute", "glVertexAttribPointer");
+      }
+      this.firstInstance = firstInstance;
+    }
+    if (indexBuffer == null) {
+      GLES30.glDrawArraysInstanced(
+          primitiveMode.glesEnum, 0, vertexBuffers[0].getNumberOfVertices(), instanceCount);
+      GLError.maybeThrowGLException(
+          "Failed to draw instanced vertex array object", "glDrawArraysInstanced");
+    } else {
+      GLES30.glDrawElementsInstanced(
+          primitiveMode.glesEnum,
+          getLodIndexCount(level),
+          indexBuffer.getGlType(),
+          getLodByteOffset(level),
+          instanceCount);
+      GLError.maybeThrowGLException(
+          "Failed to draw instanced vertex array object with indices", "glDrawElementsInstanced");
+    }
+  }
+
+  private int getLodIndexCount(int level) {
+    if (lodFirstIndices == null) {
+      return indexBuffer.getSize();
+    }
+    return lodFirstIndices[level + 1] - lodFirstIndices[level];
+  }
+
+  private int getLodByteOffset(int level) {
+    if (lodFirstIndices == null) {
+      return 0;
+    }
+    int indexSize = indexBuffer.getGlType() == GLES30.GL_UNSIGNED_SHORT ? 2 : 4;
+    return lodFirstIndices[level] * indexSize;
+  }
 }
@@ -0,0 +1,248 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import de.javagl.obj.Obj;
+import de.javagl.obj.ObjData;
+import de.javagl.obj.ObjReader;
+import de.javagl.obj.ObjUtils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * CPU-side vertex and index data for a triangle {@link Mesh}, held in <i>direct</i> buffers so it
+ * can be handed to {@link VertexBuffer} and {@link IndexBuffer} without copying.
+ *
+ * <p>This class does not touch OpenGL and may be created on any thread. Use {@link
+ * Mesh#createFromMeshData} on the GL thread to upload it.
+ */
+public class MeshData {
+  private final FloatBuffer positions;
+  private final FloatBuffer texCoords;
+  private final FloatBuffer normals;
+  private final IntBuffer indices;
+  private final float[] boundsMin = new float[3];
+  private final float[] boundsMax = new float[3];
+  // Level i spans indices [lodIndexOffsets[i], lodIndexOffsets[i + 1]).
+  private final int[] lodIndexOffsets;
+  private final float[] lodErrors;
+
+  /**
+   * Constructs a {@link MeshData} from existing direct buffers.
+   *
+   * <p>{@code positions} and {@code normals} hold three floats per vertex and {@code texCoords}
+   * holds two. {@code texCoords}, {@code normals} and {@code indices} may be null if the mesh does
+   * not have them. The bounding box is computed from {@code positions}.
+   */
+  public MeshData(
+      FloatBuffer positions, FloatBuffer texCoords, FloatBuffer normals, IntBuffer indices) {
+    this(positions, texCoords, normals, indices, null, null);
+  }
+
+  /* package-private */
+  MeshData(
+      FloatBuffer positions,
+      FloatBuffer texCoords,
+      FloatBuffer normals,
+      IntBuffer indices,
+      float[] boundsMin,
+      float[] boundsMax) {
+    this(positions, texCoords, normals, indices, boundsMin, boundsMax, null, null);
+  }
+
+  /* package-private */
+  MeshData(
+      FloatBuffer positions,
+      FloatBuffer texCoords,
+      FloatBuffer normals,
+      IntBuffer indices,
+      float[] boundsMin,
+      float[] boundsMax,
+      int[] lodIndexOffsets,
+      float[] lodErrors) {
+    if (positions == null || positions.limit() % 3 != 0) {
+      throw new IllegalArgumentException("Positions must be non-null with three floats per vertex");
+    }
+    int vertexCount = positions.limit() / 3;
+    if (texCoords != null && texCoords.limit() != vertexCount * 2) {
+      throw new IllegalArgumentException("Texture coordinates do not match the vertex count");
+    }
+    if (normals != null && normals.limit() != vertexCount * 3) {
+      throw new IllegalArgumentException("Normals do not match the vertex count");
+    }
+    this.positions = positions;
+    this.texCoords = texCoords;
+    this.normals = normals;
+    this.indices = indices;
+    if (boundsMin != null && boundsMax != null) {
+      System.arraycopy(boundsMin, 0, this.boundsMin, 0, 3);
+      System.arraycopy(boundsMax, 0, this.boundsMax, 0, 3);
+    } else {
+      computeBounds();
+    }
+    if (lodIndexOffsets == null) {
+      this.lodIndexOffsets = new int[] {0, getIndexCount()};
+      this.lodErrors = new float[1];
+    } else {
+      if (lodErrors == null
+          || lodIndexOffsets.length != lodErrors.length + 1
+          || lodIndexOffsets[0] != 0
+          || lodIndexOffsets[lodErrors.length] != getIndexCount()) {
+        throw new IllegalArgumentException("Levels of detail do not match the indices");
+      }
+      this.lodIndexOffsets = lodIndexOffsets.clone();
+      this.lodErrors = lodErrors.clone();
+    }
+  }
+
+  /**
+   * Parses a Wavefront OBJ stream into a {@link MeshData}.
+   *
+   * <p>The OBJ is triangulated and made renderable the same way {@link Mesh#createFromAsset} has
+   * always done, so the resulting attribute layout is unchanged.
+   */
+  public static MeshData fromObj(InputStream inputStream) throws IOException {
+    Obj obj = ObjUtils.convertToRenderable(ObjReader.read(inputStream));
+    IntBuffer vertexIndices = ObjData.getFaceVertexIndices(obj, /*numVerticesPerFace=*/ 3);
+    FloatBuffer localCoordinates = ObjData.getVertices(obj);
+    FloatBuffer textureCoordinates = ObjData.getTexCoords(obj, /*dimensions=*/ 2);
+    FloatBuffer normals = ObjData.getNormals(obj);
+    return new MeshData(
+        localCoordinates,
+        textureCoordinates.limit() == 0 ? null : textureCoordinates,
+        normals.limit() == 0 ? null : normals,
+        vertexIndices);
+  }
+
+  /** Returns the number of vertices. */
+  public int getVertexCount() {
+    return positions.limit() / 3;
+  }
+
+  /** Returns the number of indices, or 0 if the mesh is not indexed. */
+  public int getIndexCount() {
+    return indices == null ? 0 : indices.limit();
+  }
+
+  /** Returns the local coordinates, three floats per vertex. */
+  public FloatBuffer getPositions() {
+    return positions;
+  }
+
+  /** Returns the texture coordinates, two floats per vertex, or null. */
+  public FloatBuffer getTexCoords() {
+    return texCoords;
+  }
+
+  /** Returns the vertex normals, three floats per vertex, or null. */
+  public FloatBuffer getNormals() {
+    return normals;
+  }
+
+  /** Returns the triangle indices, or null. */
+  public IntBuffer getIndices() {
+    return indices;
+  }
+
+  /** Copies the minimum corner of the axis-aligned bounding box into {@code dest}. */
+  public void getBoundsMin(float[] dest) {
+    System.arraycopy(boundsMin, 0, dest, 0, 3);
+  }
+
+  /** Copies the maximum corner of the axis-aligned bounding box into {@code dest}. */
+  public void getBoundsMax(float[] dest) {
+    System.arraycopy(boundsMax, 0, dest, 0, 3);
+  }
+
+  /**
+   * Returns the number of levels of detail. Meshes not built by {@link
+   * MeshSimplifier#buildLodChain} have one, spanning all indices.
+   */
+  public int getLodCount() {
+    return lodErrors.length;
+  }
+
+  /** Returns the first index of a level of detail, level 0 being the most detailed. */
+  public int getLodFirstIndex(int level) {
+    return lodIndexOffsets[level];
+  }
+
+  /** Returns the number of indices of a level of detail. */
+  public int getLodIndexCount(int level) {
+    return lodIndexOffsets[level + 1] - lodIndexOffsets[level];
+  }
+
+  /**
+   * Returns how far, in local units, a level of detail may stray from the original surface. Zero
+   * for level 0; never decreases with the level.
+   */
+  public float getLodError(int level) {
+    return lodErrors[level];
+  }
+
+  /**
+   * Returns a {@link MeshData} with the same vertices and the given levels of detail, packed back
+   * to back in {@code indices}.
+   */
+  /* package-private */
+  MeshData withLods(IntBuffer indices, int[] lodIndexOffsets, float[] lodErrors) {
+    return new MeshData(
+        positions, texCoords, normals, indices, boundsMin, boundsMax, lodIndexOffsets, lodErrors);
+  }
+
+  /**
+   * Writes a sphere enclosing every vertex to {@code dest} as center x, y, z and radius. The
+   * sphere is centered on the bounding box, which for the usual compact meshes is close to the
+   * smallest enclosing sphere, and its radius is the distance to the farthest vertex.
+   */
+  public void getBoundingSphere(float[] dest) {
+    float centerX = (boundsMin[0] + boundsMax[0]) / 2;
+    float centerY = (boundsMin[1] + boundsMax[1]) / 2;
+    float centerZ = (boundsMin[2] + boundsMax[2]) / 2;
+    float maxDistanceSquared = 0;
+    for (int i = 0; i < getVertexCount(); ++i) {
+      float dx = positions.get(i * 3) - centerX;
+      float dy = positions.get(i * 3 + 1) - centerY;
+      float dz = positions.get(i * 3 + 2) - centerZ;
+      maxDistanceSquared = Math.max(maxDistanceSquared, dx * dx + dy * dy + dz * dz);
+    }
+    dest[0] = centerX;
+    dest[1] = centerY;
+    dest[2] = centerZ;
+    dest[3] = (float) Math.sqrt(maxDistanceSquared);
+  }
+
+  /* package-private */
+  static FloatBuffer allocateFloats(int count) {
+    return ByteBuffer.allocateDirect(count * GpuBuffer.FLOAT_SIZE)
+        .order(ByteOrder.nativeOrder())
+        .asFloatBuffer();
+  }
+
+  /* package-private */
+  static IntBuffer allocateInts(int count) {
+    return ByteBuffer.allocateDirect(count * GpuBuffer.INT_SIZE)
+        .order(ByteOrder.nativeOrder())
+        .asIntBuffer();
+  }
+
+  private void computeBounds() {
+    int vertexCount = getVertexCount();
+    if (vertexCount == 0) {
+      return;
+    }
+    for (int axis = 0; axis < 3; ++axis) {
+      boundsMin[axis] = Float.POSITIVE_INFINITY;
+      boundsMax[axis] = Float.NEGATIVE_INFINITY;
+    }
+    for (int i = 0; i < vertexCount; ++i) {
+      for (int axis = 0; axis < 3; ++axis) {
+        float value = positions.get(i * 3 + axis);
+        boundsMin[axis] = Math.min(boundsMin[axis], value);
+        boundsMax[axis] = Math.max(boundsMax[axis], value);
+      }
+    }
+  }
+}
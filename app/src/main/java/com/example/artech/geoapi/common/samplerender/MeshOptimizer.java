@@ -0,0 +1,360 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Offline-style optimizations for indexed triangle {@link MeshData}.
+ *
+ * <ul>
+ *   <li>{@link #weld} merges vertices whose position, texture coordinate and normal are identical.
+ *   <li>{@link #optimizeVertexCache} reorders triangles for the GPU's post-transform vertex cache
+ *       using Tom Forsyth's linear-speed algorithm.
+ *   <li>{@link #optimizeVertexFetch} renumbers vertices in first-use order so vertex fetches walk
+ *       memory sequentially.
+ * </ul>
+ *
+ * <p>None of these touch OpenGL, and all of them return new {@link MeshData} rather than modifying
+ * their input.
+ */
+public class MeshOptimizer {
+  /** Cache size the triangle order is tuned for; most mobile GPUs have at least this many. */
+  public static final int VERTEX_CACHE_SIZE = 32;
+
+  private static final float CACHE_DECAY_POWER = 1.5f;
+  private static final float LAST_TRIANGLE_SCORE = 0.75f;
+  private static final float VALENCE_BOOST_SCALE = 2.0f;
+  private static final float VALENCE_BOOST_POWER = 0.5f;
+
+  /** Runs {@link #weld}, {@link #optimizeVertexCache} and {@link #optimizeVertexFetch}. */
+  public static MeshData optimize(MeshData meshData) {
+    return optimizeVertexFetch(optimizeVertexCache(weld(meshData)));
+  }
+
+  /**
+   * Merges bit-identical vertices and rewrites the index buffer to match. Non-indexed meshes are
+   * treated as if indexed by {@code 0, 1, 2, ...}.
+   */
+  public static MeshData weld(MeshData meshData) {
+    int vertexCount = meshData.getVertexCount();
+    int[] indices = getIndicesArray(meshData);
+    FloatBuffer positions = meshData.getPositions();
+    FloatBuffer texCoords = meshData.getTexCoords();
+    FloatBuffer normals = meshData.getNormals();
+
+    // Open addressing table from vertex hash to the first vertex with that content.
+    int tableSize = Integer.highestOneBit(Math.max(vertexCount, 1) * 2) * 2;
+    int[] table = new int[tableSize];
+    Arrays.fill(table, -1);
+    int[] remap = new int[vertexCount];
+    int[] uniqueVertices = new int[vertexCount];
+    int uniqueCount = 0;
+    for (int v = 0; v < vertexCount; ++v) {
+      int slot = hashVertex(positions, texCoords, normals, v) & (tableSize - 1);
+      while (true) {
+        int candidate = table[slot];
+        if (candidate == -1) {
+          table[slot] = v;
+          remap[v] = uniqueCount;
+          uniqueVertices[uniqueCount++] = v;
+          break;
+        }
+        if (verticesEqual(positions, texCoords, normals, candidate, v)) {
+          remap[v] = remap[candidate];
+          break;
+        }
+        slot = (slot + 1) & (tableSize - 1);
+      }
+    }
+
+    for (int i = 0; i < indices.length; ++i) {
+      indices[i] = remap[indices[i]];
+    }
+    return buildMeshData(meshData, uniqueVertices, uniqueCount, indices);
+  }
+
+  /**
+   * Reorders triangles so that consecutive triangles reuse recently transformed vertices. Vertex
+   * data is left untouched.
+   */
+  public static MeshData optimizeVertexCache(MeshData meshData) {
+    int[] indices = getIndicesArray(meshData);
+    int[] reordered = optimizeVertexCache(indices, meshData.getVertexCount());
+    int[] identity = new int[meshData.getVertexCount()];
+    for (int i = 0; i < identity.length; ++i) {
+      identity[i] = i;
+    }
+    return buildMeshData(meshData, identity, identity.length, reordered);
+  }
+
+  /**
+   * Renumbers vertices in the order they are first referenced by the index buffer. Vertices that
+   * are never referenced are dropped.
+   */
+  public static MeshData optimizeVertexFetch(MeshData meshData) {
+    int[] indices = getIndicesArray(meshData);
+    int[] remap = new int[meshData.getVertexCount()];
+    Arrays.fill(remap, -1);
+    int[] order = new int[meshData.getVertexCount()];
+    int count = 0;
+    for (int i = 0; i < indices.length; ++i) {
+      int vertex = indices[i];
+      if (remap[vertex] == -1) {
+        remap[vertex] = count;
+        order[count++] = vertex;
+      }
+      indices[i] = remap[vertex];
+    }
+    return buildMeshData(meshData, order, count, indices);
+  }
+
+  /**
+   * Returns the average cache miss ratio (transformed vertices per triangle) of {@code indices}
+   * for a FIFO post-transform cache of {@code cacheSize} entries. Lower is better; 3.0 means no
+   * reuse at all and roughly 0.5 to 0.7 is achievable for well connected meshes.
+   */
+  public static float computeAverageCacheMissRatio(IntBuffer indices, int cacheSize) {
+    int[] fifo = new int[cacheSize];
+    Arrays.fill(fifo, -1);
+    int head = 0;
+    int misses = 0;
+    int count = indices.limit();
+    for (int i = 0; i < count; ++i) {
+      int vertex = indices.get(i);
+      boolean hit = false;
+      for (int j = 0; j < cacheSize; ++j) {
+        if (fifo[j] == vertex) {
+          hit = true;
+          break;
+        }
+      }
+      if (!hit) {
+        ++misses;
+        fifo[head] = vertex;
+        head = (head + 1) % cacheSize;
+      }
+    }
+    return count == 0 ? 0f : misses / (count / 3f);
+  }
+
+  /* package-private */
+  static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+    int triangleCount = indices.length / 3;
+
+    // Triangle adjacency per vertex, in compressed sparse row form.
+    int[] valence = new int[vertexCount];
+    for (int index : indices) {
+      ++valence[index];
+    }
+    int[] adjacencyStart = new int[vertexCount + 1];
+    for (int v = 0; v < vertexCount; ++v) {
+      adjacencyStart[v + 1] = adjacencyStart[v] + valence[v];
+    }
+    int[] adjacency = new int[indices.length];
+    int[] fill = new int[vertexCount];
+    for (int t = 0; t < triangleCount; ++t) {
+      for (int k = 0; k < 3; ++k) {
+        int v = indices[t * 3 + k];
+        adjacency[adjacencyStart[v] + fill[v]++] = t;
+      }
+    }
+
+    // valence[] now counts remaining (not yet emitted) triangles per vertex.
+    int[] cachePosition = new int[vertexCount];
+    Arrays.fill(cachePosition, -1);
+    float[] vertexScore = new float[vertexCount];
+    for (int v = 0; v < vertexCount; ++v) {
+      vertexScore[v] = scoreVertex(cachePosition[v], valence[v]);
+    }
+    float[] triangleScore = new float[triangleCount];
+    boolean[] emitted = new boolean[triangleCount];
+    for (int t = 0; t < triangleCount; ++t) {
+      triangleScore[t] =
+          vertexScore[indices[t * 3]]
+              + vertexScore[indices[t * 3 + 1]]
+              + vertexScore[indices[t * 3 + 2]];
+    }
+
+    int[] cache = new int[VERTEX_CACHE_SIZE + 3];
+    int cacheCount = 0;
+    int[] newCache = new int[VERTEX_CACHE_SIZE + 3];
+    int[] result = new int[triangleCount * 3];
+    int bestTriangle = -1;
+    int scanCursor = 0;
+
+    for (int output = 0; output < triangleCount; ++output) {
+      if (bestTriangle == -1) {
+        // Nothing adjacent to the cache; start a new strip at the best remaining triangle.
+        float bestScore = -1f;
+        for (int t = scanCursor; t < triangleCount; ++t) {
+          if (!emitted[t] && triangleScore[t] > bestScore) {
+            bestScore = triangleScore[t];
+            bestTriangle = t;
+          }
+        }
+        while (scanCursor < triangleCount && emitted[scanCursor]) {
+          ++scanCursor;
+        }
+      }
+
+      int t = bestTriangle;
+      emitted[t] = true;
+      for (int k = 0; k < 3; ++k) {
+        int v = indices[t * 3 + k];
+        result[output * 3 + k] = v;
+        // Remove the triangle from the vertex's remaining adjacency.
+        int end = adjacencyStart[v] + valence[v];
+        for (int a = adjacencyStart[v]; a < end; ++a) {
+          if (adjacency[a] == t) {
+            adjacency[a] = adjacency[end - 1];
+            break;
+          }
+        }
+        --valence[v];
+      }
+
+      // Move the triangle's vertices to the front of the LRU cache.
+      int newCount = 0;
+      for (int k = 0; k < 3; ++k) {
+        newCache[newCount++] = indices[t * 3 + k];
+      }
+      for (int c = 0; c < cacheCount; ++c) {
+        int v = cache[c];
+        if (v != indices[t * 3] && v != indices[t * 3 + 1] && v != indices[t * 3 + 2]) {
+          newCache[newCount++] = v;
+        }
+      }
+      int[] swap = cache;
+      cache = newCache;
+      newCache = swap;
+      cacheCount = newCount;
+
+      // Rescore every vertex that was touched and the triangles around it.
+      bestTriangle = -1;
+      float bestScore = -1f;
+      for (int c = 0; c < cacheCount; ++c) {
+        int v = cache[c];
+        cachePosition[v] = c < VERTEX_CACHE_SIZE ? c : -1;
+        float score = scoreVertex(cachePosition[v], valence[v]);
+        float delta = score - vertexScore[v];
+        vertexScore[v] = score;
+        int end = adjacencyStart[v] + valence[v];
+        for (int a = adjacencyStart[v]; a < end; ++a) {
+          int adjacent = adjacency[a];
+          triangleScore[adjacent] += delta;
+          if (triangleScore[adjacent] > bestScore) {
+            bestScore = triangleScore[adjacent];
+            bestTriangle = adjacent;
+          }
+        }
+      }
+      if (cacheCount > VERTEX_CACHE_SIZE) {
+        cacheCount = VERTEX_CACHE_SIZE;
+      }
+    }
+    return result;
+  }
+
+  private static float scoreVertex(int cachePosition, int remainingValence) {
+    if (remainingValence == 0) {
+      return -1f;
+    }
+    float score = 0f;
+    if (cachePosition >= 0) {
+      if (cachePosition < 3) {
+        // The vertices of the last triangle get a fixed score so the next triangle doesn't simply
+        // reuse the same edge, which would produce long thin strips.
+        score = LAST_TRIANGLE_SCORE;
+      } else {
+        float scaler = 1f / (VERTEX_CACHE_SIZE - 3);
+        score = (float) Math.pow(1f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+      }
+    }
+    // Boost vertices with few triangles left so lone triangles aren't left behind.
+    score += VALENCE_BOOST_SCALE * (float) Math.pow(remainingValence, -VALENCE_BOOST_POWER);
+    return score;
+  }
+
+  private static int[] getIndicesArray(MeshData meshData) {
+    IntBuffer indices = meshData.getIndices();
+    int[] result;
+    if (indices == null) {
+      result = new int[meshData.getVertexCount()];
+      for (int i = 0; i < result.length; ++i) {
+        result[i] = i;
+      }
+    } else {
+      result = new int[indices.limit()];
+      for (int i = 0; i < result.length; ++i) {
+        result[i] = indices.get(i);
+      }
+    }
+    return result;
+  }
+
+  /** Builds a new {@link MeshData} whose vertex {@code i} is vertex {@code order[i]} of source. */
+  private static MeshData buildMeshData(MeshData source, int[] order, int count, int[] indices) {
+    FloatBuffer positions = gather(source.getPositions(), 3, order, count);
+    FloatBuffer texCoords = gather(source.getTexCoords(), 2, order, count);
+    FloatBuffer normals = gather(source.getNormals(), 3, order, count);
+    IntBuffer indexBuffer = MeshData.allocateInts(indices.length);
+    indexBuffer.put(indices).rewind();
+    return new MeshData(positions, texCoords, normals, indexBuffer);
+  }
+
+  private static FloatBuffer gather(FloatBuffer source, int components, int[] order, int count) {
+    if (source == null) {
+      return null;
+    }
+    FloatBuffer result = MeshData.allocateFloats(count * components);
+    for (int i = 0; i < count; ++i) {
+      int base = order[i] * components;
+      for (int c = 0; c < components; ++c) {
+        result.put(i * components + c, source.get(base + c));
+      }
+    }
+    return result;
+  }
+
+  private static int hashVertex(
+      FloatBuffer positions, FloatBuffer texCoords, FloatBuffer normals, int v) {
+    int hash = hashFloats(17, positions, v * 3, 3);
+    if (texCoords != null) {
+      hash = hashFloats(hash, texCoords, v * 2, 2);
+    }
+    if (normals != null) {
+      hash = hashFloats(hash, normals, v * 3, 3);
+    }
+    // Spread the bits so the low bits used for the table slot are well mixed.
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    return hash;
+  }
+
+  private static int hashFloats(int hash, FloatBuffer buffer, int offset, int count) {
+    for (int i = 0; i < count; ++i) {
+      hash = hash * 31 + Float.floatToIntBits(buffer.get(offset + i));
+    }
+    return hash;
+  }
+
+  private static boolean verticesEqual(
+      FloatBuffer positions, FloatBuffer texCoords, FloatBuffer normals, int a, int b) {
+    return floatsEqual(positions, a * 3, b * 3, 3)
+        && (texCoords == null || floatsEqual(texCoords, a * 2, b * 2, 2))
+        && (normals == null || floatsEqual(normals, a * 3, b * 3, 3));
+  }
+
+  private static boolean floatsEqual(FloatBuffer buffer, int a, int b, int count) {
+    for (int i = 0; i < count; ++i) {
+      if (Float.floatToIntBits(buffer.get(a + i)) != Float.floatToIntBits(buffer.get(b + i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private MeshOptimizer() {}
+}
@@ -0,0 +1,492 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Builds level-of-detail chains for triangle meshes by quadric error edge collapse.
+ *
+ * <p>Each step moves one vertex onto a neighbor (a half-edge collapse), choosing the move that
+ * strays least from the planes of the triangles around both vertices. Because vertices are only
+ * ever moved onto existing ones, every level is just a shorter index list over the original
+ * vertices: the levels share one vertex buffer and the whole chain fits in one index buffer.
+ *
+ * <p>Vertices on open edges never move, so simplification does not tear the mesh. Vertices on
+ * texture or normal seams only move along the seam, and moves that would flip a triangle are
+ * rejected.
+ *
+ * <p>Like {@link MeshOptimizer}, this is meant to run once per asset, off the GL thread, with the
+ * result cached by {@link BinaryMeshFormat}.
+ */
+public class MeshSimplifier {
+  // Reject moves that turn a triangle's normal by more than about 78 degrees.
+  private static final double MIN_NORMAL_COSINE = 0.2;
+
+  // Floats per quadric: the upper triangle of the symmetric 4x4 matrix.
+  private static final int QUADRIC_SIZE = 10;
+
+  /**
+   * Returns a copy of {@code meshData} whose indices hold one level per entry of {@code
+   * indexRatios}, back to back. Level {@code i} keeps about {@code indexRatios[i]} of the original
+   * triangles, or as many as can be removed without moving locked vertices.
+   *
+   * @param indexRatios fractions of the triangles to keep, from 1 down, in decreasing order
+   * @throws IllegalArgumentException if {@code meshData} has no indices or the ratios do not
+   *     decrease
+   */
+  public static MeshData buildLodChain(MeshData meshData, float... indexRatios) {
+    IntBuffer indexBuffer = meshData.getIndices();
+    if (indexBuffer == null || indexBuffer.limit() % 3 != 0) {
+      throw new IllegalArgumentException("Only indexed triangle meshes can be simplified");
+    }
+    if (indexRatios.length == 0) {
+      throw new IllegalArgumentException("Need at least one level");
+    }
+    int[] indices = new int[indexBuffer.limit()];
+    for (int i = 0; i < indices.length; ++i) {
+      indices[i] = indexBuffer.get(i);
+    }
+
+    Collapser collapser = new Collapser(meshData.getPositions(), indices);
+    int[][] levels = new int[indexRatios.length][];
+    float[] errors = new float[indexRatios.length];
+    int total = 0;
+    for (int level = 0; level < indexRatios.length; ++level) {
+      float ratio = indexRatios[level];
+      if (ratio <= 0 || ratio > 1 || (level > 0 && ratio >= indexRatios[level - 1])) {
+        throw new IllegalArgumentException("Ratios must decrease from at most 1: " + ratio);
+      }
+      collapser.collapseTo(Math.round(indices.length / 3 * ratio));
+      levels[level] = collapser.getIndices();
+      if (level > 0) {
+        levels[level] =
+            MeshOptimizer.optimizeVertexCache(levels[level], meshData.getVertexCount());
+      }
+      errors[level] = collapser.getError();
+      total += levels[level].length;
+    }
+
+    IntBuffer chain = MeshData.allocateInts(total);
+    int[] offsets = new int[levels.length + 1];
+    for (int level = 0; level < levels.length; ++level) {
+      chain.put(levels[level]);
+      offsets[level + 1] = chain.position();
+    }
+    chain.rewind();
+    return meshData.withLods(chain, offsets, errors);
+  }
+
+  /**
+   * Collapses edges of one mesh step by step, so each level continues from the previous one.
+   *
+   * <p>Vertices that share a position but differ in texture coordinates or normals form one
+   * position group, which is what actually moves. When a group moves onto another, each of its
+   * vertices is replaced by the vertex of the other group it shares a collapsing triangle with, so
+   * a group on a seam may only slide along the seam.
+   */
+  private static class Collapser {
+    private final FloatBuffer positions;
+    private final int[] triangles;
+    private final boolean[] triangleAlive;
+    private int liveTriangles;
+
+    // Position group of each vertex, and the vertices of each group in CSR form.
+    private final int[] groups;
+    private final int[] groupStarts;
+    private final int[] groupMembers;
+    // The vertex each vertex of a moving group is replaced by, or -1.
+    private final int[] replacements;
+
+    // Per group from here on.
+    private final double[] quadrics;
+    private final boolean[] locked;
+    private final boolean[] removed;
+    // Bumped whenever a group's quadric or neighborhood changes, to spot stale candidates.
+    private final int[] versions;
+    // Triangles around each group. Lists may hold dead triangles, which are skipped.
+    private final int[][] groupTriangles;
+    private final int[] groupTriangleCounts;
+
+    private final PriorityQueue<Candidate> candidates = new PriorityQueue<>();
+    private double maxCost;
+
+    private final double[] normalBefore = new double[3];
+    private final double[] normalAfter = new double[3];
+
+    Collapser(FloatBuffer positions, int[] indices) {
+      this.positions = positions;
+      int vertexCount = positions.limit() / 3;
+      triangles = indices.clone();
+      int triangleCount = triangles.length / 3;
+      triangleAlive = new boolean[triangleCount];
+
+      groups = new int[vertexCount];
+      int groupCount = groupByPosition(positions, groups);
+      groupStarts = new int[groupCount + 1];
+      groupMembers = new int[vertexCount];
+      for (int v = 0; v < vertexCount; ++v) {
+        ++groupStarts[groups[v] + 1];
+      }
+      for (int g = 0; g < groupCount; ++g) {
+        groupStarts[g + 1] += groupStarts[g];
+      }
+      int[] fill = Arrays.copyOf(groupStarts, groupCount);
+      for (int v = 0; v < vertexCount; ++v) {
+        groupMembers[fill[groups[v]]++] = v;
+      }
+      replacements = new int[vertexCount];
+      Arrays.fill(replacements, -1);
+
+      quadrics = new double[groupCount * QUADRIC_SIZE];
+      locked = new boolean[groupCount];
+      removed = new boolean[groupCount];
+      versions = new int[groupCount];
+      groupTriangles = new int[groupCount][];
+      groupTriangleCounts = new int[groupCount];
+
+      Map<Long, Integer> edgeUses = new HashMap<>();
+      double[] plane = new double[4];
+      for (int t = 0; t < triangleCount; ++t) {
+        int a = groups[triangles[t * 3]];
+        int b = groups[triangles[t * 3 + 1]];
+        int c = groups[triangles[t * 3 + 2]];
+        if (a == b || b == c || a == c) {
+          continue;
+        }
+        triangleAlive[t] = true;
+        ++liveTriangles;
+        addTriangle(a, t);
+        addTriangle(b, t);
+        addTriangle(c, t);
+        edgeUses.merge(edgeKey(a, b), 1, Integer::sum);
+        edgeUses.merge(edgeKey(b, c), 1, Integer::sum);
+        edgeUses.merge(edgeKey(c, a), 1, Integer::sum);
+        if (computePlane(triangles[t * 3], triangles[t * 3 + 1], triangles[t * 3 + 2], plane)) {
+          addPlane(a, plane);
+          addPlane(b, plane);
+          addPlane(c, plane);
+        }
+      }
+      // Edges used by one triangle are open; more than two makes them non-manifold.
+      for (Map.Entry<Long, Integer> entry : edgeUses.entrySet()) {
+        if (entry.getValue() != 2) {
+          locked[(int) (entry.getKey() >>> 32)] = true;
+          locked[(int) (long) entry.getKey()] = true;
+        }
+      }
+      for (long edge : edgeUses.keySet()) {
+        int g = (int) (edge >>> 32);
+        int h = (int) edge;
+        pushCandidate(g, h);
+        pushCandidate(h, g);
+      }
+    }
+
+    /** Collapses edges until at most {@code targetTriangles} remain or nothing more can go. */
+    void collapseTo(int targetTriangles) {
+      while (liveTriangles > targetTriangles && !candidates.isEmpty()) {
+        Candidate candidate = candidates.poll();
+        int from = candidate.from;
+        int to = candidate.to;
+        if (removed[from]
+            || removed[to]
+            || versions[from] != candidate.fromVersion
+            || versions[to] != candidate.toVersion) {
+          continue;
+        }
+        if (findReplacements(from, to) && keepsOrientation(from, to)) {
+          collapse(from, to);
+          maxCost = Math.max(maxCost, candidate.cost);
+        }
+        clearReplacements(from);
+      }
+    }
+
+    /** Returns the indices of the live triangles. */
+    int[] getIndices() {
+      int[] result = new int[liveTriangles * 3];
+      int count = 0;
+      for (int t = 0; t < triangleAlive.length; ++t) {
+        if (triangleAlive[t]) {
+          System.arraycopy(triangles, t * 3, result, count, 3);
+          count += 3;
+        }
+      }
+      return result;
+    }
+
+    /**
+     * Returns a bound on how far, in mesh units, the current surface is from the original: the
+     * root of the largest quadric error of any collapse so far.
+     */
+    float getError() {
+      return (float) Math.sqrt(maxCost);
+    }
+
+    /**
+     * Pairs each vertex of group {@code from} with the vertex of group {@code to} it shares a
+     * triangle with. Returns false if the groups share no triangle, or if a vertex of {@code from}
+     * in a surviving triangle has no partner or has two.
+     */
+    private boolean findReplacements(int from, int to) {
+      boolean sharesTriangle = false;
+      for (int i = 0; i < groupTriangleCounts[from]; ++i) {
+        int t = groupTriangles[from][i];
+        int fromCorner = cornerInGroup(t, from);
+        int toCorner = cornerInGroup(t, to);
+        if (!triangleAlive[t] || toCorner < 0) {
+          continue;
+        }
+        sharesTriangle = true;
+        int v = triangles[t * 3 + fromCorner];
+        int replacement = triangles[t * 3 + toCorner];
+        if (replacements[v] >= 0 && replacements[v] != replacement) {
+          return false;
+        }
+        replacements[v] = replacement;
+      }
+      if (!sharesTriangle) {
+        return false;
+      }
+      for (int i = 0; i < groupTriangleCounts[from]; ++i) {
+        int t = groupTriangles[from][i];
+        if (triangleAlive[t] && replacements[triangles[t * 3 + cornerInGroup(t, from)]] < 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void clearReplacements(int group) {
+      for (int i = groupStarts[group]; i < groupStarts[group + 1]; ++i) {
+        replacements[groupMembers[i]] = -1;
+      }
+    }
+
+    /**
+     * Returns whether moving {@code from} onto {@code to} leaves every surviving triangle facing
+     * about the same way.
+     */
+    private boolean keepsOrientation(int from, int to) {
+      for (int i = 0; i < groupTriangleCounts[from]; ++i) {
+        int t = groupTriangles[from][i];
+        if (!triangleAlive[t] || cornerInGroup(t, to) >= 0) {
+          continue;
+        }
+        int a = triangles[t * 3];
+        int b = triangles[t * 3 + 1];
+        int c = triangles[t * 3 + 2];
+        double beforeLength = normal(a, b, c, normalBefore);
+        double afterLength =
+            normal(moved(a, from), moved(b, from), moved(c, from), normalAfter);
+        if (afterLength == 0) {
+          return false;
+        }
+        double dot =
+            normalBefore[0] * normalAfter[0]
+                + normalBefore[1] * normalAfter[1]
+                + normalBefore[2] * normalAfter[2];
+        if (beforeLength > 0 && dot < MIN_NORMAL_COSINE * beforeLength * afterLength) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int moved(int v, int from) {
+      return groups[v] == from ? replacements[v] : v;
+    }
+
+    private void collapse(int from, int to) {
+      for (int i = 0; i < groupTriangleCounts[from]; ++i) {
+        int t = groupTriangles[from][i];
+        if (!triangleAlive[t]) {
+          continue;
+        }
+        if (cornerInGroup(t, to) >= 0) {
+          triangleAlive[t] = false;
+          --liveTriangles;
+          continue;
+        }
+        int corner = t * 3 + cornerInGroup(t, from);
+        triangles[corner] = replacements[triangles[corner]];
+        addTriangle(to, t);
+      }
+      for (int k = 0; k < QUADRIC_SIZE; ++k) {
+        quadrics[to * QUADRIC_SIZE + k] += quadrics[from * QUADRIC_SIZE + k];
+      }
+      removed[from] = true;
+      ++versions[to];
+
+      // Costs of the edges around the merged group changed; queue them afresh.
+      for (int i = 0; i < groupTriangleCounts[to]; ++i) {
+        int t = groupTriangles[to][i];
+        if (!triangleAlive[t]) {
+          continue;
+        }
+        for (int corner = 0; corner < 3; ++corner) {
+          int g = groups[triangles[t * 3 + corner]];
+          if (g != to) {
+            pushCandidate(g, to);
+            pushCandidate(to, g);
+          }
+        }
+      }
+    }
+
+    /** Returns the corner, 0 to 2, of triangle {@code t} in {@code group}, or -1. */
+    private int cornerInGroup(int t, int group) {
+      for (int corner = 0; corner < 3; ++corner) {
+        if (groups[triangles[t * 3 + corner]] == group) {
+          return corner;
+        }
+      }
+      return -1;
+    }
+
+    private void pushCandidate(int from, int to) {
+      if (locked[from]) {
+        return;
+      }
+      // The moved group lands exactly on the other one.
+      int v = groupMembers[groupStarts[to]];
+      double x = positions.get(v * 3);
+      double y = positions.get(v * 3 + 1);
+      double z = positions.get(v * 3 + 2);
+      double cost = evaluate(from, x, y, z) + evaluate(to, x, y, z);
+      candidates.add(new Candidate(Math.max(cost, 0), from, to, versions[from], versions[to]));
+    }
+
+    private double evaluate(int group, double x, double y, double z) {
+      double[] q = quadrics;
+      int i = group * QUADRIC_SIZE;
+      return q[i] * x * x
+          + 2 * q[i + 1] * x * y
+          + 2 * q[i + 2] * x * z
+          + 2 * q[i + 3] * x
+          + q[i + 4] * y * y
+          + 2 * q[i + 5] * y * z
+          + 2 * q[i + 6] * y
+          + q[i + 7] * z * z
+          + 2 * q[i + 8] * z
+          + q[i + 9];
+    }
+
+    private void addPlane(int group, double[] p) {
+      int i = group * QUADRIC_SIZE;
+      quadrics[i] += p[0] * p[0];
+      quadrics[i + 1] += p[0] * p[1];
+      quadrics[i + 2] += p[0] * p[2];
+      quadrics[i + 3] += p[0] * p[3];
+      quadrics[i + 4] += p[1] * p[1];
+      quadrics[i + 5] += p[1] * p[2];
+      quadrics[i + 6] += p[1] * p[3];
+      quadrics[i + 7] += p[2] * p[2];
+      quadrics[i + 8] += p[2] * p[3];
+      quadrics[i + 9] += p[3] * p[3];
+    }
+
+    private void addTriangle(int group, int t) {
+      int[] list = groupTriangles[group];
+      int count = groupTriangleCounts[group];
+      if (list == null) {
+        list = groupTriangles[group] = new int[8];
+      } else if (count == list.length) {
+        list = groupTriangles[group] = Arrays.copyOf(list, count * 2);
+      }
+      list[count] = t;
+      groupTriangleCounts[group] = count + 1;
+    }
+
+    /** Writes the unit normal and offset of the triangle's plane, or returns false if it is flat. */
+    private boolean computePlane(int a, int b, int c, double[] plane) {
+      double length = normal(a, b, c, plane);
+      if (length == 0) {
+        return false;
+      }
+      plane[0] /= length;
+      plane[1] /= length;
+      plane[2] /= length;
+      plane[3] =
+          -(plane[0] * positions.get(a * 3)
+              + plane[1] * positions.get(a * 3 + 1)
+              + plane[2] * positions.get(a * 3 + 2));
+      return true;
+    }
+
+    /** Writes the unnormalized normal of triangle abc to {@code n} and returns its length. */
+    private double normal(int a, int b, int c, double[] n) {
+      double ax = positions.get(a * 3);
+      double ay = positions.get(a * 3 + 1);
+      double az = positions.get(a * 3 + 2);
+      double ux = positions.get(b * 3) - ax;
+      double uy = positions.get(b * 3 + 1) - ay;
+      double uz = positions.get(b * 3 + 2) - az;
+      double vx = positions.get(c * 3) - ax;
+      double vy = positions.get(c * 3 + 1) - ay;
+      double vz = positions.get(c * 3 + 2) - az;
+      n[0] = uy * vz - uz * vy;
+      n[1] = uz * vx - ux * vz;
+      n[2] = ux * vy - uy * vx;
+      return Math.sqrt(n[0] * n[0] + n[1] * n[1] + n[2] * n[2]);
+    }
+
+    /** Numbers the distinct positions and writes each vertex's number to {@code groups}. */
+    private static int groupByPosition(FloatBuffer positions, int[] groups) {
+      Integer[] order = new Integer[groups.length];
+      for (int v = 0; v < order.length; ++v) {
+        order[v] = v;
+      }
+      Arrays.sort(order, (v, w) -> comparePositions(positions, v, w));
+      int groupCount = 0;
+      for (int i = 0; i < order.length; ++i) {
+        if (i > 0 && comparePositions(positions, order[i - 1], order[i]) != 0) {
+          ++groupCount;
+        }
+        groups[order[i]] = groupCount;
+      }
+      return order.length == 0 ? 0 : groupCount + 1;
+    }
+
+    private static int comparePositions(FloatBuffer positions, int v, int w) {
+      for (int axis = 0; axis < 3; ++axis) {
+        int result = Float.compare(positions.get(v * 3 + axis), positions.get(w * 3 + axis));
+        if (result != 0) {
+          return result;
+        }
+      }
+      return 0;
+    }
+
+    private static long edgeKey(int g, int h) {
+      return ((long) Math.min(g, h) << 32) | Math.max(g, h);
+    }
+  }
+
+  private static class Candidate implements Comparable<Candidate> {
+    final double cost;
+    final int from;
+    final int to;
+    final int fromVersion;
+    final int toVersion;
+
+    Candidate(double cost, int from, int to, int fromVersion, int toVersion) {
+      this.cost = cost;
+      this.from = from;
+      this.to = to;
+      this.fromVersion = fromVersion;
+      this.toVersion = toVersion;
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+      return Double.compare(cost, other.cost);
+    }
+  }
+
+  private MeshSimplifier() {}
+}
@@ -0,0 +1,245 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+/**
+ * Persists linked program binaries (from {@code glGetProgramBinary}) so that {@link Shader} can skip
+ * compiling and linking on later launches.
+ *
+ * <p>Entries are keyed by {@link #computeKey}, a SHA-256 hash of the final shader sources (which
+ * include the inserted {@code #define}s) and the GL driver identification. A driver update therefore
+ * produces new keys rather than feeding an incompatible binary to {@code glProgramBinary}. Each entry
+ * is a separate file:
+ *
+ * <pre>
+ *   int32    magic ('SPBC')
+ *   int32    version
+ *   byte[32] key
+ *   int32    binary format
+ *   int32    binary length
+ *   int32    CRC32 of the binary
+ *   byte[]   binary
+ * </pre>
+ *
+ * <p>Any entry that fails validation is deleted and treated as a miss. This class does not touch
+ * OpenGL, so it can be exercised on the JVM.
+ */
+public class ProgramBinaryCache {
+  /** Holds a program binary and the format {@code glProgramBinary} needs to load it. */
+  public static class Entry {
+    private final int format;
+    private final ByteBuffer binary;
+
+    public Entry(int format, ByteBuffer binary) {
+      this.format = format;
+      this.binary = binary;
+    }
+
+    /** Returns the driver-specific binary format. */
+    public int getFormat() {
+      return format;
+    }
+
+    /** Returns the binary, positioned at zero with its limit at the binary length. */
+    public ByteBuffer getBinary() {
+      return binary;
+    }
+  }
+
+  /* package-private */ static final int MAGIC = 0x43425053; // "SPBC" read as little-endian.
+  /* package-private */ static final int VERSION = 1;
+  /* package-private */ static final int KEY_SIZE = 32;
+  /* package-private */ static final int HEADER_SIZE = 4 + 4 + KEY_SIZE + 4 + 4 + 4;
+
+  private static final String FILE_EXTENSION = ".bin";
+
+  private final File directory;
+
+  /** Constructs a cache storing its entries in {@code directory}, which is created on demand. */
+  public ProgramBinaryCache(File directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * Computes the key for a program.
+   *
+   * @param vertexShaderCode the vertex shader exactly as passed to {@code glShaderSource}
+   * @param fragmentShaderCode the fragment shader exactly as passed to {@code glShaderSource}
+   * @param driverId identifies the driver, e.g. {@code GL_VENDOR}, {@code GL_RENDERER} and {@code
+   *     GL_VERSION} concatenated
+   * @return a 64 character hexadecimal key
+   */
+  public static String computeKey(
+      String vertexShaderCode, String fragmentShaderCode, String driverId) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+    // Length prefixes keep e.g. ("ab", "c") and ("a", "bc") apart.
+    update(digest, vertexShaderCode);
+    update(digest, fragmentShaderCode);
+    update(digest, driverId);
+    byte[] hash = digest.digest();
+    StringBuilder builder = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+      builder.append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
+
+  /** Returns the entry stored for {@code key}, or null if there is none or it is invalid. */
+  public Entry load(String key) {
+    File file = getFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+    try (FileInputStream inputStream = new FileInputStream(file)) {
+      FileChannel channel = inputStream.getChannel();
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw new IOException("Bad program binary size " + size);
+      }
+      ByteBuffer buffer = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+      buffer.flip();
+      return parse(buffer, key);
+    } catch (IOException e) {
+      // Corrupt or stale: drop it so the caller recompiles and stores a fresh binary.
+      remove(key);
+      return null;
+    }
+  }
+
+  /** Stores a program binary for {@code key}, replacing any existing entry. */
+  public void store(String key, int format, ByteBuffer binary) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Failed to create program binary cache directory: " + directory);
+    }
+    File file = getFile(key);
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    try (FileOutputStream outputStream = new FileOutputStream(temporaryFile)) {
+      ByteBuffer data = serialize(key, format, binary);
+      FileChannel channel = outputStream.getChannel();
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    }
+    if (!temporaryFile.renameTo(file)) {
+      temporaryFile.delete();
+      throw new IOException("Failed to move program binary into place: " + file);
+    }
+  }
+
+  /** Removes the entry for {@code key}, for example after {@code glProgramBinary} rejected it. */
+  public void remove(String key) {
+    getFile(key).delete();
+  }
+
+  /** Removes all entries. */
+  public void clear() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.getName().endsWith(FILE_EXTENSION)) {
+        file.delete();
+      }
+    }
+  }
+
+  /* package-private */
+  static ByteBuffer serialize(String key, int format, ByteBuffer binary) {
+    ByteBuffer source = binary.duplicate();
+    int length = source.remaining();
+    int crc = crc32(source.duplicate());
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + length).order(ByteOrder.LITTLE_ENDIAN);
+    buffer
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .put(decodeKey(key))
+        .putInt(format)
+        .putInt(length)
+        .putInt(crc)
+        .put(source);
+    buffer.flip();
+    return buffer;
+  }
+
+  /* package-private */
+  static Entry parse(ByteBuffer buffer, String key) throws IOException {
+    buffer = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.remaining() < HEADER_SIZE) {
+      throw new IOException("Program binary is truncated");
+    }
+    if (buffer.getInt() != MAGIC) {
+      throw new IOException("Not a program binary");
+    }
+    if (buffer.getInt() != VERSION) {
+      throw new IOException("Unsupported program binary version");
+    }
+    byte[] storedKey = new byte[KEY_SIZE];
+    buffer.get(storedKey);
+    if (!MessageDigest.isEqual(storedKey, decodeKey(key))) {
+      throw new IOException("Program binary key mismatch");
+    }
+    int format = buffer.getInt();
+    int length = buffer.getInt();
+    int storedCrc = buffer.getInt();
+    if (length < 0 || length != buffer.remaining()) {
+      throw new IOException("Program binary is truncated");
+    }
+    ByteBuffer binary = buffer.slice();
+    if (crc32(binary.duplicate()) != storedCrc) {
+      throw new IOException("Program binary checksum mismatch");
+    }
+    return new Entry(format, binary);
+  }
+
+  private static int crc32(ByteBuffer buffer) {
+    // CRC32.update(ByteBuffer) needs API level 26, so go through a small array.
+    CRC32 crc = new CRC32();
+    byte[] chunk = new byte[4096];
+    while (buffer.hasRemaining()) {
+      int amount = Math.min(chunk.length, buffer.remaining());
+      buffer.get(chunk, 0, amount);
+      crc.update(chunk, 0, amount);
+    }
+    return (int) crc.getValue();
+  }
+
+  private File getFile(String key) {
+    return new File(directory, key + FILE_EXTENSION);
+  }
+
+  private static void update(MessageDigest digest, String value) {
+    byte[] bytes = value.getBytes(UTF_8);
+    digest.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+    digest.update(bytes);
+  }
+
+  private static byte[] decodeKey(String key) {
+    if (key.length() != KEY_SIZE * 2) {
+      throw new IllegalArgumentException("Not a program binary key: " + key);
+    }
+    byte[] bytes = new byte[KEY_SIZE];
+    for (int i = 0; i < KEY_SIZE; ++i) {
+      bytes[i] = (byte) Integer.parseInt(key.substring(i * 2, i * 2 + 2), 16);
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,93 @@
+package com.example.artech.geoapi.common.samplerender;
+
+/**
+ * Picks the render scale of an offscreen {@link Framebuffer} from measured frame times, so that a
+ * frame's work stays within a time budget.
+ *
+ * <p>Frame times are smoothed with an exponential moving average. When the average is over budget
+ * the scale drops at once, by the square root of the overshoot since fill cost grows with the pixel
+ * count, that is with the scale squared. When the average stays well under budget the scale creeps
+ * back up in small steps. After each change the controller waits {@link #SETTLE_FRAMES} frames, so
+ * the average reflects the new scale before it is judged again.
+ *
+ * <p>The scale depends only on the frame times passed to {@link #update}, which makes the
+ * controller deterministic and testable on the JVM. It does not allocate.
+ */
+public final class RenderScaleController {
+  /** Frames to wait after a change before changing the scale again. */
+  public static final int SETTLE_FRAMES = 30;
+
+  // Weight of the newest frame in the moving average.
+  private static final double SMOOTHING = 0.1;
+  // When dropping, aim this far under budget so the next frames have some headroom.
+  private static final double DROP_TARGET = 0.9;
+  // Limits a single drop, since part of a frame's time does not depend on the scale.
+  private static final float MAX_DROP_FACTOR = 0.75f;
+  // Raise the scale only while the average is under this fraction of the budget. Each step costs
+  // about 20% more fill at a scale of 0.5, which still leaves the average under budget.
+  private static final double RAISE_BELOW = 0.75;
+  private static final float RAISE_STEP = 0.05f;
+
+  private final long budgetNanos;
+  private final float minScale;
+  private final float maxScale;
+  private float scale;
+  private double averageNanos = -1;
+  private int framesSinceChange = 0;
+
+  /**
+   * @param budgetNanos the frame time to stay under
+   * @param minScale the lowest scale to drop to, greater than 0
+   * @param maxScale the highest scale to raise to and the initial scale, at most 1
+   */
+  public RenderScaleController(long budgetNanos, float minScale, float maxScale) {
+    if (budgetNanos <= 0) {
+      throw new IllegalArgumentException("Budget must be positive: " + budgetNanos);
+    }
+    if (!(minScale > 0 && minScale <= maxScale && maxScale <= 1)) {
+      throw new IllegalArgumentException("Bad scale range: " + minScale + " to " + maxScale);
+    }
+    this.budgetNanos = budgetNanos;
+    this.minScale = minScale;
+    this.maxScale = maxScale;
+    scale = maxScale;
+  }
+
+  /** Records the time a frame took and returns the scale to render the next one at. */
+  public float update(long frameNanos) {
+    averageNanos =
+        averageNanos < 0 ? frameNanos : averageNanos + SMOOTHING * (frameNanos - averageNanos);
+    if (++framesSinceChange < SETTLE_FRAMES) {
+      return scale;
+    }
+    float newScale = scale;
+    if (averageNanos > budgetNanos) {
+      float factor = (float) Math.sqrt(budgetNanos * DROP_TARGET / averageNanos);
+      newScale = Math.max(minScale, scale * Math.max(factor, MAX_DROP_FACTOR));
+    } else if (averageNanos < budgetNanos * RAISE_BELOW) {
+      newScale = Math.min(maxScale, scale + RAISE_STEP);
+    }
+    if (newScale != scale) {
+      scale = newScale;
+      framesSinceChange = 0;
+    }
+    return scale;
+  }
+
+  /** Returns the current scale, between the minimum and maximum scale. */
+  public float getScale() {
+    return scale;
+  }
+
+  /** Returns the moving average of frame times, or -1 before the first frame. */
+  public double getAverageFrameNanos() {
+    return averageNanos;
+  }
+
+  /** Forgets the measured frame times and returns to the maximum scale, as after construction. */
+  public void reset() {
+    scale = maxScale;
+    averageNanos = -1;
+    framesSinceChange = 0;
+  }
+}
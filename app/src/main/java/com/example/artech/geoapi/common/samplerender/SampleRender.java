@@ -5,9 +5,14 @@ import android.content.res.AssetManager;
 import android.opengl.GLES30;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
+import android.util.Log;
 
 import com.google.ar.core.Anchor;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -24,12 +29,13 @@ import javax.microedition.khronos.opengles.GL10;
 
   The SampleRender class provides two draw methods to draw meshes with a specified shader. One method
   draws to the default framebuffer, while the other draws to a specified Framebuffer. It also provides
-  a clear method to clear the given framebuffer.
+  a clear method to clear the given framebuffer, and methods to invalidate and scissor it.
 
   The SampleRender class provides a method called renderCompassAtAnchor to render a virtual compass
   at an ARCore Anchor. The method takes several matrices, a Shader, a Mesh, and a Framebuffer as arguments.
   It uses the matrices to calculate the model/view/projection matrices, sets up the Shader and Mesh, and
-  draws the mesh to the specified Framebuffer.
+  draws the mesh to the specified Framebuffer. renderCompassAtAnchors and renderCompassAtAnchorsInstanced
+  draw the mesh at every anchor a FrustumCuller kept.
 
   Overall, this code is a basic framework for rendering 3D objects using OpenGL, with support for loading
   Android resources and rendering ARCore objects. However, there are many details missing from this code,
@@ -42,9 +48,17 @@ import javax.microedition.khronos.opengles.GL10;
 /** A SampleRender context. */
 public class SampleRender {
   private static final String TAG = SampleRender.class.getSimpleName();
+  private static final String ASTC_LDR_EXTENSION = "GL_KHR_texture_compression_astc_ldr";
 
   private final AssetManager assetManager;
+  private final File cacheDir;
+  private final GLStateCache stateCache = new GLStateCache(new GlesStateBackend());
+  private final ProgramBinaryCache programBinaryCache;
+  private String driverId;
+  private volatile boolean astcSupported = false;
 
+  // Scratch list of attachments for invalidate().
+  private final int[] invalidatedAttachments = new int[2];
   private int viewportWidth = 1;
   private int viewportHeight = 1;
 
@@ -57,6 +71,8 @@ public class SampleRender {
    */
   public SampleRender(GLSurfaceView glSurfaceView, Renderer renderer, AssetManager assetManager) {
     this.assetManager = assetManager;
+    this.cacheDir = new File(glSurfaceView.getContext().getCodeCacheDir(), "samplerender");
+    this.programBinaryCache = new ProgramBinaryCache(new File(cacheDir, "programs"));
     glSurfaceView.setPreserveEGLContextOnPause(true);
     glSurfaceView.setEGLContextClientVersion(3);
     glSurfaceView.setEGLConfigChooser(8, 8, 8, 8, 16, 0);
@@ -64,6 +80,9 @@ public class SampleRender {
         new GLSurfaceView.Renderer() {
           @Override
           public void onSurfaceCreated(GL10 gl, EGLConfig config) {
+            // A new context starts with default state.
+            stateCache.invalidate();
+            astcSupported = queryAstcSupport();
             GLES30.glEnable(GLES30.GL_BLEND);
             GLError.maybeThrowGLException("Failed to enable blending", "glEnable");
             renderer.onSurfaceCreated(SampleRender.this);
@@ -78,8 +97,13 @@ public class SampleRender {
 
           @Override
           public void onDrawFrame(GL10 gl) {
-            clear(/*framebuffer=*/ null, 0f, 0f, 0f, 1f);
-            renderer.onDrawFrame(SampleRender.this);
+            GLError.beginFrame();
+            try {
+              clear(/*framebuffer=*/ null, 0f, 0f, 0f, 1f);
+              renderer.onDrawFrame(SampleRender.this);
+            } finally {
+              GLError.endFrame();
+            }
           }
         });
     glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
@@ -97,9 +121,46 @@ public class SampleRender {
    * <p>The {@code framebuffer} argument may be null, in which case the default framebuffer is used.
    */
   public void draw(Mesh mesh, Shader shader, Framebuffer framebuffer) {
+    draw(mesh, shader, framebuffer, /*level=*/ 0);
+  }
+
+  /**
+   * Draw one level of detail of a {@link Mesh}, 0 being the full mesh, with the specified {@link
+   * Shader} to the given {@link Framebuffer}.
+   */
+  public void draw(Mesh mesh, Shader shader, Framebuffer framebuffer, int level) {
+    useFramebuffer(framebuffer);
+    shader.lowLevelUse(stateCache);
+    mesh.lowLevelDraw(level);
+  }
+
+  /**
+   * Draw the first {@code instanceCount} instances of a {@link Mesh} with an attached {@link
+   * InstanceBuffer} in a single draw call.
+   *
+   * <p>The {@code framebuffer} argument may be null, in which case the default framebuffer is used.
+   */
+  public void drawInstanced(Mesh mesh, Shader shader, Framebuffer framebuffer, int instanceCount) {
+    drawInstanced(mesh, shader, framebuffer, /*level=*/ 0, /*firstInstance=*/ 0, instanceCount);
+  }
+
+  /**
+   * Draw one level of detail of {@code instanceCount} instances of a {@link Mesh}, starting at
+   * instance {@code firstInstance} of its {@link InstanceBuffer}, in a single draw call.
+   */
+  public void drawInstanced(
+      Mesh mesh,
+      Shader shader,
+      Framebuffer framebuffer,
+      int level,
+      int firstInstance,
+      int instanceCount) {
+    if (instanceCount <= 0) {
+      return;
+    }
     useFramebuffer(framebuffer);
-    shader.lowLevelUse();
-    mesh.lowLevelDraw();
+    shader.lowLevelUse(stateCache);
+    mesh.lowLevelDrawInstanced(level, firstInstance, instanceCount);
   }
 
   /**
@@ -112,12 +173,62 @@ public class SampleRender {
     useFramebuffer(framebuffer);
     GLES30.glClearColor(r, g, b, a);
     GLError.maybeThrowGLException("Failed to set clear color", "glClearColor");
-    GLES30.glDepthMask(true);
-    GLError.maybeThrowGLException("Failed to set depth write mask", "glDepthMask");
+    stateCache.depthMask(true);
     GLES30.glClear(GLES30.GL_COLOR_BUFFER_BIT | GLES30.GL_DEPTH_BUFFER_BIT);
     GLError.maybeThrowGLException("Failed to clear framebuffer", "glClear");
   }
 
+  /**
+   * Discards the contents of the given attachments of a framebuffer, so a tiled GPU can skip
+   * writing them back to memory. Call after the last draw that needs them and before switching to
+   * another framebuffer; their contents are undefined until next cleared or drawn.
+   *
+   * <p>The {@code framebuffer} argument may be null, in which case the default framebuffer's
+   * attachments are invalidated.
+   */
+  public void invalidate(Framebuffer framebuffer, boolean color, boolean depth) {
+    int count = 0;
+    if (color) {
+      invalidatedAttachments[count++] =
+          framebuffer == null ? GLES30.GL_COLOR : GLES30.GL_COLOR_ATTACHMENT0;
+    }
+    if (depth) {
+      invalidatedAttachments[count++] =
+          framebuffer == null ? GLES30.GL_DEPTH : GLES30.GL_DEPTH_ATTACHMENT;
+    }
+    if (count == 0) {
+      return;
+    }
+    useFramebuffer(framebuffer);
+    GLES30.glInvalidateFramebuffer(GLES30.GL_FRAMEBUFFER, count, invalidatedAttachments, 0);
+    GLError.maybeThrowGLException("Failed to invalidate framebuffer", "glInvalidateFramebuffer");
+  }
+
+  /**
+   * Restricts later draws and clears to a rectangle until {@link #disableScissor}. The rectangle is
+   * given in normalized device coordinates and rounded outwards to whole pixels of the viewport
+   * {@code framebuffer} is drawn with, which takes its render scale into account.
+   *
+   * <p>The {@code framebuffer} argument may be null, in which case the default framebuffer's
+   * viewport is used.
+   */
+  public void setScissor(
+      Framebuffer framebuffer, float minX, float minY, float maxX, float maxY) {
+    int width = framebuffer == null ? viewportWidth : framebuffer.getRenderWidth();
+    int height = framebuffer == null ? viewportHeight : framebuffer.getRenderHeight();
+    int left = Math.max(0, (int) Math.floor((minX + 1) / 2 * width));
+    int bottom = Math.max(0, (int) Math.floor((minY + 1) / 2 * height));
+    int right = Math.min(width, (int) Math.ceil((maxX + 1) / 2 * width));
+    int top = Math.min(height, (int) Math.ceil((maxY + 1) / 2 * height));
+    stateCache.scissorTest(true);
+    stateCache.scissor(left, bottom, Math.max(0, right - left), Math.max(0, top - bottom));
+  }
+
+  /** Lets draws and clears cover their whole target again after {@link #setScissor}. */
+  public void disableScissor() {
+    stateCache.scissorTest(false);
+  }
+
   /** Interface to be implemented for rendering callbacks. */
   public static interface Renderer {
     /**
@@ -142,11 +253,87 @@ public class SampleRender {
     public void onDrawFrame(SampleRender render);
   }
 
+  /**
+   * Returns the tracker that skips redundant state changes. Its counters show how many calls were
+   * issued and skipped, and code that changes GL state directly should {@link
+   * GLStateCache#invalidate invalidate} it.
+   */
+  public GLStateCache getStateCache() {
+    return stateCache;
+  }
+
   /* package-private */
   AssetManager getAssets() {
     return assetManager;
   }
 
+  /** Returns whether the app ships an asset with the given file name, such as an optional shader. */
+  public boolean hasAsset(String assetFileName) {
+    int slash = assetFileName.lastIndexOf('/');
+    try {
+      String[] names = assetManager.list(slash < 0 ? "" : assetFileName.substring(0, slash));
+      return names != null && Arrays.asList(names).contains(assetFileName.substring(slash + 1));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns a private directory for derived data such as parsed meshes. The system clears it when
+   * the app is updated, so entries never outlive the assets they were derived from.
+   */
+  /* package-private */
+  File getCacheDir() {
+    return cacheDir;
+  }
+
+  /** Returns the persistent cache of linked shader programs. */
+  /* package-private */
+  ProgramBinaryCache getProgramBinaryCache() {
+    return programBinaryCache;
+  }
+
+  /**
+   * Returns a string identifying the GL driver, so cached program binaries are not reused across
+   * driver updates, or null if the driver cannot load program binaries at all. Must be called on the
+   * GL thread.
+   */
+  /* package-private */
+  String getDriverId() {
+    if (driverId == null) {
+      int[] formatCount = new int[1];
+      GLES30.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, formatCount, 0);
+      GLError.maybeLogGLError(
+          Log.WARN, TAG, "Failed to query program binary formats", "glGetIntegerv");
+      if (formatCount[0] <= 0) {
+        driverId = "";
+      } else {
+        driverId =
+            GLES30.glGetString(GLES30.GL_VENDOR)
+                + '\n'
+                + GLES30.glGetString(GLES30.GL_RENDERER)
+                + '\n'
+                + GLES30.glGetString(GLES30.GL_VERSION);
+      }
+    }
+    return driverId.isEmpty() ? null : driverId;
+  }
+
+  /**
+   * Returns whether the device can sample ASTC LDR textures. Valid once the surface has been
+   * created; may be called from any thread.
+   */
+  /* package-private */
+  boolean isAstcSupported() {
+    return astcSupported;
+  }
+
+  private static boolean queryAstcSupport() {
+    String extensions = GLES30.glGetString(GLES30.GL_EXTENSIONS);
+    GLError.maybeLogGLError(Log.WARN, TAG, "Failed to query GL extensions", "glGetString");
+    return extensions != null && extensions.contains(ASTC_LDR_EXTENSION);
+  }
+
   private void useFramebuffer(Framebuffer framebuffer) {
     int framebufferId;
     int viewportWidth;
@@ -157,13 +344,72 @@ public class SampleRender {
       viewportHeight = this.viewportHeight;
     } else {
       framebufferId = framebuffer.getFramebufferId();
-      viewportWidth = framebuffer.getWidth();
-      viewportHeight = framebuffer.getHeight();
+      viewportWidth = framebuffer.getRenderWidth();
+      viewportHeight = framebuffer.getRenderHeight();
+    }
+    stateCache.bindFramebuffer(framebufferId);
+    stateCache.viewport(0, 0, viewportWidth, viewportHeight);
+  }
+
+  /** Issues the state changes {@link GLStateCache} did not skip. */
+  private static class GlesStateBackend implements GLStateCache.Backend {
+    @Override
+    public void bindFramebuffer(int framebufferId) {
+      GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebufferId);
+      GLError.maybeThrowGLException("Failed to bind framebuffer", "glBindFramebuffer");
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+      GLES30.glViewport(x, y, width, height);
+      GLError.maybeThrowGLException("Failed to set viewport dimensions", "glViewport");
+    }
+
+    @Override
+    public void useProgram(int programId) {
+      GLES30.glUseProgram(programId);
+      GLError.maybeThrowGLException("Failed to use shader program", "glUseProgram");
+    }
+
+    @Override
+    public void blendFuncSeparate(int sourceRgb, int destRgb, int sourceAlpha, int destAlpha) {
+      GLES30.glBlendFuncSeparate(sourceRgb, destRgb, sourceAlpha, destAlpha);
+      GLError.maybeThrowGLException("Failed to set blend mode", "glBlendFuncSeparate");
+    }
+
+    @Override
+    public void depthMask(boolean depthWrite) {
+      GLES30.glDepthMask(depthWrite);
+      GLError.maybeThrowGLException("Failed to set depth write mask", "glDepthMask");
+    }
+
+    @Override
+    public void depthTest(boolean depthTest) {
+      if (depthTest) {
+        GLES30.glEnable(GLES30.GL_DEPTH_TEST);
+        GLError.maybeThrowGLException("Failed to enable depth test", "glEnable");
+      } else {
+        GLES30.glDisable(GLES30.GL_DEPTH_TEST);
+        GLError.maybeThrowGLException("Failed to disable depth test", "glDisable");
+      }
+    }
+
+    @Override
+    public void scissorTest(boolean scissorTest) {
+      if (scissorTest) {
+        GLES30.glEnable(GLES30.GL_SCISSOR_TEST);
+        GLError.maybeThrowGLException("Failed to enable scissor test", "glEnable");
+      } else {
+        GLES30.glDisable(GLES30.GL_SCISSOR_TEST);
+        GLError.maybeThrowGLException("Failed to disable scissor test", "glDisable");
+      }
+    }
+
+    @Override
+    public void scissor(int x, int y, int width, int height) {
+      GLES30.glScissor(x, y, width, height);
+      GLError.maybeThrowGLException("Failed to set scissor box", "glScissor");
     }
-    GLES30.glBindFramebuffer(GLES30.GL_FRAMEBUFFER, framebufferId);
-    GLError.maybeThrowGLException("Failed to bind framebuffer", "glBindFramebuffer");
-    GLES30.glViewport(0, 0, viewportWidth, viewportHeight);
-    GLError.maybeThrowGLException("Failed to set viewport dimensions", "glViewport");
   }
 
   public void renderCompassAtAnchor(Anchor anchor,float[] viewMatrix,float[] modelMatrix,float[] projectionMatrix,
@@ -181,4 +427,46 @@ public class SampleRender {
     draw(virtualObjectMesh, virtualObjectShader, virtualSceneFramebuffer);
   }
 
+  /**
+   * Draws the mesh at each anchor the culler kept in its last {@link FrustumCuller#cull}, at the
+   * level of detail it picked for the anchor, without touching ARCore.
+   */
+  public void renderCompassAtAnchors(FrustumCuller visibleAnchors, float[] viewMatrix,
+                                     float[] projectionMatrix, float[] modelViewMatrix,
+                                     float[] modelViewProjectionMatrix, Shader virtualObjectShader,
+                                     Mesh virtualObjectMesh, Framebuffer virtualSceneFramebuffer) {
+    float[] modelMatrices = visibleAnchors.getVisibleModelMatrices();
+    for (int level = 0; level < visibleAnchors.getLodCount(); ++level) {
+      int first = visibleAnchors.getLodFirstInstance(level);
+      int end = first + visibleAnchors.getLodInstanceCount(level);
+      for (int i = first; i < end; ++i) {
+        Matrix.multiplyMM(modelViewMatrix, 0, viewMatrix, 0, modelMatrices, 16 * i);
+        Matrix.multiplyMM(modelViewProjectionMatrix, 0, projectionMatrix, 0, modelViewMatrix, 0);
+        virtualObjectShader.setMat4("u_ModelViewProjection", modelViewProjectionMatrix);
+        draw(virtualObjectMesh, virtualObjectShader, virtualSceneFramebuffer, level);
+      }
+    }
+  }
+
+  /**
+   * Draws the mesh at each anchor the culler kept, with one instanced draw call per level of
+   * detail. {@code instances} must be attached to {@code virtualObjectMesh}, and {@code
+   * instancedShader} must read the model-view matrix from that attribute and take the projection as
+   * {@code u_Projection}. Anchors beyond the buffer's capacity are not drawn.
+   */
+  public void renderCompassAtAnchorsInstanced(FrustumCuller visibleAnchors, float[] viewMatrix,
+                                              float[] projectionMatrix, InstanceBuffer instances,
+                                              Shader instancedShader, Mesh virtualObjectMesh,
+                                              Framebuffer virtualSceneFramebuffer) {
+    int instanceCount = instances.update(
+        viewMatrix, visibleAnchors.getVisibleModelMatrices(), visibleAnchors.getVisibleCount());
+    instancedShader.setMat4("u_Projection", projectionMatrix);
+    for (int level = 0; level < visibleAnchors.getLodCount(); ++level) {
+      int first = visibleAnchors.getLodFirstInstance(level);
+      int count = Math.min(visibleAnchors.getLodInstanceCount(level), instanceCount - first);
+      drawInstanced(
+          virtualObjectMesh, instancedShader, virtualSceneFramebuffer, level, first, count);
+    }
+  }
+
 }
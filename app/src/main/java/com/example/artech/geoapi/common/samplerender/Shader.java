@@ -11,8 +11,9 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.regex.Matcher;
 
@@ -53,11 +54,14 @@ public class Shader implements Closeable {
   }
 
   private int programId = 0;
-  private final Map<Integer, Uniform> uniforms = new HashMap<>();
-  private int maxTextureUnit = 0;
+  private final UniformStore uniforms = new UniformStore();
+  private final UniformStore.Uploader uniformUploader = new GlUniformUploader();
 
-  private final Map<String, Integer> uniformLocations = new HashMap<>();
-  private final Map<Integer, String> uniformNames = new HashMap<>();
+  // Textures are bound to consecutive units every time the shader is used; the sampler uniforms
+  // themselves only store the unit and are uploaded once.
+  private Texture[] textures = new Texture[0];
+  private int[] textureLocations = new int[0];
+  private int maxTextureUnit = 0;
 
   private boolean depthTest = true;
   private boolean depthWrite = true;
@@ -77,47 +81,34 @@ public class Shader implements Closeable {
       String vertexShaderCode,
       String fragmentShaderCode,
       Map<String, String> defines) {
-    int vertexShaderId = 0;
-    int fragmentShaderId = 0;
     String definesCode = createShaderDefinesCode(defines);
+    String finalVertexShaderCode = insertShaderDefinesCode(vertexShaderCode, definesCode);
+    String finalFragmentShaderCode = insertShaderDefinesCode(fragmentShaderCode, definesCode);
+
+    ProgramBinaryCache binaryCache = render.getProgramBinaryCache();
+    String driverId = render.getDriverId();
+    String binaryKey =
+        driverId == null
+            ? null
+            : ProgramBinaryCache.computeKey(
+                finalVertexShaderCode, finalFragmentShaderCode, driverId);
     try {
-      vertexShaderId =
-          createShader(
-              GLES30.GL_VERTEX_SHADER, insertShaderDefinesCode(vertexShaderCode, definesCode));
-      fragmentShaderId =
-          createShader(
-              GLES30.GL_FRAGMENT_SHADER, insertShaderDefinesCode(fragmentShaderCode, definesCode));
-
-      programId = GLES30.glCreateProgram();
-      GLError.maybeThrowGLException("Shader program creation failed", "glCreateProgram");
-      GLES30.glAttachShader(programId, vertexShaderId);
-      GLError.maybeThrowGLException("Failed to attach vertex shader", "glAttachShader");
-      GLES30.glAttachShader(programId, fragmentShaderId);
-      GLError.maybeThrowGLException("Failed to attach fragment shader", "glAttachShader");
-      GLES30.glLinkProgram(programId);
-      GLError.maybeThrowGLException("Failed to link shader program", "glLinkProgram");
-
-      final int[] linkStatus = new int[1];
-      GLES30.glGetProgramiv(programId, GLES30.GL_LINK_STATUS, linkStatus, 0);
-      if (linkStatus[0] == GLES30.GL_FALSE) {
-        String infoLog = GLES30.glGetProgramInfoLog(programId);
-        GLError.maybeLogGLError(
-            Log.WARN, TAG, "Failed to retrieve shader program info log", "glGetProgramInfoLog");
-        throw new GLException(0, "Shader link failed: " + infoLog);
+      if (binaryKey != null && loadProgramBinary(binaryCache.load(binaryKey))) {
+        reflectUniforms();
+        return;
+      }
+      if (binaryKey != null) {
+        // Missing, or rejected by the driver; either way it will be replaced below.
+        binaryCache.remove(binaryKey);
       }
+      compileAndLink(finalVertexShaderCode, finalFragmentShaderCode, binaryKey != null);
+      reflectUniforms();
     } catch (Throwable t) {
       close();
       throw t;
-    } finally {
-      // Shader objects can be flagged for deletion immediately after program creation.
-      if (vertexShaderId != 0) {
-        GLES30.glDeleteShader(vertexShaderId);
-        GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free vertex shader", "glDeleteShader");
-      }
-      if (fragmentShaderId != 0) {
-        GLES30.glDeleteShader(fragmentShaderId);
-        GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free fragment shader", "glDeleteShader");
-      }
+    }
+    if (binaryKey != null) {
+      storeProgramBinary(binaryCache, binaryKey);
     }
   }
 
@@ -138,11 +129,19 @@ public class Shader implements Closeable {
     AssetManager assets = render.getAssets();
     return new Shader(
         render,
-        inputStreamToString(assets.open(vertexShaderFileName)),
-        inputStreamToString(assets.open(fragmentShaderFileName)),
+        readAsset(assets, vertexShaderFileName),
+        readAsset(assets, fragmentShaderFileName),
         defines);
   }
 
+  /**
+   * Reads a shader asset as UTF-8 text. This does not touch OpenGL, so it can run on a background
+   * thread.
+   */
+  public static String readAsset(AssetManager assets, String fileName) throws IOException {
+    return inputStreamToString(assets.open(fileName));
+  }
+
   @Override
   public void close() {
     if (programId != 0) {
@@ -210,36 +209,41 @@ public class Shader implements Closeable {
     // Special handling for Textures. If replacing an existing texture uniform, reuse the texture
     // unit.
     int location = getUniformLocation(name);
-    Uniform uniform = uniforms.get(location);
-    int textureUnit;
-    if (!(uniform instanceof UniformTexture)) {
+    int textureUnit = -1;
+    for (int unit = 0; unit < maxTextureUnit; ++unit) {
+      if (textureLocations[unit] == location) {
+        textureUnit = unit;
+        break;
+      }
+    }
+    if (textureUnit == -1) {
       textureUnit = maxTextureUnit++;
-    } else {
-      UniformTexture uniformTexture = (UniformTexture) uniform;
-      textureUnit = uniformTexture.getTextureUnit();
+      if (textures.length < maxTextureUnit) {
+        textures = Arrays.copyOf(textures, maxTextureUnit);
+        textureLocations = Arrays.copyOf(textureLocations, maxTextureUnit);
+      }
+      textureLocations[textureUnit] = location;
+      uniforms.setInt(location, textureUnit);
     }
-    uniforms.put(location, new UniformTexture(textureUnit, texture));
+    textures[textureUnit] = texture;
     return this;
   }
 
   /** Sets a {@code bool} uniform. */
   public Shader setBool(String name, boolean v0) {
-    int[] values = {v0 ? 1 : 0};
-    uniforms.put(getUniformLocation(name), new UniformInt(values));
+    uniforms.setInt(getUniformLocation(name), v0 ? 1 : 0);
     return this;
   }
 
   /** Sets an {@code int} uniform. */
   public Shader setInt(String name, int v0) {
-    int[] values = {v0};
-    uniforms.put(getUniformLocation(name), new UniformInt(values));
+    uniforms.setInt(getUniformLocation(name), v0);
     return this;
   }
 
   /** Sets a {@code float} uniform. */
   public Shader setFloat(String name, float v0) {
-    float[] values = {v0};
-    uniforms.put(getUniformLocation(name), new Uniform1f(values));
+    uniforms.setFloat(getUniformLocation(name), v0);
     return this;
   }
 
@@ -248,7 +252,7 @@ public class Shader implements Closeable {
     if (values.length != 2) {
       throw new IllegalArgumentException("Value array length must be 2");
     }
-    uniforms.put(getUniformLocation(name), new Uniform2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.VEC2, values);
     return this;
   }
   /** Sets a {@code vec3} uniform. */
@@ -256,7 +260,7 @@ public class Shader implements Closeable {
     if (values.length != 3) {
       throw new IllegalArgumentException("Value array length must be 3");
     }
-    uniforms.put(getUniformLocation(name), new Uniform3f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.VEC3, values);
     return this;
   }
 
@@ -265,7 +269,7 @@ public class Shader implements Closeable {
     if (values.length != 4) {
       throw new IllegalArgumentException("Value array length must be 4");
     }
-    uniforms.put(getUniformLocation(name), new Uniform4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.VEC4, values);
     return this;
   }
 
@@ -274,7 +278,7 @@ public class Shader implements Closeable {
     if (values.length != 4) {
       throw new IllegalArgumentException("Value array length must be 4 (2x2)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.MAT2, values);
     return this;
   }
 
@@ -283,7 +287,7 @@ public class Shader implements Closeable {
     if (values.length != 9) {
       throw new IllegalArgumentException("Value array length must be 9 (3x3)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix3f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.MAT3, values);
     return this;
   }
 
@@ -292,29 +296,25 @@ public class Shader implements Closeable {
     if (values.length != 16) {
       throw new IllegalArgumentException("Value array length must be 16 (4x4)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.MAT4, values);
     return this;
   }
 
   /** Sets a {@code bool} array uniform. */
   public Shader setBoolArray(String name, boolean[] values) {
-    int[] intValues = new int[values.length];
-    for (int i = 0; i < values.length; ++i) {
-      intValues[i] = values[i] ? 1 : 0;
-    }
-    uniforms.put(getUniformLocation(name), new UniformInt(intValues));
+    uniforms.setBools(getUniformLocation(name), values);
     return this;
   }
 
   /** Sets an {@code int} array uniform. */
   public Shader setIntArray(String name, int[] values) {
-    uniforms.put(getUniformLocation(name), new UniformInt(values.clone()));
+    uniforms.setInts(getUniformLocation(name), values);
     return this;
   }
 
   /** Sets a {@code float} array uniform. */
   public Shader setFloatArray(String name, float[] values) {
-    uniforms.put(getUniformLocation(name), new Uniform1f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.FLOAT, values);
     return this;
   }
 
@@ -323,7 +323,7 @@ public class Shader implements Closeable {
     if (values.length % 2 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 2");
     }
-    uniforms.put(getUniformLocation(name), new Uniform2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.VEC2, values);
     return this;
   }
   /** Sets a {@code vec3} array uniform. */
@@ -331,7 +331,7 @@ public class Shader implements Closeable {
     if (values.length % 3 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 3");
     }
-    uniforms.put(getUniformLocation(name), new Uniform3f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.VEC3, values);
     return this;
   }
 
@@ -340,7 +340,7 @@ public class Shader implements Closeable {
     if (values.length % 4 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 4");
     }
-    uniforms.put(getUniformLocation(name), new Uniform4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.VEC4, values);
     return this;
   }
 
@@ -349,7 +349,7 @@ public class Shader implements Closeable {
     if (values.length % 4 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 4 (2x2)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix2f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.MAT2, values);
     return this;
   }
 
@@ -358,7 +358,7 @@ public class Shader implements Closeable {
     if (values.length % 9 != 0) {
       throw new IllegalArgumentException("Values array length must be divisible by 9 (3x3)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix3f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.MAT3, values);
     return this;
   }
 
@@ -367,214 +367,280 @@ public class Shader implements Closeable {
     if (values.length % 16 != 0) {
       throw new IllegalArgumentException("Value array length must be divisible by 16 (4x4)");
     }
-    uniforms.put(getUniformLocation(name), new UniformMatrix4f(values.clone()));
+    uniforms.setFloats(getUniformLocation(name), UniformStore.Kind.MAT4, values);
     return this;
   }
 
   /**
-   * Activates the shader. Don't call this directly unless you are doing low level OpenGL code;
-   * instead, prefer {@link SampleRender#draw}.
+   * Activates the shader, routing fixed-function state through {@code stateCache} so that state
+   * already set by a previous draw is not set again. Use {@link SampleRender#draw} instead of
+   * calling this directly.
    */
-  public void lowLevelUse() {
-    // Make active shader/set uniforms
+  /* package-private */
+  void lowLevelUse(GLStateCache stateCache) {
     if (programId == 0) {
       throw new IllegalStateException("Attempted to use freed shader");
     }
-    GLES30.glUseProgram(programId);
-    GLError.maybeThrowGLException("Failed to use shader program", "glUseProgram");
-    GLES30.glBlendFuncSeparate(
+    stateCache.useProgram(programId);
+    stateCache.blendFuncSeparate(
         sourceRgbBlend.glesEnum,
         destRgbBlend.glesEnum,
         sourceAlphaBlend.glesEnum,
         destAlphaBlend.glesEnum);
-    GLError.maybeThrowGLException("Failed to set blend mode", "glBlendFuncSeparate");
-    GLES30.glDepthMask(depthWrite);
-    GLError.maybeThrowGLException("Failed to set depth write mask", "glDepthMask");
-    if (depthTest) {
-      GLES30.glEnable(GLES30.GL_DEPTH_TEST);
-      GLError.maybeThrowGLException("Failed to enable depth test", "glEnable");
-    } else {
-      GLES30.glDisable(GLES30.GL_DEPTH_TEST);
-      GLError.maybeThrowGLException("Failed to disable depth test", "glDisable");
-    }
+    stateCache.depthMask(depthWrite);
+    stateCache.depthTest(depthTest);
+    bindTexturesAndUniforms();
+  }
+
+  private void bindTexturesAndUniforms() {
     try {
-      // Remove all non-texture uniforms from the map after setting them, since they're stored as
-      // part of the program.
-      ArrayList<Integer> obsoleteEntries = new ArrayList<>(uniforms.size());
-      for (Map.Entry<Integer, Uniform> entry : uniforms.entrySet()) {
-        try {
-          entry.getValue().use(entry.getKey());
-          if (!(entry.getValue() instanceof UniformTexture)) {
-            obsoleteEntries.add(entry.getKey());
-          }
-        } catch (GLException e) {
-          String name = uniformNames.get(entry.getKey());
-          throw new IllegalArgumentException("Error setting uniform `" + name + "'", e);
+      for (int unit = 0; unit < maxTextureUnit; ++unit) {
+        Texture texture = textures[unit];
+        if (texture.getTextureId() == 0) {
+          throw new IllegalStateException("Tried to draw with freed texture");
         }
+        GLES30.glActiveTexture(GLES30.GL_TEXTURE0 + unit);
+        GLError.maybeThrowGLException("Failed to set active texture", "glActiveTexture");
+        GLES30.glBindTexture(texture.getTarget().glesEnum, texture.getTextureId());
+        GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
       }
-      uniforms.keySet().removeAll(obsoleteEntries);
+      // Only values changed since the last use are uploaded; the rest are still stored as part of
+      // the program.
+      uniforms.uploadDirty(uniformUploader);
     } finally {
       GLES30.glActiveTexture(GLES30.GL_TEXTURE0);
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to set active texture", "glActiveTexture");
     }
   }
 
-  private static interface Uniform {
-    public void use(int location);
-  }
-
-  private static class UniformTexture implements Uniform {
-    private final int textureUnit;
-    private final Texture texture;
-
-    public UniformTexture(int textureUnit, Texture texture) {
-      this.textureUnit = textureUnit;
-      this.texture = texture;
-    }
-
-    public int getTextureUnit() {
-      return textureUnit;
-    }
-
-    @Override
-    public void use(int location) {
-      if (texture.getTextureId() == 0) {
-        throw new IllegalStateException("Tried to draw with freed texture");
-      }
-      GLES30.glActiveTexture(GLES30.GL_TEXTURE0 + textureUnit);
-      GLError.maybeThrowGLException("Failed to set active texture", "glActiveTexture");
-      GLES30.glBindTexture(texture.getTarget().glesEnum, texture.getTextureId());
-      GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
-      GLES30.glUniform1i(location, textureUnit);
-      GLError.maybeThrowGLException("Failed to set shader texture uniform", "glUniform1i");
-    }
-  }
-
-  private static class UniformInt implements Uniform {
-    private final int[] values;
-
-    public UniformInt(int[] values) {
-      this.values = values;
-    }
-
+  /** Forwards dirty {@link UniformStore} slots to {@code glUniform*}. */
+  private class GlUniformUploader implements UniformStore.Uploader {
     @Override
-    public void use(int location) {
-      GLES30.glUniform1iv(location, values.length, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 1i", "glUniform1iv");
-    }
-  }
-
-  private static class Uniform1f implements Uniform {
-    private final float[] values;
-
-    public Uniform1f(float[] values) {
-      this.values = values;
+    public void uploadInts(int location, int count, int[] values, int offset) {
+      GLES30.glUniform1iv(location, count, values, offset);
+      maybeThrowUniformException(location, "Failed to set shader uniform 1i", "glUniform1iv");
     }
 
     @Override
-    public void use(int location) {
-      GLES30.glUniform1fv(location, values.length, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 1f", "glUniform1fv");
-    }
-  }
-
-  private static class Uniform2f implements Uniform {
-    private final float[] values;
-
-    public Uniform2f(float[] values) {
-      this.values = values;
+    public void uploadFloats(
+        UniformStore.Kind kind, int location, int count, float[] values, int offset) {
+      switch (kind) {
+        case FLOAT:
+          GLES30.glUniform1fv(location, count, values, offset);
+          maybeThrowUniformException(location, "Failed to set shader uniform 1f", "glUniform1fv");
+          break;
+        case VEC2:
+          GLES30.glUniform2fv(location, count, values, offset);
+          maybeThrowUniformException(location, "Failed to set shader uniform 2f", "glUniform2fv");
+          break;
+        case VEC3:
+          GLES30.glUniform3fv(location, count, values, offset);
+          maybeThrowUniformException(location, "Failed to set shader uniform 3f", "glUniform3fv");
+          break;
+        case VEC4:
+          GLES30.glUniform4fv(location, count, values, offset);
+          maybeThrowUniformException(location, "Failed to set shader uniform 4f", "glUniform4fv");
+          break;
+        case MAT2:
+          GLES30.glUniformMatrix2fv(location, count, /*transpose=*/ false, values, offset);
+          maybeThrowUniformException(
+              location, "Failed to set shader uniform matrix 2f", "glUniformMatrix2fv");
+          break;
+        case MAT3:
+          GLES30.glUniformMatrix3fv(location, count, /*transpose=*/ false, values, offset);
+          maybeThrowUniformException(
+              location, "Failed to set shader uniform matrix 3f", "glUniformMatrix3fv");
+          break;
+        case MAT4:
+          GLES30.glUniformMatrix4fv(location, count, /*transpose=*/ false, values, offset);
+          maybeThrowUniformException(
+              location, "Failed to set shader uniform matrix 4f", "glUniformMatrix4fv");
+          break;
+        default:
+          throw new IllegalArgumentException("Unexpected uniform kind " + kind);
+      }
     }
 
-    @Override
-    public void use(int location) {
-      GLES30.glUniform2fv(location, values.length / 2, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 2f", "glUniform2fv");
+    private void maybeThrowUniformException(int location, String reason, String api) {
+      try {
+        GLError.maybeThrowGLException(reason, api);
+      } catch (GLException e) {
+        String name = uniforms.findName(location);
+        throw new IllegalArgumentException("Error setting uniform `" + name + "'", e);
+      }
     }
   }
 
-  private static class Uniform3f implements Uniform {
-    private final float[] values;
-
-    public Uniform3f(float[] values) {
-      this.values = values;
-    }
-
-    @Override
-    public void use(int location) {
-      GLES30.glUniform3fv(location, values.length / 3, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 3f", "glUniform3fv");
+  /**
+   * Registers every active uniform of the linked program and preallocates its storage, so that
+   * setting and uploading uniforms during a frame never allocates.
+   */
+  private void reflectUniforms() {
+    final int[] activeUniforms = new int[1];
+    GLES30.glGetProgramiv(programId, GLES30.GL_ACTIVE_UNIFORMS, activeUniforms, 0);
+    GLError.maybeThrowGLException("Failed to query active uniforms", "glGetProgramiv");
+    final int[] size = new int[1];
+    final int[] type = new int[1];
+    for (int i = 0; i < activeUniforms[0]; ++i) {
+      String name = GLES30.glGetActiveUniform(programId, i, size, 0, type, 0);
+      GLError.maybeThrowGLException("Failed to query active uniform", "glGetActiveUniform");
+      int location = GLES30.glGetUniformLocation(programId, name);
+      GLError.maybeThrowGLException("Failed to find uniform", "glGetUniformLocation");
+      if (location == -1) {
+        // Uniform block members have no location.
+        continue;
+      }
+      // Arrays are reported as "name[0]"; they are set through their plain name.
+      if (name.endsWith("[0]")) {
+        uniforms.registerName(name, location);
+        name = name.substring(0, name.length() - 3);
+      }
+      uniforms.registerName(name, location);
+      uniforms.declare(location, size[0] * getComponentCount(type[0]));
+    }
+  }
+
+  private static int getComponentCount(int glType) {
+    switch (glType) {
+      case GLES30.GL_FLOAT_VEC2:
+      case GLES30.GL_INT_VEC2:
+      case GLES30.GL_UNSIGNED_INT_VEC2:
+      case GLES30.GL_BOOL_VEC2:
+        return 2;
+      case GLES30.GL_FLOAT_VEC3:
+      case GLES30.GL_INT_VEC3:
+      case GLES30.GL_UNSIGNED_INT_VEC3:
+      case GLES30.GL_BOOL_VEC3:
+        return 3;
+      case GLES30.GL_FLOAT_VEC4:
+      case GLES30.GL_INT_VEC4:
+      case GLES30.GL_UNSIGNED_INT_VEC4:
+      case GLES30.GL_BOOL_VEC4:
+      case GLES30.GL_FLOAT_MAT2:
+        return 4;
+      case GLES30.GL_FLOAT_MAT2x3:
+      case GLES30.GL_FLOAT_MAT3x2:
+        return 6;
+      case GLES30.GL_FLOAT_MAT2x4:
+      case GLES30.GL_FLOAT_MAT4x2:
+        return 8;
+      case GLES30.GL_FLOAT_MAT3:
+        return 9;
+      case GLES30.GL_FLOAT_MAT3x4:
+      case GLES30.GL_FLOAT_MAT4x3:
+        return 12;
+      case GLES30.GL_FLOAT_MAT4:
+        return 16;
+      default:
+        // Scalars and samplers.
+        return 1;
     }
   }
 
-  private static class Uniform4f implements Uniform {
-    private final float[] values;
-
-    public Uniform4f(float[] values) {
-      this.values = values;
+  private int getUniformLocation(String name) {
+    int location = uniforms.findLocation(name);
+    if (location == UniformStore.UNKNOWN_LOCATION) {
+      // Not found by reflection, e.g. an individual array element such as "u_Values[2]".
+      location = GLES30.glGetUniformLocation(programId, name);
+      GLError.maybeThrowGLException("Failed to find uniform", "glGetUniformLocation");
+      uniforms.registerName(name, location);
     }
-
-    @Override
-    public void use(int location) {
-      GLES30.glUniform4fv(location, values.length / 4, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform 4f", "glUniform4fv");
+    if (location == -1) {
+      throw new IllegalArgumentException("Shader uniform does not exist: " + name);
     }
+    return location;
   }
 
-  private static class UniformMatrix2f implements Uniform {
-    private final float[] values;
-
-    public UniformMatrix2f(float[] values) {
-      this.values = values;
-    }
-
-    @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix2fv(location, values.length / 4, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 2f", "glUniformMatrix2fv");
+  /**
+   * Creates the program from a cached binary. Returns false, leaving no program, if there is no
+   * binary or the driver does not accept it.
+   */
+  private boolean loadProgramBinary(ProgramBinaryCache.Entry entry) {
+    if (entry == null) {
+      return false;
+    }
+    programId = GLES30.glCreateProgram();
+    GLError.maybeThrowGLException("Shader program creation failed", "glCreateProgram");
+    GLES30.glProgramBinary(
+        programId, entry.getFormat(), entry.getBinary(), entry.getBinary().remaining());
+    // An unsupported format is reported as an error rather than a link failure.
+    GLError.maybeLogGLError(Log.WARN, TAG, "Failed to load program binary", "glProgramBinary");
+    final int[] linkStatus = new int[1];
+    GLES30.glGetProgramiv(programId, GLES30.GL_LINK_STATUS, linkStatus, 0);
+    if (linkStatus[0] == GLES30.GL_FALSE) {
+      Log.i(TAG, "Cached program binary was rejected, recompiling");
+      close();
+      return false;
     }
+    return true;
   }
 
-  private static class UniformMatrix3f implements Uniform {
-    private final float[] values;
+  private void compileAndLink(
+      String vertexShaderCode, String fragmentShaderCode, boolean retrievableBinary) {
+    int vertexShaderId = 0;
+    int fragmentShaderId = 0;
+    try {
+      vertexShaderId = createShader(GLES30.GL_VERTEX_SHADER, vertexShaderCode);
+      fragmentShaderId = createShader(GLES30.GL_FRAGMENT_SHADER, fragmentShaderCode);
 
-    public UniformMatrix3f(float[] values) {
-      this.values = values;
-    }
+      programId = GLES30.glCreateProgram();
+      GLError.maybeThrowGLException("Shader program creation failed", "glCreateProgram");
+      if (retrievableBinary) {
+        GLES30.glProgramParameteri(
+            programId, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES30.GL_TRUE);
+        GLError.maybeThrowGLException("Failed to set program parameter", "glProgramParameteri");
+      }
+      GLES30.glAttachShader(programId, vertexShaderId);
+      GLError.maybeThrowGLException("Failed to attach vertex shader", "glAttachShader");
+      GLES30.glAttachShader(programId, fragmentShaderId);
+      GLError.maybeThrowGLException("Failed to attach fragment shader", "glAttachShader");
+      GLES30.glLinkProgram(programId);
+      GLError.maybeThrowGLException("Failed to link shader program", "glLinkProgram");
 
-    @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix3fv(location, values.length / 9, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 3f", "glUniformMatrix3fv");
+      final int[] linkStatus = new int[1];
+      GLES30.glGetProgramiv(programId, GLES30.GL_LINK_STATUS, linkStatus, 0);
+      if (linkStatus[0] == GLES30.GL_FALSE) {
+        String infoLog = GLES30.glGetProgramInfoLog(programId);
+        GLError.maybeLogGLError(
+            Log.WARN, TAG, "Failed to retrieve shader program info log", "glGetProgramInfoLog");
+        throw new GLException(0, "Shader link failed: " + infoLog);
+      }
+    } finally {
+      // Shader objects can be flagged for deletion immediately after program creation.
+      if (vertexShaderId != 0) {
+        GLES30.glDeleteShader(vertexShaderId);
+        GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free vertex shader", "glDeleteShader");
+      }
+      if (fragmentShaderId != 0) {
+        GLES30.glDeleteShader(fragmentShaderId);
+        GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free fragment shader", "glDeleteShader");
+      }
     }
   }
 
-  private static class UniformMatrix4f implements Uniform {
-    private final float[] values;
-
-    public UniformMatrix4f(float[] values) {
-      this.values = values;
-    }
-
-    @Override
-    public void use(int location) {
-      GLES30.glUniformMatrix4fv(location, values.length / 16, /*transpose=*/ false, values, 0);
-      GLError.maybeThrowGLException("Failed to set shader uniform matrix 4f", "glUniformMatrix4fv");
+  /** Saves the linked program for the next launch. Failures only cost the cache hit. */
+  private void storeProgramBinary(ProgramBinaryCache binaryCache, String binaryKey) {
+    final int[] binaryLength = new int[1];
+    GLES30.glGetProgramiv(programId, GLES30.GL_PROGRAM_BINARY_LENGTH, binaryLength, 0);
+    GLError.maybeLogGLError(
+        Log.WARN, TAG, "Failed to query program binary length", "glGetProgramiv");
+    if (binaryLength[0] <= 0) {
+      return;
     }
-  }
-
-  private int getUniformLocation(String name) {
-    Integer locationObject = uniformLocations.get(name);
-    if (locationObject != null) {
-      return locationObject;
+    ByteBuffer binary = ByteBuffer.allocateDirect(binaryLength[0]).order(ByteOrder.nativeOrder());
+    final int[] length = new int[1];
+    final int[] format = new int[1];
+    GLES30.glGetProgramBinary(programId, binaryLength[0], length, 0, format, 0, binary);
+    GLError.maybeLogGLError(Log.WARN, TAG, "Failed to get program binary", "glGetProgramBinary");
+    if (length[0] <= 0) {
+      return;
     }
-    int location = GLES30.glGetUniformLocation(programId, name);
-    GLError.maybeThrowGLException("Failed to find uniform", "glGetUniformLocation");
-    if (location == -1) {
-      throw new IllegalArgumentException("Shader uniform does not exist: " + name);
+    binary.limit(length[0]);
+    try {
+      binaryCache.store(binaryKey, format[0], binary);
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to cache program binary", e);
     }
-    uniformLocations.put(name, Integer.valueOf(location));
-    uniformNames.put(Integer.valueOf(location), name);
-    return location;
   }
 
   private static int createShader(int type, String code) {
@@ -0,0 +1,96 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import android.util.Log;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds the compiled variants of a shader, such as the permutations of its {@code #define}s, so
+ * that switching between them is a lookup instead of a recompile.
+ *
+ * <p>Variants are created by a {@link Factory} the first time they are requested. Variants that are
+ * known to be needed soon can be {@link #register registered} and then compiled ahead of time with
+ * {@link #prewarm}, typically a few at a time at the end of a frame. All methods must be called on
+ * the GL thread.
+ *
+ * @param <K> identifies a variant; must implement {@code equals} and {@code hashCode}
+ */
+public class ShaderVariantRegistry<K> implements Closeable {
+  private static final String TAG = ShaderVariantRegistry.class.getSimpleName();
+
+  /** Creates the shader for one variant. */
+  public interface Factory<K> {
+    Shader create(SampleRender render, K key) throws IOException;
+  }
+
+  private final Factory<K> factory;
+  private final Map<K, Shader> variants = new HashMap<>();
+  private final ArrayDeque<K> pending = new ArrayDeque<>();
+
+  public ShaderVariantRegistry(Factory<K> factory) {
+    this.factory = factory;
+  }
+
+  /** Queues a variant to be compiled by {@link #prewarm}, unless it already exists. */
+  public ShaderVariantRegistry<K> register(K key) {
+    if (!variants.containsKey(key) && !pending.contains(key)) {
+      pending.add(key);
+    }
+    return this;
+  }
+
+  /** Returns whether the variant has been compiled. */
+  public boolean isReady(K key) {
+    return variants.containsKey(key);
+  }
+
+  /**
+   * Returns the shader for a variant, compiling it now if it has not been prewarmed.
+   *
+   * @throws IOException if the factory fails, for example because a shader asset is missing
+   */
+  public Shader get(SampleRender render, K key) throws IOException {
+    Shader shader = variants.get(key);
+    if (shader == null) {
+      pending.remove(key);
+      shader = factory.create(render, key);
+      variants.put(key, shader);
+    }
+    return shader;
+  }
+
+  /**
+   * Compiles up to {@code maxVariants} registered variants that have not been requested yet.
+   * Variants that fail to compile are logged and dropped; requesting them later with {@link #get}
+   * reports the error to the caller.
+   *
+   * @return whether registered variants remain to be compiled
+   */
+  public boolean prewarm(SampleRender render, int maxVariants) {
+    for (int i = 0; i < maxVariants && !pending.isEmpty(); ++i) {
+      K key = pending.poll();
+      if (variants.containsKey(key)) {
+        continue;
+      }
+      try {
+        variants.put(key, factory.create(render, key));
+      } catch (IOException | RuntimeException e) {
+        Log.w(TAG, "Failed to prewarm shader variant " + key, e);
+      }
+    }
+    return !pending.isEmpty();
+  }
+
+  /** Frees every compiled variant. */
+  @Override
+  public void close() {
+    for (Shader shader : variants.values()) {
+      shader.close();
+    }
+    variants.clear();
+    pending.clear();
+  }
+}
@@ -1,13 +1,16 @@
 
 package com.example.artech.geoapi.common.samplerender;
 
+import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.opengl.GLES11Ext;
 import android.opengl.GLES30;
 import android.util.Log;
 import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 
 
@@ -22,10 +25,14 @@ import java.nio.ByteBuffer;
   and the other takes these as well as a boolean to determine whether to use mipmaps.
   The constructor generates a texture ID using glGenTextures, binds the texture to the
   target using glBindTexture, and sets the texture's parameters using glTexParameteri.
-  The createFromAsset method loads a bitmap image from the assets and converts it to the
-  desired color format before populating the texture's data using glTexImage2D. Finally,
+  The createFromAsset method loads an image from the assets with decodeAsset, which can run on any
+  thread. decodeAsset prefers a GPU-compressed ETC2 or ASTC sibling in a KTX container (for example
+  foo.ktx2 next to foo.png), parsed by KtxParser, and otherwise converts the bitmap to RGBA8 pixels in
+  a direct buffer. createFromData then uploads compressed mip levels with glCompressedTexImage2D, or
+  populates the texture with glTexImage2D and generates mipmaps. Finally,
   there is an implementation of the Closeable interface to release the texture ID when the
-  Texture object is no longer needed.
+  Texture object is no longer needed. allocateStorage gives a texture that is updated in place, such as the camera
+  depth, immutable storage with glTexStorage2D once per size, to be filled with glTexSubImage2D.
 
 */
 
@@ -36,6 +43,12 @@ public class Texture implements Closeable {
 
   private final int[] textureId = {0};
   private final Target target;
+  private final WrapMode wrapMode;
+  private final boolean useMipmaps;
+  // Immutable storage given by allocateStorage(), if any.
+  private int storageFormat = 0;
+  private int storageWidth = 0;
+  private int storageHeight = 0;
 
   /**
    * Describes the way the texture's edges are rendered.
@@ -104,7 +117,12 @@ public class Texture implements Closeable {
 
   public Texture(SampleRender render, Target target, WrapMode wrapMode, boolean useMipmaps) {
     this.target = target;
+    this.wrapMode = wrapMode;
+    this.useMipmaps = useMipmaps;
+    createTextureObject();
+  }
 
+  private void createTextureObject() {
     GLES30.glGenTextures(1, textureId, 0);
     GLError.maybeThrowGLException("Texture creation failed", "glGenTextures");
 
@@ -128,54 +146,142 @@ public class Texture implements Closeable {
     }
   }
 
-  /** Create a texture from the given asset file name. */
+  /**
+   * Create a texture from the given asset file name.
+   *
+   * <p>If a GPU-compressed version of the asset is present, it is used instead; see {@link
+   * #decodeAsset(AssetManager, String, boolean)}.
+   */
   public static Texture createFromAsset(
       SampleRender render, String assetFileName, WrapMode wrapMode, ColorFormat colorFormat)
       throws IOException {
-    Texture texture = new Texture(render, Target.TEXTURE_2D, wrapMode);
-    Bitmap bitmap = null;
-    try {
-      // The following lines up to glTexImage2D could technically be replaced with
-      // GLUtils.texImage2d, but this method does not allow for loading sRGB images.
+    return createFromData(
+        render,
+        decodeAsset(render.getAssets(), assetFileName, render.isAstcSupported()),
+        wrapMode,
+        colorFormat);
+  }
 
-      // Load and convert the bitmap and copy its contents to a direct ByteBuffer. Despite its name,
-      // the ARGB_8888 config is actually stored in RGBA order.
-      bitmap =
-          convertBitmapToConfig(
-              BitmapFactory.decodeStream(render.getAssets().open(assetFileName)),
-              Bitmap.Config.ARGB_8888);
-      ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.getByteCount());
-      bitmap.copyPixelsToBuffer(buffer);
-      buffer.rewind();
+  /**
+   * Decodes an image asset ready for {@link #createFromData}, preferring ETC2 over ASTC.
+   *
+   * @see #decodeAsset(AssetManager, String, boolean)
+   */
+  public static TextureData decodeAsset(AssetManager assets, String assetFileName)
+      throws IOException {
+    return decodeAsset(assets, assetFileName, /*astcSupported=*/ false);
+  }
 
+  /**
+   * Decodes an image asset ready for {@link #createFromData}.
+   *
+   * <p>For an image such as {@code models/foo.png}, GPU-compressed siblings are looked up first:
+   * {@code models/foo.astc.ktx2} if {@code astcSupported}, then {@code models/foo.ktx2} and {@code
+   * models/foo.ktx}. These are uploaded as-is with their precomputed mipmaps, which keeps them
+   * compressed in GPU memory. If none is present or readable, the image itself is decoded into
+   * RGBA8 pixels. Assets that are themselves KTX files are always parsed as such.
+   *
+   * <p>This does not touch OpenGL, so it can run on a background thread.
+   *
+   * @param astcSupported whether {@link SampleRender#isAstcSupported} returned true
+   */
+  public static TextureData decodeAsset(
+      AssetManager assets, String assetFileName, boolean astcSupported) throws IOException {
+    if (assetFileName.endsWith(KtxParser.KTX1_EXTENSION)
+        || assetFileName.endsWith(KtxParser.KTX2_EXTENSION)) {
+      return KtxParser.parse(AssetBuffers.read(assets, assetFileName));
+    }
+    int extension = assetFileName.lastIndexOf('.');
+    String baseName = extension > 0 ? assetFileName.substring(0, extension) : assetFileName;
+    for (String candidate : getCompressedCandidates(baseName, astcSupported)) {
+      TextureData data = tryDecodeKtxAsset(assets, candidate, astcSupported);
+      if (data != null) {
+        return data;
+      }
+    }
+    return decodeImageAsset(assets, assetFileName);
+  }
+
+  /**
+   * Create a 2D texture from decoded data. Must be called on the GL thread.
+   *
+   * <p>Uncompressed data is mipmapped with {@code glGenerateMipmap}; compressed data uses the mip
+   * levels it was given. The sRGB or linear variant of a compressed format is picked to match
+   * {@code colorFormat}.
+   */
+  public static Texture createFromData(
+      SampleRender render, TextureData data, WrapMode wrapMode, ColorFormat colorFormat) {
+    Texture texture = new Texture(render, Target.TEXTURE_2D, wrapMode);
+    try {
       GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, texture.getTextureId());
       GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
-      GLES30.glTexImage2D(
-          GLES30.GL_TEXTURE_2D,
-          /*level=*/ 0,
-          colorFormat.glesEnum,
-          bitmap.getWidth(),
-          bitmap.getHeight(),
-          /*border=*/ 0,
-          GLES30.GL_RGBA,
-          GLES30.GL_UNSIGNED_BYTE,
-          buffer);
-      GLError.maybeThrowGLException("Failed to populate texture data", "glTexImage2D");
-      GLES30.glGenerateMipmap(GLES30.GL_TEXTURE_2D);
-      GLError.maybeThrowGLException("Failed to generate mipmaps", "glGenerateMipmap");
+      if (data.isCompressed()) {
+        uploadCompressedLevels(data, colorFormat);
+      } else {
+        GLES30.glTexImage2D(
+            GLES30.GL_TEXTURE_2D,
+            /*level=*/ 0,
+            colorFormat.glesEnum,
+            data.getWidth(),
+            data.getHeight(),
+            /*border=*/ 0,
+            GLES30.GL_RGBA,
+            GLES30.GL_UNSIGNED_BYTE,
+            data.getPixels());
+        GLError.maybeThrowGLException("Failed to populate texture data", "glTexImage2D");
+        GLES30.glGenerateMipmap(GLES30.GL_TEXTURE_2D);
+        GLError.maybeThrowGLException("Failed to generate mipmaps", "glGenerateMipmap");
+      }
     } catch (Throwable t) {
       texture.close();
       throw t;
-    } finally {
-      if (bitmap != null) {
-        bitmap.recycle();
-      }
     }
     return texture;
   }
 
+  /**
+   * Gives a {@link Target#TEXTURE_2D} texture immutable storage for one level with {@code
+   * glTexStorage2D}, to be filled with {@code glTexSubImage2D} while the texture is bound. Does
+   * nothing if the texture already has storage of this format and size. Immutable storage cannot be
+   * respecified, so storage of another format or size replaces the GL texture object, keeping its
+   * wrap mode and filters; {@link #getTextureId} then changes. Must be called on the GL thread.
+   *
+   * <p>Leaves the texture bound to {@code GL_TEXTURE_2D}.
+   *
+   * @param internalFormat a sized internal format, such as {@code GL_RG8}
+   * @return whether new storage was allocated
+   */
+  public boolean allocateStorage(int internalFormat, int width, int height) {
+    if (target != Target.TEXTURE_2D) {
+      throw new IllegalStateException("Only 2D textures get immutable storage: " + target);
+    }
+    if (textureId[0] == 0) {
+      throw new IllegalStateException("Tried to allocate storage for freed texture");
+    }
+    boolean allocate =
+        internalFormat != storageFormat || width != storageWidth || height != storageHeight;
+    if (allocate && storageFormat != 0) {
+      close();
+      createTextureObject();
+    }
+    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, textureId[0]);
+    GLError.maybeThrowGLException("Failed to bind texture", "glBindTexture");
+    if (!allocate) {
+      return false;
+    }
+    GLES30.glTexStorage2D(GLES30.GL_TEXTURE_2D, /*levels=*/ 1, internalFormat, width, height);
+    GLError.maybeThrowGLException("Failed to allocate texture storage", "glTexStorage2D");
+    storageFormat = internalFormat;
+    storageWidth = width;
+    storageHeight = height;
+    return true;
+  }
+
   @Override
   public void close() {
+    storageFormat = 0;
+    storageWidth = 0;
+    storageHeight = 0;
     if (textureId[0] != 0) {
       GLES30.glDeleteTextures(1, textureId, 0);
       GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free texture", "glDeleteTextures");
@@ -193,6 +299,85 @@ public class Texture implements Closeable {
     return target;
   }
 
+  private static void uploadCompressedLevels(TextureData data, ColorFormat colorFormat) {
+    int format =
+        KtxParser.withColorSpace(data.getCompressedFormat(), colorFormat == ColorFormat.SRGB);
+    for (int level = 0; level < data.getLevelCount(); ++level) {
+      ByteBuffer levelData = data.getLevel(level);
+      GLES30.glCompressedTexImage2D(
+          GLES30.GL_TEXTURE_2D,
+          level,
+          format,
+          data.getLevelWidth(level),
+          data.getLevelHeight(level),
+          /*border=*/ 0,
+          levelData.remaining(),
+          levelData);
+      GLError.maybeThrowGLException(
+          "Failed to populate compressed texture data", "glCompressedTexImage2D");
+    }
+    // The mip chain may stop short of 1x1; limit sampling to the levels that exist.
+    GLES30.glTexParameteri(
+        GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MAX_LEVEL, data.getLevelCount() - 1);
+    GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
+    if (data.getLevelCount() == 1) {
+      GLES30.glTexParameteri(
+          GLES30.GL_TEXTURE_2D, GLES30.GL_TEXTURE_MIN_FILTER, GLES30.GL_LINEAR);
+      GLError.maybeThrowGLException("Failed to set texture parameter", "glTexParameteri");
+    }
+  }
+
+  private static String[] getCompressedCandidates(String baseName, boolean astcSupported) {
+    String ktx2 = baseName + KtxParser.KTX2_EXTENSION;
+    String ktx1 = baseName + KtxParser.KTX1_EXTENSION;
+    if (astcSupported) {
+      return new String[] {baseName + ".astc" + KtxParser.KTX2_EXTENSION, ktx2, ktx1};
+    }
+    return new String[] {ktx2, ktx1};
+  }
+
+  private static TextureData tryDecodeKtxAsset(
+      AssetManager assets, String assetFileName, boolean astcSupported) {
+    try {
+      TextureData data = KtxParser.parse(AssetBuffers.read(assets, assetFileName));
+      if (KtxParser.isAstc(data.getCompressedFormat()) && !astcSupported) {
+        Log.w(TAG, "Skipping " + assetFileName + ": ASTC is not supported on this device");
+        return null;
+      }
+      return data;
+    } catch (FileNotFoundException e) {
+      return null;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read compressed texture " + assetFileName + ", falling back", e);
+      return null;
+    }
+  }
+
+  private static TextureData decodeImageAsset(AssetManager assets, String assetFileName)
+      throws IOException {
+    Bitmap bitmap = null;
+    try (InputStream inputStream = assets.open(assetFileName)) {
+      // The following lines up to glTexImage2D could technically be replaced with
+      // GLUtils.texImage2d, but this method does not allow for loading sRGB images.
+
+      // Load and convert the bitmap and copy its contents to a direct ByteBuffer. Despite its name,
+      // the ARGB_8888 config is actually stored in RGBA order.
+      Bitmap decoded = BitmapFactory.decodeStream(inputStream);
+      if (decoded == null) {
+        throw new IOException("Failed to decode image asset: " + assetFileName);
+      }
+      bitmap = convertBitmapToConfig(decoded, Bitmap.Config.ARGB_8888);
+      ByteBuffer buffer = ByteBuffer.allocateDirect(bitmap.getByteCount());
+      bitmap.copyPixelsToBuffer(buffer);
+      buffer.rewind();
+      return new TextureData(bitmap.getWidth(), bitmap.getHeight(), buffer);
+    } finally {
+      if (bitmap != null) {
+        bitmap.recycle();
+      }
+    }
+  }
+
   private static Bitmap convertBitmapToConfig(Bitmap bitmap, Bitmap.Config config) {
     // We use this method instead of BitmapFactory.Options.outConfig to support a minimum of Android
     // API level 24.
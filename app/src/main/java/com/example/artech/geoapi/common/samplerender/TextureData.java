@@ -0,0 +1,110 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CPU-side pixels for a 2D {@link Texture}, held in <i>direct</i> buffers so they can be handed to
+ * {@code glTexImage2D} or {@code glCompressedTexImage2D} without copying.
+ *
+ * <p>Data is either uncompressed RGBA8, for which mipmaps are generated after upload, or a
+ * GPU-compressed format such as ETC2 or ASTC with its mip chain precomputed, see {@link
+ * KtxParser}.
+ *
+ * <p>This class does not touch OpenGL and may be created on any thread. Use {@link
+ * Texture#createFromData} on the GL thread to upload it.
+ */
+public class TextureData {
+  /** Returned by {@link #getCompressedFormat} for uncompressed RGBA8 data. */
+  public static final int UNCOMPRESSED = 0;
+
+  private final int width;
+  private final int height;
+  private final int compressedFormat;
+  private final ByteBuffer[] levels;
+
+  /**
+   * Constructs a {@link TextureData} from tightly packed RGBA8 pixels, top row first.
+   *
+   * @throws IllegalArgumentException if {@code pixels} does not hold {@code width * height * 4}
+   *     bytes
+   */
+  public TextureData(int width, int height, ByteBuffer pixels) {
+    this(width, height, UNCOMPRESSED, new ByteBuffer[] {pixels});
+    if (pixels.remaining() != width * height * 4) {
+      throw new IllegalArgumentException("Pixel buffer does not match the texture dimensions");
+    }
+  }
+
+  /**
+   * Constructs a {@link TextureData} from compressed mip levels.
+   *
+   * @param compressedFormat the GL internal format, e.g. {@code GL_COMPRESSED_RGBA8_ETC2_EAC}
+   * @param levels the image of each mip level, level 0 (full size) first
+   */
+  public TextureData(int width, int height, int compressedFormat, ByteBuffer[] levels) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Texture dimensions must be positive");
+    }
+    if (levels.length == 0) {
+      throw new IllegalArgumentException("At least one level is required");
+    }
+    this.width = width;
+    this.height = height;
+    this.compressedFormat = compressedFormat;
+    this.levels = levels.clone();
+  }
+
+  /** Returns the width of level 0. */
+  public int getWidth() {
+    return width;
+  }
+
+  /** Returns the height of level 0. */
+  public int getHeight() {
+    return height;
+  }
+
+  /** Returns whether the data is GPU-compressed. */
+  public boolean isCompressed() {
+    return compressedFormat != UNCOMPRESSED;
+  }
+
+  /** Returns the GL internal format of compressed data, or {@link #UNCOMPRESSED}. */
+  public int getCompressedFormat() {
+    return compressedFormat;
+  }
+
+  /** Returns the number of mip levels stored, 1 for uncompressed data. */
+  public int getLevelCount() {
+    return levels.length;
+  }
+
+  /** Returns the image of the given mip level. */
+  public ByteBuffer getLevel(int level) {
+    return levels[level];
+  }
+
+  /** Returns the RGBA8 pixels, or level 0 of compressed data. */
+  public ByteBuffer getPixels() {
+    return levels[0];
+  }
+
+  /** Returns the width of the given mip level. */
+  public int getLevelWidth(int level) {
+    return Math.max(1, width >> level);
+  }
+
+  /** Returns the height of the given mip level. */
+  public int getLevelHeight(int level) {
+    return Math.max(1, height >> level);
+  }
+
+  /** Returns the total number of bytes held across all levels. */
+  public long getByteCount() {
+    long total = 0;
+    for (ByteBuffer level : levels) {
+      total += level.remaining();
+    }
+    return total;
+  }
+}
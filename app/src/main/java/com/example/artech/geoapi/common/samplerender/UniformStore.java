@@ -0,0 +1,232 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Preallocated storage for the uniform values of one {@link Shader}.
+ *
+ * <p>Each uniform location owns a slot whose capacity is fixed when it is first declared (normally
+ * by reflecting the linked program). Setters copy into the slot and mark it dirty; {@link
+ * #uploadDirty} hands only the dirty slots to an {@link Uploader}. Once every slot exists, neither
+ * setting nor uploading allocates.
+ *
+ * <p>This class does not touch OpenGL, so it can be exercised on the JVM.
+ */
+/* package-private */
+class UniformStore {
+  /** Returned by {@link #findLocation} for names that have never been registered. */
+  static final int UNKNOWN_LOCATION = -2;
+
+  /** The {@code glUniform*} entry point a slot is uploaded with. */
+  enum Kind {
+    INT(1),
+    FLOAT(1),
+    VEC2(2),
+    VEC3(3),
+    VEC4(4),
+    MAT2(4),
+    MAT3(9),
+    MAT4(16);
+
+    final int components;
+
+    private Kind(int components) {
+      this.components = components;
+    }
+  }
+
+  /** Receives dirty uniform values, typically by forwarding them to {@code glUniform*}. */
+  interface Uploader {
+    void uploadInts(int location, int count, int[] values, int offset);
+
+    void uploadFloats(Kind kind, int location, int count, float[] values, int offset);
+  }
+
+  private final Map<String, Integer> locationsByName = new HashMap<>();
+
+  // Slots are kept sorted by location so lookups are a binary search with no boxing.
+  private int slotCount = 0;
+  private int[] locations = new int[0];
+  private Kind[] kinds = new Kind[0];
+  private int[] capacities = new int[0];
+  private int[] offsets = new int[0];
+  private int[] counts = new int[0];
+  private boolean[] dirty = new boolean[0];
+  private float[] floatValues = new float[0];
+  private int[] intValues = new int[0];
+
+  private int[] dirtySlots = new int[0];
+  private int dirtyCount = 0;
+
+  /**
+   * Registers {@code name} as referring to {@code location}, which may be {@code -1} for names the
+   * program does not use.
+   */
+  void registerName(String name, int location) {
+    locationsByName.put(name, location);
+  }
+
+  /** Returns the location registered for {@code name}, or {@link #UNKNOWN_LOCATION}. */
+  int findLocation(String name) {
+    Integer location = locationsByName.get(name);
+    return location == null ? UNKNOWN_LOCATION : location;
+  }
+
+  /** Returns a registered name for {@code location}, for error messages. Not allocation-free. */
+  String findName(int location) {
+    for (Map.Entry<String, Integer> entry : locationsByName.entrySet()) {
+      if (entry.getValue() == location) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Declares a slot for {@code location} able to hold {@code capacity} scalar components (for
+   * example 16 for a {@code mat4}, or 8 for a {@code vec2[4]}). Declaring an existing slot grows
+   * it if necessary.
+   */
+  void declare(int location, int capacity) {
+    int slot = Arrays.binarySearch(locations, 0, slotCount, location);
+    if (slot >= 0) {
+      if (capacities[slot] < capacity) {
+        // Rare: a uniform array set with more elements than reflected. Move it to the end of the
+        // value arrays.
+        offsets[slot] = growValues(capacity);
+        capacities[slot] = capacity;
+      }
+      return;
+    }
+    int insertAt = -slot - 1;
+    ensureSlotCapacity(slotCount + 1);
+    int moved = slotCount - insertAt;
+    System.arraycopy(locations, insertAt, locations, insertAt + 1, moved);
+    System.arraycopy(kinds, insertAt, kinds, insertAt + 1, moved);
+    System.arraycopy(capacities, insertAt, capacities, insertAt + 1, moved);
+    System.arraycopy(offsets, insertAt, offsets, insertAt + 1, moved);
+    System.arraycopy(counts, insertAt, counts, insertAt + 1, moved);
+    System.arraycopy(dirty, insertAt, dirty, insertAt + 1, moved);
+    for (int i = 0; i < dirtyCount; ++i) {
+      if (dirtySlots[i] >= insertAt) {
+        ++dirtySlots[i];
+      }
+    }
+    locations[insertAt] = location;
+    kinds[insertAt] = null;
+    capacities[insertAt] = capacity;
+    offsets[insertAt] = growValues(capacity);
+    counts[insertAt] = 0;
+    dirty[insertAt] = false;
+    ++slotCount;
+  }
+
+  /** Sets a single {@code int}, {@code bool} or sampler value. */
+  void setInt(int location, int value) {
+    int slot = requireSlot(location, 1);
+    intValues[offsets[slot]] = value;
+    markDirty(slot, Kind.INT, 1);
+  }
+
+  /** Sets an {@code int} or {@code bool} array. */
+  void setInts(int location, int[] values) {
+    int slot = requireSlot(location, values.length);
+    System.arraycopy(values, 0, intValues, offsets[slot], values.length);
+    markDirty(slot, Kind.INT, values.length);
+  }
+
+  /** Sets a {@code bool} array, stored as ints. */
+  void setBools(int location, boolean[] values) {
+    int slot = requireSlot(location, values.length);
+    int offset = offsets[slot];
+    for (int i = 0; i < values.length; ++i) {
+      intValues[offset + i] = values[i] ? 1 : 0;
+    }
+    markDirty(slot, Kind.INT, values.length);
+  }
+
+  /** Sets a single {@code float}. */
+  void setFloat(int location, float value) {
+    int slot = requireSlot(location, 1);
+    floatValues[offsets[slot]] = value;
+    markDirty(slot, Kind.FLOAT, 1);
+  }
+
+  /** Sets {@code values.length / kind.components} elements of the given kind. */
+  void setFloats(int location, Kind kind, float[] values) {
+    int slot = requireSlot(location, values.length);
+    System.arraycopy(values, 0, floatValues, offsets[slot], values.length);
+    markDirty(slot, kind, values.length / kind.components);
+  }
+
+  /** Returns whether any slot is waiting to be uploaded. */
+  boolean hasDirty() {
+    return dirtyCount > 0;
+  }
+
+  /**
+   * Uploads every dirty slot, in the order they were first dirtied, and marks them clean. If the
+   * uploader throws, the slots it did not finish stay dirty for the next call.
+   */
+  void uploadDirty(Uploader uploader) {
+    int uploaded = 0;
+    try {
+      for (; uploaded < dirtyCount; ++uploaded) {
+        int slot = dirtySlots[uploaded];
+        Kind kind = kinds[slot];
+        if (kind == Kind.INT) {
+          uploader.uploadInts(locations[slot], counts[slot], intValues, offsets[slot]);
+        } else {
+          uploader.uploadFloats(kind, locations[slot], counts[slot], floatValues, offsets[slot]);
+        }
+        dirty[slot] = false;
+      }
+    } finally {
+      dirtyCount -= uploaded;
+      System.arraycopy(dirtySlots, uploaded, dirtySlots, 0, dirtyCount);
+    }
+  }
+
+  private int requireSlot(int location, int components) {
+    int slot = Arrays.binarySearch(locations, 0, slotCount, location);
+    if (slot < 0 || capacities[slot] < components) {
+      // First use of a location that reflection did not cover, or an oversized array.
+      declare(location, components);
+      slot = Arrays.binarySearch(locations, 0, slotCount, location);
+    }
+    return slot;
+  }
+
+  private void markDirty(int slot, Kind kind, int count) {
+    kinds[slot] = kind;
+    counts[slot] = count;
+    if (!dirty[slot]) {
+      dirty[slot] = true;
+      dirtySlots[dirtyCount++] = slot;
+    }
+  }
+
+  private int growValues(int capacity) {
+    // Float and int values share offsets so a slot can be reused with either kind.
+    int offset = floatValues.length;
+    floatValues = Arrays.copyOf(floatValues, offset + capacity);
+    intValues = Arrays.copyOf(intValues, offset + capacity);
+    return offset;
+  }
+
+  private void ensureSlotCapacity(int size) {
+    if (locations.length >= size) {
+      return;
+    }
+    int newSize = Math.max(size, locations.length * 2);
+    locations = Arrays.copyOf(locations, newSize);
+    kinds = Arrays.copyOf(kinds, newSize);
+    capacities = Arrays.copyOf(capacities, newSize);
+    offsets = Arrays.copyOf(offsets, newSize);
+    counts = Arrays.copyOf(counts, newSize);
+    dirty = Arrays.copyOf(dirty, newSize);
+    dirtySlots = Arrays.copyOf(dirtySlots, newSize);
+  }
+}
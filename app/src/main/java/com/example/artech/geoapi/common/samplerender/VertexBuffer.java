@@ -17,6 +17,7 @@ import java.nio.FloatBuffer;
 public class VertexBuffer implements Closeable {
   private final GpuBuffer buffer;
   private final int numberOfEntriesPerVertex;
+  private final VertexLayout layout;
 
   /**
    * Construct a {@link VertexBuffer} populated with initial data.
@@ -33,6 +34,23 @@ public class VertexBuffer implements Closeable {
    * instead.
    */
   public VertexBuffer(SampleRender render, int numberOfEntriesPerVertex, FloatBuffer entries) {
+    this(render, numberOfEntriesPerVertex, /*layout=*/ null, entries);
+  }
+
+  /**
+   * Construct an interleaved {@link VertexBuffer} holding every attribute described by {@code
+   * layout}, populated with initial data.
+   *
+   * <p>{@code entries} is typically produced by {@link VertexLayout#interleave}. When passed to a
+   * {@link Mesh}, such a buffer occupies {@link VertexLayout#getAttributeCount()} consecutive
+   * attribute locations.
+   */
+  public VertexBuffer(SampleRender render, VertexLayout layout, FloatBuffer entries) {
+    this(render, layout.getFloatsPerVertex(), layout, entries);
+  }
+
+  private VertexBuffer(
+      SampleRender render, int numberOfEntriesPerVertex, VertexLayout layout, FloatBuffer entries) {
     if (entries != null && entries.limit() % numberOfEntriesPerVertex != 0) {
       throw new IllegalArgumentException(
           "If non-null, vertex buffer data must be divisible by the number of data points per"
@@ -40,6 +58,7 @@ public class VertexBuffer implements Closeable {
     }
 
     this.numberOfEntriesPerVertex = numberOfEntriesPerVertex;
+    this.layout = layout;
     buffer = new GpuBuffer(GLES30.GL_ARRAY_BUFFER, GpuBuffer.FLOAT_SIZE, entries);
   }
 
@@ -80,6 +99,12 @@ public class VertexBuffer implements Closeable {
     return numberOfEntriesPerVertex;
   }
 
+  /** Returns the interleaved layout, or null if this buffer holds a single attribute. */
+  /* package-private */
+  VertexLayout getLayout() {
+    return layout;
+  }
+
   /* package-private */
   int getNumberOfVertices() {
     return buffer.getSize() / numberOfEntriesPerVertex;
@@ -0,0 +1,110 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Describes how several float vertex attributes are interleaved in a single {@link VertexBuffer}.
+ *
+ * <p>Attributes are stored one vertex after another, each vertex holding every attribute in
+ * declaration order. For example, a layout of {@code (3, 2, 3)} stores position, texture
+ * coordinate and normal for vertex 0, then for vertex 1, and so on, giving a stride of 32 bytes.
+ *
+ * <p>This class does not touch OpenGL; {@link Mesh} turns it into {@code glVertexAttribPointer}
+ * calls.
+ */
+public class VertexLayout {
+  private final int[] componentCounts;
+  private final int[] offsets;
+  private final int floatsPerVertex;
+
+  /**
+   * Constructs a {@link VertexLayout} from the number of float components of each attribute, in
+   * the order they are stored.
+   */
+  public VertexLayout(int... componentCounts) {
+    if (componentCounts.length == 0) {
+      throw new IllegalArgumentException("A vertex layout needs at least one attribute");
+    }
+    this.componentCounts = componentCounts.clone();
+    this.offsets = new int[componentCounts.length];
+    int floats = 0;
+    for (int i = 0; i < componentCounts.length; ++i) {
+      if (componentCounts[i] < 1 || componentCounts[i] > 4) {
+        throw new IllegalArgumentException("Attributes must have between 1 and 4 components");
+      }
+      offsets[i] = floats;
+      floats += componentCounts[i];
+    }
+    this.floatsPerVertex = floats;
+  }
+
+  /** Returns the number of attributes in this layout. */
+  public int getAttributeCount() {
+    return componentCounts.length;
+  }
+
+  /** Returns the number of float components of the given attribute. */
+  public int getComponentCount(int attribute) {
+    return componentCounts[attribute];
+  }
+
+  /** Returns the byte offset of the given attribute from the start of a vertex. */
+  public int getOffsetBytes(int attribute) {
+    return offsets[attribute] * GpuBuffer.FLOAT_SIZE;
+  }
+
+  /** Returns the number of floats in one vertex. */
+  public int getFloatsPerVertex() {
+    return floatsPerVertex;
+  }
+
+  /** Returns the distance in bytes between consecutive vertices. */
+  public int getStrideBytes() {
+    return floatsPerVertex * GpuBuffer.FLOAT_SIZE;
+  }
+
+  /**
+   * Interleaves separate per-attribute buffers into a new direct buffer laid out as described by
+   * this layout.
+   *
+   * <p>{@code sources} must hold one buffer per attribute, each read from index 0. A null source
+   * is filled with zeros, which keeps attribute locations stable for meshes missing, say, normals.
+   */
+  public FloatBuffer interleave(FloatBuffer... sources) {
+    if (sources.length != componentCounts.length) {
+      throw new IllegalArgumentException(
+          "Expected " + componentCounts.length + " sources, got " + sources.length);
+    }
+    int vertexCount = -1;
+    for (int i = 0; i < sources.length; ++i) {
+      if (sources[i] == null) {
+        continue;
+      }
+      if (sources[i].limit() % componentCounts[i] != 0) {
+        throw new IllegalArgumentException("Source " + i + " is not a whole number of vertices");
+      }
+      int count = sources[i].limit() / componentCounts[i];
+      if (vertexCount != -1 && count != vertexCount) {
+        throw new IllegalArgumentException("Sources have mismatching numbers of vertices");
+      }
+      vertexCount = count;
+    }
+    if (vertexCount == -1) {
+      throw new IllegalArgumentException("At least one source must be non-null");
+    }
+
+    float[] vertex = new float[floatsPerVertex];
+    FloatBuffer result = MeshData.allocateFloats(vertexCount * floatsPerVertex);
+    for (int v = 0; v < vertexCount; ++v) {
+      for (int i = 0; i < sources.length; ++i) {
+        int components = componentCounts[i];
+        for (int c = 0; c < components; ++c) {
+          vertex[offsets[i] + c] = sources[i] == null ? 0f : sources[i].get(v * components + c);
+        }
+      }
+      result.put(vertex);
+    }
+    result.rewind();
+    return result;
+  }
+}
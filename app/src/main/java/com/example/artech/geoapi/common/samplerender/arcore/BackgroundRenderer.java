@@ -3,11 +3,14 @@ package com.example.artech.geoapi.common.samplerender.arcore;
 
 import android.media.Image;
 import android.opengl.GLES30;
+import android.util.Log;
 
 import com.example.artech.geoapi.common.samplerender.Framebuffer;
+import com.example.artech.geoapi.common.samplerender.GLError;
 import com.example.artech.geoapi.common.samplerender.Mesh;
 import com.example.artech.geoapi.common.samplerender.SampleRender;
 import com.example.artech.geoapi.common.samplerender.Shader;
+import com.example.artech.geoapi.common.samplerender.ShaderVariantRegistry;
 import com.example.artech.geoapi.common.samplerender.Texture;
 import com.example.artech.geoapi.common.samplerender.VertexBuffer;
 import com.google.ar.core.Coordinates2d;
@@ -33,11 +36,29 @@ import java.util.HashMap;
 
   The class provides methods for setting whether to use camera image or depth data for the background,
   and whether to use depth occlusion for the virtual objects. The method setUseDepthVisualization sets
-  whether to use camera depth data for rendering the background. If depth visualization is enabled, the
-  corresponding shader code is reloaded with a new shader program that shows the depth data as a color
-  visualization. Otherwise, the shader program shows the camera image. The method setUseOcclusion sets
-  whether to use depth occlusion for compositing the virtual objects. If occlusion is enabled, the corresponding
-  shader code is reloaded with new #defines that enable depth testing and depth writing.
+  whether to use camera depth data for rendering the background, switching between a shader that shows
+  the depth data as a color visualization and one that shows the camera image. The method setUseOcclusion
+  sets whether to use depth occlusion for compositing the virtual objects, switching between variants of
+  the occlusion shader compiled with different #defines. configureVirtualSceneFramebuffer then picks the
+  virtual scene's attachment formats to match: a depth texture only when occlusion samples it, and
+  otherwise a depth renderbuffer that drawVirtualScene invalidates once the scene is drawn, so it never
+  leaves the GPU. Each variant is compiled once and kept in a ShaderVariantRegistry, and
+  prewarmShaderVariants compiles the ones not yet used a frame at a time, so toggling a mode does not
+  recompile on the GL thread.
+
+  With occlusion off the composite only blends the virtual scene over the background, so
+  canDrawVirtualSceneDirectly tells the caller it may skip the virtual scene framebuffer and draw
+  straight onto the screen instead, which saves a full-screen texture write and read. Otherwise the
+  composite is a full-screen pass, so the caller skips it, with skipVirtualScene, on frames where nothing
+  was drawn into the virtual scene, and passes the screen bounds of what was drawn when it covers only
+  part of the screen, in which case the pass is scissored to those bounds. The counts of full, partial
+  and skipped composites tell how often each case happens.
+
+  updateCameraDepthTexture writes each depth image into the camera depth texture in place: its immutable
+  storage is allocated only when the image size changes, which is also the only time the depth aspect
+  ratio is sent to the occlusion shader. With setUseDepthPixelBuffers the images are copied through two
+  pixel buffer objects in turn, so the texture update reads them asynchronously instead of the GL thread
+  waiting on the driver's copy.
 
   The class also has a method called onDrawFrame, which is called during a renderer callback to render
   the background. The method starts by binding the camera texture and updating the vertex buffer that
@@ -59,6 +80,14 @@ public class BackgroundRenderer {
   // components_per_vertex * number_of_vertices * float_size
   private static final int COORDS_BUFFER_SIZE = 2 * 4 * 4;
 
+  private static final String DEPTH_VISUALIZATION_VERTEX_SHADER =
+      "shaders/background_show_depth_color_visualization.vert";
+  private static final String DEPTH_VISUALIZATION_FRAGMENT_SHADER =
+      "shaders/background_show_depth_color_visualization.frag";
+
+  // Virtual scene texels to grow a scissored composite by, on each side.
+  private static final int SCISSOR_MARGIN_TEXELS = 2;
+
   private static final FloatBuffer NDC_QUAD_COORDS_BUFFER =
       ByteBuffer.allocateDirect(COORDS_BUFFER_SIZE).order(ByteOrder.nativeOrder()).asFloatBuffer();
 
@@ -81,6 +110,12 @@ public class BackgroundRenderer {
 
   private final Mesh mesh;
   private final VertexBuffer cameraTexCoordsVertexBuffer;
+  // Keyed by whether depth visualization is used.
+  private final ShaderVariantRegistry<Boolean> backgroundShaders =
+      new ShaderVariantRegistry<>(this::createBackgroundShader);
+  // Keyed by whether occlusion is used.
+  private final ShaderVariantRegistry<Boolean> occlusionShaders =
+      new ShaderVariantRegistry<>(this::createOcclusionShader);
   private Shader backgroundShader;
   private Shader occlusionShader;
   private final Texture cameraDepthTexture;
@@ -88,7 +123,20 @@ public class BackgroundRenderer {
 
   private boolean useDepthVisualization;
   private boolean useOcclusion;
+  // Of the camera depth texture, sent to the occlusion shader when its size changes.
   private float aspectRatio;
+  private boolean useDepthPixelBuffers;
+  private final int[] depthPixelBufferIds = {0, 0};
+  private int depthPixelBufferSize;
+  private int nextDepthPixelBuffer;
+  // Scratch uniform values, to keep drawVirtualScene() free of allocations.
+  private final float[] virtualSceneTexCoordScale = new float[2];
+  private final float[] virtualSceneTexCoordMax = new float[2];
+
+  // Composites since construction, by how much of the screen they covered.
+  private long fullCompositeCount;
+  private long partialCompositeCount;
+  private long skippedCompositeCount;
 
   /**
    * Allocates and initializes OpenGL resources needed by the background renderer. Must be called
@@ -123,70 +171,142 @@ public class BackgroundRenderer {
     };
     mesh =
         new Mesh(render, Mesh.PrimitiveMode.TRIANGLE_STRIP, /*indexBuffer=*/ null, vertexBuffers);
+
+    // Every mode is compiled ahead of use by prewarmShaderVariants(). The depth visualization
+    // shaders are optional assets, so that mode is only prewarmed if the app ships them.
+    backgroundShaders.register(false);
+    if (render.hasAsset(DEPTH_VISUALIZATION_VERTEX_SHADER)
+        && render.hasAsset(DEPTH_VISUALIZATION_FRAGMENT_SHADER)) {
+      backgroundShaders.register(true);
+    }
+    occlusionShaders.register(false).register(true);
   }
 
   /**
    * Sets whether the background camera image should be replaced with a depth visualization instead.
-   * This reloads the corresponding shader code, and must be called on the GL thread.
+   * The first use of a mode compiles its shader unless {@link #prewarmShaderVariants} already did;
+   * later switches are a lookup. Must be called on the GL thread.
    */
   public void setUseDepthVisualization(SampleRender render, boolean useDepthVisualization)
       throws IOException {
-    if (backgroundShader != null) {
-      if (this.useDepthVisualization == useDepthVisualization) {
-        return;
-      }
-      backgroundShader.close();
-      backgroundShader = null;
-      this.useDepthVisualization = useDepthVisualization;
+    backgroundShader = backgroundShaders.get(render, useDepthVisualization);
+    this.useDepthVisualization = useDepthVisualization;
+  }
+
+  /**
+   * Sets whether to use depth for occlusion. Each mode is a variant of the occlusion shader with
+   * different {@code #define}s; the first use of a mode compiles it unless {@link
+   * #prewarmShaderVariants} already did. Must be called on the GL thread.
+   */
+  public void setUseOcclusion(SampleRender render, boolean useOcclusion) throws IOException {
+    occlusionShader = occlusionShaders.get(render, useOcclusion);
+    this.useOcclusion = useOcclusion;
+    if (useOcclusion) {
+      occlusionShader.setFloat("u_DepthAspectRatio", aspectRatio);
     }
-    if (useDepthVisualization) {
-      backgroundShader =
-          Shader.createFromAssets(
-                  render,
-                  "shaders/background_show_depth_color_visualization.vert",
-                  "shaders/background_show_depth_color_visualization.frag",
-                  /*defines=*/ null)
-              .setTexture("u_CameraDepthTexture", cameraDepthTexture)
-              .setDepthTest(false)
-              .setDepthWrite(false);
-    } else {
-      backgroundShader =
-          Shader.createFromAssets(
-                  render,
-                  "shaders/background_show_camera.vert",
-                  "shaders/background_show_camera.frag",
-                  /*defines=*/ null)
-              .setTexture("u_CameraColorTexture", cameraColorTexture)
-              .setDepthTest(false)
-              .setDepthWrite(false);
+  }
+
+  /**
+   * Sets whether to use depth for occlusion like {@link #setUseOcclusion(SampleRender, boolean)},
+   * and switches the attachment formats of the framebuffer later passed to {@link
+   * #drawVirtualScene} to match, keeping its color format; see {@link
+   * #configureVirtualSceneFramebuffer}. Changing formats discards the framebuffer's contents.
+   *
+   * @param virtualSceneFramebuffer the framebuffer to reconfigure, or null if there is none, as when
+   *     drawing {@link #canDrawVirtualSceneDirectly directly}
+   */
+  public void setUseOcclusion(
+      SampleRender render, boolean useOcclusion, Framebuffer virtualSceneFramebuffer)
+      throws IOException {
+    setUseOcclusion(render, useOcclusion);
+    if (virtualSceneFramebuffer != null) {
+      configureVirtualSceneFramebuffer(
+          virtualSceneFramebuffer, virtualSceneFramebuffer.getColorFormat());
     }
   }
 
   /**
-   * Sets whether to use depth for occlusion. This reloads the shader code with new {@code
-   * #define}s, and must be called on the GL thread.
+   * Returns whether virtual content can be drawn straight onto the default framebuffer after {@link
+   * #drawBackground}, instead of into a framebuffer composited by {@link #drawVirtualScene}. That
+   * holds while occlusion is off, when the composite only blends the scene over the background, and
+   * saves writing and reading a full-screen texture. The background does not write depth, so the
+   * content is depth tested against the depth {@link SampleRender} clears before each frame.
    */
-  public void setUseOcclusion(SampleRender render, boolean useOcclusion) throws IOException {
-    if (occlusionShader != null) {
-      if (this.useOcclusion == useOcclusion) {
-        return;
-      }
-      occlusionShader.close();
-      occlusionShader = null;
-      this.useOcclusion = useOcclusion;
+  public boolean canDrawVirtualSceneDirectly() {
+    return !useOcclusion;
+  }
+
+  /**
+   * Sets the attachment formats of the framebuffer later passed to {@link #drawVirtualScene} for the
+   * current occlusion mode. Occlusion compares against the virtual scene's depth, which then needs
+   * to be a texture with enough precision to convert back to millimeters; otherwise the depth only
+   * serves the depth test and is kept in a renderbuffer. {@link #setUseOcclusion(SampleRender,
+   * boolean, Framebuffer)} calls this when the mode changes; call it directly to pick another color
+   * format. Changing formats discards the framebuffer's contents.
+   *
+   * @param colorFormat the color format, which needs alpha to be composited over the background
+   */
+  public void configureVirtualSceneFramebuffer(
+      Framebuffer virtualSceneFramebuffer, Framebuffer.ColorFormat colorFormat) {
+    if (!colorFormat.hasAlpha()) {
+      throw new IllegalArgumentException("The virtual scene needs alpha: " + colorFormat);
+    }
+    virtualSceneFramebuffer.setAttachmentFormats(
+        colorFormat, Framebuffer.DepthFormat.DEPTH_COMPONENT24, /*sampleDepth=*/ useOcclusion);
+  }
+
+  /**
+   * Compiles at most one shader variant that has not been used yet, so that later calls to {@link
+   * #setUseDepthVisualization} and {@link #setUseOcclusion} do not stall a frame. Intended to be
+   * called at the end of each frame.
+   *
+   * @return whether variants remain to be compiled
+   */
+  public boolean prewarmShaderVariants(SampleRender render) {
+    if (occlusionShaders.prewarm(render, /*maxVariants=*/ 1)) {
+      return true;
     }
+    return backgroundShaders.prewarm(render, /*maxVariants=*/ 1);
+  }
+
+  private Shader createBackgroundShader(SampleRender render, boolean useDepthVisualization)
+      throws IOException {
+    if (useDepthVisualization) {
+      return Shader.createFromAssets(
+              render,
+              DEPTH_VISUALIZATION_VERTEX_SHADER,
+              DEPTH_VISUALIZATION_FRAGMENT_SHADER,
+              /*defines=*/ null)
+          .setTexture("u_CameraDepthTexture", cameraDepthTexture)
+          .setDepthTest(false)
+          .setDepthWrite(false);
+    } else {
+      return Shader.createFromAssets(
+              render,
+              "shaders/background_show_camera.vert",
+              "shaders/background_show_camera.frag",
+              /*defines=*/ null)
+          .setTexture("u_CameraColorTexture", cameraColorTexture)
+          .setDepthTest(false)
+          .setDepthWrite(false);
+    }
+  }
+
+  private Shader createOcclusionShader(SampleRender render, boolean useOcclusion)
+      throws IOException {
     HashMap<String, String> defines = new HashMap<>();
     defines.put("USE_OCCLUSION", useOcclusion ? "1" : "0");
-    occlusionShader =
+    Shader shader =
         Shader.createFromAssets(render, "shaders/occlusion.vert", "shaders/occlusion.frag", defines)
             .setDepthTest(false)
             .setDepthWrite(false)
             .setBlend(Shader.BlendFactor.SRC_ALPHA, Shader.BlendFactor.ONE_MINUS_SRC_ALPHA);
     if (useOcclusion) {
-      occlusionShader
+      shader
           .setTexture("u_CameraDepthTexture", cameraDepthTexture)
           .setFloat("u_DepthAspectRatio", aspectRatio);
     }
+    return shader;
   }
 
   /**
@@ -208,23 +328,127 @@ public class BackgroundRenderer {
     }
   }
 
-  /** Update depth texture with Image contents. */
+  /**
+   * Sets whether {@link #updateCameraDepthTexture} copies depth images through a pair of pixel
+   * buffer objects, used in turn, instead of handing their memory to {@code glTexSubImage2D}. The
+   * copy into a mapped buffer returns as soon as the bytes are written, and the texture update
+   * then reads from GPU-visible memory asynchronously, so the GL thread does not wait for the
+   * driver to take its own copy. Turning this off frees the buffers. Must be called on the GL
+   * thread.
+   *
+   * <p>This is opt-in and off by default; the sample app does not turn it on. It is meant for apps
+   * whose profiles show the GL thread waiting in the depth texture update.
+   */
+  public void setUseDepthPixelBuffers(boolean useDepthPixelBuffers) {
+    this.useDepthPixelBuffers = useDepthPixelBuffers;
+    if (!useDepthPixelBuffers && depthPixelBufferIds[0] != 0) {
+      GLES30.glDeleteBuffers(depthPixelBufferIds.length, depthPixelBufferIds, 0);
+      GLError.maybeLogGLError(Log.WARN, TAG, "Failed to free pixel buffers", "glDeleteBuffers");
+      depthPixelBufferIds[0] = 0;
+      depthPixelBufferIds[1] = 0;
+      depthPixelBufferSize = 0;
+    }
+  }
+
+  /**
+   * Update depth texture with Image contents. The texture's storage is allocated once per depth
+   * image size, and each image is written into it in place.
+   */
   public void updateCameraDepthTexture(Image image) {
-    // SampleRender abstraction leaks here
-    GLES30.glBindTexture(GLES30.GL_TEXTURE_2D, cameraDepthTexture.getTextureId());
-    GLES30.glTexImage2D(
-        GLES30.GL_TEXTURE_2D,
-        0,
-        GLES30.GL_RG8,
-        image.getWidth(),
-        image.getHeight(),
-        0,
-        GLES30.GL_RG,
-        GLES30.GL_UNSIGNED_BYTE,
-        image.getPlanes()[0].getBuffer());
-    if (useOcclusion) {
-      aspectRatio = (float) image.getWidth() / (float) image.getHeight();
-      occlusionShader.setFloat("u_DepthAspectRatio", aspectRatio);
+    int width = image.getWidth();
+    int height = image.getHeight();
+    if (cameraDepthTexture.allocateStorage(GLES30.GL_RG8, width, height)) {
+      aspectRatio = (float) width / (float) height;
+      if (useOcclusion) {
+        occlusionShader.setFloat("u_DepthAspectRatio", aspectRatio);
+      }
+    }
+    // Two bytes per 16-bit depth sample, in rows without padding.
+    int size = width * height * 2;
+    ByteBuffer pixels = image.getPlanes()[0].getBuffer();
+    if (pixels.remaining() < size) {
+      throw new IllegalArgumentException(
+          "Depth image of " + width + "x" + height + " has only " + pixels.remaining() + " bytes");
+    }
+    // SampleRender abstraction leaks here; allocateStorage() left the texture bound.
+    if (!useDepthPixelBuffers || !uploadThroughPixelBuffer(pixels, size, width, height)) {
+      GLES30.glTexSubImage2D(
+          GLES30.GL_TEXTURE_2D,
+          /*level=*/ 0,
+          /*xoffset=*/ 0,
+          /*yoffset=*/ 0,
+          width,
+          height,
+          GLES30.GL_RG,
+          GLES30.GL_UNSIGNED_BYTE,
+          pixels);
+      GLError.maybeThrowGLException("Failed to update depth texture", "glTexSubImage2D");
+    }
+  }
+
+  // Returns false, having turned pixel buffers off, if the GL binding cannot upload from them.
+  private boolean uploadThroughPixelBuffer(ByteBuffer pixels, int size, int width, int height) {
+    if (depthPixelBufferIds[0] == 0) {
+      GLES30.glGenBuffers(depthPixelBufferIds.length, depthPixelBufferIds, 0);
+      GLError.maybeThrowGLException("Failed to create pixel buffers", "glGenBuffers");
+    }
+    boolean resize = size != depthPixelBufferSize;
+    if (resize) {
+      for (int bufferId : depthPixelBufferIds) {
+        GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, bufferId);
+        GLError.maybeThrowGLException("Failed to bind pixel buffer", "glBindBuffer");
+        GLES30.glBufferData(GLES30.GL_PIXEL_UNPACK_BUFFER, size, null, GLES30.GL_STREAM_DRAW);
+        GLError.maybeThrowGLException("Failed to allocate pixel buffer", "glBufferData");
+      }
+      depthPixelBufferSize = size;
+    }
+    // The other buffer may still be read by the previous image's upload.
+    GLES30.glBindBuffer(
+        GLES30.GL_PIXEL_UNPACK_BUFFER, depthPixelBufferIds[nextDepthPixelBuffer]);
+    GLError.maybeThrowGLException("Failed to bind pixel buffer", "glBindBuffer");
+    nextDepthPixelBuffer = (nextDepthPixelBuffer + 1) % depthPixelBufferIds.length;
+    try {
+      ByteBuffer mapped =
+          (ByteBuffer)
+              GLES30.glMapBufferRange(
+                  GLES30.GL_PIXEL_UNPACK_BUFFER,
+                  /*offset=*/ 0,
+                  size,
+                  GLES30.GL_MAP_WRITE_BIT | GLES30.GL_MAP_INVALIDATE_BUFFER_BIT);
+      GLError.maybeThrowGLException("Failed to map pixel buffer", "glMapBufferRange");
+      if (mapped == null) {
+        throw new IllegalStateException("Failed to map pixel buffer");
+      }
+      ByteBuffer source = pixels.duplicate();
+      source.limit(source.position() + size);
+      mapped.put(source);
+      if (!GLES30.glUnmapBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER)) {
+        // The buffer's contents were lost, for example to a display mode change; skip this image.
+        Log.w(TAG, "Pixel buffer contents lost while mapped");
+        return true;
+      }
+      GLError.maybeThrowGLException("Failed to unmap pixel buffer", "glUnmapBuffer");
+      GLES30.glTexSubImage2D(
+          GLES30.GL_TEXTURE_2D,
+          /*level=*/ 0,
+          /*xoffset=*/ 0,
+          /*yoffset=*/ 0,
+          width,
+          height,
+          GLES30.GL_RG,
+          GLES30.GL_UNSIGNED_BYTE,
+          // GLES30 has no offset overload for 2D textures; a null pointer is offset 0 into the
+          // bound pixel unpack buffer.
+          /*pixels=*/ null);
+      GLError.maybeThrowGLException("Failed to update depth texture", "glTexSubImage2D");
+      return true;
+    } catch (IllegalArgumentException e) {
+      Log.w(TAG, "Cannot upload depth through pixel buffers, falling back to client memory", e);
+      setUseDepthPixelBuffers(false);
+      return false;
+    } finally {
+      GLES30.glBindBuffer(GLES30.GL_PIXEL_UNPACK_BUFFER, 0);
+      GLError.maybeLogGLError(Log.WARN, TAG, "Failed to unbind pixel buffer", "glBindBuffer");
     }
   }
 
@@ -242,14 +466,116 @@ public class BackgroundRenderer {
    * Draws the virtual scene. Any objects rendered in the given {@link Framebuffer} will be drawn
    * given the previously specified {@link OcclusionMode}.
    *
+   * <p>If the framebuffer was rendered at a reduced {@link Framebuffer#setRenderScale render
+   * scale}, the rendered part is stretched over the screen with bilinear filtering.
+   *
    * <p>Virtual content should be rendered using the matrices provided by {@link
    * com.google.ar.core.Camera#getViewMatrix(float[], int)} and {@link
    * com.google.ar.core.Camera#getProjectionMatrix(float[], int, float, float)}.
    */
   public void drawVirtualScene(
           SampleRender render, Framebuffer virtualSceneFramebuffer, float zNear, float zFar) {
-    occlusionShader.setTexture(
-        "u_VirtualSceneColorTexture", virtualSceneFramebuffer.getColorTexture());
+    if (!matchesOcclusionMode(render, virtualSceneFramebuffer)) {
+      return;
+    }
+    ++fullCompositeCount;
+    composeVirtualScene(render, virtualSceneFramebuffer, zNear, zFar);
+  }
+
+  /**
+   * Draws the virtual scene like {@link #drawVirtualScene(SampleRender, Framebuffer, float,
+   * float)}, but only where the scene's content may be.
+   *
+   * @param screenBounds the min x, min y, max x and max y, in normalized device coordinates, of
+   *     everything drawn into {@code virtualSceneFramebuffer}, as from {@link
+   *     com.example.artech.geoapi.common.samplerender.FrustumCuller#getScreenBounds}
+   */
+  public void drawVirtualScene(
+      SampleRender render,
+      Framebuffer virtualSceneFramebuffer,
+      float zNear,
+      float zFar,
+      float[] screenBounds) {
+    if (!matchesOcclusionMode(render, virtualSceneFramebuffer)) {
+      return;
+    }
+    // Bilinear filtering of a scaled-down scene spreads each texel into its neighbours' pixels.
+    float marginX = SCISSOR_MARGIN_TEXELS * 2f / virtualSceneFramebuffer.getRenderWidth();
+    float marginY = SCISSOR_MARGIN_TEXELS * 2f / virtualSceneFramebuffer.getRenderHeight();
+    float minX = screenBounds[0] - marginX;
+    float minY = screenBounds[1] - marginY;
+    float maxX = screenBounds[2] + marginX;
+    float maxY = screenBounds[3] + marginY;
+    if (minX <= -1 && minY <= -1 && maxX >= 1 && maxY >= 1) {
+      drawVirtualScene(render, virtualSceneFramebuffer, zNear, zFar);
+      return;
+    }
+    ++partialCompositeCount;
+    render.setScissor(/*framebuffer=*/ null, minX, minY, maxX, maxY);
+    composeVirtualScene(render, virtualSceneFramebuffer, zNear, zFar);
+    render.disableScissor();
+  }
+
+  /**
+   * Counts a frame whose virtual scene was left empty, and so neither cleared nor composited. The
+   * next frame that draws the scene must clear it first.
+   */
+  public void skipVirtualScene() {
+    ++skippedCompositeCount;
+  }
+
+  /** Returns the number of composites that covered the whole screen. */
+  public long getFullCompositeCount() {
+    return fullCompositeCount;
+  }
+
+  /** Returns the number of composites scissored to part of the screen. */
+  public long getPartialCompositeCount() {
+    return partialCompositeCount;
+  }
+
+  /** Returns the number of frames whose composite was skipped by {@link #skipVirtualScene}. */
+  public long getSkippedCompositeCount() {
+    return skippedCompositeCount;
+  }
+
+  /**
+   * Switches a framebuffer that occlusion cannot read, because occlusion was turned on without
+   * passing it to {@link #setUseOcclusion(SampleRender, boolean, Framebuffer)}, over to a depth
+   * texture. That discards what was drawn, so the frame's composite is skipped.
+   *
+   * @return whether the framebuffer can be composited this frame
+   */
+  private boolean matchesOcclusionMode(SampleRender render, Framebuffer virtualSceneFramebuffer) {
+    if (!useOcclusion || virtualSceneFramebuffer.hasDepthTexture()) {
+      return true;
+    }
+    Log.w(TAG, "Virtual scene framebuffer was not configured for occlusion; reconfiguring");
+    configureVirtualSceneFramebuffer(
+        virtualSceneFramebuffer, virtualSceneFramebuffer.getColorFormat());
+    render.clear(virtualSceneFramebuffer, 0f, 0f, 0f, 0f);
+    skipVirtualScene();
+    return false;
+  }
+
+  private void composeVirtualScene(
+      SampleRender render, Framebuffer virtualSceneFramebuffer, float zNear, float zFar) {
+    if (!virtualSceneFramebuffer.hasDepthTexture()) {
+      // Nothing reads the depth after the scene is drawn.
+      render.invalidate(virtualSceneFramebuffer, /*color=*/ false, /*depth=*/ true);
+    }
+    int width = virtualSceneFramebuffer.getWidth();
+    int height = virtualSceneFramebuffer.getHeight();
+    int renderWidth = virtualSceneFramebuffer.getRenderWidth();
+    int renderHeight = virtualSceneFramebuffer.getRenderHeight();
+    virtualSceneTexCoordScale[0] = (float) renderWidth / width;
+    virtualSceneTexCoordScale[1] = (float) renderHeight / height;
+    virtualSceneTexCoordMax[0] = (renderWidth - 0.5f) / width;
+    virtualSceneTexCoordMax[1] = (renderHeight - 0.5f) / height;
+    occlusionShader
+        .setTexture("u_VirtualSceneColorTexture", virtualSceneFramebuffer.getColorTexture())
+        .setVec2("u_VirtualSceneTexCoordScale", virtualSceneTexCoordScale)
+        .setVec2("u_VirtualSceneTexCoordMax", virtualSceneTexCoordMax);
     if (useOcclusion) {
       occlusionShader
           .setTexture("u_VirtualSceneDepthTexture", virtualSceneFramebuffer.getDepthTexture())
@@ -8,7 +8,10 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 
+import com.example.artech.BuildConfig;
 import com.example.artech.geoapi.common.helpers.FullScreenHelper;
+import com.example.artech.geoapi.common.samplerender.GLError;
+import com.example.artech.geoapi.common.samplerender.GLErrorPolicy;
 import com.example.artech.geoapi.common.samplerender.SampleRender;
 import com.example.artech.geoapi.hellogeospatial.helpers.arcorelifecyclehelper;
 import com.example.artech.geoapi.hellogeospatial.helpers.geopermission;
@@ -98,6 +101,13 @@ public class hellogeoactivity extends AppCompatActivity  {
         getLifecycle().addObserver(view);
         setContentView(view.root);
 
+        // Release builds check GL errors once per frame instead of after every call; see the
+        // GL_ERROR_CHECK_MODE build config field.
+        GLError.configure(
+                GLErrorPolicy.Mode.valueOf(BuildConfig.GL_ERROR_CHECK_MODE),
+                BuildConfig.GL_ERROR_SAMPLE_PERIOD,
+                BuildConfig.DEBUG);
+
         // Sets up an example renderer using our HelloGeoRenderer.
         new SampleRender(view.surfaceView, renderer, getAssets());
 
@@ -11,10 +11,19 @@ import androidx.lifecycle.DefaultLifecycleObserver;
 import androidx.lifecycle.LifecycleOwner;
 
 import com.example.artech.R;
+import com.example.artech.geoapi.common.anchors.GeoAnchorManager;
 import com.example.artech.geoapi.common.helpers.DisplayRotationHelper;
 import com.example.artech.geoapi.common.helpers.TrackingStateHelper;
+import com.example.artech.geoapi.common.poi.Geohash;
+import com.example.artech.geoapi.common.poi.PoiStore;
+import com.example.artech.geoapi.common.poi.PointOfInterest;
+import com.example.artech.geoapi.common.samplerender.AssetBuffers;
+import com.example.artech.geoapi.common.samplerender.AssetLoader;
 import com.example.artech.geoapi.common.samplerender.Framebuffer;
+import com.example.artech.geoapi.common.samplerender.FrustumCuller;
+import com.example.artech.geoapi.common.samplerender.InstanceBuffer;
 import com.example.artech.geoapi.common.samplerender.Mesh;
+import com.example.artech.geoapi.common.samplerender.RenderScaleController;
 import com.example.artech.geoapi.common.samplerender.SampleRender;
 import com.example.artech.geoapi.common.samplerender.Shader;
 import com.example.artech.geoapi.common.samplerender.Texture;
@@ -37,6 +46,9 @@ import com.google.ar.core.TrackingState;
 import com.google.ar.core.exceptions.CameraNotAvailableException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 
 /**
@@ -47,8 +59,13 @@ import java.io.IOException;
         1. TAG and Z_NEAR, Z_FAR are constants used to set up the camera's frustum. The frustum is the portion
             of 3D space that is visible in the camera's view.
         2. backgroundRenderer is an object used to render the camera's background image.
-        3. virtualSceneFramebuffer is a framebuffer object used to store the virtual scene rendered by the app.
-        4. virtualObjectMesh, virtualObjectShader, and virtualObjectTexture are objects used to render the geospatial marker.
+        3. virtualSceneFramebuffer is a framebuffer object used to store the virtual scene while occlusion is on.
+        4. virtualObjectMesh, virtualObjectShader, and virtualObjectTexture are objects used to render the geospatial
+            marker, loaded in the background by assetLoader.
+        5. anchors is a GeoAnchorManager holding the Earth anchors placed from the map and for points of interest.
+        6. anchorCuller picks the anchors whose marker is worth drawing, and the level of detail of each.
+        7. poiStore holds the points of interest that updateNearbyPois() anchors around the camera.
+        8. renderScaleController sets the resolution of the virtual scene from the time each frame takes.
 
     The class also contains a number of matrices that are used to transform the virtual object into the camera's view.
 
@@ -72,18 +89,78 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
     public  static String TAG = "HelloGeoRenderer";
     public  static float Z_NEAR = 0.1f;
     public  static float Z_FAR = 1000f;
+    // Time per frame spent creating GL objects for assets that finished loading.
+    private static final long UPLOAD_BUDGET_NANOS = 4_000_000L;
+    // Earth anchors are not free to track, so keep the number placed bounded.
+    private static final int MAX_ANCHORS = 512;
+    // Anchors placed from the map sit this far below the camera, roughly at ground level.
+    private static final double ANCHOR_BELOW_CAMERA_METERS = 1.3;
+    private static final String INSTANCED_VERTEX_SHADER = "shaders/ar_unlit_object_instanced.vert";
+    // Follows the position, texture coordinate and normal attributes of the marker mesh.
+    private static final int INSTANCE_MATRIX_LOCATION = 3;
+    // Markers farther than this, or smaller on screen than this, are not drawn.
+    private static final float MAX_ANCHOR_DISTANCE_METERS = 300f;
+    private static final float MIN_ANCHOR_SCREEN_PIXELS = 2f;
+    // Levels of detail of the marker, as fractions of its triangles, and the on-screen error in pixels
+    // below which a coarser level is used.
+    private static final float[] MARKER_LOD_RATIOS = {1f, 0.25f, 0.05f};
+    private static final float MAX_LOD_ERROR_PIXELS = 1f;
+    // Converted offline with MARKER_LOD_RATIOS, so the levels of detail ship with the app:
+    // java BinaryMeshFormat geospatial_marker.obj geospatial_marker.mesh 1 0.25 0.05
+    private static final String MARKER_MESH = "models/geospatial_marker.mesh";
+    private static final String POI_ASSET = "pois/campus.poi";
+    // Geohash cells of 35 bits are about 150 m across; nearby points are looked up again on entering
+    // another one, within a radius that keeps every point in view anchored anywhere in the cell.
+    private static final int POI_CELL_BITS = 35;
+    private static final double POI_LOAD_RADIUS_METERS = MAX_ANCHOR_DISTANCE_METERS;
+    // Leaves room for anchors placed from the map.
+    private static final int MAX_POI_ANCHORS = MAX_ANCHORS / 2;
+    private static final long NO_CELL = -1;
+    // The camera delivers 30 frames per second; keep the rest of each frame's 33 ms for the system.
+    private static final long FRAME_BUDGET_NANOS = 25_000_000L;
+    private static final float MIN_RENDER_SCALE = 0.5f;
 
     public BackgroundRenderer backgroundRenderer;
+    // Null while the markers are drawn straight onto the screen; see setUseOcclusion().
     public Framebuffer virtualSceneFramebuffer;
+    private int surfaceWidth;
+    private int surfaceHeight;
     public boolean hasSetTextureNames = false;
+    private boolean shaderVariantsPending = false;
 
     // Virtual object (ARCore pawn)
     public Mesh virtualObjectMesh;
     public Shader virtualObjectShader;
     public Texture virtualObjectTexture;
+    // Null until loaded, in which case anchors are drawn one at a time with virtualObjectShader.
+    public Shader virtualObjectInstancedShader;
+    public InstanceBuffer anchorInstances;
+    // Picks the tracking anchors worth drawing each frame; read its counts for the last frame.
+    public final FrustumCuller anchorCuller = new FrustumCuller(MAX_ANCHORS);
+    // Screen bounds of the markers drawn this frame, to scissor the composite to.
+    private final float[] virtualSceneBounds = new float[4];
+    // Written on the GL thread, closed from onDestroy() on the UI thread.
+    private volatile AssetLoader assetLoader;
+    // Adjusts virtualSceneFramebuffer's render scale to the measured frame times. GL thread only.
+    public final RenderScaleController renderScaleController =
+            new RenderScaleController(FRAME_BUDGET_NANOS, MIN_RENDER_SCALE, /*maxScale=*/ 1f);
+    private long lastFrameStartNanos = 0;
+    private long lastCameraWaitNanos = 0;
+    // Set when the app resumes, so the time spent paused is not taken for a slow frame.
+    private volatile boolean resetFrameTiming = false;
+
+    // Null until read. GL thread only, like everything below.
+    private PoiStore poiStore;
+    private long poiCell = NO_CELL;
+    // Anchor id of each stored point, or NO_ANCHOR, indexed like the store.
+    private int[] poiAnchorIds;
+    // Points whose anchors are in poiAnchorIds, and the last update each was found nearby in.
+    private final int[] anchoredPois = new int[MAX_POI_ANCHORS];
+    private int anchoredPoiCount = 0;
+    private int[] poiUpdateStamps;
+    private int poiUpdateStamp = 0;
+    private final int[] nearbyPois = new int[MAX_POI_ANCHORS];
 
-    // Temporary matrix allocated here to reduce number of allocations for each frame.
-    float[] modelMatrix = new float[16];
     float[] viewMatrix = new float[16];
     float[] projectionMatrix = new float[16];
     float[] modelViewMatrix = new float[16]; // view x model
@@ -104,6 +181,7 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
     public void onResume(@NonNull LifecycleOwner owner) {
         displayRotationHelper.onResume();
         hasSetTextureNames = false;
+        resetFrameTiming = true;
     }
 
     @Override
@@ -111,6 +189,15 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
         displayRotationHelper.onPause();
     }
 
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        // Stop the loader's worker thread, which would otherwise outlive the activity.
+        AssetLoader loader = assetLoader;
+        if (loader != null) {
+            loader.close();
+        }
+    }
+
 
 
     @Override
@@ -119,33 +206,150 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
         // This involves reading shaders and 3D model files, so may throw an IOException.
         try {
             backgroundRenderer = new BackgroundRenderer(render);
-            virtualSceneFramebuffer = new Framebuffer(render, /*width=*/ 1, /*height=*/ 1);
-
-            // Virtual object to render (Geospatial Marker)
-            virtualObjectTexture =
-                    Texture.createFromAsset(render, "models/spatial_marker_baked.png", Texture.WrapMode.CLAMP_TO_EDGE, Texture.ColorFormat.SRGB);
-
-            virtualObjectMesh = Mesh.createFromAsset(render, "models/geospatial_marker.obj");
-            virtualObjectShader =
-                    Shader.createFromAssets(render, "shaders/ar_unlit_object.vert", "shaders/ar_unlit_object.frag", /*defines=*/ null)
-                            .setTexture("u_Texture", virtualObjectTexture);
+            anchorInstances = new InstanceBuffer(render, MAX_ANCHORS);
 
             backgroundRenderer.setUseDepthVisualization(render, false);
-            backgroundRenderer.setUseOcclusion(render, false);
+            setUseOcclusion(render, false);
+            shaderVariantsPending = true;
         } catch (IOException e) {
             Log.e(TAG, "Failed to read a required asset file", e);
             showError("Failed to read a required asset file: " + e);
         }
+
+        // Virtual object to render (Geospatial Marker). Loading it takes far longer than the camera
+        // background, so it streams in while frames are already being drawn.
+        loadVirtualObject(render);
+        loadPoiStore();
+    }
+
+    // Reads the store on the asset loader's thread. A loader closed with the surface drops the request, so each new
+    // loader asks again until the store has arrived.
+    private void loadPoiStore() {
+        if (poiStore != null) {
+            return;
+        }
+        assetLoader.loadData(
+                POI_ASSET,
+                () -> PoiStore.read(AssetBuffers.read(activityg.getAssets(), POI_ASSET)),
+                store -> poiStore = store);
+    }
+
+    // Switches occlusion on or off. Without occlusion the markers are drawn straight onto the screen, so
+    // virtualSceneFramebuffer is only kept, and re-created when needed, while occlusion is on. GL thread only.
+    public void setUseOcclusion(SampleRender render, boolean useOcclusion) throws IOException {
+        if (useOcclusion && virtualSceneFramebuffer == null) {
+            virtualSceneFramebuffer = new Framebuffer(render, Math.max(1, surfaceWidth), Math.max(1, surfaceHeight));
+            virtualSceneFramebuffer.setRenderScale(renderScaleController.getScale());
+        }
+        // Also gives the framebuffer, if any, the attachment formats of the new mode.
+        backgroundRenderer.setUseOcclusion(render, useOcclusion, virtualSceneFramebuffer);
+        if (backgroundRenderer.canDrawVirtualSceneDirectly() && virtualSceneFramebuffer != null) {
+            virtualSceneFramebuffer.close();
+            virtualSceneFramebuffer = null;
+        }
     }
 
     @Override
     public void onSurfaceChanged(SampleRender render, int width, int height) {
         displayRotationHelper.onSurfaceChanged(width, height);
-        virtualSceneFramebuffer.resize(width, height);
+        surfaceWidth = width;
+        surfaceHeight = height;
+        if (virtualSceneFramebuffer != null) {
+            virtualSceneFramebuffer.resize(width, height);
+        }
+        anchorCuller.setViewportHeight(height);
+    }
+
+    private void loadVirtualObject(SampleRender render) {
+        if (assetLoader != null) {
+            // The previous GL context is gone, and with it anything still waiting to be uploaded.
+            assetLoader.close();
+        }
+        virtualObjectMesh = null;
+        virtualObjectShader = null;
+        virtualObjectInstancedShader = null;
+        virtualObjectTexture = null;
+        assetLoader = new AssetLoader(render, (assetName, e) -> {
+            if (assetName.equals(INSTANCED_VERTEX_SHADER)) {
+                Log.w(TAG, "Instanced drawing unavailable, drawing anchors one at a time", e);
+                return;
+            }
+            if (assetName.equals(POI_ASSET)) {
+                Log.e(TAG, "Failed to load points of interest from " + POI_ASSET, e);
+                return;
+            }
+            Log.e(TAG, "Failed to load " + assetName, e);
+            showError("Failed to read a required asset file: " + e);
+        });
+        assetLoader.loadTexture(
+                "models/spatial_marker_baked.png",
+                Texture.WrapMode.CLAMP_TO_EDGE,
+                Texture.ColorFormat.SRGB,
+                texture -> {
+                    virtualObjectTexture = texture;
+                    onVirtualObjectAssetLoaded();
+                });
+        assetLoader.loadMesh(MARKER_MESH, MARKER_LOD_RATIOS, mesh -> {
+            if (anchorInstances != null) {
+                mesh.setInstanceBuffer(anchorInstances, INSTANCE_MATRIX_LOCATION);
+            }
+            float[] sphere = new float[4];
+            if (mesh.getBoundingSphere(sphere)) {
+                anchorCuller.setBoundingSphere(sphere[0], sphere[1], sphere[2], sphere[3]);
+            }
+            float[] lodErrors = new float[mesh.getLodCount()];
+            for (int level = 0; level < lodErrors.length; ++level) {
+                lodErrors[level] = mesh.getLodError(level);
+            }
+            anchorCuller.setLodErrors(lodErrors, MAX_LOD_ERROR_PIXELS);
+            virtualObjectMesh = mesh;
+        });
+        assetLoader.loadShader(
+                "shaders/ar_unlit_object.vert",
+                "shaders/ar_unlit_object.frag",
+                /*defines=*/ null,
+                shader -> {
+                    virtualObjectShader = shader;
+                    onVirtualObjectAssetLoaded();
+                });
+        assetLoader.loadShader(
+                INSTANCED_VERTEX_SHADER,
+                "shaders/ar_unlit_object.frag",
+                /*defines=*/ null,
+                shader -> {
+                    virtualObjectInstancedShader = shader;
+                    onVirtualObjectAssetLoaded();
+                });
+    }
+
+    // The shaders and texture may arrive in any order.
+    private void onVirtualObjectAssetLoaded() {
+        if (virtualObjectTexture == null) {
+            return;
+        }
+        if (virtualObjectShader != null) {
+            virtualObjectShader.setTexture("u_Texture", virtualObjectTexture);
+        }
+        if (virtualObjectInstancedShader != null) {
+            virtualObjectInstancedShader.setTexture("u_Texture", virtualObjectTexture);
+        }
+    }
+
+    private boolean canDrawInstanced() {
+        return virtualObjectInstancedShader != null && virtualObjectMesh.hasInstanceBuffer();
+    }
+
+    private boolean isVirtualObjectLoaded() {
+        return virtualObjectMesh != null && virtualObjectShader != null && virtualObjectTexture != null;
     }
 
     @Override
     public void onDrawFrame(SampleRender render) {
+        updateRenderScale();
+
+        // Finish loading assets first so anything that became ready is drawn this frame.
+        assetLoader.drainUploads(UPLOAD_BUDGET_NANOS);
+
         Session session = getSession();
         if (session == null) {
             return;
@@ -171,6 +375,7 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
         // UpdateMode.BLOCKING (it is by default), this will throttle the rendering to the
         // camera framerate.
         Frame frame = null;
+        long updateStartNanos = System.nanoTime();
         try {
             frame = session.update();
         } catch (CameraNotAvailableException e) {
@@ -178,9 +383,13 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
             showError("Camera not available. Try restarting the app.");
             return;
         }
+        lastCameraWaitNanos = System.nanoTime() - updateStartNanos;
 
         Camera camera = frame.getCamera();
 
+        // Cache each anchor's tracking state and fetch the poses of those that are tracking.
+        anchors.update();
+
         // BackgroundRenderer.updateDisplayGeometry must be called every frame to update the coordinates
         // used to draw the background camera image.
         backgroundRenderer.updateDisplayGeometry(frame);
@@ -189,6 +398,7 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
         trackingStateHelper.updateKeepScreenOnFlag(camera.getTrackingState());
 
         // -- Draw background
+        boolean drawDirectly = virtualSceneFramebuffer == null;
         if (frame.getTimestamp() != 0L) {
             // Suppress rendering if the camera did not produce the first frame yet. This is to avoid
             // drawing possible leftover data from previous sessions if the texture is reused.
@@ -197,6 +407,10 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
 
         // If not tracking, don't draw 3D objects.
         if (camera.getTrackingState() == TrackingState.PAUSED) {
+            if (!drawDirectly) {
+                backgroundRenderer.skipVirtualScene();
+            }
+            prewarmShaderVariants(render);
             return;
         }
 
@@ -206,60 +420,181 @@ public class hellogeorender implements SampleRender.Renderer, DefaultLifecycleOb
         // Get camera matrix and draw.
         camera.getViewMatrix(viewMatrix, 0);
 
-        render.clear(virtualSceneFramebuffer, 0f, 0f, 0f, 0f);
-
         // TODO: Obtain Geospatial information and display it on the map.
         Earth earth = session.getEarth();
-        if (earth != null && earth.getTrackingState() == TrackingState.TRACKING) {
-            final GeospatialPose cameraGeospatialPose = earth.getCameraGeospatialPose();
-
-
-            activityg.view.mapView.updateMapPosition(
-                    cameraGeospatialPose.getLatitude(),
-                    cameraGeospatialPose.getLongitude(),
-                    cameraGeospatialPose.getHeading()
-            );
+        if (earth != null) {
+            // Fetched once per frame; the view copies what the UI needs and hands it over without blocking.
+            GeospatialPose cameraGeospatialPose = earth.getTrackingState() == TrackingState.TRACKING
+                    ? earth.getCameraGeospatialPose()
+                    : null;
+            activityg.view.publishPose(earth, cameraGeospatialPose);
+            if (cameraGeospatialPose != null) {
+                updateNearbyPois(earth, cameraGeospatialPose);
+            }
         }
-        assert earth != null;
-        activityg.view.updateStatusText(earth, earth.getCameraGeospatialPose());
 
-        // Draw the placed anchor, if it exists.
-        if (earthAnchor != null) {
-            render.renderCompassAtAnchor(earthAnchor,viewMatrix,modelMatrix,projectionMatrix,modelViewMatrix,
-                    modelViewProjectionMatrix,virtualObjectShader,virtualObjectMesh,virtualSceneFramebuffer);
+        // Draw the placed anchors that are tracking, skipping those out of view, too far or too small to see.
+        anchorCuller.setCamera(viewMatrix, projectionMatrix);
+        int visibleAnchors = anchorCuller.cull(anchors.getTrackingModelMatrices(), anchors.getTrackingCount());
+        if (visibleAnchors > 0 && isVirtualObjectLoaded() && drawDirectly) {
+            drawMarkers(render, /*framebuffer=*/ null);
+            // The screen's depth is not needed once the markers are drawn.
+            render.invalidate(/*framebuffer=*/ null, /*color=*/ false, /*depth=*/ true);
+        } else if (visibleAnchors > 0 && isVirtualObjectLoaded()) {
+            render.clear(virtualSceneFramebuffer, 0f, 0f, 0f, 0f);
+            drawMarkers(render, virtualSceneFramebuffer);
+
+            // Compose the virtual scene with the background, only where the markers may cover it.
+            anchorCuller.getScreenBounds(virtualSceneBounds);
+            backgroundRenderer.drawVirtualScene(render, virtualSceneFramebuffer, Z_NEAR,  Z_FAR, virtualSceneBounds);
+        } else if (!drawDirectly) {
+            // Nothing to compose: leave the virtual scene uncleared and skip the full-screen pass.
+            backgroundRenderer.skipVirtualScene();
         }
 
+        prewarmShaderVariants(render);
+    }
 
+    // Draws the marker at each anchor kept by anchorCuller into the given framebuffer, or the screen if null.
+    private void drawMarkers(SampleRender render, Framebuffer framebuffer) {
+        boolean instanced = canDrawInstanced();
+        Shader shader = instanced ? virtualObjectInstancedShader : virtualObjectShader;
+        if (framebuffer == null) {
+            // Blend over the camera image the way the composite blends the virtual scene.
+            shader.setBlend(Shader.BlendFactor.SRC_ALPHA, Shader.BlendFactor.ONE_MINUS_SRC_ALPHA);
+        } else {
+            shader.setBlend(Shader.BlendFactor.ONE, Shader.BlendFactor.ZERO);
+        }
+        if (instanced) {
+            render.renderCompassAtAnchorsInstanced(anchorCuller,viewMatrix,projectionMatrix,anchorInstances,
+                    shader,virtualObjectMesh,framebuffer);
+        } else {
+            render.renderCompassAtAnchors(anchorCuller,viewMatrix,projectionMatrix,modelViewMatrix,
+                    modelViewProjectionMatrix,shader,virtualObjectMesh,framebuffer);
+        }
+    }
 
+    // Times the previous frame, from its start to this one's minus the wait for the camera image,
+    // which includes any stall in eglSwapBuffers() on a GPU that is falling behind.
+    private void updateRenderScale() {
+        long frameStartNanos = System.nanoTime();
+        if (resetFrameTiming) {
+            resetFrameTiming = false;
+            renderScaleController.reset();
+            lastFrameStartNanos = 0;
+        }
+        if (lastFrameStartNanos != 0) {
+            long frameNanos = frameStartNanos - lastFrameStartNanos - lastCameraWaitNanos;
+            renderScaleController.update(frameNanos);
+        }
+        if (virtualSceneFramebuffer != null) {
+            virtualSceneFramebuffer.setRenderScale(renderScaleController.getScale());
+        }
+        lastFrameStartNanos = frameStartNanos;
+        lastCameraWaitNanos = 0;
+    }
 
-
-        // Compose the virtual scene with the background.
-        backgroundRenderer.drawVirtualScene(render, virtualSceneFramebuffer, Z_NEAR,  Z_FAR);
+    // Compiles unused background shader variants one per frame once the frame's work is done, so
+    // toggling occlusion or depth visualization later does not stall.
+    private void prewarmShaderVariants(SampleRender render) {
+        if (shaderVariantsPending) {
+            shaderVariantsPending = backgroundRenderer.prewarmShaderVariants(render);
+        }
     }
 
 
-    public Anchor earthAnchor = null;
+    // Only touched on the GL thread; onMapClick() queues its work there.
+    public final GeoAnchorManager anchors = new GeoAnchorManager(MAX_ANCHORS);
 
     public void onMapClick(LatLng latLng) {
-        // TODO: place an anchor at the given position.
+        activityg.view.surfaceView.queueEvent(() -> placeAnchor(latLng));
+    }
+
+    // Runs on the GL thread.
+    private void placeAnchor(LatLng latLng) {
+        Session session = getSession();
+        if (session == null) {
+            return;
+        }
         Earth earth = session.getEarth();
         if (earth == null || earth.getTrackingState() != TrackingState.TRACKING) {
             return;
         }
-        if (earthAnchor != null) {
-            earthAnchor.detach();
-        }
-        earthAnchor = earth.createAnchor(
-                latLng.latitude, latLng.longitude, earth.getCameraGeospatialPose().getAltitude() - 1.3f,
+        int id = anchors.create(
+                earth, latLng.latitude, latLng.longitude,
+                earth.getCameraGeospatialPose().getAltitude() - ANCHOR_BELOW_CAMERA_METERS,
                 0f, 0f, 0f, 1f
         );
-        if (activityg.view.mapView != null) {
-            activityg.view.mapView.earthMarker.setPosition(latLng);
-            activityg.view.mapView.earthMarker.setVisible(true);
+        if (id == GeoAnchorManager.NO_ANCHOR) {
+            showError("Cannot place more than " + MAX_ANCHORS + " anchors.");
+            return;
         }
+        activityg.runOnUiThread(() -> {
+            if (activityg.view.mapView != null) {
+                activityg.view.mapView.addAnchorMarker(latLng);
+            }
+        });
     }
 
 
+    // Runs on the GL thread, with Earth tracking. Cheap unless the camera entered another cell.
+    private void updateNearbyPois(Earth earth, GeospatialPose cameraGeospatialPose) {
+        PoiStore store = poiStore;
+        if (store == null) {
+            return;
+        }
+        double latitude = cameraGeospatialPose.getLatitude();
+        double longitude = cameraGeospatialPose.getLongitude();
+        long cell = Geohash.encode(latitude, longitude, POI_CELL_BITS);
+        if (cell == poiCell) {
+            return;
+        }
+        poiCell = cell;
+        if (poiAnchorIds == null) {
+            poiAnchorIds = new int[store.size()];
+            Arrays.fill(poiAnchorIds, GeoAnchorManager.NO_ANCHOR);
+            poiUpdateStamps = new int[store.size()];
+        }
+        // With more points in range than MAX_POI_ANCHORS, anchor the nearest, which mostly stay the same between cells.
+        int nearbyCount = store.findNearest(latitude, longitude, POI_LOAD_RADIUS_METERS, nearbyPois);
+
+        // Release the anchors of points no longer nearby.
+        ++poiUpdateStamp;
+        for (int i = 0; i < nearbyCount; ++i) {
+            poiUpdateStamps[nearbyPois[i]] = poiUpdateStamp;
+        }
+        int keptCount = 0;
+        for (int i = 0; i < anchoredPoiCount; ++i) {
+            int poi = anchoredPois[i];
+            if (poiUpdateStamps[poi] == poiUpdateStamp) {
+                anchoredPois[keptCount++] = poi;
+            } else {
+                anchors.remove(poiAnchorIds[poi]);
+                poiAnchorIds[poi] = GeoAnchorManager.NO_ANCHOR;
+            }
+        }
+        anchoredPoiCount = keptCount;
+
+        // Anchor the newly nearby ones. Points without an altitude go where map taps would.
+        List<PointOfInterest> added = new ArrayList<>();
+        int[] addedIndices = new int[nearbyCount];
+        for (int i = 0; i < nearbyCount; ++i) {
+            if (poiAnchorIds[nearbyPois[i]] == GeoAnchorManager.NO_ANCHOR) {
+                addedIndices[added.size()] = nearbyPois[i];
+                added.add(store.get(nearbyPois[i]));
+            }
+        }
+        int[] ids = new int[added.size()];
+        anchors.createAll(
+                earth, added, cameraGeospatialPose.getAltitude() - ANCHOR_BELOW_CAMERA_METERS, ids);
+        for (int i = 0; i < ids.length; ++i) {
+            if (ids[i] != GeoAnchorManager.NO_ANCHOR) {
+                poiAnchorIds[addedIndices[i]] = ids[i];
+                anchoredPois[anchoredPoiCount++] = addedIndices[i];
+            }
+        }
+    }
+
     private void showError(String errorMessage) {
         activityg.view.snackbarHelper.showError(activityg, errorMessage);
     }
@@ -3,7 +3,10 @@ package com.example.artech.geoapi.hellogeospatial.helpers;
 import android.app.Activity;
 import android.location.Location;
 import android.opengl.GLSurfaceView;
+import android.os.SystemClock;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.ImageView;
 import android.widget.TextView;
@@ -12,8 +15,21 @@ import androidx.annotation.NonNull;
 import androidx.lifecycle.DefaultLifecycleObserver;
 import androidx.lifecycle.LifecycleOwner;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+
 import com.example.artech.R;
+import com.example.artech.geoapi.common.geofence.Geofence;
+import com.example.artech.geoapi.common.geofence.GeofenceFormat;
+import com.example.artech.geoapi.common.geofence.GeofenceIndex;
+import com.example.artech.geoapi.common.geofence.GeospatialPoseFilter;
+import com.example.artech.geoapi.common.geofence.PoseChangeThreshold;
+import com.example.artech.geoapi.common.geofence.ZoneTracker;
+import com.example.artech.geoapi.common.helpers.LatestValueChannel;
 import com.example.artech.geoapi.common.helpers.SnackbarHelper;
+import com.example.artech.geoapi.common.helpers.ZoneImageCache;
 import com.example.artech.geoapi.hellogeospatial.hellogeoactivity;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
@@ -36,17 +52,43 @@ import com.google.ar.core.Session;
 
     The getSession() method returns the ARCore session associated with the arcorelifecyclehelper object.
 
-    The updateStatusText() method updates the status text view with information about the earth state, tracking state,
-    and camera geospatial pose. It runs on the UI thread using activity.runOnUiThread().
+    The publishPose() method is called by the renderer on the GL thread once per frame. It feeds the raw camera
+    geospatial pose to a GeospatialPoseFilter, which weights each fix by its accuracy and dead-reckons through frames
+    without one, then copies the earth state, tracking state and filtered pose into preallocated posesnapshots and
+    publishes them through two LatestValueChannels, without posting anything to the UI thread. A Choreographer
+    callback drains the channels on the UI thread once per display frame. The map marker is only moved once the
+    filtered pose has moved or turned past MARKER_MOVE_METERS or MARKER_TURN_DEGREES, and the status text is
+    reformatted at most every STATUS_TEXT_INTERVAL_NANOS, and only if something it shows has changed. Poses published in between are coalesced rather than queued,
+    so a slow UI thread only ever sees the latest pose. The channels' counters are logged when the activity pauses.
+
+    The image of the campus zone the camera is in is shown as well. Zones are loaded once from
+    assets/geofences/campus.txt into a GeofenceIndex, and each zone id names its drawable. publishPose() feeds
+    every raw pose to a ZoneTracker on the calling thread, which smooths out boundary jitter using the pose's
+    horizontal accuracy; the image is only changed when the tracker reports that a zone was entered or left. Images come from a
+    ZoneImageCache, which decodes them in the background at the size of the image view and preloads the images of
+    zones near the one just entered. The status views are looked up once in the constructor.
 
     Finally, the onResume() and onPause() methods are lifecycle methods that handle pausing and resuming the GLSurfaceView
-    when the activity is paused or resumed.
+    and the Choreographer callback when the activity is paused or resumed.
 **/
 
 
 
 /** Contains UI elements for Hello Geo. */
-public class hellogeoview  implements DefaultLifecycleObserver {
+public class hellogeoview  implements DefaultLifecycleObserver, ZoneTracker.Listener {
+    private static final String TAG = hellogeoview.class.getSimpleName();
+    private static final String ZONES_ASSET = "geofences/campus.txt";
+    private static final int STATUS_IMAGE_HEIGHT_DP = 150;
+    // Zones whose bounds come this close to the entered zone have their images preloaded.
+    private static final double PRELOAD_DISTANCE_METERS = 30;
+    // The status text is reformatted at most this often; the map marker is checked every frame.
+    private static final long STATUS_TEXT_INTERVAL_NANOS = 100_000_000L;
+    // Smaller changes of the filtered pose are not worth redrawing.
+    private static final double MARKER_MOVE_METERS = 0.2;
+    private static final double MARKER_TURN_DEGREES = 1;
+    private static final double STATUS_MOVE_METERS = 0.05;
+    private static final double STATUS_TURN_DEGREES = 0.1;
+    private static final double STATUS_CONFIDENCE_CHANGE = 0.01;
 
     public final Activity activity;
     public View root;
@@ -54,6 +96,32 @@ public class hellogeoview  implements DefaultLifecycleObserver {
     public SnackbarHelper snackbarHelper = new SnackbarHelper();
     public mapview mapView;
     public maptouchwrapper mapTouchWrapper;
+    private final GeofenceIndex zoneIndex;
+    // Drawable resource of each zone in zoneIndex, or 0 if the zone has no image.
+    private final int[] zoneDrawables;
+    private final ZoneTracker zoneTracker;
+    private final ZoneImageCache zoneImageCache;
+    private final int[] nearbyZones = new int[16];
+    private final TextView statusText;
+    private final ImageView statusImage;
+    // The zone whose image should be showing, touched on the UI thread only.
+    private int displayedZone = GeofenceIndex.NO_ZONE;
+    // Written by publishPose() on the GL thread, drained by frameCallback on the UI thread.
+    private final LatestValueChannel<posesnapshot> markerPoses =
+            new LatestValueChannel<>(posesnapshot::new);
+    private final LatestValueChannel<posesnapshot> statusPoses =
+            new LatestValueChannel<>(posesnapshot::new, STATUS_TEXT_INTERVAL_NANOS);
+    private final Choreographer.FrameCallback frameCallback = this::doFrame;
+    // Touched on the GL thread only.
+    private final GeospatialPoseFilter poseFilter = new GeospatialPoseFilter();
+    // Touched on the UI thread only.
+    private final PoseChangeThreshold markerThreshold =
+            new PoseChangeThreshold(MARKER_MOVE_METERS, MARKER_TURN_DEGREES);
+    private final PoseChangeThreshold statusThreshold =
+            new PoseChangeThreshold(STATUS_MOVE_METERS, STATUS_TURN_DEGREES);
+    // A copy of what the status text shows, since polled snapshots are recycled by the channel.
+    private final posesnapshot shownStatus = new posesnapshot();
+    private boolean hasShownStatus = false;
 
     public hellogeoview(hellogeoactivity activity) {
         this.activity = activity;
@@ -68,8 +136,35 @@ public class hellogeoview  implements DefaultLifecycleObserver {
         if (mapFragment != null) {
             mapFragment.getMapAsync(googleMap -> mapView = new mapview(activity, googleMap));
         }
-        TextView statusText = root.findViewById(R.id.statusText);
+        statusText = root.findViewById(R.id.statusText);
         statusText.setText(activity.getResources().getString(R.string.earth_state, "", "", ""));
+        statusImage = root.findViewById(R.id.statusimg);
+
+        zoneIndex = new GeofenceIndex(loadZones(activity));
+        zoneDrawables = new int[zoneIndex.getZoneCount()];
+        for (int i = 0; i < zoneDrawables.length; i++) {
+            zoneDrawables[i] = activity.getResources().getIdentifier(
+                    zoneIndex.getZone(i).getId(), "drawable", activity.getPackageName());
+        }
+        zoneTracker = new ZoneTracker(zoneIndex);
+        zoneTracker.addListener(this);
+
+        DisplayMetrics displayMetrics = activity.getResources().getDisplayMetrics();
+        zoneImageCache = new ZoneImageCache(
+                activity.getResources(),
+                zoneDrawables,
+                displayMetrics.widthPixels,
+                Math.round(STATUS_IMAGE_HEIGHT_DP * displayMetrics.density),
+                (int) Math.min(Runtime.getRuntime().maxMemory() / 16, Integer.MAX_VALUE));
+    }
+
+    private static List<Geofence> loadZones(Activity activity) {
+        try (InputStream inputStream = activity.getAssets().open(ZONES_ASSET)) {
+            return GeofenceFormat.read(inputStream);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to load zones from " + ZONES_ASSET, e);
+            return Collections.emptyList();
+        }
     }
 
 
@@ -78,59 +173,144 @@ public class hellogeoview  implements DefaultLifecycleObserver {
         return arcorelifecyclehelper.session;
     }
 
-    public void updateStatusText(Earth earth, GeospatialPose cameraGeospatialPose) {
-        activity.runOnUiThread(() -> {
-            String poseText = "";
-            if (cameraGeospatialPose != null) {
-
-
-                ImageView img = root.findViewById(R.id.statusimg);
-
-                if( (cameraGeospatialPose.getLatitude() >= 29.34395 && cameraGeospatialPose.getLatitude() <= 29.34420)
-                && (cameraGeospatialPose.getLongitude() >= 48.08350 && cameraGeospatialPose.getLongitude() <= 48.08400)
-                ){
-                    img.setVisibility(View.VISIBLE);
-                    img.setImageDrawable(activity.getDrawable(R.drawable.a));
-                } else if((cameraGeospatialPose.getLatitude() >= 29.34352 && cameraGeospatialPose.getLatitude() <= 29.34395)
-                        && (cameraGeospatialPose.getLongitude() >= 48.08307 && cameraGeospatialPose.getLongitude() <= 48.08350)){
-                    img.setVisibility(View.VISIBLE);
-                    img.setImageDrawable(activity.getDrawable(R.drawable.b));
-                } else if((cameraGeospatialPose.getLatitude() >= 29.34420 && cameraGeospatialPose.getLatitude() <= 29.34460)
-                        && (cameraGeospatialPose.getLongitude() >= 48.08350 && cameraGeospatialPose.getLongitude() <= 48.08385)){
-                    img.setVisibility(View.VISIBLE);
-                    img.setImageDrawable(activity.getDrawable(R.drawable.c));
-                }else {
-                    img.setVisibility(View.INVISIBLE);
-                }
-
-                poseText = activity.getString(R.string.geospatial_pose,
-                        cameraGeospatialPose.getLatitude(),
-                        cameraGeospatialPose.getLongitude(),
-                        cameraGeospatialPose.getHorizontalAccuracy(),
-                        cameraGeospatialPose.getAltitude(),
-                        cameraGeospatialPose.getVerticalAccuracy(),
-                        cameraGeospatialPose.getHeading(),
-                        cameraGeospatialPose.getHeadingAccuracy()
-                        );
+    /**
+     * Publishes the state of the current frame to the UI. Called on the GL thread.
+     *
+     * @param cameraGeospatialPose the camera pose, or null if Earth is not tracking
+     */
+    public void publishPose(Earth earth, GeospatialPose cameraGeospatialPose) {
+        long nowMillis = SystemClock.elapsedRealtime();
+        if (cameraGeospatialPose != null) {
+            // The tracker applies its own accuracy-aware hysteresis, so it gets the raw fix.
+            zoneTracker.update(
+                    cameraGeospatialPose.getLatitude(),
+                    cameraGeospatialPose.getLongitude(),
+                    cameraGeospatialPose.getHorizontalAccuracy(),
+                    nowMillis);
+            poseFilter.update(
+                    cameraGeospatialPose.getLatitude(),
+                    cameraGeospatialPose.getLongitude(),
+                    cameraGeospatialPose.getAltitude(),
+                    cameraGeospatialPose.getHeading(),
+                    cameraGeospatialPose.getHorizontalAccuracy(),
+                    cameraGeospatialPose.getVerticalAccuracy(),
+                    cameraGeospatialPose.getHeadingAccuracy(),
+                    nowMillis);
+        } else {
+            poseFilter.predict(nowMillis);
+        }
+        markerPoses.beginWrite().set(earth, poseFilter);
+        markerPoses.publish();
+        statusPoses.beginWrite().set(earth, poseFilter);
+        statusPoses.publish();
+    }
+
+    private void doFrame(long frameTimeNanos) {
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+
+        posesnapshot markerPose = markerPoses.poll(frameTimeNanos);
+        // mapview ignores updates while the user moves the map; don't count those as drawn.
+        if (markerPose != null && markerPose.hasPose && mapView != null && mapView.cameraIdle
+                && markerThreshold.accept(markerPose.latitude, markerPose.longitude, markerPose.heading)) {
+            mapView.updateMapPosition(markerPose.latitude, markerPose.longitude, markerPose.heading);
+        }
+
+        posesnapshot statusPose = statusPoses.poll(frameTimeNanos);
+        if (statusPose != null && hasStatusChanged(statusPose)) {
+            updateStatusText(statusPose);
+            shownStatus.copyFrom(statusPose);
+            hasShownStatus = true;
+        }
+    }
+
+    private boolean hasStatusChanged(posesnapshot pose) {
+        boolean moved = pose.hasPose
+                && statusThreshold.accept(pose.latitude, pose.longitude, pose.heading);
+        return moved
+                || !hasShownStatus
+                || pose.earthState != shownStatus.earthState
+                || pose.trackingState != shownStatus.trackingState
+                || pose.hasPose != shownStatus.hasPose
+                || Math.abs(pose.confidence - shownStatus.confidence) >= STATUS_CONFIDENCE_CHANGE;
+    }
+
+    private void updateStatusText(posesnapshot pose) {
+        String poseText = "";
+        if (pose.hasPose) {
+            poseText = activity.getString(R.string.geospatial_pose,
+                    pose.latitude,
+                    pose.longitude,
+                    pose.horizontalAccuracy,
+                    pose.altitude,
+                    pose.verticalAccuracy,
+                    pose.heading,
+                    pose.headingAccuracy,
+                    pose.confidence * 100
+                    );
+        }
+        statusText.setText(
+                activity.getResources().getString(R.string.earth_state,
+                pose.earthState.toString(),
+                pose.trackingState.toString(),
+                poseText)
+        );
+    }
+
+    @Override
+    public void onZoneEvent(ZoneTracker.Event event, int zone, long timeMillis) {
+        if (event == ZoneTracker.Event.DWELL) {
+            return;
+        }
+        int enteredZone = event == ZoneTracker.Event.ENTER ? zone : GeofenceIndex.NO_ZONE;
+        activity.runOnUiThread(() -> showZoneImage(enteredZone));
+    }
+
+    private void showZoneImage(int zone) {
+        displayedZone = zone;
+        if (!zoneImageCache.hasImage(zone)) {
+            statusImage.setVisibility(View.INVISIBLE);
+            return;
+        }
+        zoneImageCache.request(zone, (readyZone, bitmap) -> {
+            // The zone may have been left while its image was decoding.
+            if (readyZone == displayedZone) {
+                statusImage.setImageBitmap(bitmap);
+                statusImage.setVisibility(View.VISIBLE);
             }
-            TextView statusText = root.findViewById(R.id.statusText);
-            statusText.setText(
-                    activity.getResources().getString(R.string.earth_state,
-                    earth.getEarthState().toString(),
-                    earth.getTrackingState().toString(),
-                    poseText)
-            );
         });
+
+        Geofence geofence = zoneIndex.getZone(zone);
+        double centerLatitude = (geofence.getMinLatitude() + geofence.getMaxLatitude()) / 2;
+        double centerLongitude = (geofence.getMinLongitude() + geofence.getMaxLongitude()) / 2;
+        float[] halfDiagonalMeters = new float[1];
+        Location.distanceBetween(geofence.getMinLatitude(), geofence.getMinLongitude(),
+                centerLatitude, centerLongitude, halfDiagonalMeters);
+        int count = Math.min(nearbyZones.length, zoneIndex.findNearby(centerLatitude, centerLongitude,
+                halfDiagonalMeters[0] + PRELOAD_DISTANCE_METERS, nearbyZones));
+        zoneImageCache.preload(nearbyZones, count);
     }
 
     @Override
     public void onResume(@NonNull LifecycleOwner owner) {
         surfaceView.onResume();
+        Choreographer.getInstance().postFrameCallback(frameCallback);
     }
 
     @Override
     public void onPause(@NonNull LifecycleOwner owner) {
         surfaceView.onPause();
+        Choreographer.getInstance().removeFrameCallback(frameCallback);
+        Log.d(TAG, "Poses published: " + markerPoses.getPublishedCount()
+                + ", marker updates: " + markerPoses.getReadCount()
+                + " (" + markerPoses.getCoalescedCount() + " coalesced)"
+                + ", status updates: " + statusPoses.getReadCount()
+                + " (" + statusPoses.getCoalescedCount() + " coalesced, "
+                + statusPoses.getRateLimitedCount() + " rate-limited)");
+    }
+
+    @Override
+    public void onDestroy(@NonNull LifecycleOwner owner) {
+        zoneImageCache.close();
     }
 
 
@@ -31,8 +31,9 @@ import com.google.ar.core.Session;
 /*
     This code defines a mapview class, which is responsible for managing and updating a Google Maps view.
 
-    The class defines two Marker objects: cameraMarker and earthMarker. cameraMarker is used to represent
-    the camera position, while earthMarker is not currently used in the code.
+    The class defines a Marker object, cameraMarker, which is used to represent the camera position. Each
+    Earth anchor placed by the renderer gets a marker of its own from addAnchorMarker(), which all share one
+    icon so placing hundreds of anchors does not decode the icon bitmap hundreds of times.
 
     In the constructor, the GoogleMap object is passed in and various UI settings are configured, such as
      disabling the map toolbar and the indoor level picker, and enabling camera and idle listeners. An
@@ -40,7 +41,8 @@ import com.google.ar.core.Session;
 
     The updateMapPosition() method takes a latitude, longitude, and heading, and updates the position and
     rotation of the cameraMarker on the map. If the camera is currently moving, the method does nothing, but
-    if the camera is idle, it moves the camera to center on the updated position of the cameraMarker.
+    if the camera is idle, it moves the camera to center on the updated position of the cameraMarker. It must
+    be called on the UI thread; hellogeoview calls it once per display frame with the latest pose.
 
     The createMarker() method takes a color argument and creates a new Marker object with the specified color.
     The createColoredMarkerBitmap() method creates a new bitmap by applying a color filter to the
@@ -58,7 +60,7 @@ public class mapview {
     public Marker cameraMarker;
     public boolean cameraIdle = true;
 
-    public Marker earthMarker;
+    private BitmapDescriptor anchorMarkerIcon;
     public final hellogeoactivity activity;
     public final GoogleMap googleMap;
 
@@ -83,26 +85,36 @@ public class mapview {
 
 
     public void updateMapPosition(double latitude, double longitude, double heading) {
+        if (!cameraIdle) {
+            return;
+        }
         LatLng position = new LatLng(latitude, longitude);
-        activity.runOnUiThread(() -> {
-            if (!cameraIdle) {
-                return;
-            }
-            cameraMarker.setVisible(true);
-            cameraMarker.setPosition(position);
-            cameraMarker.setRotation((float) heading);
-
-            CameraPosition.Builder cameraPositionBuilder;
-            if (!setInitialCameraPosition) {
-                setInitialCameraPosition = true;
-                cameraPositionBuilder = new CameraPosition.Builder().zoom(21f).target(position);
-            } else {
-                cameraPositionBuilder = new CameraPosition.Builder()
-                        .zoom(googleMap.getCameraPosition().zoom)
-                        .target(position);
-            }
-            googleMap.moveCamera(CameraUpdateFactory.newCameraPosition(cameraPositionBuilder.build()));
-        });
+        cameraMarker.setVisible(true);
+        cameraMarker.setPosition(position);
+        cameraMarker.setRotation((float) heading);
+
+        CameraPosition.Builder cameraPositionBuilder;
+        if (!setInitialCameraPosition) {
+            setInitialCameraPosition = true;
+            cameraPositionBuilder = new CameraPosition.Builder().zoom(21f).target(position);
+        } else {
+            cameraPositionBuilder = new CameraPosition.Builder()
+                    .zoom(googleMap.getCameraPosition().zoom)
+                    .target(position);
+        }
+        googleMap.moveCamera(CameraUpdateFactory.newCameraPosition(cameraPositionBuilder.build()));
+    }
+
+    public Marker addAnchorMarker(LatLng position) {
+        if (anchorMarkerIcon == null) {
+            anchorMarkerIcon = BitmapDescriptorFactory.fromBitmap(createColoredMarkerBitmap(EARTH_MARKER_COLOR));
+        }
+        return googleMap.addMarker(new MarkerOptions()
+                .position(position)
+                .draggable(false)
+                .anchor(0.5f, 0.5f)
+                .flat(true)
+                .icon(anchorMarkerIcon));
     }
 
     public Marker createMarker(@ColorInt int color) {
@@ -0,0 +1,59 @@
+package com.example.artech.geoapi.hellogeospatial.helpers;
+
+import com.example.artech.geoapi.common.geofence.GeospatialPoseFilter;
+import com.google.ar.core.Earth;
+import com.google.ar.core.TrackingState;
+
+/*
+    A copy of the Earth state and the filtered camera geospatial pose of one frame, taken on the GL thread
+    and read on the UI thread.
+
+    ARCore objects are only meant to be used on the thread that updates the session, so the values the UI
+    needs are copied out into plain fields. Instances are preallocated by a LatestValueChannel and
+    overwritten every frame by set(), so publishing a pose does not allocate.
+ */
+public class posesnapshot {
+    public Earth.EarthState earthState;
+    public TrackingState trackingState;
+    // False until the filter has seen a fix, in which case the pose fields are stale.
+    public boolean hasPose;
+    public double latitude;
+    public double longitude;
+    public double altitude;
+    public double heading;
+    public double horizontalAccuracy;
+    public double verticalAccuracy;
+    public double headingAccuracy;
+    // From 0 to 1, see GeospatialPoseFilter.getConfidence().
+    public double confidence;
+
+    public void set(Earth earth, GeospatialPoseFilter filter) {
+        earthState = earth.getEarthState();
+        trackingState = earth.getTrackingState();
+        hasPose = filter.hasEstimate();
+        confidence = filter.getConfidence();
+        if (hasPose) {
+            latitude = filter.getLatitude();
+            longitude = filter.getLongitude();
+            altitude = filter.getAltitude();
+            heading = filter.getHeading();
+            horizontalAccuracy = filter.getHorizontalAccuracy();
+            verticalAccuracy = filter.getVerticalAccuracy();
+            headingAccuracy = filter.getHeadingAccuracy();
+        }
+    }
+
+    public void copyFrom(posesnapshot other) {
+        earthState = other.earthState;
+        trackingState = other.trackingState;
+        hasPose = other.hasPose;
+        latitude = other.latitude;
+        longitude = other.longitude;
+        altitude = other.altitude;
+        heading = other.heading;
+        horizontalAccuracy = other.horizontalAccuracy;
+        verticalAccuracy = other.verticalAccuracy;
+        headingAccuracy = other.headingAccuracy;
+        confidence = other.confidence;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.artech.geoapi.common.anchors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Test;
+
+public class AnchorSlotTableTest {
+  @Test
+  public void allocate_untilFull() {
+    AnchorSlotTable table = new AnchorSlotTable(3);
+    Set<Integer> slots = new HashSet<>();
+
+    for (int i = 0; i < 3; ++i) {
+      int id = table.allocate();
+      assertTrue(id >= 0);
+      slots.add(table.slotOf(id));
+    }
+
+    assertEquals(AnchorSlotTable.NO_ID, table.allocate());
+    assertEquals(3, table.size());
+    assertEquals(3, slots.size());
+  }
+
+  @Test
+  public void release_recyclesSlotUnderNewId() {
+    AnchorSlotTable table = new AnchorSlotTable(1);
+    int first = table.allocate();
+
+    assertTrue(table.release(first));
+    int second = table.allocate();
+
+    assertEquals(first & 0xffff, table.slotOf(second));
+    assertNotEquals(first, second);
+    assertEquals(-1, table.slotOf(first));
+  }
+
+  @Test
+  public void release_staleOrUnknownId_isRejected() {
+    AnchorSlotTable table = new AnchorSlotTable(4);
+    int id = table.allocate();
+    table.release(id);
+
+    assertFalse(table.release(id));
+    assertFalse(table.release(AnchorSlotTable.NO_ID));
+    assertFalse(table.release(3));
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void liveSlots_trackAllocations() {
+    AnchorSlotTable table = new AnchorSlotTable(8);
+    int[] ids = new int[5];
+    for (int i = 0; i < ids.length; ++i) {
+      ids[i] = table.allocate();
+    }
+
+    table.release(ids[1]);
+    table.release(ids[3]);
+
+    Set<Integer> live = new HashSet<>();
+    for (int i = 0; i < table.size(); ++i) {
+      live.add(table.idOf(table.getLiveSlot(i)));
+    }
+    assertEquals(new HashSet<>(Arrays.asList(ids[0], ids[2], ids[4])), live);
+  }
+
+  @Test
+  public void ids_stayNonNegativeAcrossGenerationWrap() {
+    AnchorSlotTable table = new AnchorSlotTable(1);
+    Set<Integer> recent = new HashSet<>();
+
+    for (int i = 0; i < 70_000; ++i) {
+      int id = table.allocate();
+      assertTrue(id >= 0);
+      assertEquals(0, table.slotOf(id));
+      if (i < 1000) {
+        assertTrue(recent.add(id));
+      }
+      table.release(id);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_rejectsOversizedCapacity() {
+    new AnchorSlotTable(AnchorSlotTable.MAX_CAPACITY + 1);
+  }
+}
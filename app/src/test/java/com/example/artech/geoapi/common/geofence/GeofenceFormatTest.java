@@ -0,0 +1,52 @@
+package com.example.artech.geoapi.common.geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.Test;
+
+public class GeofenceFormatTest {
+  @Test
+  public void read_parsesZonesInOrder() throws IOException {
+    List<Geofence> zones =
+        GeofenceFormat.read(
+            new StringReader(
+                "# comment\n"
+                    + "\n"
+                    + "first 1,2 1,3 2,3\n"
+                    + "  second\t-1.5,-2.5  -1.5,-2 -1,-2 -1,-2.5  \n"));
+
+    assertEquals(2, zones.size());
+    assertEquals("first", zones.get(0).getId());
+    assertEquals(3, zones.get(0).getVertexCount());
+    assertEquals(1, zones.get(0).getLatitude(1), 0);
+    assertEquals(3, zones.get(0).getLongitude(1), 0);
+    assertEquals("second", zones.get(1).getId());
+    assertEquals(4, zones.get(1).getVertexCount());
+    assertEquals(-2.5, zones.get(1).getMinLongitude(), 0);
+    assertEquals(-1, zones.get(1).getMaxLatitude(), 0);
+  }
+
+  @Test
+  public void read_rejectsMalformedLines() {
+    assertReadFails("z 1,2 1,3\n", "Line 1");
+    assertReadFails("z 1,2 1;3 2,3\n", "bad vertex 1;3");
+    assertReadFails("z 1,2 1,x 2,3\n", "bad vertex 1,x");
+    assertReadFails("z 1,2 1,3 91,3\n", "out of range");
+    assertReadFails("z 1,2 1,3 NaN,3\n", "out of range");
+    assertReadFails("z 1,2 1,3 2,3\n# ok\nz 1,2 1,3 2,3\n", "Line 3: duplicate zone id z");
+  }
+
+  private static void assertReadFails(String contents, String expectedMessage) {
+    try {
+      GeofenceFormat.read(new StringReader(contents));
+      fail("Expected an IOException for " + contents);
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+    }
+  }
+}
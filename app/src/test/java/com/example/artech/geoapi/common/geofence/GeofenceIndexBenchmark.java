@@ -0,0 +1,125 @@
+package com.example.artech.geoapi.common.geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Measures point queries against 10k synthetic zones, compared with testing every zone in turn as
+ * the hand-written checks in hellogeoview did.
+ *
+ * <p>Queries are drawn from the same area as the zones, so roughly half of them hit one.
+ */
+public class GeofenceIndexBenchmark {
+  private static final int ZONE_COUNT = 10_000;
+  private static final int QUERY_COUNT = 200_000;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+
+  // A 4 km square around the campus; zones are 10-60 m across.
+  private static final double CENTER_LATITUDE = 29.3440;
+  private static final double CENTER_LONGITUDE = 48.0835;
+  private static final double HALF_EXTENT_DEGREES = 0.018;
+  private static final double METERS_PER_DEGREE = 111_320;
+
+  @Test
+  public void gridQueriesVersusLinearScan() {
+    Random random = new Random(42);
+    List<Geofence> zones = syntheticZones(random, ZONE_COUNT);
+    long buildStart = System.nanoTime();
+    GeofenceIndex index = new GeofenceIndex(zones);
+    double buildMillis = (System.nanoTime() - buildStart) / 1e6;
+    double[] latitudes = new double[QUERY_COUNT];
+    double[] longitudes = new double[QUERY_COUNT];
+    for (int i = 0; i < QUERY_COUNT; ++i) {
+      latitudes[i] = randomLatitude(random);
+      longitudes[i] = randomLongitude(random);
+    }
+
+    long gridNanos = 0;
+    int hits = 0;
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; ++round) {
+      long start = System.nanoTime();
+      hits = 0;
+      for (int i = 0; i < QUERY_COUNT; ++i) {
+        if (index.findFirst(latitudes[i], longitudes[i]) != GeofenceIndex.NO_ZONE) {
+          ++hits;
+        }
+      }
+      if (round >= WARMUP_ROUNDS) {
+        gridNanos += System.nanoTime() - start;
+      }
+    }
+
+    // The linear scan is far slower, so a sample of the queries is enough.
+    int scanQueries = QUERY_COUNT / 100;
+    long scanNanos = 0;
+    int scanHits = 0;
+    for (int round = 0; round < 2; ++round) {
+      long start = System.nanoTime();
+      scanHits = 0;
+      for (int i = 0; i < scanQueries; ++i) {
+        for (int zone = 0; zone < ZONE_COUNT; ++zone) {
+          if (index.contains(zone, latitudes[i], longitudes[i])) {
+            ++scanHits;
+            break;
+          }
+        }
+      }
+      scanNanos = System.nanoTime() - start;
+    }
+
+    double gridNanosPerQuery = (double) gridNanos / MEASURED_ROUNDS / QUERY_COUNT;
+    double scanNanosPerQuery = (double) scanNanos / scanQueries;
+    System.out.printf(
+        "geofences: %d zones indexed in %.1f ms; %.0f ns/query with the grid, %.0f ns/query"
+            + " scanning every zone (%.0fx); %.0f%% of queries inside a zone%n",
+        ZONE_COUNT,
+        buildMillis,
+        gridNanosPerQuery,
+        scanNanosPerQuery,
+        scanNanosPerQuery / gridNanosPerQuery,
+        100.0 * hits / QUERY_COUNT);
+    int sampleHits = 0;
+    for (int i = 0; i < scanQueries; ++i) {
+      if (index.findFirst(latitudes[i], longitudes[i]) != GeofenceIndex.NO_ZONE) {
+        ++sampleHits;
+      }
+    }
+    assertEquals(scanHits, sampleHits);
+    assertTrue(gridNanosPerQuery < scanNanosPerQuery);
+  }
+
+  /** Returns {@code count} random star-shaped zones of 3 to 10 vertices around the campus. */
+  static List<Geofence> syntheticZones(Random random, int count) {
+    List<Geofence> zones = new ArrayList<>(count);
+    double longitudeScale = 1 / Math.cos(Math.toRadians(CENTER_LATITUDE));
+    for (int i = 0; i < count; ++i) {
+      double centerLatitude = randomLatitude(random);
+      double centerLongitude = randomLongitude(random);
+      int vertexCount = 3 + random.nextInt(8);
+      double[] latitudes = new double[vertexCount];
+      double[] longitudes = new double[vertexCount];
+      for (int v = 0; v < vertexCount; ++v) {
+        double angle = 2 * Math.PI * (v + random.nextDouble() * 0.8) / vertexCount;
+        double radius = (5 + random.nextDouble() * 25) / METERS_PER_DEGREE;
+        latitudes[v] = centerLatitude + radius * Math.sin(angle);
+        longitudes[v] = centerLongitude + radius * Math.cos(angle) * longitudeScale;
+      }
+      zones.add(new Geofence("zone" + i, latitudes, longitudes));
+    }
+    return zones;
+  }
+
+  static double randomLatitude(Random random) {
+    return CENTER_LATITUDE + (random.nextDouble() * 2 - 1) * HALF_EXTENT_DEGREES;
+  }
+
+  static double randomLongitude(Random random) {
+    return CENTER_LONGITUDE + (random.nextDouble() * 2 - 1) * HALF_EXTENT_DEGREES;
+  }
+}
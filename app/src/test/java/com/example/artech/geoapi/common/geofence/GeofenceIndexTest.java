@@ -0,0 +1,267 @@
+package com.example.artech.geoapi.common.geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class GeofenceIndexTest {
+  static final String CAMPUS_ZONES = "src/main/assets/geofences/campus.txt";
+
+  // A concave "L" shape: the unit square at (0, 0) to (2, 2) minus the top-right quarter.
+  private static final Geofence L_SHAPE =
+      new Geofence("L", new double[] {0, 0, 1, 1, 2, 2}, new double[] {0, 2, 2, 1, 1, 0});
+
+  @Test
+  public void rectangle_includesEdgesAndCorners() {
+    GeofenceIndex index =
+        new GeofenceIndex(Arrays.asList(Geofence.rectangle("r", 10, 20, 11, 22)));
+
+    assertEquals(0, index.findFirst(10.5, 21));
+    assertEquals(0, index.findFirst(10, 21));
+    assertEquals(0, index.findFirst(11, 21));
+    assertEquals(0, index.findFirst(10.5, 20));
+    assertEquals(0, index.findFirst(10.5, 22));
+    assertEquals(0, index.findFirst(10, 20));
+    assertEquals(0, index.findFirst(11, 22));
+  }
+
+  @Test
+  public void rectangle_excludesPointsJustOutside() {
+    GeofenceIndex index =
+        new GeofenceIndex(Arrays.asList(Geofence.rectangle("r", 10, 20, 11, 22)));
+
+    assertEquals(GeofenceIndex.NO_ZONE, index.findFirst(Math.nextDown(10.0), 21));
+    assertEquals(GeofenceIndex.NO_ZONE, index.findFirst(Math.nextUp(11.0), 21));
+    assertEquals(GeofenceIndex.NO_ZONE, index.findFirst(10.5, Math.nextDown(20.0)));
+    assertEquals(GeofenceIndex.NO_ZONE, index.findFirst(10.5, Math.nextUp(22.0)));
+    assertEquals(GeofenceIndex.NO_ZONE, index.findFirst(Double.NaN, 21));
+  }
+
+  @Test
+  public void concavePolygon_excludesNotch() {
+    GeofenceIndex index = new GeofenceIndex(Arrays.asList(L_SHAPE));
+
+    assertTrue(index.contains(0, 0.5, 1.5));
+    assertTrue(index.contains(0, 1.5, 0.5));
+    assertFalse(index.contains(0, 1.5, 1.5));
+    // The reflex vertex and the edges meeting there are part of the zone.
+    assertTrue(index.contains(0, 1, 1));
+    assertTrue(index.contains(0, 1, 1.5));
+    assertTrue(index.contains(0, 1.5, 1));
+    assertFalse(index.contains(0, Math.nextUp(1.0), 1.5));
+  }
+
+  @Test
+  public void diagonalEdge_classifiesPointsOnEitherSide() {
+    Geofence triangle = new Geofence("t", new double[] {0, 0, 4}, new double[] {0, 4, 0});
+    GeofenceIndex index = new GeofenceIndex(Arrays.asList(triangle));
+
+    assertTrue(index.contains(0, 1, 1));
+    assertTrue(index.contains(0, 2, 2));
+    assertFalse(index.contains(0, 2.001, 2));
+    assertFalse(index.contains(0, 3, 3));
+  }
+
+  @Test
+  public void windingOrder_doesNotMatter() {
+    Geofence reversed =
+        new Geofence("L", new double[] {2, 2, 1, 1, 0, 0}, new double[] {0, 1, 1, 2, 2, 0});
+    GeofenceIndex index = new GeofenceIndex(Arrays.asList(reversed));
+
+    assertTrue(index.contains(0, 0.5, 1.5));
+    assertFalse(index.contains(0, 1.5, 1.5));
+  }
+
+  @Test
+  public void distanceToBoundary_measuresInsideAndOutside() {
+    // 0.001 degrees of latitude is about 111 m.
+    GeofenceIndex index =
+        new GeofenceIndex(Arrays.asList(Geofence.rectangle("r", 0, 0, 0.002, 0.002)));
+
+    assertEquals(111.3, index.distanceToBoundaryMeters(0, 0.001, 0.001), 0.1);
+    assertEquals(11.1, index.distanceToBoundaryMeters(0, 0.0021, 0.001), 0.1);
+    assertEquals(0, index.distanceToBoundaryMeters(0, 0.002, 0.001), 1e-9);
+    // Beyond a corner, the distance is to the corner itself.
+    assertEquals(Math.hypot(111.3, 111.3), index.distanceToBoundaryMeters(0, -0.001, -0.001), 0.2);
+  }
+
+  @Test
+  public void findNearby_reportsZonesWithinRadiusOnce() {
+    // Three 11 m squares 28 m apart along the equator, and 17 m north of them a large zone
+    // spanning many grid cells.
+    GeofenceIndex index =
+        new GeofenceIndex(
+            Arrays.asList(
+                Geofence.rectangle("west", 0, 0, 0.0001, 0.0001),
+                Geofence.rectangle("middle", 0, 0.0003, 0.0001, 0.0004),
+                Geofence.rectangle("east", 0, 0.0006, 0.0001, 0.0007),
+                Geofence.rectangle("large", 0.0002, 0, 0.001, 0.001)));
+    int[] result = new int[8];
+
+    int count = index.findNearby(0.00005, 0.00035, 30, result);
+    int[] found = Arrays.copyOf(result, count);
+    Arrays.sort(found);
+    assertEquals("[0, 1, 2, 3]", Arrays.toString(found));
+
+    count = index.findNearby(0.00005, 0.00035, 20, result);
+    found = Arrays.copyOf(result, count);
+    Arrays.sort(found);
+    assertEquals("[1, 3]", Arrays.toString(found));
+
+    assertEquals(1, index.findNearby(0.00005, 0.00035, 12, result));
+    assertEquals(1, result[0]);
+
+    assertEquals(0, index.findNearby(-0.01, -0.01, 100, result));
+  }
+
+  @Test
+  public void overlappingZones_reportedInPriorityOrder() {
+    GeofenceIndex index =
+        new GeofenceIndex(
+            Arrays.asList(
+                Geofence.rectangle("inner", 1, 1, 2, 2),
+                Geofence.rectangle("outer", 0, 0, 3, 3),
+                Geofence.rectangle("elsewhere", 5, 5, 6, 6)));
+    int[] result = new int[4];
+
+    assertEquals(0, index.findFirst(1.5, 1.5));
+    assertEquals(2, index.findAll(1.5, 1.5, result));
+    assertEquals(0, result[0]);
+    assertEquals(1, result[1]);
+    assertEquals(1, index.findFirst(0.5, 0.5));
+  }
+
+  @Test
+  public void findAll_countsMatchesBeyondResultCapacity() {
+    List<Geofence> zones = new ArrayList<>();
+    for (int i = 0; i < 5; ++i) {
+      zones.add(Geofence.rectangle("z" + i, 0, 0, 1, 1));
+    }
+    GeofenceIndex index = new GeofenceIndex(zones);
+    int[] result = new int[2];
+
+    assertEquals(5, index.findAll(0.5, 0.5, result));
+    assertEquals(0, result[0]);
+    assertEquals(1, result[1]);
+  }
+
+  @Test
+  public void emptyIndex_findsNothing() {
+    GeofenceIndex index = new GeofenceIndex(new ArrayList<>());
+
+    assertEquals(GeofenceIndex.NO_ZONE, index.findFirst(0, 0));
+    assertEquals(0, index.findAll(0, 0, new int[1]));
+  }
+
+  @Test
+  public void campusZones_matchTheOriginalBoundaryChecks() throws IOException {
+    GeofenceIndex index;
+    try (InputStream inputStream = new FileInputStream(CAMPUS_ZONES)) {
+      index = new GeofenceIndex(GeofenceFormat.read(inputStream));
+    }
+    Random random = new Random(1);
+    for (int i = 0; i < 100_000; ++i) {
+      double latitude = 29.3434 + random.nextDouble() * 0.0013;
+      double longitude = 48.0829 + random.nextDouble() * 0.0012;
+      int zone = index.findFirst(latitude, longitude);
+      String actual = zone == GeofenceIndex.NO_ZONE ? null : index.getZone(zone).getId();
+      assertEquals(expectedCampusZone(latitude, longitude), actual);
+    }
+    // The corner shared by zones a and b goes to a, which is listed first.
+    assertEquals("a", index.getZone(index.findFirst(29.34395, 48.08350)).getId());
+    assertEquals("b", index.getZone(index.findFirst(29.34395, 48.08349)).getId());
+    assertEquals("c", index.getZone(index.findFirst(29.34460, 48.08385)).getId());
+  }
+
+  @Test
+  public void gridIndex_agreesWithBruteForce() {
+    List<Geofence> zones = GeofenceIndexBenchmark.syntheticZones(new Random(7), 2_000);
+    GeofenceIndex index = new GeofenceIndex(zones);
+    GeofenceIndex[] single = new GeofenceIndex[zones.size()];
+    for (int i = 0; i < zones.size(); ++i) {
+      single[i] = new GeofenceIndex(zones.subList(i, i + 1));
+    }
+    Random random = new Random(8);
+    for (int query = 0; query < 5_000; ++query) {
+      double latitude = GeofenceIndexBenchmark.randomLatitude(random);
+      double longitude = GeofenceIndexBenchmark.randomLongitude(random);
+      int expected = GeofenceIndex.NO_ZONE;
+      for (int i = 0; i < zones.size() && expected == GeofenceIndex.NO_ZONE; ++i) {
+        if (single[i].contains(0, latitude, longitude)) {
+          expected = i;
+        }
+      }
+      assertEquals(expected, index.findFirst(latitude, longitude));
+    }
+  }
+
+  @Test
+  public void queries_doNotAllocate() {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadBean instanceof ThreadMXBean);
+    ThreadMXBean allocationBean = (ThreadMXBean) threadBean;
+    assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+    allocationBean.setThreadAllocatedMemoryEnabled(true);
+    long threadId = Thread.currentThread().getId();
+    GeofenceIndex index =
+        new GeofenceIndex(GeofenceIndexBenchmark.syntheticZones(new Random(3), 1_000));
+    int[] result = new int[8];
+    int queries = 20_000;
+    double[] latitudes = new double[queries];
+    double[] longitudes = new double[queries];
+    Random random = new Random(4);
+    for (int i = 0; i < queries; ++i) {
+      latitudes[i] = GeofenceIndexBenchmark.randomLatitude(random);
+      longitudes[i] = GeofenceIndexBenchmark.randomLongitude(random);
+    }
+    // Warm up so the JIT is out of the way.
+    int found = runQueries(index, latitudes, longitudes, result);
+
+    long before = allocationBean.getThreadAllocatedBytes(threadId);
+    found += runQueries(index, latitudes, longitudes, result);
+    long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+    // Any per-query allocation would cost at least 16 bytes per query; leave room for the JIT.
+    assertTrue("Queries allocated " + allocated + " bytes", allocated < queries);
+    assertTrue(found > 0);
+  }
+
+  private static int runQueries(
+      GeofenceIndex index, double[] latitudes, double[] longitudes, int[] result) {
+    int found = 0;
+    for (int i = 0; i < latitudes.length; ++i) {
+      if (index.findFirst(latitudes[i], longitudes[i]) != GeofenceIndex.NO_ZONE) {
+        ++found;
+      }
+      found += index.findAll(latitudes[i], longitudes[i], result);
+    }
+    return found;
+  }
+
+  /** The latitude/longitude checks hellogeoview used before zones moved to a data file. */
+  private static String expectedCampusZone(double latitude, double longitude) {
+    if ((latitude >= 29.34395 && latitude <= 29.34420)
+        && (longitude >= 48.08350 && longitude <= 48.08400)) {
+      return "a";
+    } else if ((latitude >= 29.34352 && latitude <= 29.34395)
+        && (longitude >= 48.08307 && longitude <= 48.08350)) {
+      return "b";
+    } else if ((latitude >= 29.34420 && latitude <= 29.34460)
+        && (longitude >= 48.08350 && longitude <= 48.08385)) {
+      return "c";
+    }
+    return null;
+  }
+}
@@ -0,0 +1,242 @@
+package com.example.artech.geoapi.common.geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class GeospatialPoseFilterTest {
+  private static final double METERS_PER_DEGREE = 111_320;
+  private static final double ALTITUDE = 12;
+  private static final double HEADING = 90;
+
+  private final GeospatialPoseFilter filter = new GeospatialPoseFilter();
+
+  @Test
+  public void standingStill_smoothsPositionNoise() throws IOException {
+    PoseTrace trace = PoseTrace.read(PoseTrace.BOUNDARY_JITTER);
+    double[] filteredLatitudes = new double[trace.size()];
+    double[] filteredLongitudes = new double[trace.size()];
+    for (int i = 0; i < trace.size(); ++i) {
+      feed(trace, i);
+      filteredLatitudes[i] = filter.getLatitude();
+      filteredLongitudes[i] = filter.getLongitude();
+    }
+
+    // Skip the walk in at the start of the trace.
+    int from = trace.size() / 2;
+    double rawSpread = spreadMeters(trace.latitudes, trace.longitudes, from);
+    double filteredSpread = spreadMeters(filteredLatitudes, filteredLongitudes, from);
+    assertTrue(filteredSpread < rawSpread / 3);
+  }
+
+  @Test
+  public void walking_learnsSpeedAndKeepsUp() throws IOException {
+    PoseTrace trace = PoseTrace.read(PoseTrace.WALK_B_A_C);
+    double maxLagMeters = 0;
+    double speedSum = 0;
+    int speedCount = 0;
+    for (int i = 0; i < trace.size(); ++i) {
+      feed(trace, i);
+      // The trace ends with the walker standing still outside c.
+      if (i >= trace.size() / 4 && i < trace.size() * 3 / 4) {
+        double lag =
+            distanceMeters(trace, i - 25, i + 25, filter.getLatitude(), filter.getLongitude());
+        maxLagMeters = Math.max(maxLagMeters, lag);
+        speedSum += filter.getSpeed();
+        ++speedCount;
+      }
+    }
+
+    assertEquals(1.2, speedSum / speedCount, 0.2);
+    // Lag behind a centered average of the raw fixes.
+    assertTrue(maxLagMeters < 2);
+  }
+
+  @Test
+  public void inaccurateFixes_barelyMoveTheEstimate() throws IOException {
+    PoseTrace trace = PoseTrace.read(PoseTrace.ACCURACY_DROPOUT);
+    double worstAccurateError = 0;
+    double worstDropoutError = 0;
+    feed(trace, 0);
+    double latitude = trace.latitudes[0];
+    double longitude = trace.longitudes[0];
+    for (int i = 1; i < trace.size(); ++i) {
+      feed(trace, i);
+      double error =
+          distanceMeters(latitude, longitude, filter.getLatitude(), filter.getLongitude());
+      if (trace.horizontalAccuracies[i] > 20) {
+        worstDropoutError = Math.max(worstDropoutError, error);
+      } else {
+        worstAccurateError = Math.max(worstAccurateError, error);
+      }
+    }
+    // Accurate fixes alone scatter the estimate by up to 2 m; 35-55 m fixes add little to that.
+    assertTrue(worstAccurateError < 3);
+    assertTrue(worstDropoutError < 4);
+  }
+
+  @Test
+  public void predict_deadReckonsWithLastVelocityThenStops() {
+    // Walk east at 1 m/s for 10 s.
+    for (int t = 0; t <= 10_000; t += 100) {
+      filter.update(0, metersEast(t / 1000.0), ALTITUDE, HEADING, 1, 1, 5, t);
+    }
+    double confidence = filter.getConfidence();
+
+    filter.predict(11_000);
+    assertEquals(11, eastMeters(filter.getLongitude()), 0.3);
+    assertTrue(filter.getConfidence() < confidence);
+
+    filter.predict(20_000);
+    // Stopped 2 s after the last fix.
+    assertEquals(12, eastMeters(filter.getLongitude()), 0.5);
+  }
+
+  @Test
+  public void update_withoutAccuracy_predicts() {
+    filter.update(0, 0, ALTITUDE, HEADING, 1, 1, 5, 0);
+    double accuracy = filter.getHorizontalAccuracy();
+
+    filter.update(1, 1, ALTITUDE, HEADING, Double.NaN, 1, 5, 1000);
+
+    assertEquals(0, filter.getLatitude(), 0);
+    assertTrue(filter.getHorizontalAccuracy() > accuracy);
+  }
+
+  @Test
+  public void heading_averagesAcrossNorth() {
+    for (int t = 0; t < 2000; t += 100) {
+      double heading = (t / 100) % 2 == 0 ? 358 : 2;
+      filter.update(0, 0, ALTITUDE, heading, 1, 1, 5, t);
+    }
+
+    double heading = filter.getHeading();
+    assertTrue(String.valueOf(heading), heading > 355 || heading < 5);
+  }
+
+  @Test
+  public void altitude_followsAccurateFixes() {
+    for (int t = 0; t < 5000; t += 100) {
+      filter.update(0, 0, 20 + ((t / 100) % 2 == 0 ? -1 : 1), HEADING, 1, 1, 5, t);
+    }
+
+    assertEquals(20, filter.getAltitude(), 0.5);
+  }
+
+  @Test
+  public void confidence_fallsWithAccuracy() {
+    assertEquals(0, filter.getConfidence(), 0);
+
+    filter.update(0, 0, ALTITUDE, HEADING, 2, 1, 5, 0);
+    assertEquals(0.9, filter.getConfidence(), 1e-9);
+
+    filter.reset();
+    filter.update(0, 0, ALTITUDE, HEADING, 30, 1, 5, 0);
+    assertEquals(0, filter.getConfidence(), 0);
+  }
+
+  @Test
+  public void longWalk_recentersWithoutDrift() {
+    // 3 km north at 10 m/s.
+    for (int t = 0; t <= 300_000; t += 100) {
+      filter.update(t / 100.0 / METERS_PER_DEGREE, 0, ALTITUDE, HEADING, 1, 1, 5, t);
+    }
+
+    assertEquals(3000, filter.getLatitude() * METERS_PER_DEGREE, 0.5);
+    assertEquals(0, filter.getLongitude(), 1e-9);
+  }
+
+  @Test
+  public void reset_forgetsEstimate() {
+    filter.update(0, 0, ALTITUDE, HEADING, 1, 1, 5, 0);
+
+    filter.reset();
+
+    assertFalse(filter.hasEstimate());
+  }
+
+  @Test
+  public void update_doesNotAllocate() throws IOException {
+    PoseTrace trace = PoseTrace.read(PoseTrace.WALK_B_A_C);
+    ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    // Warm up so JIT compilation is not measured.
+    for (int i = 0; i < trace.size(); ++i) {
+      feed(trace, i);
+    }
+    filter.reset();
+
+    long before = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < trace.size(); ++i) {
+      feed(trace, i);
+      filter.predict(trace.timeMillis[i] + 50);
+    }
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+    // A few bytes of slack for allocations made by the JIT itself.
+    assertTrue("allocated " + allocated + " bytes", allocated < trace.size());
+  }
+
+  private void feed(PoseTrace trace, int i) {
+    filter.update(
+        trace.latitudes[i],
+        trace.longitudes[i],
+        ALTITUDE,
+        HEADING,
+        trace.horizontalAccuracies[i],
+        1,
+        5,
+        trace.timeMillis[i]);
+  }
+
+  /** Returns the distance to the mean of the raw fixes in [from, to). */
+  private static double distanceMeters(
+      PoseTrace trace, int from, int to, double latitude, double longitude) {
+    double meanLatitude = 0;
+    double meanLongitude = 0;
+    for (int i = from; i < to; ++i) {
+      meanLatitude += trace.latitudes[i] / (to - from);
+      meanLongitude += trace.longitudes[i] / (to - from);
+    }
+    return distanceMeters(meanLatitude, meanLongitude, latitude, longitude);
+  }
+
+  /** Returns the root mean square distance of the points from their mean, from index from on. */
+  private static double spreadMeters(double[] latitudes, double[] longitudes, int from) {
+    int count = latitudes.length - from;
+    double meanLatitude = 0;
+    double meanLongitude = 0;
+    for (int i = from; i < latitudes.length; ++i) {
+      meanLatitude += latitudes[i] / count;
+      meanLongitude += longitudes[i] / count;
+    }
+    double sumSquares = 0;
+    for (int i = from; i < latitudes.length; ++i) {
+      double distance =
+          distanceMeters(meanLatitude, meanLongitude, latitudes[i], longitudes[i]);
+      sumSquares += distance * distance;
+    }
+    return Math.sqrt(sumSquares / count);
+  }
+
+  private static double distanceMeters(
+      double latitude1, double longitude1, double latitude2, double longitude2) {
+    double dx =
+        (longitude2 - longitude1) * METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude1));
+    double dy = (latitude2 - latitude1) * METERS_PER_DEGREE;
+    return Math.hypot(dx, dy);
+  }
+
+  private static double metersEast(double meters) {
+    return meters / METERS_PER_DEGREE;
+  }
+
+  private static double eastMeters(double longitude) {
+    return longitude * METERS_PER_DEGREE;
+  }
+}
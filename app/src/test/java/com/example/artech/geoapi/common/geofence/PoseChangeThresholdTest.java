@@ -0,0 +1,47 @@
+package com.example.artech.geoapi.common.geofence;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PoseChangeThresholdTest {
+  // About 0.1 m of latitude.
+  private static final double TENTH_METER = 0.1 / 111_320;
+
+  private final PoseChangeThreshold threshold =
+      new PoseChangeThreshold(/*distanceMeters=*/ 0.5, /*headingDegrees=*/ 2);
+
+  @Test
+  public void accept_firstPose() {
+    assertTrue(threshold.accept(29.3, 48.1, 10));
+  }
+
+  @Test
+  public void accept_smallMoves_untilTheyAddUp() {
+    threshold.accept(29.3, 48.1, 10);
+
+    for (int i = 1; i < 5; ++i) {
+      assertFalse(threshold.accept(29.3 + i * TENTH_METER, 48.1, 10));
+    }
+    assertTrue(threshold.accept(29.3 + 6 * TENTH_METER, 48.1, 10));
+    assertFalse(threshold.accept(29.3 + 7 * TENTH_METER, 48.1, 10));
+  }
+
+  @Test
+  public void accept_turnAcrossNorth() {
+    threshold.accept(29.3, 48.1, 359.5);
+
+    assertFalse(threshold.accept(29.3, 48.1, 1));
+    assertTrue(threshold.accept(29.3, 48.1, 2));
+  }
+
+  @Test
+  public void reset_acceptsNextPose() {
+    threshold.accept(29.3, 48.1, 10);
+
+    threshold.reset();
+
+    assertTrue(threshold.accept(29.3, 48.1, 10));
+  }
+}
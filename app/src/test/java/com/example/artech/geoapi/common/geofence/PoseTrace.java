@@ -0,0 +1,69 @@
+package com.example.artech.geoapi.common.geofence;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/** A recorded sequence of position fixes, read from a CSV file under src/test/resources. */
+final class PoseTrace {
+  static final String BOUNDARY_JITTER = "src/test/resources/geofence/boundary_jitter.csv";
+  static final String WALK_B_A_C = "src/test/resources/geofence/walk_b_a_c.csv";
+  static final String ACCURACY_DROPOUT = "src/test/resources/geofence/accuracy_dropout.csv";
+
+  final long[] timeMillis;
+  final double[] latitudes;
+  final double[] longitudes;
+  final double[] horizontalAccuracies;
+
+  private PoseTrace(List<double[]> rows) {
+    int size = rows.size();
+    timeMillis = new long[size];
+    latitudes = new double[size];
+    longitudes = new double[size];
+    horizontalAccuracies = new double[size];
+    for (int i = 0; i < size; ++i) {
+      double[] row = rows.get(i);
+      timeMillis[i] = (long) row[0];
+      latitudes[i] = row[1];
+      longitudes[i] = row[2];
+      horizontalAccuracies[i] = row[3];
+    }
+  }
+
+  /** Reads {@code time_ms,latitude,longitude,horizontal_accuracy_m} lines; # starts a comment. */
+  static PoseTrace read(String path) throws IOException {
+    List<double[]> rows = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(
+            new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        String[] fields = line.split(",");
+        double[] row = new double[4];
+        for (int i = 0; i < row.length; ++i) {
+          row[i] = Double.parseDouble(fields[i]);
+        }
+        rows.add(row);
+      }
+    }
+    return new PoseTrace(rows);
+  }
+
+  int size() {
+    return timeMillis.length;
+  }
+
+  /** Feeds every fix to {@code tracker}. */
+  void replay(ZoneTracker tracker) {
+    for (int i = 0; i < size(); ++i) {
+      tracker.update(latitudes[i], longitudes[i], horizontalAccuracies[i], timeMillis[i]);
+    }
+  }
+}
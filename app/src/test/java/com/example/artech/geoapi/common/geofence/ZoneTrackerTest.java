@@ -0,0 +1,158 @@
+package com.example.artech.geoapi.common.geofence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ZoneTrackerTest {
+  private GeofenceIndex campus;
+  private ZoneTracker tracker;
+  private final List<String> events = new ArrayList<>();
+
+  @Before
+  public void setUp() throws IOException {
+    try (InputStream inputStream = new FileInputStream(GeofenceIndexTest.CAMPUS_ZONES)) {
+      campus = new GeofenceIndex(GeofenceFormat.read(inputStream));
+    }
+    tracker = newTracker(campus);
+  }
+
+  @Test
+  public void boundaryJitter_producesNoFlicker() throws IOException {
+    PoseTrace trace = PoseTrace.read(PoseTrace.BOUNDARY_JITTER);
+
+    trace.replay(tracker);
+
+    assertEquals(Arrays.asList("ENTER a", "DWELL a"), events);
+    // Testing each raw fix, as hellogeoview used to, would have switched the image many times.
+    assertTrue(countRawChanges(trace) > 20);
+  }
+
+  @Test
+  public void walkAcrossZones_reportsEachTransitionOnce() throws IOException {
+    PoseTrace.read(PoseTrace.WALK_B_A_C).replay(tracker);
+
+    assertEquals(
+        Arrays.asList(
+            "ENTER b", "DWELL b", "EXIT b", "ENTER a", "DWELL a", "EXIT a", "ENTER c", "DWELL c",
+            "EXIT c"),
+        events);
+    assertEquals(GeofenceIndex.NO_ZONE, tracker.getCurrentZone());
+  }
+
+  @Test
+  public void inaccurateFixes_areIgnored() throws IOException {
+    PoseTrace.read(PoseTrace.ACCURACY_DROPOUT).replay(tracker);
+
+    assertEquals(Arrays.asList("ENTER a", "DWELL a"), events);
+    assertEquals(campus.indexOf("a"), tracker.getCurrentZone());
+  }
+
+  @Test
+  public void entering_waitsForConfirmation() {
+    GeofenceIndex index = new GeofenceIndex(Arrays.asList(Geofence.rectangle("z", 0, 0, 1, 1)));
+    ZoneTracker tracker = newTracker(index);
+
+    tracker.update(0.5, 0.5, 1, 0);
+    tracker.update(0.5, 0.5, 1, 999);
+    assertEquals(GeofenceIndex.NO_ZONE, tracker.getCurrentZone());
+
+    tracker.update(0.5, 0.5, 1, 1000);
+    assertEquals(0, tracker.getCurrentZone());
+    assertEquals(Arrays.asList("ENTER z"), events);
+  }
+
+  @Test
+  public void contradictingFix_restartsConfirmation() {
+    GeofenceIndex index = new GeofenceIndex(Arrays.asList(Geofence.rectangle("z", 0, 0, 1, 1)));
+    ZoneTracker tracker = newTracker(index);
+
+    tracker.update(0.5, 0.5, 1, 0);
+    tracker.update(5, 5, 1, 500);
+    tracker.update(0.5, 0.5, 1, 600);
+    tracker.update(0.5, 0.5, 1, 1500);
+    assertEquals(GeofenceIndex.NO_ZONE, tracker.getCurrentZone());
+
+    tracker.update(0.5, 0.5, 1, 1600);
+    assertEquals(0, tracker.getCurrentZone());
+  }
+
+  @Test
+  public void marginGrowsWithAccuracy() {
+    // About 11 m across; the point is about 2.2 m inside the south edge.
+    GeofenceIndex index =
+        new GeofenceIndex(Arrays.asList(Geofence.rectangle("z", 0, 0, 0.0001, 0.0001)));
+    ZoneTracker tracker = newTracker(index);
+
+    tracker.update(0.00002, 0.00005, 5, 0);
+    tracker.update(0.00002, 0.00005, 5, 2000);
+    assertEquals(GeofenceIndex.NO_ZONE, tracker.getCurrentZone());
+
+    tracker.update(0.00002, 0.00005, 2, 3000);
+    tracker.update(0.00002, 0.00005, 2, 5000);
+    assertEquals(0, tracker.getCurrentZone());
+  }
+
+  @Test
+  public void movingBetweenOverlappingZones_exitsThenEnters() {
+    GeofenceIndex index =
+        new GeofenceIndex(
+            Arrays.asList(
+                Geofence.rectangle("inner", 0.001, 0.001, 0.002, 0.002),
+                Geofence.rectangle("outer", 0, 0, 0.003, 0.003)));
+    ZoneTracker tracker = newTracker(index);
+
+    tracker.update(0.0005, 0.0005, 1, 0);
+    tracker.update(0.0005, 0.0005, 1, 1000);
+    tracker.update(0.0015, 0.0015, 1, 2000);
+    tracker.update(0.0015, 0.0015, 1, 3000);
+
+    assertEquals(Arrays.asList("ENTER outer", "EXIT outer", "ENTER inner"), events);
+  }
+
+  @Test
+  public void removedListener_isNotCalled() {
+    GeofenceIndex index = new GeofenceIndex(Arrays.asList(Geofence.rectangle("z", 0, 0, 1, 1)));
+    ZoneTracker tracker = new ZoneTracker(index);
+    List<String> received = new ArrayList<>();
+    ZoneTracker.Listener listener = (event, zone, timeMillis) -> received.add(event.name());
+    tracker.addListener(listener);
+    tracker.removeListener(listener);
+
+    tracker.update(0.5, 0.5, 1, 0);
+    tracker.update(0.5, 0.5, 1, 5000);
+
+    assertEquals(0, tracker.getCurrentZone());
+    assertTrue(received.isEmpty());
+  }
+
+  private ZoneTracker newTracker(GeofenceIndex index) {
+    ZoneTracker tracker = new ZoneTracker(index);
+    tracker.setDwellMillis(5000);
+    tracker.addListener(
+        (event, zone, timeMillis) -> events.add(event + " " + index.getZone(zone).getId()));
+    return tracker;
+  }
+
+  /** Counts how often the zone found for the raw fixes changes. */
+  private int countRawChanges(PoseTrace trace) {
+    int changes = 0;
+    int previous = GeofenceIndex.NO_ZONE;
+    for (int i = 0; i < trace.size(); ++i) {
+      int zone = campus.findFirst(trace.latitudes[i], trace.longitudes[i]);
+      if (zone != previous) {
+        ++changes;
+        previous = zone;
+      }
+    }
+    return changes;
+  }
+}
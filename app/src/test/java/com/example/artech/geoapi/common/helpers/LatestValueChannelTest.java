@@ -0,0 +1,177 @@
+package com.example.artech.geoapi.common.helpers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class LatestValueChannelTest {
+  private static final long MILLIS = 1_000_000L;
+
+  @Test
+  public void poll_withoutPublish_returnsNull() {
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new);
+
+    assertNull(channel.poll(0));
+  }
+
+  @Test
+  public void poll_returnsPublishedValueOnce() {
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new);
+
+    channel.beginWrite().set(1);
+    channel.publish();
+
+    assertEquals(1, channel.poll(0).sequence);
+    assertNull(channel.poll(0));
+    assertEquals(1, channel.getReadCount());
+  }
+
+  @Test
+  public void publishTwiceBeforePoll_coalescesToLatest() {
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new);
+
+    channel.beginWrite().set(1);
+    channel.publish();
+    channel.beginWrite().set(2);
+    channel.publish();
+
+    assertEquals(2, channel.poll(0).sequence);
+    assertEquals(2, channel.getPublishedCount());
+    assertEquals(1, channel.getCoalescedCount());
+  }
+
+  @Test
+  public void beginWrite_neverReturnsValueHeldByReader() {
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new);
+    channel.beginWrite().set(1);
+    channel.publish();
+    Value read = channel.poll(0);
+
+    for (int i = 2; i < 10; ++i) {
+      Value written = channel.beginWrite();
+      assertTrue(written != read);
+      written.set(i);
+      channel.publish();
+    }
+
+    assertEquals(1, read.sequence);
+  }
+
+  @Test
+  public void poll_honorsMinReadInterval() {
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new, 100 * MILLIS);
+
+    channel.beginWrite().set(1);
+    channel.publish();
+    assertNotNull(channel.poll(0));
+
+    channel.beginWrite().set(2);
+    channel.publish();
+    assertNull(channel.poll(16 * MILLIS));
+    channel.beginWrite().set(3);
+    channel.publish();
+    assertNull(channel.poll(33 * MILLIS));
+
+    assertEquals(3, channel.poll(100 * MILLIS).sequence);
+    assertEquals(2, channel.getRateLimitedCount());
+    assertEquals(1, channel.getCoalescedCount());
+  }
+
+  @Test
+  public void poll_rateLimitOnlyCountsWhenValueIsWaiting() {
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new, 100 * MILLIS);
+    channel.beginWrite().set(1);
+    channel.publish();
+    channel.poll(0);
+
+    assertNull(channel.poll(16 * MILLIS));
+
+    assertEquals(0, channel.getRateLimitedCount());
+  }
+
+  @Test
+  public void concurrentWriterAndReader_seeIncreasingUntornValues() throws Exception {
+    int writes = 200_000;
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new);
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicReference<String> failure = new AtomicReference<>();
+
+    Thread reader =
+        new Thread(
+            () -> {
+              long last = 0;
+              boolean finished = false;
+              while (!finished) {
+                // Read done before polling so the final value is not missed.
+                finished = done.get();
+                Value value = channel.poll(System.nanoTime());
+                if (value == null) {
+                  continue;
+                }
+                if (!value.isConsistent()) {
+                  failure.compareAndSet(null, "torn value " + value.sequence);
+                }
+                if (value.sequence <= last) {
+                  failure.compareAndSet(null, value.sequence + " after " + last);
+                }
+                last = value.sequence;
+              }
+              if (last != writes) {
+                failure.compareAndSet(null, "last value read was " + last);
+              }
+            });
+    reader.start();
+    for (int i = 1; i <= writes; ++i) {
+      channel.beginWrite().set(i);
+      channel.publish();
+    }
+    done.set(true);
+    reader.join();
+
+    assertNull(failure.get(), failure.get());
+    assertEquals(writes, channel.getPublishedCount());
+    assertEquals(writes, channel.getReadCount() + channel.getCoalescedCount());
+  }
+
+  @Test
+  public void poll_reusesPreallocatedValues() {
+    LatestValueChannel<Value> channel = new LatestValueChannel<>(Value::new);
+    channel.beginWrite().set(1);
+    channel.publish();
+    Value first = channel.poll(0);
+    for (int i = 2; i <= 3; ++i) {
+      channel.beginWrite().set(i);
+      channel.publish();
+      channel.poll(0);
+    }
+
+    channel.beginWrite().set(4);
+    channel.publish();
+
+    // Three slots rotate, so the first value comes back every three reads.
+    assertSame(first, channel.poll(0));
+  }
+
+  /** A value made of several fields, to catch a reader seeing a half-written value. */
+  private static final class Value {
+    long sequence;
+    long negated;
+    long squared;
+
+    void set(long sequence) {
+      this.sequence = sequence;
+      this.negated = -sequence;
+      this.squared = sequence * sequence;
+    }
+
+    boolean isConsistent() {
+      return negated == -sequence && squared == sequence * sequence;
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.example.artech.geoapi.common.poi;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class GeohashTest {
+  @Test
+  public void encode_matchesBase32Geohashes() {
+    assertEquals("ezs42", Geohash.toString(Geohash.encode(42.605, -5.603, 25), 25));
+    assertEquals("u4pruydqqvj", Geohash.toString(Geohash.encode(57.64911, 10.40744, 55), 55));
+  }
+
+  @Test
+  public void encode_coarserHashIsPrefix() {
+    long fine = Geohash.encode(29.3440, 48.0835, 52);
+    for (int bits = 1; bits < 52; ++bits) {
+      assertEquals(fine >>> (52 - bits), Geohash.encode(29.3440, 48.0835, bits));
+    }
+  }
+
+  @Test
+  public void cell_matchesEncodeOfRowAndColumn() {
+    int bits = 35;
+    int row = Geohash.row(-33.8568, 17);
+    int column = Geohash.column(151.2153, 18);
+
+    assertEquals(Geohash.encode(-33.8568, 151.2153, bits), Geohash.cell(row, column, bits));
+  }
+
+  @Test
+  public void encode_clampsPolesAndAntimeridian() {
+    assertEquals(Geohash.encode(89.9999999, 179.9999999, 30), Geohash.encode(90, 180, 30));
+    assertEquals(0, Geohash.encode(-90, -180, 30));
+    assertEquals((1L << 30) - 1, Geohash.encode(90, 180, 30));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void encode_rejectsTooManyBits() {
+    Geohash.encode(0, 0, Geohash.MAX_BITS + 1);
+  }
+}
@@ -0,0 +1,110 @@
+package com.example.artech.geoapi.common.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Measures radius queries against 100k synthetic points of interest, compared with testing every
+ * point in turn.
+ *
+ * <p>Points are spread over a 20 km square around the campus, and queries use the radius
+ * hellogeorender loads anchors within.
+ */
+public class PoiStoreBenchmark {
+  private static final int POINT_COUNT = 100_000;
+  private static final int QUERY_COUNT = 20_000;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int MEASURED_ROUNDS = 10;
+  private static final double RADIUS_METERS = 300;
+
+  private static final double CENTER_LATITUDE = 29.3440;
+  private static final double CENTER_LONGITUDE = 48.0835;
+  private static final double HALF_EXTENT_DEGREES = 0.09;
+
+  @Test
+  public void geohashQueriesVersusLinearScan() throws IOException {
+    Random random = new Random(42);
+    List<PointOfInterest> points = new ArrayList<>(POINT_COUNT);
+    for (int i = 0; i < POINT_COUNT; ++i) {
+      points.add(
+          PoiStoreTest.point(
+              random, "poi" + i, CENTER_LATITUDE, CENTER_LONGITUDE, HALF_EXTENT_DEGREES));
+    }
+    long writeStart = System.nanoTime();
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    PoiStore.write(points, outputStream);
+    double writeMillis = (System.nanoTime() - writeStart) / 1e6;
+    byte[] bytes = outputStream.toByteArray();
+    long readStart = System.nanoTime();
+    PoiStore store = PoiStore.read(ByteBuffer.wrap(bytes));
+    double readMillis = (System.nanoTime() - readStart) / 1e6;
+
+    double[] latitudes = new double[QUERY_COUNT];
+    double[] longitudes = new double[QUERY_COUNT];
+    for (int i = 0; i < QUERY_COUNT; ++i) {
+      PointOfInterest query =
+          PoiStoreTest.point(random, "", CENTER_LATITUDE, CENTER_LONGITUDE, HALF_EXTENT_DEGREES);
+      latitudes[i] = query.getLatitude();
+      longitudes[i] = query.getLongitude();
+    }
+    int[] result = new int[store.size()];
+
+    long indexNanos = 0;
+    long found = 0;
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; ++round) {
+      long start = System.nanoTime();
+      found = 0;
+      for (int i = 0; i < QUERY_COUNT; ++i) {
+        found += store.findWithin(latitudes[i], longitudes[i], RADIUS_METERS, result);
+      }
+      if (round >= WARMUP_ROUNDS) {
+        indexNanos += System.nanoTime() - start;
+      }
+    }
+
+    // The linear scan is far slower, so a sample of the queries is enough; it also checks results.
+    int scanQueries = QUERY_COUNT / 100;
+    long scanNanos = 0;
+    for (int round = 0; round < 2; ++round) {
+      long start = System.nanoTime();
+      for (int i = 0; i < scanQueries; ++i) {
+        int[] expected =
+            PoiStoreTest.bruteForce(store, latitudes[i], longitudes[i], RADIUS_METERS);
+        if (round == 0) {
+          int count = store.findWithin(latitudes[i], longitudes[i], RADIUS_METERS, result);
+          int[] actual = Arrays.copyOf(result, count);
+          Arrays.sort(actual);
+          assertArrayEquals(expected, actual);
+        }
+      }
+      scanNanos = System.nanoTime() - start;
+    }
+
+    double indexMicrosPerQuery = indexNanos / 1e3 / MEASURED_ROUNDS / QUERY_COUNT;
+    double scanMicrosPerQuery = scanNanos / 1e3 / scanQueries;
+    System.out.printf(
+        "points of interest: %d points, %d KB, written in %.1f ms, read in %.1f ms;"
+            + " %.1f us/query within %.0f m (%.1f points found) with the geohash index,"
+            + " %.0f us/query scanning every point (%.0fx)%n",
+        POINT_COUNT,
+        bytes.length / 1024,
+        writeMillis,
+        readMillis,
+        indexMicrosPerQuery,
+        RADIUS_METERS,
+        (double) found / QUERY_COUNT,
+        scanMicrosPerQuery,
+        scanMicrosPerQuery / indexMicrosPerQuery);
+    // "Milliseconds" with a wide margin for slow machines.
+    assertTrue(indexMicrosPerQuery < 1000);
+  }
+}
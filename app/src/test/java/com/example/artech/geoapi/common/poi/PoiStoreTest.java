@@ -0,0 +1,252 @@
+package com.example.artech.geoapi.common.poi;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+public class PoiStoreTest {
+  /* package-private */ static final String CAMPUS_POI = "src/main/assets/pois/campus.poi";
+  private static final String CAMPUS_LISTING = "pois/campus.txt";
+  private static final double METERS_PER_DEGREE = 111_320;
+
+  @Test
+  public void write_read_roundTripsPoints() throws IOException {
+    List<PointOfInterest> points =
+        Arrays.asList(
+            new PointOfInterest(
+                "gate", 29.3444, 48.08367, 12.5, 90f, "c", "models/gate.mesh", "models/gate.png"),
+            new PointOfInterest("plain", -33.8568, 151.2153, Double.NaN),
+            new PointOfInterest("café", 29.34373, 48.08328, Double.NaN, 180f, "c", null, null));
+
+    PoiStore store = PoiStore.read(ByteBuffer.wrap(toBytes(points)));
+
+    assertEquals(3, store.size());
+    PointOfInterest gate = find(store, "gate");
+    assertEquals(29.3444, gate.getLatitude(), 1e-7);
+    assertEquals(48.08367, gate.getLongitude(), 1e-7);
+    assertEquals(12.5, gate.getAltitude(), 0);
+    assertEquals(90f, gate.getHeading(), 0);
+    assertEquals("c", gate.getZoneId());
+    assertEquals("models/gate.mesh", gate.getMeshAsset());
+    assertEquals("models/gate.png", gate.getTextureAsset());
+    PointOfInterest plain = find(store, "plain");
+    assertTrue(!plain.hasAltitude());
+    assertNull(plain.getZoneId());
+    assertNull(plain.getMeshAsset());
+    assertEquals("c", find(store, "café").getZoneId());
+  }
+
+  @Test
+  public void write_sharesRepeatedStrings() throws IOException {
+    List<PointOfInterest> points = new ArrayList<>();
+    for (int i = 0; i < 100; ++i) {
+      points.add(new PointOfInterest("p" + i, i * 0.001, 0, 0, 0f, "zone", "mesh", "texture"));
+    }
+
+    // Each point costs its record, its id's offset and its id; the shared strings are stored once.
+    int idBytes = 10 * 2 + 90 * 3;
+    int sharedBytes = "zone".length() + "mesh".length() + "texture".length();
+    assertEquals(
+        PoiStore.HEADER_SIZE + 100 * PoiStore.RECORD_SIZE + 104 * 4 + idBytes + sharedBytes,
+        toBytes(points).length);
+  }
+
+  @Test
+  public void findWithin_matchesBruteForce() throws IOException {
+    Random random = new Random(7);
+    List<PointOfInterest> points = new ArrayList<>();
+    // A dense campus, a few points around the antimeridian and some near the north pole.
+    for (int i = 0; i < 3000; ++i) {
+      points.add(point(random, "campus" + i, 29.3440, 48.0835, 0.01));
+    }
+    for (int i = 0; i < 300; ++i) {
+      points.add(point(random, "dateline" + i, -16.5, 180, 0.01));
+      points.add(point(random, "pole" + i, 89.99, 0, 0.01));
+    }
+    PoiStore store = PoiStore.read(ByteBuffer.wrap(toBytes(points)));
+    double[][] queries = {
+      {29.3440, 48.0835, 300},
+      {29.3440, 48.0835, 5},
+      {29.3401, 48.0790, 1000},
+      {-16.5, 179.999, 500},
+      {-16.5, -179.999, 500},
+      {89.995, 45, 800},
+      {29.3440, 48.0835, 0},
+      {0, 0, 1000},
+    };
+    int[] result = new int[store.size()];
+
+    for (double[] query : queries) {
+      int count = store.findWithin(query[0], query[1], query[2], result);
+
+      int[] found = Arrays.copyOf(result, count);
+      Arrays.sort(found);
+      assertArrayEquals(
+          Arrays.toString(query), bruteForce(store, query[0], query[1], query[2]), found);
+    }
+  }
+
+  @Test
+  public void findWithin_countsPastResultLength() throws IOException {
+    List<PointOfInterest> points = new ArrayList<>();
+    for (int i = 0; i < 10; ++i) {
+      points.add(new PointOfInterest("p" + i, 29.3440, 48.0835 + i * 1e-5, 0));
+    }
+    PoiStore store = PoiStore.read(ByteBuffer.wrap(toBytes(points)));
+    int[] result = new int[4];
+
+    assertEquals(10, store.findWithin(29.3440, 48.0835, 50, result));
+    assertEquals(0, store.findWithin(Double.NaN, 48.0835, 50, result));
+  }
+
+  @Test
+  public void findNearest_keepsNearestPoints() throws IOException {
+    List<PointOfInterest> points = new ArrayList<>();
+    // Eastward, then westward, at growing distances, so geohash order differs from distance order.
+    for (int i = 0; i < 10; ++i) {
+      double offset = (i + 1) * 1e-4 * (i % 2 == 0 ? 1 : -1);
+      points.add(new PointOfInterest("p" + i, 29.3440, 48.0835 + offset, 0));
+    }
+    PoiStore store = PoiStore.read(ByteBuffer.wrap(toBytes(points)));
+    int[] result = new int[4];
+
+    int count = store.findNearest(29.3440, 48.0835, 500, result);
+
+    assertEquals(4, count);
+    for (int i = 0; i < count; ++i) {
+      assertEquals("p" + i, store.get(result[i]).getId());
+    }
+    assertEquals(0, store.findNearest(29.3440, 48.0835, 5, result));
+  }
+
+  @Test
+  public void read_rejectsBadInput() throws IOException {
+    byte[] bytes = toBytes(Arrays.asList(new PointOfInterest("p", 1, 2, 3)));
+
+    assertReadFails(Arrays.copyOf(bytes, 8), "truncated");
+    assertReadFails(Arrays.copyOf(bytes, bytes.length - 1), "truncated");
+    byte[] badMagic = bytes.clone();
+    badMagic[0] = 'X';
+    assertReadFails(badMagic, "Not a point of interest store");
+    byte[] badReference = bytes.clone();
+    // The id reference of the only point.
+    badReference[PoiStore.HEADER_SIZE + 16] = 5;
+    assertReadFails(badReference, "string reference");
+  }
+
+  @Test
+  public void readText_parsesListing() throws IOException {
+    List<PointOfInterest> points =
+        PoiStore.readText(
+            new StringReader(
+                "# comment\n\n"
+                    + "a 1.5,-2 - 90\n"
+                    + "b 3,4 10 0 zone - texture.png\n"));
+
+    assertEquals(2, points.size());
+    assertTrue(!points.get(0).hasAltitude());
+    assertEquals(90f, points.get(0).getHeading(), 0);
+    assertNull(points.get(0).getZoneId());
+    assertEquals(10, points.get(1).getAltitude(), 0);
+    assertEquals("zone", points.get(1).getZoneId());
+    assertNull(points.get(1).getMeshAsset());
+    assertEquals("texture.png", points.get(1).getTextureAsset());
+    try {
+      PoiStore.readText(new StringReader("a 91,0 - 0\n"));
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains("out of range"));
+    }
+  }
+
+  @Test
+  public void shippedStore_matchesListing() throws IOException {
+    List<PointOfInterest> listing;
+    try (Reader reader =
+        new InputStreamReader(new FileInputStream(CAMPUS_LISTING), StandardCharsets.UTF_8)) {
+      listing = PoiStore.readText(reader);
+    }
+    PoiStore store = PoiStore.read(new File(CAMPUS_POI));
+
+    assertEquals(listing.size(), store.size());
+    for (PointOfInterest expected : listing) {
+      PointOfInterest actual = find(store, expected.getId());
+      assertEquals(expected.getLatitude(), actual.getLatitude(), 1e-7);
+      assertEquals(expected.getLongitude(), actual.getLongitude(), 1e-7);
+      assertEquals(expected.getHeading(), actual.getHeading(), 0);
+      assertEquals(expected.getZoneId(), actual.getZoneId());
+    }
+  }
+
+  private static byte[] toBytes(List<PointOfInterest> points) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    PoiStore.write(points, outputStream);
+    return outputStream.toByteArray();
+  }
+
+  private static PointOfInterest find(PoiStore store, String id) {
+    for (int i = 0; i < store.size(); ++i) {
+      if (store.get(i).getId().equals(id)) {
+        return store.get(i);
+      }
+    }
+    throw new AssertionError("No point " + id);
+  }
+
+  /* package-private */ static PointOfInterest point(
+      Random random, String id, double latitude, double longitude, double halfExtentDegrees) {
+    double lng = longitude + (random.nextDouble() * 2 - 1) * halfExtentDegrees;
+    if (lng > 180) {
+      lng -= 360;
+    }
+    return new PointOfInterest(
+        id,
+        Math.min(90, latitude + (random.nextDouble() * 2 - 1) * halfExtentDegrees),
+        lng,
+        Double.NaN);
+  }
+
+  /** Returns the sorted indices of the points within range, testing every point. */
+  /* package-private */ static int[] bruteForce(
+      PoiStore store, double latitude, double longitude, double radiusMeters) {
+    double metersPerDegreeLongitude = METERS_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+    int[] found = new int[store.size()];
+    int count = 0;
+    for (int i = 0; i < store.size(); ++i) {
+      double deltaLongitude = store.getLongitude(i) - longitude;
+      deltaLongitude -= 360 * Math.round(deltaLongitude / 360);
+      double dx = deltaLongitude * metersPerDegreeLongitude;
+      double dy = (store.getLatitude(i) - latitude) * METERS_PER_DEGREE;
+      if (dx * dx + dy * dy <= radiusMeters * radiusMeters) {
+        found[count++] = i;
+      }
+    }
+    return Arrays.copyOf(found, count);
+  }
+
+  private static void assertReadFails(byte[] bytes, String message) {
+    try {
+      PoiStore.read(ByteBuffer.wrap(bytes));
+      fail("Expected " + message);
+    } catch (IOException e) {
+      assertTrue(e.getMessage(), e.getMessage().contains(message));
+    }
+  }
+}
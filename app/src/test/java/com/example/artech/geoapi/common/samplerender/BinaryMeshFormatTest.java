@@ -0,0 +1,126 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.junit.Test;
+
+public class BinaryMeshFormatTest {
+  static final String MARKER_OBJ = "src/main/assets/models/geospatial_marker.obj";
+  static final String MARKER_MESH = "src/main/assets/models/geospatial_marker.mesh";
+
+  @Test
+  public void roundTrip_preservesMarkerMesh() throws IOException {
+    MeshData original;
+    try (InputStream inputStream = new FileInputStream(MARKER_OBJ)) {
+      original = MeshData.fromObj(inputStream);
+    }
+
+    MeshData loaded = BinaryMeshFormat.read(toDirectBuffer(original));
+
+    assertEquals(original.getVertexCount(), loaded.getVertexCount());
+    assertEquals(original.getIndexCount(), loaded.getIndexCount());
+    assertBuffersEqual(original.getPositions(), loaded.getPositions());
+    assertBuffersEqual(original.getTexCoords(), loaded.getTexCoords());
+    assertBuffersEqual(original.getNormals(), loaded.getNormals());
+    for (int i = 0; i < original.getIndexCount(); ++i) {
+      assertEquals(original.getIndices().get(i), loaded.getIndices().get(i));
+    }
+    float[] expected = new float[3];
+    float[] actual = new float[3];
+    original.getBoundsMax(expected);
+    loaded.getBoundsMax(actual);
+    assertArrayEquals(expected, actual, 0f);
+  }
+
+  @Test
+  public void shippedMarker_hasLevelsOfDetail() throws IOException {
+    MeshData marker = BinaryMeshFormat.read(new File(MARKER_MESH));
+
+    // Converted with the ratios hellogeorender asks for: 1, 0.25 and 0.05.
+    assertEquals(3, marker.getLodCount());
+    assertTrue(marker.getLodIndexCount(2) < marker.getLodIndexCount(0));
+  }
+
+  @Test
+  public void roundTrip_withoutOptionalAttributes() throws IOException {
+    FloatBuffer positions = MeshData.allocateFloats(9);
+    positions.put(new float[] {0, 0, 0, 1, 0, 0, 0, 1, 0}).rewind();
+
+    MeshData loaded =
+        BinaryMeshFormat.read(toDirectBuffer(new MeshData(positions, null, null, null)));
+
+    assertEquals(3, loaded.getVertexCount());
+    assertNull(loaded.getTexCoords());
+    assertNull(loaded.getNormals());
+    assertNull(loaded.getIndices());
+  }
+
+  @Test
+  public void roundTrip_preservesLevelsOfDetail() throws IOException {
+    MeshData original;
+    try (InputStream inputStream = new FileInputStream(MARKER_OBJ)) {
+      original = MeshSimplifier.buildLodChain(MeshData.fromObj(inputStream), 1f, 0.25f);
+    }
+
+    MeshData loaded = BinaryMeshFormat.read(toDirectBuffer(original));
+
+    assertEquals(2, loaded.getLodCount());
+    for (int level = 0; level < 2; ++level) {
+      assertEquals(original.getLodFirstIndex(level), loaded.getLodFirstIndex(level));
+      assertEquals(original.getLodIndexCount(level), loaded.getLodIndexCount(level));
+      assertEquals(original.getLodError(level), loaded.getLodError(level), 0f);
+    }
+  }
+
+  @Test
+  public void read_rejectsBadMagic() {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BinaryMeshFormat.HEADER_SIZE);
+    try {
+      BinaryMeshFormat.read(buffer);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void read_rejectsTruncatedData() throws IOException {
+    FloatBuffer positions = MeshData.allocateFloats(9);
+    IntBuffer indices = MeshData.allocateInts(3);
+    indices.put(new int[] {0, 1, 2}).rewind();
+    ByteBuffer buffer = toDirectBuffer(new MeshData(positions, null, null, indices));
+    buffer.limit(buffer.limit() - 1);
+    try {
+      BinaryMeshFormat.read(buffer);
+      fail("Expected IOException");
+    } catch (IOException expected) {
+    }
+  }
+
+  static ByteBuffer toDirectBuffer(MeshData meshData) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    BinaryMeshFormat.write(meshData, outputStream);
+    byte[] bytes = outputStream.toByteArray();
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes).flip();
+    return buffer;
+  }
+
+  private static void assertBuffersEqual(FloatBuffer expected, FloatBuffer actual) {
+    assertEquals(expected.limit(), actual.limit());
+    for (int i = 0; i < expected.limit(); ++i) {
+      assertEquals(expected.get(i), actual.get(i), 0f);
+    }
+  }
+}
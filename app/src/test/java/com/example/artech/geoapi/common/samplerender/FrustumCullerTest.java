@@ -0,0 +1,316 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class FrustumCullerTest {
+  private static final float NEAR = 0.1f;
+  private static final float FAR = 1000f;
+  private static final float[] IDENTITY = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+
+  private final float[] planes = new float[FrustumCuller.PLANE_COUNT * FrustumCuller.PLANE_SIZE];
+
+  @Test
+  public void extractPlanes_identity_givesClipCube() {
+    FrustumCuller.extractPlanes(IDENTITY, planes);
+
+    float[] expected = {
+      1, 0, 0, 1, // left: x >= -1
+      -1, 0, 0, 1, // right: x <= 1
+      0, 1, 0, 1, // bottom
+      0, -1, 0, 1, // top
+      0, 0, 1, 1, // near
+      0, 0, -1, 1, // far
+    };
+    assertArrayEquals(expected, planes, 1e-6f);
+  }
+
+  @Test
+  public void extractPlanes_perspective_passesThroughFrustumEdges() {
+    // 90 degrees vertically and horizontally, so the side planes are at x = +-z and y = +-z.
+    FrustumCuller.extractPlanes(perspective(90, 1), planes);
+
+    for (int i = 0; i < FrustumCuller.PLANE_COUNT; ++i) {
+      assertEquals(1, length(planes, i), 1e-5);
+    }
+    assertEquals(0, distance(planes, 0, -5, 0, -5), 1e-4);
+    assertEquals(0, distance(planes, 1, 5, 0, -5), 1e-4);
+    assertEquals(0, distance(planes, 2, 0, -5, -5), 1e-4);
+    assertEquals(0, distance(planes, 3, 0, 5, -5), 1e-4);
+    assertEquals(0, distance(planes, 4, 0, 0, -NEAR), 1e-4);
+    // The far plane comes from the difference of two nearly equal floats, so it is only roughly
+    // where it should be. That is fine for culling.
+    assertEquals(0, distance(planes, 5, 0, 0, -FAR), 1);
+    // Signed distances are in meters.
+    assertEquals(Math.sqrt(2), distance(planes, 0, -3, 0, -5), 1e-4);
+    assertEquals(10 - NEAR, distance(planes, 4, 0, 0, -10), 1e-4);
+  }
+
+  @Test
+  public void extractPlanes_followCameraPose() {
+    // Camera at (100, 0, 50) looking along +x.
+    float[] view = view(100, 0, 50, -90);
+    float[] viewProjection = new float[16];
+    InstanceMatrices.multiply(perspective(60, 1.5f), view, 0, viewProjection, 0);
+
+    FrustumCuller.extractPlanes(viewProjection, planes);
+
+    assertTrue(FrustumCuller.isSphereInside(planes, 120, 0, 50, 0));
+    assertFalse(FrustumCuller.isSphereInside(planes, 80, 0, 50, 0));
+    assertFalse(FrustumCuller.isSphereInside(planes, 100, 0, 70, 0));
+    assertEquals(20 - NEAR, distance(planes, 4, 120, 0, 50), 1e-3);
+  }
+
+  @Test
+  public void isSphereInside_keepsSpheresStraddlingAPlane() {
+    FrustumCuller.extractPlanes(perspective(90, 1), planes);
+
+    assertFalse(FrustumCuller.isSphereInside(planes, -7, 0, -5, 1));
+    assertTrue(FrustumCuller.isSphereInside(planes, -7, 0, -5, 1.5f));
+    assertFalse(FrustumCuller.isSphereInside(planes, 0, 0, 1, 0.5f));
+    assertTrue(FrustumCuller.isSphereInside(planes, 0, 0, 1, 1.2f));
+  }
+
+  @Test
+  public void cull_dropsAnchorsOutOfView() {
+    FrustumCuller culler = new FrustumCuller(4);
+    culler.setBoundingSphere(0, 0.5f, 0, 0.5f);
+    culler.setCamera(IDENTITY, perspective(60, 1));
+    float[] models = translations(0, 0, -10, 0, 0, 10, 50, 0, -10, 1, 0, -20);
+
+    int visible = culler.cull(models, 4);
+
+    assertEquals(2, visible);
+    assertEquals(2, culler.getFrustumCulledCount());
+    assertEquals(2, culler.getCulledCount());
+    // Kept in order.
+    assertEquals(-10, culler.getVisibleModelMatrices()[14], 0);
+    assertEquals(-20, culler.getVisibleModelMatrices()[16 + 14], 0);
+  }
+
+  @Test
+  public void cull_dropsDistantAnchorsFromMovedCamera() {
+    FrustumCuller culler = new FrustumCuller(2);
+    culler.setBoundingSphere(0, 0, 0, 1);
+    culler.setMaxDistance(100);
+    // Camera at (0, 0, 500) looking down -z.
+    culler.setCamera(view(0, 0, 500, 0), perspective(60, 1));
+    // Both in view, at 100.5 m and 101.5 m from the camera.
+    float[] models = translations(0, 0, 399.5f, 0, 0, 398.5f);
+
+    assertEquals(1, culler.cull(models, 2));
+    assertEquals(1, culler.getDistanceCulledCount());
+    assertEquals(399.5f, culler.getVisibleModelMatrices()[14], 0);
+  }
+
+  @Test
+  public void cull_dropsAnchorsTooSmallOnScreen() {
+    FrustumCuller culler = new FrustumCuller(3);
+    culler.setBoundingSphere(0, 0, 0, 0.5f);
+    culler.setMinScreenSize(2);
+    culler.setViewportHeight(1000);
+    // One meter at depth d covers 500 / d pixels.
+    culler.setCamera(IDENTITY, perspective(90, 1));
+    float[] models = translations(0, 0, -10, 0, 0, -200, 0, 0, -300);
+
+    assertEquals(2, culler.cull(models, 3));
+    assertEquals(1, culler.getScreenSizeCulledCount());
+    assertEquals(0, culler.getFrustumCulledCount());
+  }
+
+  @Test
+  public void cull_scalesSphereWithModelMatrix() {
+    FrustumCuller culler = new FrustumCuller(1);
+    culler.setBoundingSphere(0, 0, 0, 1);
+    culler.setCamera(IDENTITY, perspective(90, 1));
+    // Just behind the camera, but scaled up enough to reach in front of it.
+    float[] model = translations(0, 0, 2);
+    model[0] = 3;
+    model[5] = 3;
+    model[10] = 3;
+
+    assertEquals(1, culler.cull(model, 1));
+  }
+
+  @Test
+  public void selectLod_picksCoarsestLevelWithinError() {
+    float[] errors = {0, 0.01f, 0.1f};
+
+    assertEquals(0, FrustumCuller.selectLod(errors, 200, 1));
+    assertEquals(1, FrustumCuller.selectLod(errors, 100, 1));
+    assertEquals(1, FrustumCuller.selectLod(errors, 11, 1));
+    assertEquals(2, FrustumCuller.selectLod(errors, 10, 1));
+    assertEquals(0, FrustumCuller.selectLod(new float[] {0}, 0, 1));
+  }
+
+  @Test
+  public void cull_groupsAnchorsByLevelOfDetail() {
+    FrustumCuller culler = new FrustumCuller(4);
+    culler.setBoundingSphere(0, 0, 0, 0.5f);
+    culler.setViewportHeight(1000);
+    // A local unit at depth d covers 500 / d pixels, so level 1 from 5 m and level 2 from 50 m.
+    culler.setLodErrors(new float[] {0, 0.01f, 0.1f}, 1);
+    culler.setCamera(IDENTITY, perspective(90, 1));
+    float[] models = translations(0, 0, -100, 0, 0, -2, 0, 0, -10, 0, 0, -0.2f);
+
+    assertEquals(4, culler.cull(models, 4));
+
+    assertEquals(3, culler.getLodCount());
+    assertEquals(2, culler.getLodInstanceCount(0));
+    assertEquals(1, culler.getLodInstanceCount(1));
+    assertEquals(1, culler.getLodInstanceCount(2));
+    assertEquals(0, culler.getLodFirstInstance(0));
+    assertEquals(2, culler.getLodFirstInstance(1));
+    assertEquals(3, culler.getLodFirstInstance(2));
+    float[] visible = culler.getVisibleModelMatrices();
+    // Level 0 keeps the original order, and the anchor around the camera gets full detail.
+    assertEquals(-2, visible[14], 0);
+    assertEquals(-0.2f, visible[16 + 14], 0);
+    assertEquals(-10, visible[2 * 16 + 14], 0);
+    assertEquals(-100, visible[3 * 16 + 14], 0);
+  }
+
+  @Test
+  public void getScreenBounds_enclosesKeptInstances() {
+    FrustumCuller culler = new FrustumCuller(3);
+    culler.setBoundingSphere(0, 0, 0, 1);
+    culler.setCamera(IDENTITY, perspective(90, 1));
+    float[] bounds = new float[4];
+
+    culler.cull(translations(0, 0, -10, 100, 0, -10), 2);
+
+    assertTrue(culler.getScreenBounds(bounds));
+    // The box corner nearest the camera, at x = 1 and z = -9, projects farthest out.
+    assertArrayEquals(new float[] {-1 / 9f, -1 / 9f, 1 / 9f, 1 / 9f}, bounds, 1e-5f);
+
+    culler.cull(translations(0, 0, -10, 5, 2, -10), 2);
+
+    assertTrue(culler.getScreenBounds(bounds));
+    assertEquals(-1 / 9f, bounds[0], 1e-5f);
+    assertEquals(-1 / 9f, bounds[1], 1e-5f);
+    assertEquals(6 / 9f, bounds[2], 1e-5f);
+    assertEquals(3 / 9f, bounds[3], 1e-5f);
+  }
+
+  @Test
+  public void getScreenBounds_coversScreenForInstanceAroundCamera() {
+    FrustumCuller culler = new FrustumCuller(1);
+    culler.setBoundingSphere(0, 0, 0, 1);
+    culler.setCamera(IDENTITY, perspective(90, 1));
+    float[] bounds = new float[4];
+
+    culler.cull(translations(0.5f, 0, -0.5f), 1);
+
+    assertTrue(culler.getScreenBounds(bounds));
+    assertArrayEquals(new float[] {-1, -1, 1, 1}, bounds, 0);
+  }
+
+  @Test
+  public void getScreenBounds_emptyWhenNothingKept() {
+    FrustumCuller culler = new FrustumCuller(1);
+    culler.setBoundingSphere(0, 0, 0, 1);
+    culler.setCamera(IDENTITY, perspective(90, 1));
+    float[] bounds = {7, 7, 7, 7};
+
+    culler.cull(translations(0, 0, 10), 1);
+
+    assertFalse(culler.getScreenBounds(bounds));
+    assertEquals(7, bounds[0], 0);
+  }
+
+  @Test
+  public void cull_doesNotAllocate() {
+    int count = 512;
+    FrustumCuller culler = new FrustumCuller(count);
+    culler.setBoundingSphere(0, 0.5f, 0, 0.6f);
+    culler.setMaxDistance(300);
+    culler.setMinScreenSize(2);
+    culler.setViewportHeight(2000);
+    float[] models = new float[count * 16];
+    for (int i = 0; i < count; ++i) {
+      float angle = i * 0.1f;
+      System.arraycopy(
+          translations(i * (float) Math.cos(angle), 0, i * (float) Math.sin(angle)),
+          0,
+          models,
+          i * 16,
+          16);
+    }
+    float[] view = view(3, 0, 4, 30);
+    float[] projection = perspective(60, 0.5f);
+    ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    int iterations = 1000;
+    // Warm up so JIT compilation is not measured.
+    for (int i = 0; i < iterations; ++i) {
+      culler.setCamera(view, projection);
+      culler.cull(models, count);
+    }
+
+    long before = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; ++i) {
+      culler.setCamera(view, projection);
+      culler.cull(models, count);
+    }
+    long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+    assertTrue(culler.getVisibleCount() > 0);
+    assertTrue(culler.getCulledCount() > 0);
+    // A few bytes of slack for allocations made by the JIT itself.
+    assertTrue("allocated " + allocated + " bytes", allocated < iterations);
+  }
+
+  /** Returns a column-major OpenGL perspective projection, as ARCore's Camera produces. */
+  private static float[] perspective(float fovYDegrees, float aspect) {
+    float f = (float) (1 / Math.tan(Math.toRadians(fovYDegrees) / 2));
+    float[] m = new float[16];
+    m[0] = f / aspect;
+    m[5] = f;
+    m[10] = (FAR + NEAR) / (NEAR - FAR);
+    m[11] = -1;
+    m[14] = 2 * FAR * NEAR / (NEAR - FAR);
+    return m;
+  }
+
+  /**
+   * Returns the view matrix of a camera at (x, y, z) that is turned {@code yawDegrees}
+   * counterclockwise about +y from looking down -z.
+   */
+  private static float[] view(float x, float y, float z, float yawDegrees) {
+    float cos = (float) Math.cos(Math.toRadians(yawDegrees));
+    float sin = (float) Math.sin(Math.toRadians(yawDegrees));
+    // The inverse of the camera pose: the transposed rotation, then minus the rotated position.
+    float[] m = {cos, 0, sin, 0, 0, 1, 0, 0, -sin, 0, cos, 0, 0, 0, 0, 1};
+    m[12] = -(cos * x - sin * z);
+    m[13] = -y;
+    m[14] = -(sin * x + cos * z);
+    return m;
+  }
+
+  /** Returns translation matrices to each (x, y, z) triple, packed back to back. */
+  private static float[] translations(float... positions) {
+    float[] m = new float[positions.length / 3 * 16];
+    for (int i = 0; i < positions.length / 3; ++i) {
+      System.arraycopy(IDENTITY, 0, m, i * 16, 16);
+      System.arraycopy(positions, i * 3, m, i * 16 + 12, 3);
+    }
+    return m;
+  }
+
+  private static double length(float[] planes, int plane) {
+    int i = plane * FrustumCuller.PLANE_SIZE;
+    return Math.sqrt(
+        planes[i] * planes[i] + planes[i + 1] * planes[i + 1] + planes[i + 2] * planes[i + 2]);
+  }
+
+  private static double distance(float[] planes, int plane, float x, float y, float z) {
+    int i = plane * FrustumCuller.PLANE_SIZE;
+    return planes[i] * x + planes[i + 1] * y + planes[i + 2] * z + planes[i + 3];
+  }
+}
@@ -0,0 +1,144 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import org.junit.Test;
+
+public class GLErrorPolicyTest {
+  private static final int GL_INVALID_ENUM = 0x0500;
+  private static final int GL_INVALID_OPERATION = 0x0502;
+
+  private static final int FRAMES = 120;
+  private static final int CHECKS_PER_FRAME = 25;
+
+  private final FakeGl gl = new FakeGl();
+  private final int[] errorCodes = new int[4];
+
+  @Test
+  public void always_queriesAfterEveryCall() {
+    GLErrorPolicy policy = new GLErrorPolicy(gl, GLErrorPolicy.Mode.ALWAYS, /*debugBuild=*/ false);
+
+    runFrames(policy);
+
+    assertEquals(FRAMES * CHECKS_PER_FRAME, gl.getErrorCalls);
+  }
+
+  @Test
+  public void oncePerFrame_queriesOncePerFrame() {
+    GLErrorPolicy policy =
+        new GLErrorPolicy(gl, GLErrorPolicy.Mode.ONCE_PER_FRAME, /*debugBuild=*/ false);
+
+    runFrames(policy);
+
+    assertEquals(FRAMES, gl.getErrorCalls);
+  }
+
+  @Test
+  public void debugOnly_queriesOnlyInDebugBuilds() {
+    GLErrorPolicy release =
+        new GLErrorPolicy(gl, GLErrorPolicy.Mode.DEBUG_ONLY, /*debugBuild=*/ false);
+    runFrames(release);
+    assertEquals(0, gl.getErrorCalls);
+
+    GLErrorPolicy debug = new GLErrorPolicy(gl, GLErrorPolicy.Mode.DEBUG_ONLY, /*debugBuild=*/ true);
+    runFrames(debug);
+    assertEquals(FRAMES * CHECKS_PER_FRAME, gl.getErrorCalls);
+  }
+
+  @Test
+  public void sampled_queriesEveryNthFrame() {
+    GLErrorPolicy policy = new GLErrorPolicy(gl, GLErrorPolicy.Mode.SAMPLED, /*debugBuild=*/ false);
+    policy.setSamplePeriod(30);
+
+    runFrames(policy);
+
+    assertEquals(FRAMES / 30, gl.getErrorCalls);
+  }
+
+  @Test
+  public void modeCanChangeAtRuntime() {
+    GLErrorPolicy policy = new GLErrorPolicy(gl, GLErrorPolicy.Mode.ALWAYS, /*debugBuild=*/ false);
+    runFrame(policy);
+    policy.setMode(GLErrorPolicy.Mode.ONCE_PER_FRAME);
+    runFrame(policy);
+
+    assertEquals(CHECKS_PER_FRAME + 1, gl.getErrorCalls);
+  }
+
+  @Test
+  public void checkCall_reportsErrorsAgainstTheCall() {
+    GLErrorPolicy policy = new GLErrorPolicy(gl, GLErrorPolicy.Mode.ALWAYS, /*debugBuild=*/ false);
+    gl.pending.add(GL_INVALID_OPERATION);
+    gl.pending.add(GL_INVALID_ENUM);
+
+    policy.beginFrame();
+    int count = policy.checkCall(errorCodes);
+
+    assertEquals(2, count);
+    assertEquals(GL_INVALID_OPERATION, errorCodes[0]);
+    assertEquals(GL_INVALID_ENUM, errorCodes[1]);
+  }
+
+  @Test
+  public void oncePerFrame_aggregatesErrorsAtFrameEnd() {
+    GLErrorPolicy policy =
+        new GLErrorPolicy(gl, GLErrorPolicy.Mode.ONCE_PER_FRAME, /*debugBuild=*/ false);
+
+    policy.beginFrame();
+    gl.pending.add(GL_INVALID_OPERATION);
+    assertEquals(0, policy.checkCall(errorCodes));
+    gl.pending.add(GL_INVALID_OPERATION);
+    gl.pending.add(GL_INVALID_ENUM);
+    int frameErrors = policy.endFrame();
+
+    assertEquals(3, frameErrors);
+    assertEquals(2, policy.getFrameErrorCount(GL_INVALID_OPERATION));
+    assertEquals(1, policy.getFrameErrorCount(GL_INVALID_ENUM));
+
+    policy.beginFrame();
+    assertEquals(0, policy.endFrame());
+    assertEquals(3, policy.getTotalErrorCount());
+  }
+
+  @Test
+  public void checkCall_countsErrorsThatDoNotFit() {
+    GLErrorPolicy policy = new GLErrorPolicy(gl, GLErrorPolicy.Mode.ALWAYS, /*debugBuild=*/ false);
+    for (int i = 0; i < 6; ++i) {
+      gl.pending.add(GL_INVALID_ENUM);
+    }
+
+    policy.beginFrame();
+
+    assertEquals(errorCodes.length, policy.checkCall(errorCodes));
+    assertEquals(6, policy.getFrameErrorCount());
+  }
+
+  private void runFrames(GLErrorPolicy policy) {
+    for (int frame = 0; frame < FRAMES; ++frame) {
+      runFrame(policy);
+    }
+  }
+
+  private void runFrame(GLErrorPolicy policy) {
+    policy.beginFrame();
+    for (int i = 0; i < CHECKS_PER_FRAME; ++i) {
+      policy.checkCall(errorCodes);
+    }
+    policy.endFrame();
+  }
+
+  /** Counts {@code glGetError} calls and returns queued errors. */
+  private static class FakeGl implements GLErrorPolicy.ErrorSource {
+    final Deque<Integer> pending = new ArrayDeque<>();
+    int getErrorCalls;
+
+    @Override
+    public int getError() {
+      ++getErrorCalls;
+      Integer error = pending.poll();
+      return error == null ? GLErrorPolicy.NO_ERROR : error;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class GLStateCacheTest {
+  private static final int GL_ONE = 1;
+  private static final int GL_SRC_ALPHA = 0x0302;
+  private static final int GL_ONE_MINUS_SRC_ALPHA = 0x0303;
+
+  private final RecordingBackend backend = new RecordingBackend();
+  private final GLStateCache cache = new GLStateCache(backend);
+
+  @Test
+  public void firstCallOfEachKind_isIssued() {
+    cache.bindFramebuffer(0);
+    cache.viewport(0, 0, 1, 1);
+    cache.useProgram(0);
+    cache.blendFuncSeparate(0, 0, 0, 0);
+    cache.depthMask(false);
+    cache.depthTest(false);
+    cache.scissorTest(false);
+    cache.scissor(0, 0, 1, 1);
+
+    assertEquals(8, backend.calls.size());
+    assertEquals(8, cache.getIssuedCount());
+    assertEquals(0, cache.getSkippedCount());
+  }
+
+  @Test
+  public void repeatedDraws_skipRedundantCalls() {
+    for (int i = 0; i < 3; ++i) {
+      drawObject(/*framebufferId=*/ 5, /*programId=*/ 7);
+    }
+
+    assertEquals(
+        "[bindFramebuffer 5, viewport 0 0 640 480, useProgram 7, blend 1 1 1 1, depthMask true,"
+            + " depthTest true]",
+        backend.calls.toString());
+    assertEquals(6, cache.getIssuedCount());
+    assertEquals(12, cache.getSkippedCount());
+    assertEquals(2, cache.getSkippedCount(GLStateCache.Call.USE_PROGRAM));
+  }
+
+  @Test
+  public void changedValues_areIssued() {
+    drawObject(/*framebufferId=*/ 5, /*programId=*/ 7);
+    backend.calls.clear();
+
+    cache.bindFramebuffer(0);
+    cache.viewport(0, 0, 640, 480);
+    cache.useProgram(8);
+    cache.blendFuncSeparate(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA, GL_ONE, GL_ONE);
+    cache.depthMask(true);
+    cache.depthTest(false);
+
+    assertEquals(
+        "[bindFramebuffer 0, useProgram 8, blend 770 771 1 1, depthTest false]",
+        backend.calls.toString());
+    assertEquals(2, cache.getIssuedCount(GLStateCache.Call.BIND_FRAMEBUFFER));
+  }
+
+  @Test
+  public void invalidate_reissuesEverything() {
+    drawObject(/*framebufferId=*/ 5, /*programId=*/ 7);
+    backend.calls.clear();
+
+    cache.invalidate();
+    drawObject(/*framebufferId=*/ 5, /*programId=*/ 7);
+
+    assertEquals(6, backend.calls.size());
+  }
+
+  @Test
+  public void defaultValues_areIssuedBeforeAnythingIsKnown() {
+    // The shadowed fields start at zero/false, which must not be mistaken for known state.
+    cache.bindFramebuffer(0);
+    cache.depthMask(false);
+
+    assertEquals("[bindFramebuffer 0, depthMask false]", backend.calls.toString());
+  }
+
+  @Test
+  public void resetCounters_keepsState() {
+    drawObject(/*framebufferId=*/ 5, /*programId=*/ 7);
+    cache.resetCounters();
+    backend.calls.clear();
+
+    drawObject(/*framebufferId=*/ 5, /*programId=*/ 7);
+
+    assertEquals(0, backend.calls.size());
+    assertEquals(0, cache.getIssuedCount());
+    assertEquals(6, cache.getSkippedCount());
+  }
+
+  private void drawObject(int framebufferId, int programId) {
+    cache.bindFramebuffer(framebufferId);
+    cache.viewport(0, 0, 640, 480);
+    cache.useProgram(programId);
+    cache.blendFuncSeparate(GL_ONE, GL_ONE, GL_ONE, GL_ONE);
+    cache.depthMask(true);
+    cache.depthTest(true);
+  }
+
+  @Test
+  public void scissor_skipsRepeatedBoxesAndToggles() {
+    cache.scissorTest(true);
+    cache.scissor(10, 20, 30, 40);
+    cache.scissor(10, 20, 30, 40);
+    cache.scissorTest(true);
+    cache.scissor(10, 20, 30, 41);
+    cache.scissorTest(false);
+
+    assertEquals(
+        "[scissorTest true, scissor 10 20 30 40, scissor 10 20 30 41, scissorTest false]",
+        backend.calls.toString());
+    assertEquals(2, cache.getSkippedCount());
+  }
+
+  private static class RecordingBackend implements GLStateCache.Backend {
+    final List<String> calls = new ArrayList<>();
+
+    @Override
+    public void bindFramebuffer(int framebufferId) {
+      calls.add("bindFramebuffer " + framebufferId);
+    }
+
+    @Override
+    public void viewport(int x, int y, int width, int height) {
+      calls.add("viewport " + x + " " + y + " " + width + " " + height);
+    }
+
+    @Override
+    public void useProgram(int programId) {
+      calls.add("useProgram " + programId);
+    }
+
+    @Override
+    public void blendFuncSeparate(int sourceRgb, int destRgb, int sourceAlpha, int destAlpha) {
+      calls.add("blend " + sourceRgb + " " + destRgb + " " + sourceAlpha + " " + destAlpha);
+    }
+
+    @Override
+    public void depthMask(boolean depthWrite) {
+      calls.add("depthMask " + depthWrite);
+    }
+
+    @Override
+    public void depthTest(boolean depthTest) {
+      calls.add("depthTest " + depthTest);
+    }
+
+    @Override
+    public void scissorTest(boolean scissorTest) {
+      calls.add("scissorTest " + scissorTest);
+    }
+
+    @Override
+    public void scissor(int x, int y, int width, int height) {
+      calls.add("scissor " + x + " " + y + " " + width + " " + height);
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class GpuUploadQueueTest {
+  private static final long MILLIS = 1_000_000L;
+
+  private final FakeClock clock = new FakeClock();
+  private final GpuUploadQueue queue = new GpuUploadQueue(clock);
+  private final List<String> ran = new ArrayList<>();
+
+  @Test
+  public void drain_runsUploadsInOrderWithinBudget() {
+    for (int i = 0; i < 5; ++i) {
+      postUpload("upload" + i, /*durationNanos=*/ 1 * MILLIS);
+    }
+
+    assertEquals(3, queue.drain(3 * MILLIS));
+    assertEquals("[upload0, upload1, upload2]", ran.toString());
+
+    assertEquals(2, queue.drain(3 * MILLIS));
+    assertEquals("[upload0, upload1, upload2, upload3, upload4]", ran.toString());
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void drain_alwaysRunsOneUploadEvenIfOverBudget() {
+    postUpload("large", /*durationNanos=*/ 50 * MILLIS);
+    postUpload("small", /*durationNanos=*/ 1 * MILLIS);
+
+    assertEquals(1, queue.drain(4 * MILLIS));
+    assertEquals("[large]", ran.toString());
+    assertFalse(queue.isEmpty());
+
+    assertEquals(1, queue.drain(4 * MILLIS));
+    assertTrue(queue.isEmpty());
+  }
+
+  @Test
+  public void drain_withZeroBudget_runsOneUpload() {
+    postUpload("a", 0);
+    postUpload("b", 0);
+
+    assertEquals(1, queue.drain(0));
+  }
+
+  @Test
+  public void drain_emptyQueue_runsNothing() {
+    assertEquals(0, queue.drain(4 * MILLIS));
+  }
+
+  @Test
+  public void uploadsPostedDuringDrain_runInTheSameDrainIfBudgetAllows() {
+    queue.post(
+        () -> {
+          ran.add("first");
+          queue.post(() -> ran.add("followUp"));
+        });
+
+    assertEquals(2, queue.drain(4 * MILLIS));
+    assertEquals("[first, followUp]", ran.toString());
+  }
+
+  @Test
+  public void clear_dropsPendingUploads() {
+    postUpload("a", 0);
+
+    queue.clear();
+
+    assertEquals(0, queue.drain(4 * MILLIS));
+    assertTrue(ran.isEmpty());
+  }
+
+  @Test
+  public void post_fromBackgroundThreads_isSafe() throws InterruptedException {
+    GpuUploadQueue realQueue = new GpuUploadQueue();
+    int[] count = {0};
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; ++t) {
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 1000; ++i) {
+                  realQueue.post(() -> ++count[0]);
+                }
+              });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    while (!realQueue.isEmpty()) {
+      realQueue.drain(Long.MAX_VALUE);
+    }
+
+    assertEquals(4000, count[0]);
+  }
+
+  private void postUpload(String name, long durationNanos) {
+    queue.post(
+        () -> {
+          ran.add(name);
+          clock.now += durationNanos;
+        });
+  }
+
+  private static class FakeClock implements GpuUploadQueue.Clock {
+    long now = 123;
+
+    @Override
+    public long nanoTime() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Measures the CPU side of drawing 1k anchors: packing their model-view matrices for one instanced
+ * draw, compared with the per-anchor path that computes a model-view-projection matrix for each
+ * anchor and copies it out as a uniform.
+ *
+ * <p>The per-anchor path also pays a draw call and a uniform upload per anchor on the GL thread,
+ * which this benchmark cannot measure; the comparison is a lower bound on what instancing saves.
+ */
+public class InstanceMatricesBenchmark {
+  private static final int ANCHOR_COUNT = 1000;
+  private static final int WARMUP_FRAMES = 2000;
+  private static final int MEASURED_FRAMES = 2000;
+  // Generous, so a slow machine does not fail the build; a frame has 16 ms in total.
+  private static final long MAX_PACK_NANOS_PER_FRAME = 2_000_000L;
+
+  @Test
+  public void packingVersusPerAnchorMatrices() {
+    Random random = new Random(42);
+    float[] view = randomMatrix(random);
+    float[] projection = randomMatrix(random);
+    float[] models = new float[ANCHOR_COUNT * 16];
+    for (int i = 0; i < models.length; ++i) {
+      models[i] = random.nextFloat() * 2 - 1;
+    }
+    float[] packed = new float[models.length];
+    FloatBuffer entries =
+        ByteBuffer.allocateDirect(packed.length * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    float[] modelView = new float[16];
+    float[] modelViewProjection = new float[16];
+    float[] uniform = new float[16];
+
+    long packNanos = 0;
+    long perAnchorNanos = 0;
+    float checksum = 0;
+    for (int frame = 0; frame < WARMUP_FRAMES + MEASURED_FRAMES; ++frame) {
+      long start = System.nanoTime();
+      // What InstanceBuffer.update does before glBufferSubData.
+      InstanceMatrices.packModelView(view, models, ANCHOR_COUNT, packed);
+      entries.clear();
+      entries.put(packed, 0, ANCHOR_COUNT * 16);
+      entries.flip();
+      long packedAt = System.nanoTime();
+      // What the per-anchor path does before each glUniformMatrix4fv and draw.
+      for (int i = 0; i < ANCHOR_COUNT; ++i) {
+        multiply(view, 0, models, i * 16, modelView);
+        multiply(projection, 0, modelView, 0, modelViewProjection);
+        System.arraycopy(modelViewProjection, 0, uniform, 0, 16);
+      }
+      long end = System.nanoTime();
+      checksum += entries.get(frame % entries.limit()) + uniform[frame % 16];
+      if (frame >= WARMUP_FRAMES) {
+        packNanos += packedAt - start;
+        perAnchorNanos += end - packedAt;
+      }
+    }
+
+    double packMicros = packNanos / 1e3 / MEASURED_FRAMES;
+    double perAnchorMicros = perAnchorNanos / 1e3 / MEASURED_FRAMES;
+    System.out.printf(
+        "instancing: %d anchors packed in %.1f us/frame for 1 draw call; per-anchor matrices"
+            + " %.1f us/frame for %d draw calls (checksum %.1f)%n",
+        ANCHOR_COUNT, packMicros, perAnchorMicros, ANCHOR_COUNT, checksum);
+    assertTrue(packNanos / MEASURED_FRAMES < MAX_PACK_NANOS_PER_FRAME);
+  }
+
+  private static float[] randomMatrix(Random random) {
+    float[] matrix = new float[16];
+    for (int i = 0; i < 16; ++i) {
+      matrix[i] = random.nextFloat() * 2 - 1;
+    }
+    return matrix;
+  }
+
+  /** Column-major lhs * rhs, like android.opengl.Matrix.multiplyMM. */
+  private static void multiply(
+      float[] lhs, int lhsOffset, float[] rhs, int rhsOffset, float[] out) {
+    for (int column = 0; column < 4; ++column) {
+      for (int row = 0; row < 4; ++row) {
+        float sum = 0;
+        for (int k = 0; k < 4; ++k) {
+          sum += lhs[lhsOffset + k * 4 + row] * rhs[rhsOffset + column * 4 + k];
+        }
+        out[column * 4 + row] = sum;
+      }
+    }
+  }
+}
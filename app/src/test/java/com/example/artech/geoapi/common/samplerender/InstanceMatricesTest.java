@@ -0,0 +1,76 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class InstanceMatricesTest {
+  @Test
+  public void packModelView_multipliesEachMatrixByView() {
+    Random random = new Random(7);
+    float[] view = randomMatrix(random);
+    float[] models = new float[3 * 16];
+    for (int i = 0; i < models.length; ++i) {
+      models[i] = random.nextFloat() * 2 - 1;
+    }
+    float[] out = new float[models.length];
+
+    InstanceMatrices.packModelView(view, models, 3, out);
+
+    for (int i = 0; i < 3; ++i) {
+      float[] expected = multiplyReference(view, models, i * 16);
+      float[] actual = new float[16];
+      System.arraycopy(out, i * 16, actual, 0, 16);
+      assertArrayEquals(expected, actual, 1e-5f);
+    }
+  }
+
+  @Test
+  public void packModelView_identityView_copiesModels() {
+    float[] identity = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+    // A translation by (10, 20, 30), column-major.
+    float[] model = {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 10, 20, 30, 1};
+    float[] out = new float[16];
+
+    InstanceMatrices.packModelView(identity, model, 1, out);
+
+    assertArrayEquals(model, out, 0f);
+  }
+
+  @Test
+  public void packModelView_onlyWritesCount() {
+    float[] view = randomMatrix(new Random(1));
+    float[] models = new float[2 * 16];
+    float[] out = new float[2 * 16];
+    out[16] = 42;
+
+    InstanceMatrices.packModelView(view, models, 1, out);
+
+    assertEquals(42, out[16], 0f);
+  }
+
+  private static float[] randomMatrix(Random random) {
+    float[] matrix = new float[16];
+    for (int i = 0; i < 16; ++i) {
+      matrix[i] = random.nextFloat() * 2 - 1;
+    }
+    return matrix;
+  }
+
+  /** Column-major lhs * rhs, written the slow and obvious way. */
+  private static float[] multiplyReference(float[] lhs, float[] rhs, int rhsOffset) {
+    float[] result = new float[16];
+    for (int row = 0; row < 4; ++row) {
+      for (int column = 0; column < 4; ++column) {
+        float sum = 0;
+        for (int k = 0; k < 4; ++k) {
+          sum += lhs[k * 4 + row] * rhs[rhsOffset + column * 4 + k];
+        }
+        result[column * 4 + row] = sum;
+      }
+    }
+    return result;
+  }
+}
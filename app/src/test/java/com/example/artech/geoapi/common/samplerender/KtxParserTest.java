@@ -0,0 +1,244 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.opengl.GLES30;
+import android.opengl.GLES31Ext;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Test;
+
+public class KtxParserTest {
+  private static final byte[] KTX1_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final byte[] KTX2_IDENTIFIER = {
+    (byte) 0xAB, 'K', 'T', 'X', ' ', '2', '0', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+  };
+  private static final int VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK = 152;
+  private static final int VK_FORMAT_ASTC_6x6_UNORM_BLOCK = 165;
+  private static final int ETC2_RGBA8 = GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC;
+  private static final int ASTC_6x6 = GLES31Ext.GL_COMPRESSED_RGBA_ASTC_6x6_KHR;
+
+  @Test
+  public void parse_ktx1LittleEndian_readsAllLevels() throws IOException {
+    ByteBuffer buffer =
+        ktx1(ByteOrder.LITTLE_ENDIAN, ETC2_RGBA8, 8, 4, /*levels=*/ 4);
+
+    TextureData data = KtxParser.parse(buffer);
+
+    assertTrue(data.isCompressed());
+    assertEquals(GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC, data.getCompressedFormat());
+    assertEquals(8, data.getWidth());
+    assertEquals(4, data.getHeight());
+    assertEquals(4, data.getLevelCount());
+    // 8x4 is two 16-byte blocks; 4x2, 2x1 and 1x1 are one block each.
+    assertEquals(32, data.getLevel(0).remaining());
+    assertEquals(16, data.getLevel(1).remaining());
+    assertEquals(16, data.getLevel(3).remaining());
+    assertEquals(1, data.getLevelWidth(3));
+    assertEquals(1, data.getLevelHeight(3));
+    assertEquals(1, data.getLevel(1).get(0));
+    assertEquals(2, data.getLevel(2).get(15));
+  }
+
+  @Test
+  public void parse_ktx1BigEndian_readsHeader() throws IOException {
+    ByteBuffer buffer =
+        ktx1(ByteOrder.BIG_ENDIAN, GLES30.GL_COMPRESSED_RGB8_ETC2, 4, 4, /*levels=*/ 1);
+
+    TextureData data = KtxParser.parse(buffer);
+
+    assertEquals(GLES30.GL_COMPRESSED_RGB8_ETC2, data.getCompressedFormat());
+    assertEquals(1, data.getLevelCount());
+    assertEquals(8, data.getLevel(0).remaining());
+  }
+
+  @Test
+  public void parse_ktx2Etc2_mapsVkFormat() throws IOException {
+    ByteBuffer buffer =
+        ktx2(VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK, ETC2_RGBA8, 16, 16, /*levels=*/ 5, 0);
+
+    TextureData data = KtxParser.parse(buffer);
+
+    assertEquals(GLES30.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC, data.getCompressedFormat());
+    assertEquals(5, data.getLevelCount());
+    assertEquals(16 * 16, data.getLevel(0).remaining());
+    assertEquals(16, data.getLevel(4).remaining());
+  }
+
+  @Test
+  public void parse_ktx2Astc_mapsVkFormat() throws IOException {
+    ByteBuffer buffer = ktx2(VK_FORMAT_ASTC_6x6_UNORM_BLOCK, ASTC_6x6, 13, 7, /*levels=*/ 1, 0);
+
+    TextureData data = KtxParser.parse(buffer);
+
+    assertEquals(GLES31Ext.GL_COMPRESSED_RGBA_ASTC_6x6_KHR, data.getCompressedFormat());
+    assertTrue(KtxParser.isAstc(data.getCompressedFormat()));
+    // 13x7 needs 3x2 blocks of 6x6.
+    assertEquals(6 * 16, data.getLevel(0).remaining());
+  }
+
+  @Test
+  public void parse_directBuffer_slicesWithoutCopying() throws IOException {
+    ByteBuffer heap =
+        ktx2(VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK, ETC2_RGBA8, 4, 4, /*levels=*/ 1, 0);
+    ByteBuffer direct = ByteBuffer.allocateDirect(heap.remaining());
+    direct.put(heap).flip();
+
+    TextureData data = KtxParser.parse(direct);
+
+    assertTrue(data.getLevel(0).isDirect());
+  }
+
+  @Test
+  public void parse_supercompressedKtx2_isRejected() {
+    assertParseFails(
+        ktx2(VK_FORMAT_ETC2_R8G8B8A8_SRGB_BLOCK, ETC2_RGBA8, 4, 4, /*levels=*/ 1, /*scheme=*/ 1));
+  }
+
+  @Test
+  public void parse_truncatedFile_isRejected() {
+    ByteBuffer buffer =
+        ktx1(ByteOrder.LITTLE_ENDIAN, ETC2_RGBA8, 8, 8, /*levels=*/ 2);
+    buffer.limit(buffer.limit() - 4);
+
+    assertParseFails(buffer);
+  }
+
+  @Test
+  public void parse_uncompressedKtx1_isRejected() {
+    ByteBuffer buffer = ktx1(ByteOrder.LITTLE_ENDIAN, ETC2_RGBA8, 4, 4, /*levels=*/ 1);
+    // Mark the file as uncompressed through its glType.
+    buffer.putInt(16, GLES30.GL_UNSIGNED_BYTE);
+
+    assertParseFails(buffer);
+  }
+
+  @Test
+  public void parse_notKtx_isRejected() {
+    ByteBuffer buffer = ByteBuffer.wrap(new byte[] {(byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 0});
+
+    assertFalse(KtxParser.isKtx(buffer));
+    assertParseFails(buffer);
+  }
+
+  @Test
+  public void withColorSpace_switchesBetweenLinearAndSrgb() {
+    assertEquals(
+        GLES30.GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC,
+        KtxParser.withColorSpace(GLES30.GL_COMPRESSED_RGBA8_ETC2_EAC, /*srgb=*/ true));
+    assertEquals(
+        GLES30.GL_COMPRESSED_RGB8_ETC2,
+        KtxParser.withColorSpace(GLES30.GL_COMPRESSED_SRGB8_ETC2, /*srgb=*/ false));
+    assertEquals(
+        GLES31Ext.GL_COMPRESSED_SRGB8_ALPHA8_ASTC_8x8_KHR,
+        KtxParser.withColorSpace(GLES31Ext.GL_COMPRESSED_RGBA_ASTC_8x8_KHR, /*srgb=*/ true));
+    assertEquals(GLES30.GL_RGBA8, KtxParser.withColorSpace(GLES30.GL_RGBA8, /*srgb=*/ true));
+  }
+
+  @Test
+  public void getLevelSize_roundsUpToWholeBlocks() {
+    assertEquals(8, KtxParser.getLevelSize(GLES30.GL_COMPRESSED_RGB8_ETC2, 1, 1));
+    assertEquals(16 * 8, KtxParser.getLevelSize(GLES30.GL_COMPRESSED_RGB8_ETC2, 13, 13));
+    assertEquals(
+        4 * 16, KtxParser.getLevelSize(GLES31Ext.GL_COMPRESSED_RGBA_ASTC_12x12_KHR, 24, 13));
+    assertEquals(-1, KtxParser.getLevelSize(GLES30.GL_RGBA8, 4, 4));
+  }
+
+  private static void assertParseFails(ByteBuffer buffer) {
+    try {
+      KtxParser.parse(buffer);
+      fail("Expected an IOException");
+    } catch (IOException expected) {
+    }
+  }
+
+  /** Builds a KTX 1.1 file whose level {@code i} is filled with the byte value {@code i}. */
+  private static ByteBuffer ktx1(
+      ByteOrder order, int glInternalFormat, int width, int height, int levelCount) {
+    int keyValueBytes = 8;
+    int size = KtxParser.KTX1_HEADER_SIZE + keyValueBytes;
+    for (int level = 0; level < levelCount; ++level) {
+      size += 4 + padTo4(levelSize(glInternalFormat, width, height, level));
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+    buffer.put(KTX1_IDENTIFIER);
+    buffer.putInt(0x04030201);
+    buffer.putInt(0); // glType
+    buffer.putInt(1); // glTypeSize
+    buffer.putInt(0); // glFormat
+    buffer.putInt(glInternalFormat);
+    buffer.putInt(GLES30.GL_RGBA); // glBaseInternalFormat
+    buffer.putInt(width);
+    buffer.putInt(height);
+    buffer.putInt(0); // depth
+    buffer.putInt(0); // array elements
+    buffer.putInt(1); // faces
+    buffer.putInt(levelCount);
+    buffer.putInt(keyValueBytes);
+    buffer.position(buffer.position() + keyValueBytes);
+    for (int level = 0; level < levelCount; ++level) {
+      int levelSize = levelSize(glInternalFormat, width, height, level);
+      buffer.putInt(levelSize);
+      for (int i = 0; i < levelSize; ++i) {
+        buffer.put((byte) level);
+      }
+      buffer.position(buffer.position() + padTo4(levelSize) - levelSize);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Builds a KTX 2.0 file whose levels are stored smallest first, as the format requires. {@code
+   * glInternalFormat} is only used to size the levels.
+   */
+  private static ByteBuffer ktx2(
+      int vkFormat,
+      int glInternalFormat,
+      int width,
+      int height,
+      int levelCount,
+      int supercompressionScheme) {
+    int size = KtxParser.KTX2_HEADER_SIZE + levelCount * KtxParser.KTX2_LEVEL_INDEX_ENTRY_SIZE;
+    for (int level = 0; level < levelCount; ++level) {
+      size += levelSize(glInternalFormat, width, height, level);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.put(KTX2_IDENTIFIER);
+    buffer.putInt(vkFormat);
+    buffer.putInt(1); // typeSize
+    buffer.putInt(width);
+    buffer.putInt(height);
+    buffer.putInt(0); // depth
+    buffer.putInt(0); // layers
+    buffer.putInt(1); // faces
+    buffer.putInt(levelCount);
+    buffer.putInt(supercompressionScheme);
+    int offset = size;
+    for (int level = 0; level < levelCount; ++level) {
+      int levelSize = levelSize(glInternalFormat, width, height, level);
+      offset -= levelSize;
+      int entry = KtxParser.KTX2_HEADER_SIZE + level * KtxParser.KTX2_LEVEL_INDEX_ENTRY_SIZE;
+      buffer.putLong(entry, offset);
+      buffer.putLong(entry + 8, levelSize);
+      buffer.putLong(entry + 16, levelSize);
+    }
+    buffer.position(0);
+    return buffer;
+  }
+
+  private static int levelSize(int glInternalFormat, int width, int height, int level) {
+    return KtxParser.getLevelSize(
+        glInternalFormat, Math.max(1, width >> level), Math.max(1, height >> level));
+  }
+
+  private static int padTo4(int size) {
+    return (size + 3) & ~3;
+  }
+}
@@ -0,0 +1,60 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+/**
+ * Compares parsing the shipped marker OBJ against loading the same mesh from the binary format.
+ *
+ * <p>Both inputs are held in memory so only parsing/decoding is measured, not disk I/O.
+ */
+public class MeshLoadBenchmark {
+  private static final int WARMUP_ITERATIONS = 5;
+  private static final int MEASURED_ITERATIONS = 20;
+
+  @Test
+  public void objParseVersusBinaryLoad() throws IOException {
+    byte[] objBytes = Files.readAllBytes(Paths.get(BinaryMeshFormatTest.MARKER_OBJ));
+    MeshData meshData;
+    try (InputStream inputStream = new FileInputStream(BinaryMeshFormatTest.MARKER_OBJ)) {
+      meshData = MeshData.fromObj(inputStream);
+    }
+    ByteBuffer binary = BinaryMeshFormatTest.toDirectBuffer(meshData);
+
+    long objNanos = 0;
+    long binaryNanos = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; ++i) {
+      long start = System.nanoTime();
+      MeshData.fromObj(new ByteArrayInputStream(objBytes));
+      long parsed = System.nanoTime();
+      BinaryMeshFormat.read(binary);
+      long loaded = System.nanoTime();
+      if (i >= WARMUP_ITERATIONS) {
+        objNanos += parsed - start;
+        binaryNanos += loaded - parsed;
+      }
+    }
+
+    double objMillis = objNanos / 1e6 / MEASURED_ITERATIONS;
+    double binaryMillis = binaryNanos / 1e6 / MEASURED_ITERATIONS;
+    System.out.printf(
+        "geospatial_marker: %d vertices, %d indices; OBJ %d bytes parsed in %.3f ms, binary %d"
+            + " bytes loaded in %.3f ms (%.0fx)%n",
+        meshData.getVertexCount(),
+        meshData.getIndexCount(),
+        objBytes.length,
+        objMillis,
+        binary.limit(),
+        binaryMillis,
+        objMillis / binaryMillis);
+    assertTrue(binaryMillis < objMillis);
+  }
+}
@@ -0,0 +1,130 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class MeshOptimizerTest {
+  @Test
+  public void optimize_shippedMarker_reportsCounts() throws IOException {
+    MeshData original;
+    try (InputStream inputStream = new FileInputStream(BinaryMeshFormatTest.MARKER_OBJ)) {
+      original = MeshData.fromObj(inputStream);
+    }
+
+    MeshData optimized = MeshOptimizer.optimize(original);
+
+    float acmrBefore =
+        MeshOptimizer.computeAverageCacheMissRatio(
+            original.getIndices(), MeshOptimizer.VERTEX_CACHE_SIZE);
+    float acmrAfter =
+        MeshOptimizer.computeAverageCacheMissRatio(
+            optimized.getIndices(), MeshOptimizer.VERTEX_CACHE_SIZE);
+    System.out.printf(
+        "geospatial_marker: vertices %d -> %d, indices %d -> %d, ACMR %.3f -> %.3f, index bytes"
+            + " %d -> %d%n",
+        original.getVertexCount(),
+        optimized.getVertexCount(),
+        original.getIndexCount(),
+        optimized.getIndexCount(),
+        acmrBefore,
+        acmrAfter,
+        original.getIndexCount() * 4,
+        optimized.getIndexCount() * (optimized.getVertexCount() <= 0x10000 ? 2 : 4));
+
+    assertEquals(original.getIndexCount(), optimized.getIndexCount());
+    assertTrue(optimized.getVertexCount() < original.getVertexCount());
+    assertTrue(acmrAfter < acmrBefore);
+    assertEquals(triangleSignatures(original), triangleSignatures(optimized));
+    assertNotNull(IndexBuffer.narrowIfPossible(optimized.getIndices()));
+  }
+
+  @Test
+  public void weld_mergesDuplicatedQuadCorners() {
+    // Two triangles of a quad stored without sharing: six vertices, two pairs identical.
+    MeshData quad =
+        new MeshData(
+            floats(0, 0, 0, 1, 0, 0, 1, 1, 0, 0, 0, 0, 1, 1, 0, 0, 1, 0),
+            /*texCoords=*/ null,
+            /*normals=*/ null,
+            ints(0, 1, 2, 3, 4, 5));
+
+    MeshData welded = MeshOptimizer.weld(quad);
+
+    assertEquals(4, welded.getVertexCount());
+    assertEquals(6, welded.getIndexCount());
+    assertEquals(triangleSignatures(quad), triangleSignatures(welded));
+  }
+
+  @Test
+  public void weld_keepsVerticesWithDifferentTexCoords() {
+    MeshData mesh =
+        new MeshData(
+            floats(0, 0, 0, 0, 0, 0, 1, 0, 0), floats(0, 0, 1, 1, 0, 0), null, ints(0, 1, 2));
+
+    assertEquals(3, MeshOptimizer.weld(mesh).getVertexCount());
+  }
+
+  @Test
+  public void optimizeVertexFetch_dropsUnreferencedVertices() {
+    MeshData mesh =
+        new MeshData(floats(0, 0, 0, 9, 9, 9, 1, 0, 0, 0, 1, 0), null, null, ints(3, 2, 0));
+
+    MeshData fetched = MeshOptimizer.optimizeVertexFetch(mesh);
+
+    assertEquals(3, fetched.getVertexCount());
+    assertEquals(0, fetched.getIndices().get(0));
+    assertEquals(1, fetched.getIndices().get(1));
+    assertEquals(2, fetched.getIndices().get(2));
+    assertEquals(1f, fetched.getPositions().get(3), 0f);
+  }
+
+  @Test
+  public void narrowIfPossible_fallsBackToIntsAbove16Bits() {
+    assertNotNull(IndexBuffer.narrowIfPossible(ints(0, 1, 0xFFFF)));
+    assertNull(IndexBuffer.narrowIfPossible(ints(0, 1, 0x10000)));
+    assertNull(IndexBuffer.narrowIfPossible(null));
+  }
+
+  /** Returns each triangle as a sorted string of its vertex positions, for order-free compares. */
+  private static List<String> triangleSignatures(MeshData mesh) {
+    FloatBuffer positions = mesh.getPositions();
+    IntBuffer indices = mesh.getIndices();
+    List<String> result = new ArrayList<>();
+    for (int t = 0; t < indices.limit() / 3; ++t) {
+      List<String> corners = new ArrayList<>();
+      for (int k = 0; k < 3; ++k) {
+        int v = indices.get(t * 3 + k);
+        corners.add(
+            positions.get(v * 3) + "," + positions.get(v * 3 + 1) + "," + positions.get(v * 3 + 2));
+      }
+      Collections.sort(corners);
+      result.add(String.join(";", corners));
+    }
+    Collections.sort(result);
+    return result;
+  }
+
+  private static FloatBuffer floats(float... values) {
+    FloatBuffer buffer = MeshData.allocateFloats(values.length);
+    buffer.put(values).rewind();
+    return buffer;
+  }
+
+  private static IntBuffer ints(int... values) {
+    IntBuffer buffer = MeshData.allocateInts(values.length);
+    buffer.put(values).rewind();
+    return buffer;
+  }
+}
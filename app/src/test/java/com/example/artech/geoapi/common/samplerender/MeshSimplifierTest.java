@@ -0,0 +1,152 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import org.junit.Test;
+
+public class MeshSimplifierTest {
+  @Test
+  public void buildLodChain_shippedMarker_reportsLevels() throws IOException {
+    MeshData marker;
+    try (InputStream inputStream = new FileInputStream(BinaryMeshFormatTest.MARKER_OBJ)) {
+      marker = MeshOptimizer.optimize(MeshData.fromObj(inputStream));
+    }
+    float[] sphere = new float[4];
+    marker.getBoundingSphere(sphere);
+
+    long start = System.nanoTime();
+    MeshData chain = MeshSimplifier.buildLodChain(marker, 1f, 0.25f, 0.05f);
+    long elapsed = System.nanoTime() - start;
+
+    for (int level = 0; level < chain.getLodCount(); ++level) {
+      System.out.printf(
+          "geospatial_marker LOD %d: %d triangles, error %.4f (radius %.3f)%n",
+          level, chain.getLodIndexCount(level) / 3, chain.getLodError(level), sphere[3]);
+    }
+    System.out.printf("geospatial_marker LOD chain built in %.1f ms%n", elapsed / 1e6);
+
+    assertEquals(3, chain.getLodCount());
+    assertEquals(marker.getIndexCount(), chain.getLodIndexCount(0));
+    assertEquals(0, chain.getLodError(0), 0);
+    assertTrue(chain.getLodIndexCount(1) <= marker.getIndexCount() / 3);
+    assertTrue(chain.getLodIndexCount(2) < chain.getLodIndexCount(1));
+    assertTrue(chain.getLodError(2) >= chain.getLodError(1));
+    // Coarse, but still recognizably the same object.
+    assertTrue(chain.getLodError(2) < sphere[3] / 4);
+    assertLevelsValid(chain);
+  }
+
+  @Test
+  public void buildLodChain_flatGrid_collapsesWithoutError() {
+    MeshData grid = grid(10, /*bumpy=*/ false);
+
+    MeshData chain = MeshSimplifier.buildLodChain(grid, 1f, 0.5f, 0.1f);
+
+    // The 40 border vertices are locked and need about as many triangles to span the interior.
+    assertTrue(chain.getLodIndexCount(2) / 3 <= 40);
+    assertEquals(0, chain.getLodError(2), 1e-6f);
+    assertLevelsValid(chain);
+    assertEquals(area(grid, 0), area(chain, 2), 1e-4);
+  }
+
+  @Test
+  public void buildLodChain_bumpyGrid_removesFlatPartsFirst() {
+    MeshData grid = grid(10, /*bumpy=*/ true);
+
+    MeshData chain = MeshSimplifier.buildLodChain(grid, 1f, 0.8f, 0.3f);
+
+    assertTrue(chain.getLodError(1) < chain.getLodError(2));
+    assertTrue(chain.getLodError(2) > 0);
+    assertLevelsValid(chain);
+  }
+
+  @Test
+  public void buildLodChain_keepsBorderVertices() {
+    MeshData grid = grid(6, /*bumpy=*/ false);
+
+    MeshData chain = MeshSimplifier.buildLodChain(grid, 1f, 0.05f);
+
+    boolean[] used = new boolean[grid.getVertexCount()];
+    IntBuffer indices = chain.getIndices();
+    for (int i = chain.getLodFirstIndex(1); i < chain.getIndices().limit(); ++i) {
+      used[indices.get(i)] = true;
+    }
+    for (int y = 0; y <= 6; ++y) {
+      for (int x = 0; x <= 6; ++x) {
+        if (x == 0 || y == 0 || x == 6 || y == 6) {
+          assertTrue(used[y * 7 + x]);
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void buildLodChain_rejectsIncreasingRatios() {
+    MeshSimplifier.buildLodChain(grid(2, false), 1f, 0.2f, 0.5f);
+  }
+
+  /** Checks that every level only has proper triangles over the original vertices. */
+  private static void assertLevelsValid(MeshData chain) {
+    IntBuffer indices = chain.getIndices();
+    for (int level = 0; level < chain.getLodCount(); ++level) {
+      int first = chain.getLodFirstIndex(level);
+      assertEquals(0, chain.getLodIndexCount(level) % 3);
+      for (int i = first; i < first + chain.getLodIndexCount(level); i += 3) {
+        int a = indices.get(i);
+        int b = indices.get(i + 1);
+        int c = indices.get(i + 2);
+        assertTrue(a != b && b != c && a != c);
+        assertTrue(a < chain.getVertexCount() && b < chain.getVertexCount());
+        assertTrue(c < chain.getVertexCount());
+      }
+    }
+  }
+
+  /** Returns an n by n grid of quads in the xy plane, facing +z, with a bump in the middle. */
+  private static MeshData grid(int n, boolean bumpy) {
+    FloatBuffer positions = MeshData.allocateFloats((n + 1) * (n + 1) * 3);
+    for (int y = 0; y <= n; ++y) {
+      for (int x = 0; x <= n; ++x) {
+        float dx = x - n / 2f;
+        float dy = y - n / 2f;
+        float z = bumpy ? (float) Math.exp(-(dx * dx + dy * dy) / 4) : 0;
+        positions.put(x).put(y).put(z);
+      }
+    }
+    positions.rewind();
+    IntBuffer indices = MeshData.allocateInts(n * n * 6);
+    for (int y = 0; y < n; ++y) {
+      for (int x = 0; x < n; ++x) {
+        int corner = y * (n + 1) + x;
+        indices.put(corner).put(corner + 1).put(corner + n + 2);
+        indices.put(corner).put(corner + n + 2).put(corner + n + 1);
+      }
+    }
+    indices.rewind();
+    return new MeshData(positions, null, null, indices);
+  }
+
+  /** Returns the signed area of a level's triangles projected onto the xy plane. */
+  private static double area(MeshData mesh, int level) {
+    FloatBuffer p = mesh.getPositions();
+    IntBuffer indices = mesh.getIndices();
+    double area = 0;
+    int first = mesh.getLodFirstIndex(level);
+    for (int i = first; i < first + mesh.getLodIndexCount(level); i += 3) {
+      int a = indices.get(i) * 3;
+      int b = indices.get(i + 1) * 3;
+      int c = indices.get(i + 2) * 3;
+      area +=
+          ((p.get(b) - p.get(a)) * (p.get(c + 1) - p.get(a + 1))
+                  - (p.get(c) - p.get(a)) * (p.get(b + 1) - p.get(a + 1)))
+              / 2;
+    }
+    return area;
+  }
+}
@@ -0,0 +1,154 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProgramBinaryCacheTest {
+  private static final String VERTEX = "#version 300 es\n#define USE_OCCLUSION 1\nvoid main() {}\n";
+  private static final String FRAGMENT = "#version 300 es\nvoid main() {}\n";
+  private static final String DRIVER = "Vendor\nRenderer\nOpenGL ES 3.2 V@1.0";
+  private static final int FORMAT = 0x8741;
+
+  private File directory;
+  private ProgramBinaryCache cache;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("programs").toFile();
+    cache = new ProgramBinaryCache(directory);
+  }
+
+  @After
+  public void tearDown() {
+    cache.clear();
+    directory.delete();
+  }
+
+  @Test
+  public void computeKey_isStableAndHexadecimal() {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+
+    assertEquals(key, ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER));
+    assertEquals(64, key.length());
+    assertEquals(key, key.replaceAll("[^0-9a-f]", ""));
+  }
+
+  @Test
+  public void computeKey_dependsOnSourcesDefinesAndDriver() {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+
+    assertNotEquals(
+        key,
+        ProgramBinaryCache.computeKey(
+            VERTEX.replace("USE_OCCLUSION 1", "USE_OCCLUSION 0"), FRAGMENT, DRIVER));
+    assertNotEquals(key, ProgramBinaryCache.computeKey(VERTEX, FRAGMENT + " ", DRIVER));
+    assertNotEquals(key, ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER + ".1"));
+    // Moving text between the sources must not produce the same key.
+    assertNotEquals(
+        ProgramBinaryCache.computeKey("ab", "c", DRIVER),
+        ProgramBinaryCache.computeKey("a", "bc", DRIVER));
+  }
+
+  @Test
+  public void storeAndLoad_roundTrips() throws IOException {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+    ByteBuffer binary = binary(1000);
+
+    cache.store(key, FORMAT, binary);
+    ProgramBinaryCache.Entry entry = cache.load(key);
+
+    assertNotNull(entry);
+    assertEquals(FORMAT, entry.getFormat());
+    assertEquals(binary, entry.getBinary());
+    assertEquals(0, binary.position());
+  }
+
+  @Test
+  public void load_missingEntry_returnsNull() {
+    assertNull(cache.load(ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER)));
+  }
+
+  @Test
+  public void load_corruptBinary_isDiscarded() throws IOException {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+    cache.store(key, FORMAT, binary(100));
+    File file = onlyFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.seek(ProgramBinaryCache.HEADER_SIZE + 10);
+      raf.write(0xff);
+    }
+
+    assertNull(cache.load(key));
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void load_truncatedFile_isDiscarded() throws IOException {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+    cache.store(key, FORMAT, binary(100));
+    File file = onlyFile();
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(raf.length() - 1);
+    }
+
+    assertNull(cache.load(key));
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void load_entryStoredUnderAnotherKey_isRejected() throws IOException {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+    String otherKey = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER + "!");
+    cache.store(key, FORMAT, binary(100));
+    File file = onlyFile();
+    assertEquals(true, file.renameTo(new File(directory, otherKey + ".bin")));
+
+    assertNull(cache.load(otherKey));
+  }
+
+  @Test(expected = IOException.class)
+  public void parse_wrongVersion_throws() throws IOException {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+    ByteBuffer data = ProgramBinaryCache.serialize(key, FORMAT, binary(10));
+    data.putInt(4, ProgramBinaryCache.VERSION + 1);
+
+    ProgramBinaryCache.parse(data, key);
+  }
+
+  @Test
+  public void remove_deletesEntry() throws IOException {
+    String key = ProgramBinaryCache.computeKey(VERTEX, FRAGMENT, DRIVER);
+    cache.store(key, FORMAT, binary(10));
+
+    cache.remove(key);
+
+    assertNull(cache.load(key));
+  }
+
+  private File onlyFile() {
+    File[] files = directory.listFiles();
+    assertEquals(1, files.length);
+    return files[0];
+  }
+
+  private static ByteBuffer binary(int length) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+    for (int i = 0; i < length; ++i) {
+      buffer.put((byte) (i * 31));
+    }
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -0,0 +1,115 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class RenderScaleControllerTest {
+  private static final long BUDGET = 25_000_000L;
+
+  @Test
+  public void update_underBudget_keepsFullScale() {
+    RenderScaleController controller = new RenderScaleController(BUDGET, 0.5f, 1f);
+
+    for (int i = 0; i < 1000; ++i) {
+      assertEquals(1f, controller.update(BUDGET / 2), 0);
+    }
+  }
+
+  @Test
+  public void update_overBudget_dropsBySquareRootOfOvershoot() {
+    RenderScaleController controller = new RenderScaleController(BUDGET, 0.25f, 1f);
+
+    float scale = 1f;
+    for (int i = 0; i < RenderScaleController.SETTLE_FRAMES; ++i) {
+      scale = controller.update(BUDGET * 9 / 8);
+    }
+
+    // sqrt(0.9 / 1.125), rather than the most a single drop may take off.
+    assertEquals(Math.sqrt(0.8), scale, 1e-6);
+  }
+
+  @Test
+  public void update_farOverBudget_limitsEachDropAndStopsAtMinimum() {
+    RenderScaleController controller = new RenderScaleController(BUDGET, 0.5f, 1f);
+
+    for (int i = 0; i < RenderScaleController.SETTLE_FRAMES; ++i) {
+      controller.update(BUDGET * 10);
+    }
+    assertEquals(0.75f, controller.getScale(), 1e-6);
+    for (int i = 0; i < RenderScaleController.SETTLE_FRAMES * 10; ++i) {
+      controller.update(BUDGET * 10);
+    }
+    assertEquals(0.5f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void update_waitsForSettleFramesBetweenChanges() {
+    RenderScaleController controller = new RenderScaleController(BUDGET, 0.25f, 1f);
+    int changes = 0;
+    int lastChange = 0;
+    float scale = controller.getScale();
+
+    for (int frame = 1; frame <= 300; ++frame) {
+      float newScale = controller.update(BUDGET * 2);
+      if (newScale != scale) {
+        assertTrue(frame - lastChange >= RenderScaleController.SETTLE_FRAMES);
+        lastChange = frame;
+        scale = newScale;
+        ++changes;
+      }
+    }
+
+    assertTrue(changes >= 2);
+  }
+
+  @Test
+  public void update_ignoresSingleSpike() {
+    RenderScaleController controller = new RenderScaleController(BUDGET, 0.5f, 1f);
+
+    for (int i = 0; i < 200; ++i) {
+      controller.update(i == 100 ? BUDGET * 3 : BUDGET * 2 / 3);
+    }
+
+    assertEquals(1f, controller.getScale(), 0);
+  }
+
+  @Test
+  public void update_recoversInStepsOnceCheap() {
+    RenderScaleController controller = new RenderScaleController(BUDGET, 0.5f, 1f);
+    for (int i = 0; i < 10 * RenderScaleController.SETTLE_FRAMES; ++i) {
+      controller.update(BUDGET * 10);
+    }
+    assertEquals(0.5f, controller.getScale(), 0);
+
+    // The load eases to one that fits the budget up to scale 0.8, with frame time following the
+    // pixel count. The scale climbs until frames take three quarters of the budget, at 0.7.
+    float scale = controller.getScale();
+    for (int i = 0; i < 40 * RenderScaleController.SETTLE_FRAMES; ++i) {
+      float nextScale = controller.update((long) (BUDGET * scale * scale / 0.64));
+      assertTrue(nextScale - scale <= 0.05f + 1e-6f);
+      scale = nextScale;
+    }
+
+    assertEquals(0.7f, scale, 1e-6f);
+  }
+
+  @Test
+  public void reset_returnsToMaximumScale() {
+    RenderScaleController controller = new RenderScaleController(BUDGET, 0.5f, 0.9f);
+    for (int i = 0; i < 10 * RenderScaleController.SETTLE_FRAMES; ++i) {
+      controller.update(BUDGET * 10);
+    }
+
+    controller.reset();
+
+    assertEquals(0.9f, controller.getScale(), 0);
+    assertEquals(-1, controller.getAverageFrameNanos(), 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_rejectsScaleAboveOne() {
+    new RenderScaleController(BUDGET, 0.5f, 1.5f);
+  }
+}
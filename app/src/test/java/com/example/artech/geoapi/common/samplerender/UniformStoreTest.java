@@ -0,0 +1,225 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+import com.sun.management.ThreadMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class UniformStoreTest {
+  private static final int MVP_LOCATION = 3;
+  private static final int TEXTURE_LOCATION = 7;
+  private static final int ALPHA_LOCATION = 1;
+
+  @Test
+  public void uploadDirty_uploadsOnlyChangedSlots() {
+    UniformStore store = newReflectedStore();
+    RecordingUploader uploader = new RecordingUploader();
+    store.setInt(TEXTURE_LOCATION, 0);
+    store.setFloat(ALPHA_LOCATION, 0.5f);
+    store.uploadDirty(uploader);
+    assertEquals(2, uploader.uploads);
+
+    uploader.uploads = 0;
+    store.setFloats(MVP_LOCATION, UniformStore.Kind.MAT4, identity());
+    store.uploadDirty(uploader);
+
+    assertEquals(1, uploader.uploads);
+    assertEquals(MVP_LOCATION, uploader.lastLocation);
+    assertEquals(UniformStore.Kind.MAT4, uploader.lastKind);
+    assertEquals(1, uploader.lastCount);
+    assertFalse(store.hasDirty());
+  }
+
+  @Test
+  public void setFloats_copiesValues() {
+    UniformStore store = newReflectedStore();
+    RecordingUploader uploader = new RecordingUploader();
+    float[] matrix = identity();
+
+    store.setFloats(MVP_LOCATION, UniformStore.Kind.MAT4, matrix);
+    matrix[0] = 42f;
+    store.uploadDirty(uploader);
+
+    assertEquals(1f, uploader.lastFloats[0], 0f);
+  }
+
+  @Test
+  public void settingTwice_uploadsOnceWithLatestValue() {
+    UniformStore store = newReflectedStore();
+    RecordingUploader uploader = new RecordingUploader();
+
+    store.setFloat(ALPHA_LOCATION, 0.25f);
+    store.setFloat(ALPHA_LOCATION, 0.75f);
+    assertTrue(store.hasDirty());
+    store.uploadDirty(uploader);
+
+    assertEquals(1, uploader.uploads);
+    assertEquals(0.75f, uploader.lastFloats[0], 0f);
+  }
+
+  @Test
+  public void failedUpload_leavesRemainingSlotsDirty() {
+    UniformStore store = newReflectedStore();
+    store.setInt(TEXTURE_LOCATION, 0);
+    store.setFloat(ALPHA_LOCATION, 0.5f);
+    RecordingUploader failing =
+        new RecordingUploader() {
+          @Override
+          public void uploadFloats(
+              UniformStore.Kind kind, int location, int count, float[] values, int offset) {
+            throw new IllegalStateException("Upload failed");
+          }
+        };
+    try {
+      store.uploadDirty(failing);
+      fail("Expected the upload to throw");
+    } catch (IllegalStateException expected) {
+      // The int slot was uploaded before the float slot failed.
+    }
+    assertEquals(1, failing.uploads);
+    assertTrue(store.hasDirty());
+
+    RecordingUploader uploader = new RecordingUploader();
+    store.uploadDirty(uploader);
+
+    assertEquals(1, uploader.uploads);
+    assertEquals(ALPHA_LOCATION, uploader.lastLocation);
+    assertEquals(0.5f, uploader.lastFloats[0], 0f);
+    assertFalse(store.hasDirty());
+  }
+
+  @Test
+  public void undeclaredLocation_isDeclaredOnFirstUse() {
+    UniformStore store = new UniformStore();
+    RecordingUploader uploader = new RecordingUploader();
+
+    store.setInts(5, new int[] {1, 2, 3});
+    store.setBools(2, new boolean[] {true, false});
+    store.uploadDirty(uploader);
+
+    assertEquals(2, uploader.uploads);
+    assertEquals(2, uploader.lastLocation);
+    assertArrayEquals(new int[] {1, 0}, uploader.lastInts);
+  }
+
+  @Test
+  public void names_roundTrip() {
+    UniformStore store = new UniformStore();
+    store.registerName("u_ModelViewProjection", MVP_LOCATION);
+
+    assertEquals(MVP_LOCATION, store.findLocation("u_ModelViewProjection"));
+    assertEquals("u_ModelViewProjection", store.findName(MVP_LOCATION));
+    assertEquals(UniformStore.UNKNOWN_LOCATION, store.findLocation("u_Missing"));
+  }
+
+  @Test
+  public void steadyStateFrame_allocatesNothing() {
+    java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadBean instanceof ThreadMXBean);
+    ThreadMXBean allocationBean = (ThreadMXBean) threadBean;
+    assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+    allocationBean.setThreadAllocatedMemoryEnabled(true);
+    long threadId = Thread.currentThread().getId();
+
+    UniformStore store = newReflectedStore();
+    NullUploader uploader = new NullUploader();
+    float[] mvp = identity();
+    // Warm up so the JIT and any first-use declarations are out of the way.
+    for (int i = 0; i < 20_000; ++i) {
+      renderFrame(store, uploader, mvp, i);
+    }
+
+    // A per-frame allocation shows up in every round, while a one-off allocation on this thread,
+    // such as the JIT finishing a compilation, spoils at most one; so the quietest round must be 0.
+    long allocated = Long.MAX_VALUE;
+    for (int round = 0; round < 5 && allocated != 0; ++round) {
+      long overhead = measureOverhead(allocationBean, threadId);
+      long before = allocationBean.getThreadAllocatedBytes(threadId);
+      for (int i = 0; i < 10_000; ++i) {
+        renderFrame(store, uploader, mvp, i);
+      }
+      allocated =
+          Math.min(
+              allocated, allocationBean.getThreadAllocatedBytes(threadId) - before - overhead);
+    }
+
+    assertEquals("Steady-state frames allocated " + allocated + " bytes", 0, allocated);
+    assertTrue(uploader.uploads > 0);
+  }
+
+  /** Mirrors what {@link Shader} does per draw: set the matrix and sampler, then upload. */
+  private static void renderFrame(UniformStore store, NullUploader uploader, float[] mvp, int i) {
+    mvp[12] = i;
+    store.setFloats(MVP_LOCATION, UniformStore.Kind.MAT4, mvp);
+    store.setInt(TEXTURE_LOCATION, 0);
+    store.uploadDirty(uploader);
+  }
+
+  private static long measureOverhead(ThreadMXBean bean, long threadId) {
+    long first = bean.getThreadAllocatedBytes(threadId);
+    long second = bean.getThreadAllocatedBytes(threadId);
+    return second - first;
+  }
+
+  private static UniformStore newReflectedStore() {
+    UniformStore store = new UniformStore();
+    store.declare(MVP_LOCATION, 16);
+    store.declare(TEXTURE_LOCATION, 1);
+    store.declare(ALPHA_LOCATION, 1);
+    return store;
+  }
+
+  private static float[] identity() {
+    return new float[] {1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1};
+  }
+
+  private static class NullUploader implements UniformStore.Uploader {
+    int uploads;
+
+    @Override
+    public void uploadInts(int location, int count, int[] values, int offset) {
+      ++uploads;
+    }
+
+    @Override
+    public void uploadFloats(
+        UniformStore.Kind kind, int location, int count, float[] values, int offset) {
+      ++uploads;
+    }
+  }
+
+  private static class RecordingUploader implements UniformStore.Uploader {
+    int uploads;
+    int lastLocation;
+    int lastCount;
+    UniformStore.Kind lastKind;
+    float[] lastFloats;
+    int[] lastInts;
+
+    @Override
+    public void uploadInts(int location, int count, int[] values, int offset) {
+      ++uploads;
+      lastLocation = location;
+      lastCount = count;
+      lastKind = UniformStore.Kind.INT;
+      lastInts = Arrays.copyOfRange(values, offset, offset + count);
+    }
+
+    @Override
+    public void uploadFloats(
+        UniformStore.Kind kind, int location, int count, float[] values, int offset) {
+      ++uploads;
+      lastLocation = location;
+      lastCount = count;
+      lastKind = kind;
+      lastFloats = Arrays.copyOfRange(values, offset, offset + count * kind.components);
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.example.artech.geoapi.common.samplerender;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.FloatBuffer;
+import org.junit.Test;
+
+public class VertexLayoutTest {
+  @Test
+  public void meshDataLayout_hasPackedStrideAndOffsets() {
+    VertexLayout layout = Mesh.MESH_DATA_LAYOUT;
+
+    assertEquals(3, layout.getAttributeCount());
+    assertEquals(8, layout.getFloatsPerVertex());
+    assertEquals(32, layout.getStrideBytes());
+    assertEquals(0, layout.getOffsetBytes(0));
+    assertEquals(12, layout.getOffsetBytes(1));
+    assertEquals(20, layout.getOffsetBytes(2));
+    assertEquals(2, layout.getComponentCount(1));
+  }
+
+  @Test
+  public void interleave_ordersAttributesPerVertex() {
+    VertexLayout layout = new VertexLayout(3, 2);
+    FloatBuffer positions = floats(1, 2, 3, 4, 5, 6);
+    FloatBuffer texCoords = floats(10, 11, 12, 13);
+
+    FloatBuffer result = layout.interleave(positions, texCoords);
+
+    assertEquals(10, result.limit());
+    float[] expected = {1, 2, 3, 10, 11, 4, 5, 6, 12, 13};
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals(expected[i], result.get(i), 0f);
+    }
+    assertEquals(true, result.isDirect());
+  }
+
+  @Test
+  public void interleave_fillsMissingAttributesWithZeros() {
+    FloatBuffer result =
+        Mesh.MESH_DATA_LAYOUT.interleave(floats(1, 2, 3), /*texCoords=*/ null, floats(0, 1, 0));
+
+    float[] expected = {1, 2, 3, 0, 0, 0, 1, 0};
+    for (int i = 0; i < expected.length; ++i) {
+      assertEquals(expected[i], result.get(i), 0f);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void interleave_rejectsMismatchedVertexCounts() {
+    new VertexLayout(3, 2).interleave(floats(1, 2, 3, 4, 5, 6), floats(1, 2));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void constructor_rejectsOversizedAttributes() {
+    new VertexLayout(3, 5);
+  }
+
+  private static FloatBuffer floats(float... values) {
+    FloatBuffer buffer = MeshData.allocateFloats(values.length);
+    buffer.put(values).rewind();
+    return buffer;
+  }
+}